@@ -0,0 +1,100 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+
+package org.mrgeo.benchmarks;
+
+import org.mrgeo.colorscale.ColorScale;
+import org.mrgeo.colorscale.applier.ColorScaleApplier;
+import org.mrgeo.colorscale.applier.JpegColorScaleApplier;
+import org.mrgeo.colorscale.applier.PngColorScaleApplier;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coloring a DEM-like float tile, as the map services do for every single band request, and the
+ * per-pixel ColorScale.lookup it is built on.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ColorScaleBenchmark
+{
+@State(Scope.Thread)
+public static class Format
+{
+  @Param({"png", "jpeg"})
+  public String format;
+
+  private ColorScaleApplier applier;
+
+  @Setup
+  public void setup()
+  {
+    applier = format.equals("png") ? new PngColorScaleApplier() : new JpegColorScaleApplier();
+  }
+}
+
+private Raster tile;
+private double[] samples;
+private double[] extrema;
+private double[] nodatas;
+private ColorScale colorScale;
+
+@Setup
+public void setup()
+{
+  tile = SyntheticTiles.tile(DataBuffer.TYPE_FLOAT);
+  samples = tile.getSamples(0, 0, tile.getWidth(), tile.getHeight(), 0, (double[]) null);
+  nodatas = SyntheticTiles.nodatas(DataBuffer.TYPE_FLOAT, 1);
+
+  extrema = new double[]{Double.MAX_VALUE, -Double.MAX_VALUE};
+  for (double v : samples)
+  {
+    if (v != nodatas[0])
+    {
+      extrema[0] = Math.min(extrema[0], v);
+      extrema[1] = Math.max(extrema[1], v);
+    }
+  }
+
+  colorScale = ColorScale.createDefault();
+  colorScale.setScaleRange(extrema[0], extrema[1]);
+  colorScale.setTransparent(nodatas[0]);
+}
+
+@Benchmark
+public Raster applyColorScale(Format format) throws Exception
+{
+  return format.applier.applyColorScale(tile, colorScale, extrema, nodatas);
+}
+
+@Benchmark
+public void lookup(Blackhole bh)
+{
+  for (double v : samples)
+  {
+    bh.consume(colorScale.lookup(v));
+  }
+}
+}
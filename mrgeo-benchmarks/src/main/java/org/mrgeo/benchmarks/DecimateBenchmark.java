@@ -0,0 +1,70 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+
+package org.mrgeo.benchmarks;
+
+import org.mrgeo.aggregators.Aggregator;
+import org.mrgeo.aggregators.AggregatorRegistry;
+import org.mrgeo.data.raster.RasterUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decimating a tile into a quarter of its parent at the next zoom level out, as when building
+ * pyramids, per aggregator.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecimateBenchmark
+{
+@Param({"BYTE", "FLOAT", "DOUBLE"})
+public String type;
+
+@Param({"MEAN", "SUM", "MODE", "NEAREST", "MIN", "MAX", "MINAVGPAIR"})
+public String aggregator;
+
+private Raster tile;
+private WritableRaster child;
+private Aggregator agg;
+private Number[] nodatas;
+
+@Setup
+public void setup() throws Exception
+{
+  int datatype = SyntheticTiles.dataType(type);
+
+  tile = SyntheticTiles.tile(datatype);
+  child = RasterUtils.createEmptyRaster(SyntheticTiles.TILESIZE, SyntheticTiles.TILESIZE, 1, datatype);
+  nodatas = SyntheticTiles.nodataNumbers(datatype, 1);
+
+  agg = AggregatorRegistry.aggregatorRegistry.get(aggregator).newInstance();
+}
+
+@Benchmark
+public WritableRaster decimate()
+{
+  RasterUtils.decimate(tile, child, agg, nodatas);
+  return child;
+}
+}
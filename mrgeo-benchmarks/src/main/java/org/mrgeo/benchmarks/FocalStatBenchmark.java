@@ -0,0 +1,90 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+
+package org.mrgeo.benchmarks;
+
+import org.mrgeo.mapalgebra.FocalStatMapOp;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The focalStat kernels, run over every pixel of a tile that has a full neighborhood, the way
+ * RawFocalMapOp calls them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FocalStatBenchmark
+{
+// FocalStatMapOp's stat names (they aren't constants in java)
+@Param({"mean", "median", "max", "stddev", "sum", "range"})
+public String stat;
+
+// pixels on a side
+@Param({"3", "7"})
+public int neighborhood;
+
+private FocalStatMapOp op;
+private double[] values;
+private boolean[] notnodata;
+private double nodata;
+private int width;
+private int height;
+
+@Setup
+public void setup()
+{
+  Raster tile = SyntheticTiles.tile(DataBuffer.TYPE_FLOAT);
+  width = tile.getWidth();
+  height = tile.getHeight();
+  nodata = SyntheticTiles.nodata(DataBuffer.TYPE_FLOAT);
+
+  values = tile.getSamples(0, 0, width, height, 0, (double[]) null);
+  notnodata = new boolean[values.length];
+  for (int i = 0; i < values.length; i++)
+  {
+    notnodata[i] = values[i] != nodata;
+  }
+
+  // the kernel doesn't need the input, only the stat
+  op = (FocalStatMapOp) FocalStatMapOp.create(null, stat, neighborhood + "p", false);
+}
+
+@Benchmark
+public double compute()
+{
+  int offset = neighborhood / 2;
+  double total = 0.0;
+
+  for (int y = offset; y < height - offset; y++)
+  {
+    for (int x = offset; x < width - offset; x++)
+    {
+      total += op.computePixelValue(values, notnodata, nodata, width, x, y,
+          offset, neighborhood, offset, neighborhood, 0L);
+    }
+  }
+
+  return total;
+}
+}
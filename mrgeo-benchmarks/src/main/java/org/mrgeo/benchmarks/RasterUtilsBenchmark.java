@@ -0,0 +1,78 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+
+package org.mrgeo.benchmarks;
+
+import org.mrgeo.data.raster.RasterUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The RasterUtils operations used when serving tiles:  mosaicking and scaling.  Decimation is in
+ * DecimateBenchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RasterUtilsBenchmark
+{
+@Param({"BYTE", "FLOAT", "DOUBLE"})
+public String type;
+
+private Raster tile;
+private WritableRaster mosaic;
+private double[] nodatas;
+
+@Setup
+public void setup()
+{
+  int datatype = SyntheticTiles.dataType(type);
+
+  tile = SyntheticTiles.tile(datatype);
+  nodatas = SyntheticTiles.nodatas(datatype, 1);
+
+  mosaic = RasterUtils.createEmptyRaster(SyntheticTiles.TILESIZE, SyntheticTiles.TILESIZE, 1, datatype,
+      SyntheticTiles.nodataNumbers(datatype, 1));
+}
+
+@Benchmark
+public WritableRaster mosaicTile()
+{
+  RasterUtils.mosaicTile(tile, mosaic, nodatas);
+  return mosaic;
+}
+
+@Benchmark
+public WritableRaster scaleRasterInterp()
+{
+  return RasterUtils.scaleRasterInterp(tile, SyntheticTiles.TILESIZE * 3 / 4,
+      SyntheticTiles.TILESIZE * 3 / 4, nodatas[0]);
+}
+
+@Benchmark
+public WritableRaster scaleRasterNearest()
+{
+  return RasterUtils.scaleRasterNearest(tile, SyntheticTiles.TILESIZE * 3 / 4,
+      SyntheticTiles.TILESIZE * 3 / 4);
+}
+}
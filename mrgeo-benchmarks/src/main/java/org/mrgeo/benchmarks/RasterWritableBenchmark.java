@@ -0,0 +1,62 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+
+package org.mrgeo.benchmarks;
+
+import org.mrgeo.data.raster.RasterWritable;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding a tile to a RasterWritable and decoding it back, per data type.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RasterWritableBenchmark
+{
+@Param({"BYTE", "SHORT", "INT", "FLOAT", "DOUBLE"})
+public String type;
+
+private Raster raster;
+private RasterWritable writable;
+
+@Setup
+public void setup() throws IOException
+{
+  raster = SyntheticTiles.tile(SyntheticTiles.dataType(type));
+  writable = RasterWritable.toWritable(raster);
+}
+
+@Benchmark
+public RasterWritable encode() throws IOException
+{
+  return RasterWritable.toWritable(raster);
+}
+
+@Benchmark
+public Raster decode() throws IOException
+{
+  return RasterWritable.toRaster(writable);
+}
+}
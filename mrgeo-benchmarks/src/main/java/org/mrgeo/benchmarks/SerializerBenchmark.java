@@ -0,0 +1,212 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+
+package org.mrgeo.benchmarks;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.mrgeo.data.raster.RasterUtils;
+import org.mrgeo.data.raster.RasterWritable;
+import org.mrgeo.data.tile.TileIdWritable;
+import org.mrgeo.job.serializers.RasterWritableSerializer;
+import org.mrgeo.job.serializers.TileIdWritableSerializer;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The shuffle cost of tiles and tile ids with the Kryo serializers MrGeo registers, compared to
+ * how they were serialized before (the whole BytesWritable backing array for tiles, Kryo's
+ * default field serializer for tile ids).
+ *
+ * The serialized size per record is printed when each trial starts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SerializerBenchmark
+{
+/**
+ * The tile serializer before the exact-length one:  it wrote the entire backing array, which
+ * a reused writable can have grown beyond the tile.
+ */
+public static class LegacyRasterWritableSerializer extends Serializer<RasterWritable>
+{
+  @Override
+  public void write(Kryo kryo, Output output, RasterWritable rw)
+  {
+    byte[] bytes = rw.getBytes();
+    output.writeInt(bytes.length);
+    output.writeBytes(bytes);
+  }
+
+  @Override
+  public RasterWritable read(Kryo kryo, Input input, Class<RasterWritable> type)
+  {
+    int length = input.readInt();
+    return new RasterWritable(input.readBytes(length));
+  }
+}
+
+@State(Scope.Thread)
+public static class Tiles
+{
+  @Param({"legacy", "exact", "lz4"})
+  public String serializer;
+
+  // dem (float), categorical (byte) or sparse (float, mostly nodata)
+  @Param({"dem", "categorical", "sparse"})
+  public String tile;
+
+  private Kryo kryo;
+  private Output output;
+  private RasterWritable writable;
+  private byte[] serialized;
+
+  @Setup
+  public void setup() throws Exception
+  {
+    kryo = new Kryo();
+    switch (serializer)
+    {
+    case "legacy":
+      kryo.register(RasterWritable.class, new LegacyRasterWritableSerializer());
+      break;
+    case "exact":
+      kryo.register(RasterWritable.class, new RasterWritableSerializer(false));
+      break;
+    default:
+      kryo.register(RasterWritable.class, new RasterWritableSerializer(true));
+      break;
+    }
+
+    WritableRaster raster;
+    switch (tile)
+    {
+    case "dem":
+      raster = SyntheticTiles.tile(DataBuffer.TYPE_FLOAT);
+      break;
+    case "categorical":
+      raster = SyntheticTiles.tile(DataBuffer.TYPE_BYTE);
+      break;
+    default:
+      raster = RasterUtils.createEmptyRaster(SyntheticTiles.TILESIZE, SyntheticTiles.TILESIZE, 1,
+          DataBuffer.TYPE_FLOAT, SyntheticTiles.nodata(DataBuffer.TYPE_FLOAT));
+      // one corner has data
+      raster.setRect(SyntheticTiles.tile(DataBuffer.TYPE_FLOAT, 64, 1));
+      break;
+    }
+
+    writable = RasterWritable.toWritable(raster);
+    // as if the writable had been reused for a bigger tile (e.g. while reading a sequence file)
+    writable.setCapacity(writable.getLength() * 3 / 2);
+
+    output = new Output(writable.getCapacity() * 2, -1);
+    kryo.writeObject(output, writable);
+    serialized = output.toBytes();
+
+    System.out.println("# " + serializer + "/" + tile + ": " + serialized.length +
+        " bytes serialized, tile is " + writable.getLength() + " bytes");
+  }
+}
+
+@State(Scope.Thread)
+public static class TileIds
+{
+  @Param({"default", "varlong"})
+  public String serializer;
+
+  private Kryo kryo;
+  private Output output;
+  private TileIdWritable[] ids;
+  private byte[] serialized;
+
+  @Setup
+  public void setup()
+  {
+    kryo = new Kryo();
+    if (serializer.equals("varlong"))
+    {
+      kryo.register(TileIdWritable.class, new TileIdWritableSerializer());
+    }
+    else
+    {
+      kryo.register(TileIdWritable.class);
+    }
+
+    // a zoom 12 pyramid has tile ids up to 2^23 or so
+    ids = new TileIdWritable[1024];
+    for (int i = 0; i < ids.length; i++)
+    {
+      ids[i] = new TileIdWritable(i * 8191L);
+    }
+
+    output = new Output(64 * 1024, -1);
+    for (TileIdWritable id : ids)
+    {
+      kryo.writeObject(output, id);
+    }
+    serialized = output.toBytes();
+
+    System.out.println("# " + serializer + ": " + serialized.length / (double) ids.length +
+        " bytes per tile id");
+  }
+}
+
+@Benchmark
+public int writeTile(Tiles state)
+{
+  state.output.clear();
+  state.kryo.writeObject(state.output, state.writable);
+  return state.output.position();
+}
+
+@Benchmark
+public RasterWritable readTile(Tiles state)
+{
+  return state.kryo.readObject(new Input(state.serialized), RasterWritable.class);
+}
+
+@Benchmark
+public int writeTileIds(TileIds state)
+{
+  state.output.clear();
+  for (TileIdWritable id : state.ids)
+  {
+    state.kryo.writeObject(state.output, id);
+  }
+  return state.output.position();
+}
+
+@Benchmark
+public long readTileIds(TileIds state)
+{
+  Input input = new Input(state.serialized);
+  long sum = 0;
+  for (int i = 0; i < state.ids.length; i++)
+  {
+    sum += state.kryo.readObject(input, TileIdWritable.class).get();
+  }
+  return sum;
+}
+}
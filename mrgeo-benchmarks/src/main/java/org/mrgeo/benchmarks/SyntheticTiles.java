@@ -0,0 +1,124 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+
+package org.mrgeo.benchmarks;
+
+import org.mrgeo.data.raster.RasterUtils;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+/**
+ * Fixed, seeded synthetic tiles, so benchmark results are comparable between commits.
+ *
+ * Byte tiles are categorical (a handful of class values), the others look like a DEM:  smooth
+ * terrain with a little noise.  About 1% of the pixels are nodata.
+ */
+public class SyntheticTiles
+{
+public static final int TILESIZE = 512;
+
+private static final long SEED = 20160101L;
+
+private SyntheticTiles()
+{
+}
+
+/**
+ * @param type one of the DataBuffer.TYPE_ names without the prefix (BYTE, SHORT, INT, FLOAT, DOUBLE)
+ */
+public static int dataType(String type)
+{
+  switch (type)
+  {
+  case "BYTE":
+    return DataBuffer.TYPE_BYTE;
+  case "SHORT":
+    return DataBuffer.TYPE_SHORT;
+  case "INT":
+    return DataBuffer.TYPE_INT;
+  case "FLOAT":
+    return DataBuffer.TYPE_FLOAT;
+  case "DOUBLE":
+    return DataBuffer.TYPE_DOUBLE;
+  default:
+    throw new IllegalArgumentException("Unknown data type: " + type);
+  }
+}
+
+public static double nodata(int datatype)
+{
+  return datatype == DataBuffer.TYPE_BYTE ? 255 : -9999;
+}
+
+public static double[] nodatas(int datatype, int bands)
+{
+  double[] nodatas = new double[bands];
+  for (int b = 0; b < bands; b++)
+  {
+    nodatas[b] = nodata(datatype);
+  }
+  return nodatas;
+}
+
+public static Number[] nodataNumbers(int datatype, int bands)
+{
+  Number[] nodatas = new Number[bands];
+  for (int b = 0; b < bands; b++)
+  {
+    nodatas[b] = nodata(datatype);
+  }
+  return nodatas;
+}
+
+public static WritableRaster tile(int datatype)
+{
+  return tile(datatype, TILESIZE, 1);
+}
+
+public static WritableRaster tile(int datatype, int size, int bands)
+{
+  Random random = new Random(SEED + datatype * 31 + size * 7 + bands);
+  WritableRaster raster = RasterUtils.createEmptyRaster(size, size, bands, datatype);
+  double nodata = nodata(datatype);
+
+  for (int b = 0; b < bands; b++)
+  {
+    for (int y = 0; y < size; y++)
+    {
+      for (int x = 0; x < size; x++)
+      {
+        double v;
+        if (random.nextInt(100) == 0)
+        {
+          v = nodata;
+        }
+        else
+        {
+          double elevation = 1000.0 + 800.0 * Math.sin((x + b * 17) / 40.0) * Math.cos(y / 55.0) +
+              200.0 * Math.sin((x + y) / 13.0) + random.nextGaussian() * 10.0;
+          v = datatype == DataBuffer.TYPE_BYTE ? Math.floor(elevation / 250.0) : elevation;
+        }
+        raster.setSample(x, y, b, v);
+      }
+    }
+  }
+
+  return raster;
+}
+}
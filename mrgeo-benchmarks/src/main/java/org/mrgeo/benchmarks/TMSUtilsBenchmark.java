@@ -0,0 +1,121 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+
+package org.mrgeo.benchmarks;
+
+import org.mrgeo.utils.tms.Bounds;
+import org.mrgeo.utils.tms.TMSUtils;
+import org.mrgeo.utils.tms.Tile;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The TMSUtils coordinate conversions, for a fixed set of points (each benchmark op converts
+ * all of them).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TMSUtilsBenchmark
+{
+private static final int POINTS = 1024;
+private static final int ZOOM = 12;
+
+private final double[] lats = new double[POINTS];
+private final double[] lons = new double[POINTS];
+private final long[] txs = new long[POINTS];
+private final long[] tys = new long[POINTS];
+private final long[] ids = new long[POINTS];
+private final Bounds[] bounds = new Bounds[POINTS];
+
+@Setup
+public void setup()
+{
+  Random random = new Random(20160101L);
+  for (int i = 0; i < POINTS; i++)
+  {
+    lats[i] = random.nextDouble() * 170.0 - 85.0;
+    lons[i] = random.nextDouble() * 350.0 - 175.0;
+
+    Tile tile = TMSUtils.latLonToTile(lats[i], lons[i], ZOOM, SyntheticTiles.TILESIZE);
+    txs[i] = tile.tx;
+    tys[i] = tile.ty;
+    ids[i] = TMSUtils.tileid(tile.tx, tile.ty, ZOOM);
+    bounds[i] = new Bounds(lons[i], lats[i], lons[i] + 2.5, lats[i] + 2.5);
+  }
+}
+
+@Benchmark
+public void latLonToTile(Blackhole bh)
+{
+  for (int i = 0; i < POINTS; i++)
+  {
+    bh.consume(TMSUtils.latLonToTile(lats[i], lons[i], ZOOM, SyntheticTiles.TILESIZE));
+  }
+}
+
+@Benchmark
+public void latLonToPixels(Blackhole bh)
+{
+  for (int i = 0; i < POINTS; i++)
+  {
+    bh.consume(TMSUtils.latLonToPixels(lats[i], lons[i], ZOOM, SyntheticTiles.TILESIZE));
+  }
+}
+
+@Benchmark
+public void tileToId(Blackhole bh)
+{
+  for (int i = 0; i < POINTS; i++)
+  {
+    bh.consume(TMSUtils.tileid(txs[i], tys[i], ZOOM));
+  }
+}
+
+@Benchmark
+public void idToTile(Blackhole bh)
+{
+  for (int i = 0; i < POINTS; i++)
+  {
+    bh.consume(TMSUtils.tileid(ids[i], ZOOM));
+  }
+}
+
+@Benchmark
+public void tileBounds(Blackhole bh)
+{
+  for (int i = 0; i < POINTS; i++)
+  {
+    bh.consume(TMSUtils.tileBounds(txs[i], tys[i], ZOOM, SyntheticTiles.TILESIZE));
+  }
+}
+
+@Benchmark
+public void boundsToTile(Blackhole bh)
+{
+  for (int i = 0; i < POINTS; i++)
+  {
+    bh.consume(TMSUtils.boundsToTile(bounds[i], ZOOM, SyntheticTiles.TILESIZE));
+  }
+}
+}
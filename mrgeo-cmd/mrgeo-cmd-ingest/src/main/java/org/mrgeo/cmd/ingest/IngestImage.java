@@ -89,6 +89,11 @@ public static Options createOptions()
   pyramid.setRequired(false);
   result.addOption(pyramid);
 
+  Option update = new Option("u", "update", false,
+      "Merge the images into the output, if it exists, instead of replacing it");
+  update.setRequired(false);
+  result.addOption(update);
+
   Option recurse = new Option("nr", "norecursion", false, "Do not recurse through sub-directories");
   recurse.setRequired(false);
   result.addOption(recurse);
@@ -530,12 +535,14 @@ public int run(String[] args, Configuration conf, ProviderProperties providerPro
     boolean categorical = line.hasOption("c");
     boolean skipPyramids = line.hasOption("sp");
     boolean recurse = !line.hasOption("nr");
+    boolean update = line.hasOption("u");
 
     skippreprocessing = line.hasOption("sk");
     String output = line.getOptionValue("o");
 
     log.debug("categorical: " + categorical);
     log.debug("skip pyramids: " + skipPyramids);
+    log.debug("update: " + update);
     log.debug("output: " + output);
 
     List<String> inputs = new LinkedList<>();
@@ -600,6 +607,32 @@ public int run(String[] args, Configuration conf, ProviderProperties providerPro
     {
       try
       {
+        Aggregator aggregator = new MeanAggregator();
+        if (line.hasOption("c"))
+        {
+          aggregator = new ModeAggregator();
+        }
+        else if (line.hasOption("s"))
+        {
+          aggregator = new SumAggregator();
+        }
+        else if (line.hasOption("n"))
+        {
+          aggregator = new NearestAggregator();
+        }
+        else if (line.hasOption("min"))
+        {
+          aggregator = new MinAggregator();
+        }
+        else if (line.hasOption("max"))
+        {
+          aggregator = new MaxAggregator();
+        }
+        else if (line.hasOption("minavgpair"))
+        {
+          aggregator = new MinAvgPairAggregator();
+        }
+
         final boolean success;
         if (quick)
         {
@@ -608,6 +641,16 @@ public int run(String[] args, Configuration conf, ProviderProperties providerPro
           log.error("Quick Ingest is not yet implemented");
           return -1;
         }
+        else if (local && update)
+        {
+          log.error("Local ingest can not update an existing image");
+          return -1;
+        }
+        else if (update && !org.mrgeo.ingest.IngestImage.supportsUpdate(output, providerProperties))
+        {
+          log.error("The data provider for " + output + " can not update an existing image");
+          return -1;
+        }
         else if (local)
         {
           success = org.mrgeo.ingest.IngestImage.localIngest(inputs.toArray(new String[inputs.size()]),
@@ -618,7 +661,7 @@ public int run(String[] args, Configuration conf, ProviderProperties providerPro
         {
           success = org.mrgeo.ingest.IngestImage.ingest(inputs.toArray(new String[inputs.size()]),
               output, categorical, conf, bounds, zoomlevel, tilesize, nodata, bands, tiletype,
-              tags, protectionLevel, providerProperties);
+              tags, protectionLevel, providerProperties, skipPyramids ? null : aggregator, update);
         }
 
         if (!success)
@@ -627,34 +670,9 @@ public int run(String[] args, Configuration conf, ProviderProperties providerPro
           return 1;
         }
 
-        if (!skipPyramids)
+        // the spark ingest builds the pyramid from the ingested tiles, local ingest needs a separate build
+        if (!skipPyramids && local)
         {
-          Aggregator aggregator = new MeanAggregator();
-          if (line.hasOption("c"))
-          {
-            aggregator = new ModeAggregator();
-          }
-          else if (line.hasOption("s"))
-          {
-            aggregator = new SumAggregator();
-          }
-          else if (line.hasOption("n"))
-          {
-            aggregator = new NearestAggregator();
-          }
-          else if (line.hasOption("min"))
-          {
-            aggregator = new MinAggregator();
-          }
-          else if (line.hasOption("max"))
-          {
-            aggregator = new MaxAggregator();
-          }
-          else if (line.hasOption("minavgpair"))
-          {
-            aggregator = new MinAvgPairAggregator();
-          }
-
           BuildPyramid.build(output, aggregator, conf, providerProperties);
         }
       }
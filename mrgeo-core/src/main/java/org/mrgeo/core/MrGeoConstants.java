@@ -73,12 +73,21 @@ public static final String MRGEO_HDFS_DISTRIBUTED_CACHE = "distributed.base";
  *
  */
 public static final String MRGEO_USE_KRYO = "use.kryo.serialization";
+public static final String MRGEO_KRYO_COMPRESS_RASTERS = "kryo.compress.rasters";
 public static final String MRGEO_MEMORYINTENSIVE_MULTIPLIER = "memoryintensive.multiplier";
 public static final String MRGEO_FORCE_MEMORYINTENSIVE = "force.memoryintensive.multiplier";
 
 public static final String MRGEO_MAX_PROCESSING_MEM = "max.processing.memory";
 public static final String MRGEO_SHUFFLE_FRACTION = "shuffle.fraction";
 
+public static final String MRGEO_PARTITION_TARGET_SIZE = "partition.target.size";
+public static final String MRGEO_PARTITION_COMPRESSION_RATIO = "partition.compression.ratio";
+
+public static final String MRGEO_SHARED_CONTEXT = "shared.spark.context";
+
+public static final String MRGEO_INSTRUMENTATION = "instrumentation.enabled";
+public static final String MRGEO_INSTRUMENTATION_REPORT_DIR = "instrumentation.report.dir";
+
 
 /*
  * Runtime configuration keys
@@ -18,6 +18,7 @@ package org.mrgeo.data;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -662,7 +663,7 @@ private static Cache<String, AdHocDataProvider> adHocProviderCache = CacheBuilde
         }).build();
 
 private static Cache<String, MrsImageDataProvider> mrsImageProviderCache = CacheBuilder
-    .newBuilder().maximumSize(PROVIDER_CACHE_SIZE).expireAfterAccess(
+    .newBuilder().maximumSize(PROVIDER_CACHE_SIZE).recordStats().expireAfterAccess(
         PROVIDER_CACHE_EXPIRE, TimeUnit.MINUTES).removalListener(
         new RemovalListener<String, MrsImageDataProvider>()
         {
@@ -1103,6 +1104,15 @@ public static void invalidateCache()
   vectorProviderCache.invalidateAll();
 }
 
+/**
+ * Hit and miss counts of the image data provider cache, e.g. for monitoring how often
+ * the map services get to reuse a provider (and its open readers) between requests.
+ */
+public static CacheStats getMrsImageProviderCacheStats()
+{
+  return mrsImageProviderCache.stats();
+}
+
 /**
  * Similar to invalidateCache(), except it invalidates a specific resource instead
  * of all resources.
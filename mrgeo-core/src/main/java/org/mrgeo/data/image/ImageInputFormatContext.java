@@ -34,6 +34,7 @@ public class ImageInputFormatContext
   private int tileSize;
   private String input;
   private Bounds bounds;
+  private int[] bands;
   private ProviderProperties inputProviderProperties;
 
   private static final String className = ImageInputFormatContext.class.getSimpleName();
@@ -41,6 +42,7 @@ public class ImageInputFormatContext
   private static final String TILE_SIZE = className + ".tileSize";
   private static final String INPUT = className + ".input";
   private static final String BOUNDS = className + ".bounds";
+  private static final String BANDS = className + ".bands";
   private static final String PROVIDER_PROPERTY_KEY = className + "provProps";
 
   /**
@@ -105,6 +107,21 @@ public class ImageInputFormatContext
     return bounds;
   }
 
+  /**
+   * The bands (0 based) the job needs, in the order it needs them, or null for all the bands.
+   * This is only a hint, data plugins that can read a subset of the bands (e.g. Accumulo) return
+   * tiles with just these bands, others return all the bands.
+   */
+  public int[] getBands()
+  {
+    return bands;
+  }
+
+  public void setBands(final int[] bands)
+  {
+    this.bands = bands;
+  }
+
   public void save(final Configuration conf)
   {
     conf.set(INPUT, input);
@@ -113,6 +130,15 @@ public class ImageInputFormatContext
     if (bounds != null)
     {
       conf.set(BOUNDS, bounds.toCommaString());
+    }
+    if (bands != null)
+    {
+      String[] strs = new String[bands.length];
+      for (int i = 0; i < bands.length; i++)
+      {
+        strs[i] = Integer.toString(bands[i]);
+      }
+      conf.setStrings(BANDS, strs);
     }
       conf.set(PROVIDER_PROPERTY_KEY, ProviderProperties.toDelimitedString(inputProviderProperties));
   }
@@ -128,6 +154,10 @@ public class ImageInputFormatContext
     {
       context.bounds = Bounds.fromCommaString(confBounds);
     }
+    if (conf.get(BANDS) != null)
+    {
+      context.bands = conf.getInts(BANDS);
+    }
     String strProviderProperties = conf.get(PROVIDER_PROPERTY_KEY);
     if (strProviderProperties != null)
     {
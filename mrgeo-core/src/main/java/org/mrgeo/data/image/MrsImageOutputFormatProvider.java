@@ -21,6 +21,7 @@ import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.spark.rdd.RDD;
 import org.mrgeo.core.MrGeoConstants;
 import org.mrgeo.data.DataProviderException;
 import org.mrgeo.data.ProtectionLevelValidator;
@@ -29,6 +30,7 @@ import org.mrgeo.data.rdd.RasterRDD;
 import org.mrgeo.data.tile.TileIdWritable;
 import org.mrgeo.hdfs.partitioners.FileSplitPartitioner;
 import org.mrgeo.image.MrsPyramidMetadata;
+import scala.Tuple2;
 
 import java.io.IOException;
 
@@ -79,6 +81,30 @@ protected abstract OutputFormat<WritableComparable<?>, Writable> getOutputFormat
 
 public abstract void save(RasterRDD raster, Configuration conf);
 public abstract void finalizeExternalSave(final Configuration conf) throws DataProviderException;
+
+/**
+ * Returns true if this provider can merge tiles into an existing image level (see update()).
+ */
+public boolean supportsUpdate()
+{
+  return false;
+}
+
+/**
+ * Merges the tiles into an existing image level, leaving all the other tiles of the level
+ * untouched.  Where a tile already exists, the new tile is mosaicked over it (pixels that are
+ * nodata in the new tile keep their existing value).
+ * <p>
+ * The returned RDD has, for each tile written, the tile as saved and the tile it replaced (null
+ * if it is a new tile), so the caller can update the statistics without reading the whole level.
+ * The data is already saved when this method returns, and the RDD is persisted, so the caller
+ * should unpersist it when done.
+ */
+public RDD<Tuple2<TileIdWritable, Tuple2<RasterWritable, RasterWritable>>> update(RasterRDD raster,
+    double[] nodatas, Configuration conf) throws DataProviderException
+{
+  throw new DataProviderException(getClass().getSimpleName() + " does not support updating an existing image");
+}
 }
 
 
@@ -167,7 +167,7 @@ public static RasterWritable toWritable(byte[] data, int width, int height, int
     writePayload(payload, baos);
   }
   baos.close();
-  return new RasterWritable(baos.toByteArray());
+  return encoded(baos.toByteArray());
 }
 
 public static RasterWritable toWritable(final Raster raster) throws IOException
@@ -191,7 +191,7 @@ public static RasterWritable toWritable(final Raster raster, final Writable payl
   }
   bis.close();
   baos.close();
-  return new RasterWritable(baos.toByteArray());
+  return encoded(baos.toByteArray());
 }
 
 public static RasterWritable toWritable(final Raster raster, final CompressionCodec codec,
@@ -220,7 +220,13 @@ public static RasterWritable toWritable(final Raster raster, final CompressionCo
   }
   bis.close();
   cos.close();
-  return new RasterWritable(baos.toByteArray());
+  return encoded(baos.toByteArray());
+}
+
+private static RasterWritable encoded(final byte[] bytes)
+{
+  TileCounters.encoded(bytes.length);
+  return new RasterWritable(bytes);
 }
 
 private static byte[] rasterToBytes(final Raster raster)
@@ -308,6 +314,8 @@ public static Raster toRaster(final byte[] rasterBytes, Writable payload) throws
 private static Raster read(final byte[] rasterBytes, Writable payload)
     throws IOException
 {
+  TileCounters.decoded(rasterBytes.length);
+
   WritableRaster raster;
 
   final ByteBuffer rasterBuffer = ByteBuffer.wrap(rasterBytes);
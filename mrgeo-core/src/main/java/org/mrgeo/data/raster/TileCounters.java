@@ -0,0 +1,156 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.data.raster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the tiles (and bytes) RasterWritable encodes and decodes in this JVM.  Counting is off
+ * until enable() is called, which also registers the counters with JMX as
+ * org.mrgeo:type=TileCounters.
+ * <p>
+ * A thread can also have its own listener (see setListener()), e.g. so a Spark task can report
+ * its counts to the job that ran it.
+ */
+public class TileCounters implements TileCountersMBean
+{
+private static final Logger log = LoggerFactory.getLogger(TileCounters.class);
+
+public static final TileCounters INSTANCE = new TileCounters();
+
+private static volatile boolean enabled = false;
+
+private static final ThreadLocal<Listener> listener = new ThreadLocal<>();
+
+private final AtomicLong encodes = new AtomicLong();
+private final AtomicLong encodedBytes = new AtomicLong();
+private final AtomicLong decodes = new AtomicLong();
+private final AtomicLong decodedBytes = new AtomicLong();
+
+private TileCounters()
+{
+}
+
+/**
+ * Receives the counts for the tiles encoded and decoded by one thread
+ */
+public interface Listener
+{
+  void encoded(int bytes);
+
+  void decoded(int bytes);
+}
+
+public static synchronized void enable()
+{
+  if (!enabled)
+  {
+    enabled = true;
+    try
+    {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE,
+          new ObjectName("org.mrgeo:type=TileCounters"));
+    }
+    catch (Exception e)
+    {
+      log.warn("Unable to register tile counters with JMX", e);
+    }
+  }
+}
+
+public static boolean isEnabled()
+{
+  return enabled;
+}
+
+/**
+ * Sets the listener for the calling thread, until clearListener() is called
+ */
+public static void setListener(Listener l)
+{
+  listener.set(l);
+}
+
+public static Listener getListener()
+{
+  return listener.get();
+}
+
+public static void clearListener()
+{
+  listener.remove();
+}
+
+static void encoded(int bytes)
+{
+  if (enabled)
+  {
+    INSTANCE.encodes.incrementAndGet();
+    INSTANCE.encodedBytes.addAndGet(bytes);
+
+    Listener l = listener.get();
+    if (l != null)
+    {
+      l.encoded(bytes);
+    }
+  }
+}
+
+static void decoded(int bytes)
+{
+  if (enabled)
+  {
+    INSTANCE.decodes.incrementAndGet();
+    INSTANCE.decodedBytes.addAndGet(bytes);
+
+    Listener l = listener.get();
+    if (l != null)
+    {
+      l.decoded(bytes);
+    }
+  }
+}
+
+@Override
+public long getEncodes()
+{
+  return encodes.get();
+}
+
+@Override
+public long getEncodedBytes()
+{
+  return encodedBytes.get();
+}
+
+@Override
+public long getDecodes()
+{
+  return decodes.get();
+}
+
+@Override
+public long getDecodedBytes()
+{
+  return decodedBytes.get();
+}
+}
@@ -18,6 +18,7 @@ package org.mrgeo.data.vector;
 
 import org.apache.hadoop.conf.Configuration;
 import org.mrgeo.data.ProviderProperties;
+import org.mrgeo.utils.tms.Bounds;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -30,6 +31,8 @@ public class VectorInputFormatContext
   private static final String FEATURE_COUNT_KEY = className + ".featureCount";
   private static final String MIN_FEATURES_PER_SPLIT_KEY = className + ".minFeaturesPerSplit";
   private static final String PROVIDER_PROPERTY_KEY = className + ".provProps";
+  private static final String REQUIRED_ATTRIBUTES_KEY = className + ".requiredAttributes";
+  private static final String BOUNDS_KEY = className + ".bounds";
 
   // TODO: Might need to include properties for spatial filtering
   // here - like a geometry collection. We could also add a flag for
@@ -39,11 +42,20 @@ public class VectorInputFormatContext
   // for "Spatial query" gives a pretty good list.
   //
   // TODO: Also should consider properties for attribute filtering.
+  //
+  // The required attributes are a projection, not a filter: features are still returned, but
+  // providers may drop (or never parse) any attributes not in the set.  null means all of them.
+  //
+  // The bounds are a hint in the same way: the consumer only needs the features intersecting
+  // them, so providers that can query spatially (e.g. GeoWave) may skip the rest.  Providers
+  // that can't are free to return everything.  null means no bounds.
 
   private Set<String> inputs;
   private ProviderProperties inputProviderProperties = new ProviderProperties();
   private long featureCount = -1L;
   private int minFeaturesPerSplit = -1;
+  private Set<String> requiredAttributes = null;
+  private Bounds bounds = null;
 
   public VectorInputFormatContext(final Set<String> inputs,
       final ProviderProperties inputProviderProperties)
@@ -60,6 +72,22 @@ public class VectorInputFormatContext
     this.featureCount = featureCount;
     this.minFeaturesPerSplit = minFeaturesPerSplit;
   }
+
+  public VectorInputFormatContext(final Set<String> inputs,
+      final ProviderProperties inputProviderProperties, final Set<String> requiredAttributes)
+  {
+    this(inputs, inputProviderProperties);
+    this.requiredAttributes = requiredAttributes;
+  }
+
+  public VectorInputFormatContext(final Set<String> inputs,
+      final ProviderProperties inputProviderProperties, final Bounds bounds,
+      final Set<String> requiredAttributes)
+  {
+    this(inputs, inputProviderProperties, requiredAttributes);
+    this.bounds = bounds;
+  }
+
   protected VectorInputFormatContext()
   {
   }
@@ -84,6 +112,16 @@ public class VectorInputFormatContext
     return minFeaturesPerSplit;
   }
 
+  public Set<String> getRequiredAttributes()
+  {
+    return requiredAttributes;
+  }
+
+  public Bounds getBounds()
+  {
+    return bounds;
+  }
+
   public void save(final Configuration conf)
   {
     conf.setInt(INPUTS_COUNT, inputs.size());
@@ -96,6 +134,22 @@ public class VectorInputFormatContext
     conf.setLong(FEATURE_COUNT_KEY, featureCount);
     conf.setInt(MIN_FEATURES_PER_SPLIT_KEY, minFeaturesPerSplit);
     conf.set(PROVIDER_PROPERTY_KEY, ProviderProperties.toDelimitedString(inputProviderProperties));
+    if (requiredAttributes != null)
+    {
+      conf.setStrings(REQUIRED_ATTRIBUTES_KEY, requiredAttributes.toArray(new String[requiredAttributes.size()]));
+    }
+    else
+    {
+      conf.unset(REQUIRED_ATTRIBUTES_KEY);
+    }
+    if (bounds != null)
+    {
+      conf.set(BOUNDS_KEY, bounds.toCommaString());
+    }
+    else
+    {
+      conf.unset(BOUNDS_KEY);
+    }
   }
 
   public static VectorInputFormatContext load(final Configuration conf)
@@ -110,6 +164,15 @@ public class VectorInputFormatContext
       String input = conf.get(INPUTS_PREFIX + inputIndex);
       context.inputs.add(input);
     }
+    if (conf.get(REQUIRED_ATTRIBUTES_KEY) != null)
+    {
+      context.requiredAttributes = new HashSet<String>(conf.getStringCollection(REQUIRED_ATTRIBUTES_KEY));
+    }
+    String strBounds = conf.get(BOUNDS_KEY);
+    if (strBounds != null)
+    {
+      context.bounds = Bounds.fromCommaString(strBounds);
+    }
     String strProviderProperties = conf.get(PROVIDER_PROPERTY_KEY);
     if (strProviderProperties != null)
     {
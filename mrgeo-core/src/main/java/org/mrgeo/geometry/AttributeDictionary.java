@@ -0,0 +1,272 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.geometry;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * The attribute columns shared by a set of packed geometries.  Each geometry only keeps an array
+ * of values indexed by column, instead of its own key/value map.  Values are also interned, so the
+ * repeated values typical of vector data (road classes, names, etc.) are only stored once.
+ * <p>
+ * A dictionary starts from a schema, the columns known up front for a whole RDD (see
+ * VectorRDD.pack()).  A schema is immutable and has an id, so its columns can be serialized as
+ * their index instead of their name.  The dictionary a partition is packed with adds any other
+ * keys (serialized by name) and the interned values.  It is only used by the task packing the
+ * partition, so nothing here is synchronized.
+ * <p>
+ * Deserializers find a schema by its id.  The schemas created or registered in this JVM are
+ * cached, getting the others to the JVM (e.g. with the tasks reading the geometries) is up to the
+ * caller (see VectorRDD.pack()).
+ */
+public class AttributeDictionary implements Serializable
+{
+private static final long serialVersionUID = 1L;
+
+// once this many distinct values have been seen, new values are no longer interned.  Keeps
+// unique values (ids, etc.) from growing the dictionary forever.
+public static final int MAX_INTERNED_VALUES = 65536;
+
+// the schema of geometries packed without any known columns, it is never looked up
+public static final AttributeDictionary EMPTY = new AttributeDictionary(0, new String[0]);
+
+private static final int MAX_CACHED_SCHEMAS = 64;
+
+private static final Random ids = new Random();
+
+private static final Map<Long, AttributeDictionary> schemas =
+    new LinkedHashMap<Long, AttributeDictionary>(16, 0.75f, true)
+    {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, AttributeDictionary> eldest)
+      {
+        return size() > MAX_CACHED_SCHEMAS;
+      }
+    };
+
+private final long id;
+private final int schemaSize;
+private final List<String> keys;
+private final Map<String, Integer> columns = new HashMap<>();
+
+// null for a schema, which doesn't intern
+private final Map<String, String> values;
+
+/**
+ * A dictionary without a schema, all its keys are serialized by name
+ */
+public AttributeDictionary()
+{
+  this(EMPTY);
+}
+
+/**
+ * A dictionary for packing geometries, starting with the schema's columns
+ */
+public AttributeDictionary(AttributeDictionary schema)
+{
+  id = schema.id;
+  schemaSize = schema.schemaSize;
+  keys = new ArrayList<>(schema.keys);
+  columns.putAll(schema.columns);
+  values = new HashMap<>();
+}
+
+private AttributeDictionary(long id, String[] keys)
+{
+  this.id = id;
+  this.schemaSize = keys.length;
+  this.keys = Collections.unmodifiableList(Arrays.asList(keys));
+  for (int i = 0; i < keys.length; i++)
+  {
+    columns.put(keys[i], i);
+  }
+  values = null;
+}
+
+public static Class[] getClasses()
+{
+  return new Class[]{AttributeDictionary.class, ArrayList.class, HashMap.class};
+}
+
+/**
+ * Creates (and caches) a schema with a new id
+ */
+public static AttributeDictionary createSchema(String[] keys)
+{
+  long id;
+  synchronized (ids)
+  {
+    do
+    {
+      id = ids.nextLong();
+    } while (id == 0);
+  }
+
+  AttributeDictionary schema = new AttributeDictionary(id, keys);
+  synchronized (schemas)
+  {
+    schemas.put(id, schema);
+  }
+  return schema;
+}
+
+/**
+ * Caches a schema created in another JVM, with its original id
+ */
+public static AttributeDictionary registerSchema(long id, String[] keys)
+{
+  synchronized (schemas)
+  {
+    AttributeDictionary schema = schemas.get(id);
+    if (schema == null)
+    {
+      schema = new AttributeDictionary(id, keys);
+      schemas.put(id, schema);
+    }
+    return schema;
+  }
+}
+
+/**
+ * @return the cached schema with the id, or null if it isn't known in this JVM
+ */
+public static AttributeDictionary getSchema(long id)
+{
+  if (id == 0)
+  {
+    return EMPTY;
+  }
+
+  synchronized (schemas)
+  {
+    return schemas.get(id);
+  }
+}
+
+public long getId()
+{
+  return id;
+}
+
+/**
+ * @return the number of columns from the schema, these are the first columns
+ */
+public int getSchemaSize()
+{
+  return schemaSize;
+}
+
+/**
+ * @return the columns from the schema
+ */
+public String[] getSchemaKeys()
+{
+  return keys.subList(0, schemaSize).toArray(new String[schemaSize]);
+}
+
+public int size()
+{
+  return keys.size();
+}
+
+public String key(int column)
+{
+  return keys.get(column);
+}
+
+/**
+ * @return the column for the key, or -1 if there isn't one
+ */
+public int find(String key)
+{
+  Integer column = columns.get(key);
+  return column == null ? -1 : column;
+}
+
+/**
+ * @return the column for the key, adding it if needed
+ */
+public int column(String key)
+{
+  Integer column = columns.get(key);
+  if (column == null)
+  {
+    if (values == null)
+    {
+      throw new UnsupportedOperationException("Can't add " + key + " to an attribute schema");
+    }
+
+    column = keys.size();
+    keys.add(key);
+    columns.put(key, column);
+  }
+
+  return column;
+}
+
+public String intern(String value)
+{
+  if (value == null || values == null)
+  {
+    return value;
+  }
+
+  String interned = values.get(value);
+  if (interned == null)
+  {
+    if (values.size() >= MAX_INTERNED_VALUES)
+    {
+      return value;
+    }
+
+    values.put(value, value);
+    interned = value;
+  }
+
+  return interned;
+}
+
+/**
+ * Converts an attribute map to the per-geometry value array
+ */
+public String[] pack(Map<String, String> attributes)
+{
+  if (attributes == null || attributes.isEmpty())
+  {
+    return null;
+  }
+
+  String[] packed = new String[0];
+  for (Map.Entry<String, String> attr : attributes.entrySet())
+  {
+    int column = column(attr.getKey());
+    if (column >= packed.length)
+    {
+      String[] grown = new String[size()];
+      System.arraycopy(packed, 0, grown, 0, packed.length);
+      packed = grown;
+    }
+    packed[column] = intern(attr.getValue());
+  }
+
+  return packed;
+}
+}
@@ -0,0 +1,537 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.geometry;
+
+import org.mrgeo.utils.tms.Bounds;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A compact binary (WKB-like) encoding of a geometry and its attributes.  A record is:
+ * <pre>
+ *   byte    geometry type (Geometry.Type ordinal)
+ *   byte    flags (HAS_Z, HAS_BOUNDS)
+ *   double  w, s, e, n (only if HAS_BOUNDS)
+ *   int     length of the coordinates (body), in bytes
+ *   ...     body
+ *   int     number of attributes, followed by each key and value
+ * </pre>
+ * The body is the coordinates, with the counts needed to rebuild the geometry:
+ * <pre>
+ *   POINT                  x, y (, z)
+ *   LINESTRING, LINEARRING int points, then x, y (, z) per point
+ *   POLYGON                int rings, then each ring as a linear ring (the first is the exterior)
+ *   COLLECTION             int geometries, then the type (byte) and body of each geometry
+ * </pre>
+ * z is only written when a point in the geometry has a non-zero z.  Every geometry except a point
+ * has its bounds in the header, and the body and attributes can be skipped without decoding them,
+ * so readBounds() can get the bounds of a record without creating the geometry.
+ */
+public class GeometryCodec
+{
+private static final byte HAS_Z = 0x01;
+private static final byte HAS_BOUNDS = 0x02;
+
+private static final Geometry.Type[] TYPES = Geometry.Type.values();
+
+private GeometryCodec()
+{
+}
+
+/**
+ * The running bounds (and z flag) of a geometry, gathered before writing it.
+ */
+private static class Extent
+{
+  double w = Double.MAX_VALUE;
+  double s = Double.MAX_VALUE;
+  double e = -Double.MAX_VALUE;
+  double n = -Double.MAX_VALUE;
+  boolean z = false;
+  boolean empty = true;
+
+  void add(double x, double y)
+  {
+    if (x < w) w = x;
+    if (x > e) e = x;
+    if (y < s) s = y;
+    if (y > n) n = y;
+    empty = false;
+  }
+}
+
+public static byte[] toBytes(Geometry geometry) throws IOException
+{
+  ByteArrayOutputStream baos = new ByteArrayOutputStream();
+  try (DataOutputStream dos = new DataOutputStream(baos))
+  {
+    write(geometry, dos);
+  }
+  return baos.toByteArray();
+}
+
+public static WritableGeometry fromBytes(byte[] bytes) throws IOException
+{
+  return fromBytes(bytes, 0, bytes.length);
+}
+
+public static WritableGeometry fromBytes(byte[] bytes, int offset, int length) throws IOException
+{
+  try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes, offset, length)))
+  {
+    return read(dis);
+  }
+}
+
+/**
+ * The bounds of an encoded geometry (null for an empty geometry), without decoding it.
+ */
+public static Bounds boundsOf(byte[] bytes, int offset, int length) throws IOException
+{
+  try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes, offset, length)))
+  {
+    return readBounds(dis);
+  }
+}
+
+public static void write(Geometry geometry, DataOutput out) throws IOException
+{
+  Extent extent = new Extent();
+  scan(geometry, extent);
+
+  Geometry.Type type = geometry.type();
+
+  byte flags = 0;
+  if (extent.z)
+  {
+    flags |= HAS_Z;
+  }
+
+  boolean bounds = type != Geometry.Type.POINT && !extent.empty;
+  if (bounds)
+  {
+    flags |= HAS_BOUNDS;
+  }
+
+  out.writeByte(type.ordinal());
+  out.writeByte(flags);
+  if (bounds)
+  {
+    out.writeDouble(extent.w);
+    out.writeDouble(extent.s);
+    out.writeDouble(extent.e);
+    out.writeDouble(extent.n);
+  }
+
+  if (type == Geometry.Type.POINT && geometry.isEmpty())
+  {
+    // an empty point has no body
+    out.writeInt(0);
+  }
+  else
+  {
+    out.writeInt(bodyLength(geometry, extent.z));
+    writeBody(geometry, extent.z, out);
+  }
+
+  writeAttributes(geometry.getAllAttributes(), out);
+}
+
+public static WritableGeometry read(DataInput in) throws IOException
+{
+  Geometry.Type type = TYPES[in.readByte()];
+  byte flags = in.readByte();
+  if ((flags & HAS_BOUNDS) != 0)
+  {
+    in.readDouble();
+    in.readDouble();
+    in.readDouble();
+    in.readDouble();
+  }
+
+  int length = in.readInt();
+
+  WritableGeometry geometry;
+  if (type == Geometry.Type.POINT && length == 0)
+  {
+    geometry = GeometryFactory.createPoint();
+  }
+  else
+  {
+    geometry = readBody(type, (flags & HAS_Z) != 0, in);
+  }
+  readAttributes(geometry, in);
+
+  return geometry;
+}
+
+/**
+ * Reads a record's bounds and skips the rest of it, without decoding the coordinates or
+ * attributes.  Returns null for an empty geometry.
+ */
+public static Bounds readBounds(DataInput in) throws IOException
+{
+  Geometry.Type type = TYPES[in.readByte()];
+  byte flags = in.readByte();
+
+  Bounds bounds = null;
+  if ((flags & HAS_BOUNDS) != 0)
+  {
+    bounds = new Bounds(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+  }
+
+  int length = in.readInt();
+  if (type == Geometry.Type.POINT && length > 0)
+  {
+    double x = in.readDouble();
+    double y = in.readDouble();
+    bounds = new Bounds(x, y, x, y);
+    length -= 16;
+  }
+  skip(in, length);
+
+  // skip the attributes
+  int attributes = in.readInt();
+  for (int i = 0; i < attributes; i++)
+  {
+    skip(in, in.readUnsignedShort());
+    int len = in.readInt();
+    if (len > 0)
+    {
+      skip(in, len);
+    }
+  }
+
+  return bounds;
+}
+
+private static void skip(DataInput in, int bytes) throws IOException
+{
+  while (bytes > 0)
+  {
+    int skipped = in.skipBytes(bytes);
+    if (skipped <= 0)
+    {
+      throw new EOFException("Unexpected end of geometry");
+    }
+    bytes -= skipped;
+  }
+}
+
+private static void scan(Geometry geometry, Extent extent)
+{
+  if (geometry instanceof Point)
+  {
+    Point pt = (Point) geometry;
+    if (!geometry.isEmpty())
+    {
+      extent.add(pt.getX(), pt.getY());
+      extent.z |= pt.getZ() != 0.0;
+    }
+  }
+  else if (geometry instanceof PackedLineString)
+  {
+    // packed geometries are 2D
+    PackedLineString line = (PackedLineString) geometry;
+    for (int i = 0; i < line.getNumPoints(); i++)
+    {
+      extent.add(line.getX(i), line.getY(i));
+    }
+  }
+  else if (geometry instanceof LineString)
+  {
+    LineString line = (LineString) geometry;
+    for (int i = 0; i < line.getNumPoints(); i++)
+    {
+      Point pt = line.getPoint(i);
+      extent.add(pt.getX(), pt.getY());
+      extent.z |= pt.getZ() != 0.0;
+    }
+  }
+  else if (geometry instanceof Polygon)
+  {
+    Polygon polygon = (Polygon) geometry;
+    if (polygon.getExteriorRing() != null)
+    {
+      // interior rings are inside the exterior, but may have z values
+      scan(polygon.getExteriorRing(), extent);
+      for (int i = 0; i < polygon.getNumInteriorRings(); i++)
+      {
+        scan(polygon.getInteriorRing(i), extent);
+      }
+    }
+  }
+  else if (geometry instanceof GeometryCollection)
+  {
+    for (Geometry g : ((GeometryCollection) geometry).getGeometries())
+    {
+      scan(g, extent);
+    }
+  }
+}
+
+private static int bodyLength(Geometry geometry, boolean z)
+{
+  int pointLength = z ? 24 : 16;
+  switch (geometry.type())
+  {
+  case POINT:
+    return pointLength;
+  case LINESTRING:
+  case LINEARRING:
+    return 4 + ((LineString) geometry).getNumPoints() * pointLength;
+  case POLYGON:
+  {
+    Polygon polygon = (Polygon) geometry;
+    int length = 4;
+    if (polygon.getExteriorRing() != null)
+    {
+      length += bodyLength(polygon.getExteriorRing(), z);
+      for (int i = 0; i < polygon.getNumInteriorRings(); i++)
+      {
+        length += bodyLength(polygon.getInteriorRing(i), z);
+      }
+    }
+    return length;
+  }
+  case COLLECTION:
+  {
+    int length = 4;
+    for (Geometry g : ((GeometryCollection) geometry).getGeometries())
+    {
+      length += 1 + bodyLength(g, z);
+    }
+    return length;
+  }
+  default:
+    throw new IllegalArgumentException("Unsupported geometry type: " + geometry.type());
+  }
+}
+
+private static void writeBody(Geometry geometry, boolean z, DataOutput out) throws IOException
+{
+  switch (geometry.type())
+  {
+  case POINT:
+    writePoint((Point) geometry, z, out);
+    break;
+  case LINESTRING:
+  case LINEARRING:
+    writeLineString((LineString) geometry, z, out);
+    break;
+  case POLYGON:
+  {
+    Polygon polygon = (Polygon) geometry;
+    if (polygon.getExteriorRing() == null)
+    {
+      out.writeInt(0);
+    }
+    else
+    {
+      out.writeInt(polygon.getNumInteriorRings() + 1);
+      writeLineString(polygon.getExteriorRing(), z, out);
+      for (int i = 0; i < polygon.getNumInteriorRings(); i++)
+      {
+        writeLineString(polygon.getInteriorRing(i), z, out);
+      }
+    }
+    break;
+  }
+  case COLLECTION:
+  {
+    GeometryCollection collection = (GeometryCollection) geometry;
+    out.writeInt(collection.getNumGeometries());
+    for (Geometry g : collection.getGeometries())
+    {
+      out.writeByte(g.type().ordinal());
+      writeBody(g, z, out);
+    }
+    break;
+  }
+  default:
+    throw new IllegalArgumentException("Unsupported geometry type: " + geometry.type());
+  }
+}
+
+private static void writePoint(Point pt, boolean z, DataOutput out) throws IOException
+{
+  out.writeDouble(pt.getX());
+  out.writeDouble(pt.getY());
+  if (z)
+  {
+    out.writeDouble(pt.getZ());
+  }
+}
+
+private static void writeLineString(LineString line, boolean z, DataOutput out) throws IOException
+{
+  int points = line.getNumPoints();
+  out.writeInt(points);
+
+  if (line instanceof PackedLineString)
+  {
+    PackedLineString packed = (PackedLineString) line;
+    for (int i = 0; i < points; i++)
+    {
+      out.writeDouble(packed.getX(i));
+      out.writeDouble(packed.getY(i));
+      if (z)
+      {
+        out.writeDouble(0.0);
+      }
+    }
+  }
+  else
+  {
+    for (int i = 0; i < points; i++)
+    {
+      writePoint(line.getPoint(i), z, out);
+    }
+  }
+}
+
+private static WritableGeometry readBody(Geometry.Type type, boolean z, DataInput in) throws IOException
+{
+  switch (type)
+  {
+  case POINT:
+  {
+    double x = in.readDouble();
+    double y = in.readDouble();
+    return z ? GeometryFactory.createPoint(x, y, in.readDouble()) : GeometryFactory.createPoint(x, y);
+  }
+  case LINESTRING:
+  {
+    WritableLineString line = GeometryFactory.createLineString();
+    readPoints(line, z, in);
+    return line;
+  }
+  case LINEARRING:
+  {
+    WritableLinearRing ring = GeometryFactory.createLinearRing();
+    readPoints(ring, z, in);
+    return ring;
+  }
+  case POLYGON:
+  {
+    WritablePolygon polygon = GeometryFactory.createPolygon();
+    int rings = in.readInt();
+    for (int i = 0; i < rings; i++)
+    {
+      WritableLinearRing ring = GeometryFactory.createLinearRing();
+      readPoints(ring, z, in);
+      if (i == 0)
+      {
+        polygon.setExteriorRing(ring);
+      }
+      else
+      {
+        polygon.addInteriorRing(ring);
+      }
+    }
+    return polygon;
+  }
+  case COLLECTION:
+  {
+    WritableGeometryCollection collection = GeometryFactory.createGeometryCollection();
+    int geometries = in.readInt();
+    for (int i = 0; i < geometries; i++)
+    {
+      collection.addGeometry(readBody(TYPES[in.readByte()], z, in));
+    }
+    return collection;
+  }
+  default:
+    throw new IOException("Unsupported geometry type: " + type);
+  }
+}
+
+private static void readPoints(WritableLineString line, boolean z, DataInput in) throws IOException
+{
+  int points = in.readInt();
+  for (int i = 0; i < points; i++)
+  {
+    double x = in.readDouble();
+    double y = in.readDouble();
+    if (z)
+    {
+      line.addPoint(GeometryFactory.createPoint(x, y, in.readDouble()));
+    }
+    else
+    {
+      line.addPoint(x, y);
+    }
+  }
+}
+
+private static void writeAttributes(Map<String, String> attributes, DataOutput out) throws IOException
+{
+  out.writeInt(attributes.size());
+  for (Map.Entry<String, String> attr : attributes.entrySet())
+  {
+    out.writeUTF(attr.getKey());
+
+    // values can be longer than writeUTF() allows
+    String value = attr.getValue();
+    if (value == null)
+    {
+      out.writeInt(-1);
+    }
+    else
+    {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+}
+
+private static void readAttributes(WritableGeometry geometry, DataInput in) throws IOException
+{
+  int count = in.readInt();
+  if (count == 0)
+  {
+    return;
+  }
+
+  Map<String, String> attributes = new HashMap<>(count * 2);
+  byte[] bytes = new byte[0];
+  for (int i = 0; i < count; i++)
+  {
+    String key = in.readUTF();
+    int len = in.readInt();
+    if (len < 0)
+    {
+      attributes.put(key, null);
+    }
+    else
+    {
+      if (bytes.length < len)
+      {
+        bytes = new byte[len];
+      }
+      in.readFully(bytes, 0, len);
+      attributes.put(key, new String(bytes, 0, len, StandardCharsets.UTF_8));
+    }
+  }
+
+  geometry.setAttributes(attributes);
+}
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.geometry;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import org.mrgeo.utils.tms.Bounds;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Base class for the packed geometries.  A packed geometry keeps its coordinates as x/y pairs in
+ * a single double[] (instead of a PointImpl, with its own attribute map, per vertex) and its
+ * attributes as a value array indexed by a shared AttributeDictionary.
+ * <p>
+ * Packed geometries are immutable and only 2D (z is always 0), pack() leaves 3D geometries as they
+ * are.  asWritable() and createWritableClone() both return a regular (unpacked) copy, so changes to
+ * it are not reflected back in the packed geometry.
+ */
+public abstract class PackedGeometry implements Geometry
+{
+private static final long serialVersionUID = 1L;
+
+final double[] coords;
+final AttributeDictionary dictionary;
+final String[] values;
+
+transient Bounds bounds = null;
+
+PackedGeometry(double[] coords, AttributeDictionary dictionary, String[] values)
+{
+  this.coords = coords;
+  this.dictionary = dictionary;
+  this.values = values;
+}
+
+public static Class[] getClasses()
+{
+  return new Class[]{PackedGeometry.class, PackedLineString.class, PackedLinearRing.class,
+      PackedPolygon.class, double[].class, int[].class, String[].class};
+}
+
+/**
+ * Packs the geometry, sharing the attribute columns in the dictionary.  Linestrings, linear rings
+ * and polygons are packed, other geometries (points, collections) are returned unchanged, and
+ * don't add anything to the dictionary.  Packed geometries are 2D, so geometries with z values are
+ * returned unchanged too, rather than losing them.
+ */
+public static Geometry pack(Geometry geometry, AttributeDictionary dictionary)
+{
+  if (geometry == null || geometry instanceof PackedGeometry)
+  {
+    return geometry;
+  }
+
+  switch (geometry.type())
+  {
+  case LINEARRING:
+  {
+    LineString ring = (LineString) geometry;
+    if (hasZ(ring))
+    {
+      return geometry;
+    }
+    return createLinearRing(packPoints(ring, new double[ring.getNumPoints() * 2], 0), dictionary,
+        dictionary.pack(geometry.getAllAttributes()));
+  }
+  case LINESTRING:
+  {
+    LineString line = (LineString) geometry;
+    if (hasZ(line))
+    {
+      return geometry;
+    }
+    return createLineString(packPoints(line, new double[line.getNumPoints() * 2], 0), dictionary,
+        dictionary.pack(geometry.getAllAttributes()));
+  }
+  case POLYGON:
+  {
+    Polygon polygon = (Polygon) geometry;
+    if (polygon.getExteriorRing() == null || hasZ(polygon.getExteriorRing()))
+    {
+      return geometry;
+    }
+
+    int rings = polygon.getNumInteriorRings() + 1;
+    int[] offsets = new int[rings + 1];
+
+    offsets[1] = polygon.getExteriorRing().getNumPoints();
+    for (int i = 0; i < polygon.getNumInteriorRings(); i++)
+    {
+      if (hasZ(polygon.getInteriorRing(i)))
+      {
+        return geometry;
+      }
+      offsets[i + 2] = offsets[i + 1] + polygon.getInteriorRing(i).getNumPoints();
+    }
+
+    double[] coords = new double[offsets[rings] * 2];
+    packPoints(polygon.getExteriorRing(), coords, 0);
+    for (int i = 0; i < polygon.getNumInteriorRings(); i++)
+    {
+      packPoints(polygon.getInteriorRing(i), coords, offsets[i + 1]);
+    }
+
+    return createPolygon(coords, offsets, dictionary, dictionary.pack(geometry.getAllAttributes()));
+  }
+  default:
+    return geometry;
+  }
+}
+
+public static PackedLineString createLineString(double[] coords, AttributeDictionary dictionary,
+    String[] values)
+{
+  return new PackedLineString(coords, 0, coords.length / 2, dictionary, values);
+}
+
+public static PackedLinearRing createLinearRing(double[] coords, AttributeDictionary dictionary,
+    String[] values)
+{
+  return new PackedLinearRing(coords, 0, coords.length / 2, dictionary, values);
+}
+
+public static PackedPolygon createPolygon(double[] coords, int[] ringOffsets, AttributeDictionary dictionary,
+    String[] values)
+{
+  return new PackedPolygon(coords, ringOffsets, dictionary, values);
+}
+
+private static boolean hasZ(LineString line)
+{
+  for (int i = 0; i < line.getNumPoints(); i++)
+  {
+    if (line.getPoint(i).getZ() != 0.0)
+    {
+      return true;
+    }
+  }
+  return false;
+}
+
+private static double[] packPoints(LineString line, double[] coords, int start)
+{
+  int ndx = start * 2;
+  for (int i = 0; i < line.getNumPoints(); i++)
+  {
+    Point pt = line.getPoint(i);
+    coords[ndx++] = pt.getX();
+    coords[ndx++] = pt.getY();
+  }
+
+  return coords;
+}
+
+public double[] getCoordinates()
+{
+  return coords;
+}
+
+public AttributeDictionary getDictionary()
+{
+  return dictionary;
+}
+
+public String[] getValues()
+{
+  return values;
+}
+
+// the range of points (start inclusive, end exclusive) in coords covered by this geometry
+abstract int startPoint();
+abstract int endPoint();
+
+Coordinate[] toCoordinates(int start, int end)
+{
+  Coordinate[] coordinates = new Coordinate[end - start];
+  for (int i = start; i < end; i++)
+  {
+    coordinates[i - start] = new Coordinate(coords[i * 2], coords[i * 2 + 1]);
+  }
+  return coordinates;
+}
+
+@Override
+public WritableGeometry asWritable()
+{
+  return createWritableClone();
+}
+
+@Override
+public Map<String, String> getAllAttributes()
+{
+  Map<String, String> attributes = new HashMap<>();
+  if (values != null)
+  {
+    for (int i = 0; i < values.length; i++)
+    {
+      if (values[i] != null)
+      {
+        attributes.put(dictionary.key(i), values[i]);
+      }
+    }
+  }
+  return attributes;
+}
+
+@Override
+public TreeMap<String, String> getAllAttributesSorted()
+{
+  return new TreeMap<>(getAllAttributes());
+}
+
+@Override
+public String getAttribute(String key)
+{
+  if (values == null)
+  {
+    return null;
+  }
+
+  int column = dictionary.find(key);
+  return (column >= 0 && column < values.length) ? values[column] : null;
+}
+
+@Override
+public boolean hasAttribute(String key)
+{
+  return getAttribute(key) != null;
+}
+
+@Override
+public boolean hasAttribute(String key, String value)
+{
+  String attr = getAttribute(key);
+
+  return attr != null && attr.equals(value);
+}
+
+@Override
+public Bounds getBounds()
+{
+  if (bounds == null && endPoint() > startPoint())
+  {
+    double w = Double.POSITIVE_INFINITY;
+    double s = Double.POSITIVE_INFINITY;
+    double e = Double.NEGATIVE_INFINITY;
+    double n = Double.NEGATIVE_INFINITY;
+
+    for (int i = startPoint() * 2; i < endPoint() * 2; i += 2)
+    {
+      w = Math.min(w, coords[i]);
+      e = Math.max(e, coords[i]);
+      s = Math.min(s, coords[i + 1]);
+      n = Math.max(n, coords[i + 1]);
+    }
+
+    bounds = new Bounds(w, s, e, n);
+  }
+
+  return bounds;
+}
+
+@Override
+public boolean isEmpty()
+{
+  return endPoint() <= startPoint();
+}
+
+@Override
+public Geometry clip(Bounds bbox)
+{
+  return createWritableClone().clip(bbox);
+}
+
+@Override
+public Geometry clip(Polygon geom)
+{
+  return createWritableClone().clip(geom);
+}
+
+@Override
+public void write(DataOutputStream stream) throws IOException
+{
+  createWritableClone().write(stream);
+}
+
+@Override
+public void writeAttributes(DataOutputStream stream) throws IOException
+{
+  createWritableClone().writeAttributes(stream);
+}
+
+@Override
+public String toString()
+{
+  return createWritableClone().toString();
+}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.geometry;
+
+import java.util.Collection;
+import java.util.Vector;
+
+/**
+ * A linestring stored as a range of points in a packed coordinate array.  The range lets
+ * polygon rings share the polygon's array instead of copying it.
+ */
+public class PackedLineString extends PackedGeometry implements LineString
+{
+private static final long serialVersionUID = 1L;
+
+final int start;
+final int count;
+
+PackedLineString(double[] coords, int start, int count, AttributeDictionary dictionary, String[] values)
+{
+  super(coords, dictionary, values);
+
+  this.start = start;
+  this.count = count;
+}
+
+@Override
+int startPoint()
+{
+  return start;
+}
+
+@Override
+int endPoint()
+{
+  return start + count;
+}
+
+public double getX(int i)
+{
+  return coords[(start + i) * 2];
+}
+
+public double getY(int i)
+{
+  return coords[(start + i) * 2 + 1];
+}
+
+@Override
+public int getNumPoints()
+{
+  return count;
+}
+
+@Override
+public Point getPoint(int i)
+{
+  return GeometryFactory.createPoint(getX(i), getY(i));
+}
+
+@Override
+public Collection<Point> getPoints()
+{
+  Vector<Point> result = new Vector<>(count);
+  for (int i = 0; i < count; i++)
+  {
+    result.add(getPoint(i));
+  }
+  return result;
+}
+
+@Override
+public boolean isValid()
+{
+  return count >= 2;
+}
+
+@Override
+public WritableGeometry createWritableClone()
+{
+  WritableLineString result = GeometryFactory.createLineString(getAllAttributes());
+  for (int i = 0; i < count; i++)
+  {
+    result.addPoint(getX(i), getY(i));
+  }
+  return result;
+}
+
+@Override
+public com.vividsolutions.jts.geom.LineString toJTS()
+{
+  com.vividsolutions.jts.geom.GeometryFactory factory = new com.vividsolutions.jts.geom.GeometryFactory();
+
+  return factory.createLineString(toCoordinates(start, start + count));
+}
+
+@Override
+public Type type()
+{
+  return Type.LINESTRING;
+}
+}
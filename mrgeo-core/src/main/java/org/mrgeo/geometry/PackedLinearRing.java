@@ -0,0 +1,95 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.geometry;
+
+import com.vividsolutions.jts.algorithm.CGAlgorithms;
+
+public class PackedLinearRing extends PackedLineString implements LinearRing
+{
+private static final long serialVersionUID = 1L;
+
+PackedLinearRing(double[] coords, int start, int count, AttributeDictionary dictionary, String[] values)
+{
+  super(coords, start, count, dictionary, values);
+}
+
+@Override
+public WritableGeometry createWritableClone()
+{
+  WritableLinearRing result = GeometryFactory.createLinearRing(getAllAttributes());
+  for (int i = 0; i < count; i++)
+  {
+    result.addPoint(getX(i), getY(i));
+  }
+  if (count > 0)
+  {
+    result.closeRing();
+  }
+  return result;
+}
+
+@Override
+public com.vividsolutions.jts.geom.LinearRing toJTS()
+{
+  com.vividsolutions.jts.geom.GeometryFactory factory = new com.vividsolutions.jts.geom.GeometryFactory();
+
+  return factory.createLinearRing(toCoordinates(start, start + count));
+}
+
+@Override
+public boolean isCW()
+{
+  return !isCCW();
+}
+
+@Override
+public boolean isCCW()
+{
+  return CGAlgorithms.isCCW(toCoordinates(start, start + count));
+}
+
+@Override
+public LinearRing reverse()
+{
+  double[] reversed = new double[count * 2];
+  for (int i = 0; i < count; i++)
+  {
+    reversed[i * 2] = getX(count - i - 1);
+    reversed[i * 2 + 1] = getY(count - i - 1);
+  }
+
+  return new PackedLinearRing(reversed, 0, count, dictionary, values);
+}
+
+@Override
+public LinearRing ccw()
+{
+  return isCCW() ? this : reverse();
+}
+
+@Override
+public LinearRing cw()
+{
+  return isCW() ? this : reverse();
+}
+
+@Override
+public Type type()
+{
+  return Type.LINEARRING;
+}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.geometry;
+
+/**
+ * A polygon with all of its rings packed into a single coordinate array.  ring offsets holds the
+ * first point of each ring (the exterior ring is ring 0), plus a final entry for the total number
+ * of points.  The rings returned are views into the polygon's coordinates, not copies.
+ */
+public class PackedPolygon extends PackedGeometry implements Polygon
+{
+private static final long serialVersionUID = 1L;
+
+final int[] offsets;
+
+PackedPolygon(double[] coords, int[] offsets, AttributeDictionary dictionary, String[] values)
+{
+  super(coords, dictionary, values);
+
+  this.offsets = offsets;
+}
+
+public int[] getRingOffsets()
+{
+  return offsets;
+}
+
+@Override
+int startPoint()
+{
+  return offsets[0];
+}
+
+@Override
+int endPoint()
+{
+  return offsets[offsets.length - 1];
+}
+
+private LinearRing ring(int r)
+{
+  return new PackedLinearRing(coords, offsets[r], offsets[r + 1] - offsets[r], dictionary, null);
+}
+
+@Override
+public LinearRing getExteriorRing()
+{
+  return ring(0);
+}
+
+@Override
+public LinearRing getInteriorRing(int i)
+{
+  return ring(i + 1);
+}
+
+@Override
+public int getNumInteriorRings()
+{
+  return offsets.length - 2;
+}
+
+@Override
+public boolean isValid()
+{
+  for (int r = 0; r < offsets.length - 1; r++)
+  {
+    // same rule as PolygonImpl, every ring needs to be a valid linestring
+    if (offsets[r + 1] - offsets[r] < 2)
+    {
+      return false;
+    }
+  }
+  return true;
+}
+
+@Override
+public WritableGeometry createWritableClone()
+{
+  WritablePolygon result = GeometryFactory.createPolygon(getAllAttributes());
+  result.setExteriorRing(getExteriorRing());
+  for (int i = 0; i < getNumInteriorRings(); i++)
+  {
+    result.addInteriorRing(getInteriorRing(i));
+  }
+  return result;
+}
+
+@Override
+public com.vividsolutions.jts.geom.Polygon toJTS()
+{
+  com.vividsolutions.jts.geom.GeometryFactory factory = new com.vividsolutions.jts.geom.GeometryFactory();
+
+  com.vividsolutions.jts.geom.LinearRing[] holes = new com.vividsolutions.jts.geom.LinearRing[getNumInteriorRings()];
+  for (int i = 0; i < holes.length; i++)
+  {
+    holes[i] = factory.createLinearRing(toCoordinates(offsets[i + 1], offsets[i + 2]));
+  }
+
+  return factory.createPolygon(factory.createLinearRing(toCoordinates(offsets[0], offsets[1])), holes);
+}
+
+@Override
+public Type type()
+{
+  return Type.POLYGON;
+}
+}
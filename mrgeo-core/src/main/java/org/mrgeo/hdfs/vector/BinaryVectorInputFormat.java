@@ -0,0 +1,84 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+package org.mrgeo.hdfs.vector;
+
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileRecordReader;
+import org.mrgeo.data.vector.FeatureIdWritable;
+import org.mrgeo.geometry.Geometry;
+import org.mrgeo.mapreduce.GeometryWritable;
+
+import java.io.IOException;
+
+/**
+ * Reads the SequenceFiles written by BinaryVectorOutputFormat.  The files are split like any
+ * other SequenceFile.
+ */
+public class BinaryVectorInputFormat extends FileInputFormat<FeatureIdWritable, Geometry>
+{
+  public static class BinaryVectorRecordReader extends RecordReader<FeatureIdWritable, Geometry>
+  {
+    private final SequenceFileRecordReader<FeatureIdWritable, GeometryWritable> reader =
+        new SequenceFileRecordReader<>();
+
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException
+    {
+      reader.initialize(split, context);
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException, InterruptedException
+    {
+      return reader.nextKeyValue();
+    }
+
+    @Override
+    public FeatureIdWritable getCurrentKey() throws IOException, InterruptedException
+    {
+      return reader.getCurrentKey();
+    }
+
+    @Override
+    public Geometry getCurrentValue() throws IOException, InterruptedException
+    {
+      GeometryWritable value = reader.getCurrentValue();
+      return (value == null) ? null : value.getGeometry();
+    }
+
+    @Override
+    public float getProgress() throws IOException, InterruptedException
+    {
+      return reader.getProgress();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+      reader.close();
+    }
+  }
+
+  @Override
+  public RecordReader<FeatureIdWritable, Geometry> createRecordReader(InputSplit split,
+      TaskAttemptContext context) throws IOException, InterruptedException
+  {
+    return new BinaryVectorRecordReader();
+  }
+}
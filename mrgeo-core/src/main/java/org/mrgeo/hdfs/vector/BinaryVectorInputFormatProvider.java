@@ -0,0 +1,61 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+package org.mrgeo.hdfs.vector;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.mrgeo.data.DataProviderException;
+import org.mrgeo.data.ProviderProperties;
+import org.mrgeo.data.vector.FeatureIdWritable;
+import org.mrgeo.data.vector.VectorInputFormatContext;
+import org.mrgeo.data.vector.VectorInputFormatProvider;
+import org.mrgeo.geometry.Geometry;
+
+import java.io.IOException;
+
+public class BinaryVectorInputFormatProvider extends VectorInputFormatProvider
+{
+  public BinaryVectorInputFormatProvider(VectorInputFormatContext context)
+  {
+    super(context);
+  }
+
+  @Override
+  public InputFormat<FeatureIdWritable, Geometry> getInputFormat(String input)
+  {
+    return new BinaryVectorInputFormat();
+  }
+
+  @Override
+  public void setupJob(Job job, ProviderProperties providerProperties) throws DataProviderException
+  {
+    super.setupJob(job, providerProperties);
+    for (String input: getContext().getInputs())
+    {
+      try
+      {
+        // Set up native input format
+        FileInputFormat.addInputPath(job, new Path(input));
+      }
+      catch (IOException e)
+      {
+        throw new DataProviderException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+package org.mrgeo.hdfs.vector;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.mrgeo.data.vector.FeatureIdWritable;
+import org.mrgeo.geometry.Geometry;
+import org.mrgeo.mapreduce.GeometryWritable;
+
+import java.io.IOException;
+
+/**
+ * Writes features as SequenceFiles of FeatureIdWritable keys and GeometryWritable values, i.e.
+ * with the binary GeometryCodec encoding instead of WKT.  BinaryVectorInputFormat reads them back.
+ */
+public class BinaryVectorOutputFormat extends FileOutputFormat<FeatureIdWritable, Geometry>
+{
+  static class BinaryVectorRecordWriter extends RecordWriter<FeatureIdWritable, Geometry>
+  {
+    private final SequenceFile.Writer writer;
+    private final GeometryWritable value = new GeometryWritable();
+
+    BinaryVectorRecordWriter(SequenceFile.Writer writer)
+    {
+      this.writer = writer;
+    }
+
+    @Override
+    public void write(FeatureIdWritable key, Geometry geometry) throws IOException, InterruptedException
+    {
+      value.set(geometry);
+      writer.append(key, value);
+    }
+
+    @Override
+    public void close(TaskAttemptContext context) throws IOException, InterruptedException
+    {
+      writer.close();
+    }
+  }
+
+  @Override
+  public RecordWriter<FeatureIdWritable, Geometry> getRecordWriter(TaskAttemptContext context)
+      throws IOException, InterruptedException
+  {
+    Configuration conf = context.getConfiguration();
+
+    // the job's value class is Geometry, which isn't a Writable, so the SequenceFile is created
+    // here with the real value class, rather than by SequenceFileOutputFormat
+    SequenceFile.CompressionType compressionType = SequenceFile.CompressionType.NONE;
+    CompressionCodec codec = null;
+    if (getCompressOutput(context))
+    {
+      compressionType = SequenceFileOutputFormat.getOutputCompressionType(context);
+      Class<? extends CompressionCodec> codecClass = getOutputCompressorClass(context, DefaultCodec.class);
+      codec = ReflectionUtils.newInstance(codecClass, conf);
+    }
+
+    Path file = getDefaultWorkFile(context, "");
+    SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+        SequenceFile.Writer.file(file),
+        SequenceFile.Writer.keyClass(FeatureIdWritable.class),
+        SequenceFile.Writer.valueClass(GeometryWritable.class),
+        SequenceFile.Writer.compression(compressionType, codec));
+
+    return new BinaryVectorRecordWriter(writer);
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+package org.mrgeo.hdfs.vector;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.mrgeo.data.CloseableKVIterator;
+import org.mrgeo.data.vector.FeatureIdWritable;
+import org.mrgeo.data.vector.VectorReader;
+import org.mrgeo.data.vector.VectorReaderContext;
+import org.mrgeo.geometry.Geometry;
+import org.mrgeo.hdfs.utils.HadoopFileUtils;
+import org.mrgeo.mapreduce.GeometryWritable;
+import org.mrgeo.utils.tms.Bounds;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a binary vector, a directory of SequenceFiles of FeatureIdWritable/GeometryWritable.
+ * There is no spatial index, so the bounds query still reads every record, but it only decodes
+ * the geometries whose encoded bounds intersect the query.
+ */
+@SuppressFBWarnings(value = "URF_UNREAD_FIELD", justification = "'context' kept for completeness")
+public class BinaryVectorReader implements VectorReader
+{
+  private HdfsVectorDataProvider provider;
+  private VectorReaderContext context;
+  private Configuration conf;
+
+  public BinaryVectorReader(HdfsVectorDataProvider dp, VectorReaderContext context,
+      Configuration conf)
+  {
+    this.provider = dp;
+    this.context = context;
+    this.conf = conf;
+  }
+
+  private class BinaryVectorIterator implements CloseableKVIterator<FeatureIdWritable, Geometry>
+  {
+    private final List<Path> files;
+    private final Bounds bounds;
+    private int fileNdx = 0;
+    private SequenceFile.Reader reader = null;
+
+    private final FeatureIdWritable key = new FeatureIdWritable();
+    private final GeometryWritable value = new GeometryWritable();
+
+    private FeatureIdWritable currentKey = null;
+    private Geometry currentValue = null;
+    private boolean ready = false;
+
+    BinaryVectorIterator(List<Path> files, Bounds bounds)
+    {
+      this.files = files;
+      this.bounds = bounds;
+    }
+
+    private boolean advance() throws IOException
+    {
+      while (true)
+      {
+        if (reader == null)
+        {
+          if (fileNdx >= files.size())
+          {
+            return false;
+          }
+          reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(files.get(fileNdx++)));
+        }
+
+        while (reader.next(key, value))
+        {
+          if (bounds != null)
+          {
+            Bounds b = value.getBounds();
+            if (b == null || !b.intersects(bounds))
+            {
+              continue;
+            }
+          }
+          currentKey = new FeatureIdWritable(key.get());
+          currentValue = value.getGeometry();
+          return true;
+        }
+
+        reader.close();
+        reader = null;
+      }
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      if (!ready)
+      {
+        try
+        {
+          ready = advance();
+        }
+        catch (IOException e)
+        {
+          throw new IllegalStateException("Error reading binary vector", e);
+        }
+        if (!ready)
+        {
+          currentKey = null;
+          currentValue = null;
+        }
+      }
+      return ready;
+    }
+
+    @Override
+    public Geometry next()
+    {
+      if (!hasNext())
+      {
+        throw new NoSuchElementException();
+      }
+      ready = false;
+      return currentValue;
+    }
+
+    @Override
+    public FeatureIdWritable currentKey()
+    {
+      return currentKey;
+    }
+
+    @Override
+    public Geometry currentValue()
+    {
+      return currentValue;
+    }
+
+    @Override
+    public void remove()
+    {
+      throw new UnsupportedOperationException("iterator is read-only");
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+      if (reader != null)
+      {
+        reader.close();
+        reader = null;
+      }
+      fileNdx = files.size();
+    }
+  }
+
+  private List<Path> getFiles() throws IOException
+  {
+    Path path = new Path(provider.getResolvedResourceName(true));
+    FileSystem fs = HadoopFileUtils.getFileSystem(conf, path);
+
+    List<Path> files = new ArrayList<>();
+    if (fs.isFile(path))
+    {
+      files.add(path);
+    }
+    else
+    {
+      FileStatus[] status = fs.listStatus(path);
+      Arrays.sort(status);
+      for (FileStatus s : status)
+      {
+        String name = s.getPath().getName();
+        if (s.isFile() && !name.startsWith("_") && !name.startsWith("."))
+        {
+          files.add(s.getPath());
+        }
+      }
+    }
+    return files;
+  }
+
+  @Override
+  public void close()
+  {
+  }
+
+  @Override
+  public CloseableKVIterator<FeatureIdWritable, Geometry> get() throws IOException
+  {
+    return new BinaryVectorIterator(getFiles(), null);
+  }
+
+  @Override
+  public boolean exists(FeatureIdWritable featureId) throws IOException
+  {
+    return get(featureId) != null;
+  }
+
+  @Override
+  public Geometry get(FeatureIdWritable featureId) throws IOException
+  {
+    try (BinaryVectorIterator iter = new BinaryVectorIterator(getFiles(), null))
+    {
+      while (iter.hasNext())
+      {
+        Geometry geometry = iter.next();
+        if (iter.currentKey().equals(featureId))
+        {
+          return geometry;
+        }
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public CloseableKVIterator<FeatureIdWritable, Geometry> get(Bounds bounds) throws IOException
+  {
+    return new BinaryVectorIterator(getFiles(), bounds);
+  }
+
+  @Override
+  public long count() throws IOException
+  {
+    long count = 0;
+
+    FeatureIdWritable key = new FeatureIdWritable();
+    GeometryWritable value = new GeometryWritable();
+    for (Path file : getFiles())
+    {
+      try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(file)))
+      {
+        // the geometries are never decoded
+        while (reader.next(key, value))
+        {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+}
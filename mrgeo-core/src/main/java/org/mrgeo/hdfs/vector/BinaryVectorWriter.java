@@ -0,0 +1,71 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+package org.mrgeo.hdfs.vector;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.mrgeo.data.vector.FeatureIdWritable;
+import org.mrgeo.data.vector.VectorWriter;
+import org.mrgeo.geometry.Geometry;
+import org.mrgeo.mapreduce.GeometryWritable;
+
+import java.io.IOException;
+
+/**
+ * Writes a binary vector (see BinaryVectorOutputFormat) from a single process, as one part file
+ * in the output directory, so the result is read the same way as a distributed save.
+ */
+public class BinaryVectorWriter implements VectorWriter
+{
+  private HdfsVectorDataProvider provider;
+  private Configuration conf;
+  private SequenceFile.Writer writer;
+  private final GeometryWritable value = new GeometryWritable();
+
+  public BinaryVectorWriter(HdfsVectorDataProvider provider, Configuration conf)
+  {
+    this.provider = provider;
+    this.conf = conf;
+  }
+
+  @Override
+  public void append(FeatureIdWritable key, Geometry geometry) throws IOException
+  {
+    if (writer == null)
+    {
+      Path outputPath = new Path(provider.getResolvedResourceName(false), "part-r-00000");
+      writer = SequenceFile.createWriter(conf,
+          SequenceFile.Writer.file(outputPath),
+          SequenceFile.Writer.keyClass(FeatureIdWritable.class),
+          SequenceFile.Writer.valueClass(GeometryWritable.class),
+          SequenceFile.Writer.compression(SequenceFile.CompressionType.BLOCK));
+    }
+
+    value.set(geometry);
+    writer.append(key, value);
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    if (writer != null)
+    {
+      writer.close();
+      writer = null;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.hdfs.vector;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The attributes of a delimited feature, parsed from the raw line the first time they are used.
+ * Until then, the only cost is a copy of the line's bytes.  Features that are only used for their
+ * geometry (e.g. counting points) never pay for splitting the line and creating the attribute
+ * Strings.
+ * <p>
+ * Java serialization replaces it with a plain HashMap, and Kryo's map serializer goes through
+ * the map interface, so both write the parsed attributes.
+ */
+class DelimitedAttributes extends AbstractMap<String, String> implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  private byte[] line;
+  private List<String> attributeNames;
+  private char delimiter;
+  private char encapsulator;
+
+  private HashMap<String, String> attributes = null;
+
+  // for serialization
+  DelimitedAttributes()
+  {
+    attributes = new HashMap<>();
+  }
+
+  DelimitedAttributes(byte[] line, List<String> attributeNames, char delimiter, char encapsulator)
+  {
+    this.line = line;
+    this.attributeNames = attributeNames;
+    this.delimiter = delimiter;
+    this.encapsulator = encapsulator;
+  }
+
+  private Map<String, String> attributes()
+  {
+    if (attributes == null)
+    {
+      DelimitedFields fields = new DelimitedFields();
+      fields.split(line, line.length, delimiter, encapsulator);
+
+      int count = Math.min(fields.count(), attributeNames.size());
+
+      attributes = new HashMap<>(count * 2);
+      for (int i = 0; i < count; i++)
+      {
+        attributes.put(attributeNames.get(i), fields.get(line, i));
+      }
+
+      line = null;
+      attributeNames = null;
+    }
+
+    return attributes;
+  }
+
+  @Override
+  public Set<Entry<String, String>> entrySet()
+  {
+    return attributes().entrySet();
+  }
+
+  @Override
+  public int size()
+  {
+    return attributes().size();
+  }
+
+  @Override
+  public String get(Object key)
+  {
+    return attributes().get(key);
+  }
+
+  @Override
+  public boolean containsKey(Object key)
+  {
+    return attributes().containsKey(key);
+  }
+
+  @Override
+  public String put(String key, String value)
+  {
+    return attributes().put(key, value);
+  }
+
+  @Override
+  public String remove(Object key)
+  {
+    return attributes().remove(key);
+  }
+
+  private Object writeReplace()
+  {
+    return new HashMap<>(attributes());
+  }
+}
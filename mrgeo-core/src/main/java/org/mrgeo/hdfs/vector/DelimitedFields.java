@@ -0,0 +1,239 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.hdfs.vector;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The field offsets of a delimited line of UTF-8 bytes (i.e. a Text value).  Splitting this way
+ * doesn't create any Strings, a field is only decoded when asked for.  The delimiter and
+ * encapsulator must be ASCII characters, which can never appear inside a multi-byte UTF-8
+ * character, so it is safe to look for them byte by byte.
+ * <p>
+ * The splitting rules are the same as DelimitedParser.split().  Instances are reused from line
+ * to line, so they are not thread safe.
+ */
+class DelimitedFields
+{
+  private static final Charset UTF8 = StandardCharsets.UTF_8;
+
+  // the largest integer a double can hold exactly
+  private static final long MAX_EXACT = 1L << 53;
+
+  private static final double[] POWERS_OF_10 = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private int count = 0;
+  private int[] starts = new int[16];
+  private int[] ends = new int[16];
+
+  void split(byte[] bytes, int length, char delimiter, char encapsulator)
+  {
+    count = 0;
+
+    int start = 0;
+    int i = 0;
+    while (i < length)
+    {
+      byte c = bytes[i];
+      if (c == delimiter)
+      {
+        add(start, i);
+        start = i + 1;
+      }
+      else if (c == encapsulator)
+      {
+        // the field is everything up to the closing encapsulator
+        int s = i + 1;
+        i = s;
+        while (i < length && bytes[i] != encapsulator)
+        {
+          i++;
+        }
+        add(s, i);
+
+        // skip the last encapsulator
+        i++;
+        if (i >= length)
+        {
+          // no blank field on the end
+          return;
+        }
+
+        // find the next delimiter. There may be white space or something between.
+        while (i < length && bytes[i] != delimiter)
+        {
+          i++;
+        }
+        start = Math.min(i + 1, length);
+      }
+      i++;
+    }
+
+    add(Math.min(start, length), length);
+  }
+
+  private void add(int start, int end)
+  {
+    if (count == starts.length)
+    {
+      starts = Arrays.copyOf(starts, count * 2);
+      ends = Arrays.copyOf(ends, count * 2);
+    }
+    starts[count] = start;
+    ends[count] = end;
+    count++;
+  }
+
+  int count()
+  {
+    return count;
+  }
+
+  String get(byte[] bytes, int field)
+  {
+    return new String(bytes, starts[field], ends[field] - starts[field], UTF8);
+  }
+
+  /**
+   * Parses the field as a double, without creating a String for the common cases.  Returns NaN if
+   * the field is blank, and throws a NumberFormatException if it isn't a number.
+   * <p>
+   * Values with no more than 15 significant digits and a decimal exponent within +/-22 are
+   * computed as a single (exactly rounded) multiplication or division of two exact doubles, which
+   * gives the same result as Double.parseDouble().  Anything else is handed to Double.parseDouble().
+   */
+  double getDouble(byte[] bytes, int field)
+  {
+    int i = starts[field];
+    int end = ends[field];
+
+    while (i < end && bytes[i] <= ' ')
+    {
+      i++;
+    }
+    while (end > i && bytes[end - 1] <= ' ')
+    {
+      end--;
+    }
+
+    if (i == end)
+    {
+      return Double.NaN;
+    }
+
+    int first = i;
+
+    boolean negative = false;
+    if (bytes[i] == '-' || bytes[i] == '+')
+    {
+      negative = bytes[i] == '-';
+      i++;
+    }
+
+    long mantissa = 0;
+    int significant = 0;
+    int exponent = 0;
+    boolean digits = false;
+    boolean fraction = false;
+
+    for (; i < end; i++)
+    {
+      byte c = bytes[i];
+      if (c >= '0' && c <= '9')
+      {
+        digits = true;
+        if (mantissa != 0 || c != '0')
+        {
+          if (++significant > 15)
+          {
+            return Double.parseDouble(new String(bytes, first, end - first, UTF8));
+          }
+          mantissa = mantissa * 10 + (c - '0');
+        }
+        if (fraction)
+        {
+          exponent--;
+        }
+      }
+      else if (c == '.' && !fraction)
+      {
+        fraction = true;
+      }
+      else
+      {
+        break;
+      }
+    }
+
+    if (i < end)
+    {
+      if (!digits || (bytes[i] != 'e' && bytes[i] != 'E'))
+      {
+        // something we don't handle here (NaN, Infinity, hex, a bad value...)
+        return Double.parseDouble(new String(bytes, first, end - first, UTF8));
+      }
+
+      i++;
+      boolean negativeExp = false;
+      if (i < end && (bytes[i] == '-' || bytes[i] == '+'))
+      {
+        negativeExp = bytes[i] == '-';
+        i++;
+      }
+
+      int exp = 0;
+      int expStart = i;
+      while (i < end && bytes[i] >= '0' && bytes[i] <= '9' && exp < 1000)
+      {
+        exp = exp * 10 + (bytes[i] - '0');
+        i++;
+      }
+
+      if (i == expStart || i < end)
+      {
+        return Double.parseDouble(new String(bytes, first, end - first, UTF8));
+      }
+
+      exponent += negativeExp ? -exp : exp;
+    }
+    else if (!digits)
+    {
+      return Double.parseDouble(new String(bytes, first, end - first, UTF8));
+    }
+
+    double value;
+    if (mantissa == 0)
+    {
+      value = 0.0;
+    }
+    else if (mantissa < MAX_EXACT && exponent >= -22 && exponent <= 22)
+    {
+      value = (exponent < 0) ? mantissa / POWERS_OF_10[-exponent] : mantissa * POWERS_OF_10[exponent];
+    }
+    else
+    {
+      return Double.parseDouble(new String(bytes, first, end - first, UTF8));
+    }
+
+    return negative ? -value : value;
+  }
+}
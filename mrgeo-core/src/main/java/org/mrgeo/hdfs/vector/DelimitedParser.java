@@ -19,6 +19,7 @@ package org.mrgeo.hdfs.vector;
 import com.vividsolutions.jts.io.WKTReader;
 import org.mrgeo.geometry.Geometry;
 import org.mrgeo.geometry.GeometryFactory;
+import org.mrgeo.geometry.WritableGeometry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,10 +27,14 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This class is responsible for converting a line of text into a Geometry
@@ -44,7 +49,11 @@ import java.util.Map;
  * <li>the character that is used to encapsulate strings (e.g. double quote)</li>
  * <li>a flag indicating whether the first line of data should be skipped - useful
  * for cases where the first line is the column header</li>
+ * <li>optionally, the attributes that are actually needed (see setRequiredAttributes)</li>
  * </ul>
+ * Lines can be parsed from a String, or directly from the UTF-8 bytes of a Text value.  Parsing
+ * from bytes doesn't split the line into Strings, it only decodes the fields it needs, parses the
+ * x/y coordinates in place, and defers the rest of the attributes until they are used.
  */
 public class DelimitedParser implements Externalizable
 {
@@ -57,8 +66,13 @@ public class DelimitedParser implements Externalizable
   private char delimiter;
   private char encapsulator;
   private boolean skipFirstLine;
+  private Set<String> requiredAttributes = null;
   private WKTReader _wktReader;
 
+  // the columns of the required attributes, built the first time they are needed
+  private transient boolean[] requiredColumns = null;
+  private transient DelimitedFields fields = null;
+
   /**
    * Should only be used for serialization.
    */
@@ -88,6 +102,148 @@ public class DelimitedParser implements Externalizable
     return skipFirstLine;
   }
 
+  /**
+   * Only keep these attributes in the parsed features, the other columns are skipped without
+   * being decoded.  null (the default) keeps all the attributes.
+   */
+  public void setRequiredAttributes(Set<String> requiredAttributes)
+  {
+    this.requiredAttributes = requiredAttributes;
+    requiredColumns = null;
+  }
+
+  public Set<String> getRequiredAttributes()
+  {
+    return requiredAttributes;
+  }
+
+  private boolean isRequired(int column)
+  {
+    if (requiredAttributes == null)
+    {
+      return true;
+    }
+
+    if (requiredColumns == null)
+    {
+      requiredColumns = new boolean[attributeNames.size()];
+      for (int i = 0; i < requiredColumns.length; i++)
+      {
+        requiredColumns[i] = requiredAttributes.contains(attributeNames.get(i));
+      }
+    }
+
+    return column < requiredColumns.length && requiredColumns[column];
+  }
+
+  /**
+   * Parse a line from the first length bytes of a UTF-8 buffer (e.g. Text.getBytes()).  The
+   * buffer can be reused once this returns.
+   */
+  public Geometry parse(byte[] bytes, int length)
+  {
+    if (geometryCol < 0 && xCol < 0 && yCol < 0)
+    {
+      // the geometry column needs to be found by looking at the values
+      return parse(new String(bytes, 0, length, StandardCharsets.UTF_8));
+    }
+
+    if (fields == null)
+    {
+      fields = new DelimitedFields();
+    }
+    fields.split(bytes, length, delimiter, encapsulator);
+
+    Map<String, String> attrs;
+    if (requiredAttributes == null)
+    {
+      attrs = new DelimitedAttributes(Arrays.copyOf(bytes, length), attributeNames, delimiter, encapsulator);
+    }
+    else
+    {
+      attrs = new HashMap<>();
+      int count = Math.min(fields.count(), attributeNames.size());
+      for (int i = 0; i < count; i++)
+      {
+        if (isRequired(i))
+        {
+          attrs.put(attributeNames.get(i), fields.get(bytes, i));
+        }
+      }
+    }
+
+    WritableGeometry feature = null;
+    if (geometryCol >= 0)
+    {
+      if (geometryCol < fields.count())
+      {
+        feature = parseWkt(fields.get(bytes, geometryCol));
+      }
+    }
+    else if (xCol >= 0 && yCol >= 0 && xCol < fields.count() && yCol < fields.count())
+    {
+      double x = parseCoordinate(bytes, xCol, "x");
+      double y = parseCoordinate(bytes, yCol, "y");
+
+      if (!Double.isNaN(x) && !Double.isNaN(y))
+      {
+        feature = GeometryFactory.createPoint(x, y);
+      }
+    }
+
+    if (feature == null)
+    {
+      feature = GeometryFactory.createEmptyGeometry();
+    }
+
+    // set (not copy) the attributes, so lazy attributes stay lazy
+    feature.setAttributes(attrs);
+
+    return feature;
+  }
+
+  private double parseCoordinate(byte[] bytes, int column, String name)
+  {
+    try
+    {
+      return fields.getDouble(bytes, column);
+    }
+    catch (NumberFormatException e)
+    {
+      log.error("Invalid numeric value for " + name + ": " + fields.get(bytes, column) +
+          ". Continuing with null " + name + " value.");
+      return Double.NaN;
+    }
+  }
+
+  private WritableGeometry parseWkt(String wktGeometry)
+  {
+    if (_wktReader == null)
+    {
+      _wktReader = new WKTReader();
+    }
+
+    try
+    {
+      return GeometryFactory.fromJTS(_wktReader.read(wktGeometry));
+    }
+    catch (Exception e)
+    {
+      //try to correct wktGeometry if possible
+      try
+      {
+        return GeometryFactory.fromJTS(_wktReader.read(WktGeometryUtils.wktGeometryFixer(wktGeometry)));
+      }
+      catch (Exception e2)
+      {
+        //could not fix the geometry, so just set to null
+        log.error("Could not fix geometry: " + wktGeometry + ". Continuing with null geometry.");
+      }
+    }
+
+    return null;
+  }
+
   public Geometry parse(String line)
   {
     if (_wktReader == null)
@@ -114,6 +270,7 @@ public class DelimitedParser implements Externalizable
         if (WktGeometryUtils.isValidWktGeometry(values[i]))
         {
           attributeNames = new ArrayList<>(values.length);
+          requiredColumns = null;
           for (int j = 0; j < values.length; j++)
           {
             if (j == i)
@@ -170,7 +327,7 @@ public class DelimitedParser implements Externalizable
           y = null;
         }
       }
-      if (i < attributeNames.size())
+      if (i < attributeNames.size() && isRequired(i))
       {
         attrs.put(attributeNames.get(i), values[i]);
       }
@@ -294,6 +451,19 @@ public class DelimitedParser implements Externalizable
     out.writeChar(delimiter);
     out.writeChar(encapsulator);
     out.writeBoolean(skipFirstLine);
+    if (requiredAttributes != null)
+    {
+      out.writeBoolean(true);
+      out.writeInt(requiredAttributes.size());
+      for (String name: requiredAttributes)
+      {
+        out.writeUTF(name);
+      }
+    }
+    else
+    {
+      out.writeBoolean(false);
+    }
   }
 
   @Override
@@ -315,5 +485,15 @@ public class DelimitedParser implements Externalizable
     delimiter = in .readChar();
     encapsulator = in.readChar();
     skipFirstLine = in.readBoolean();
+    if (in.readBoolean())
+    {
+      requiredAttributes = new HashSet<String>();
+      int count = in.readInt();
+      for (int i=0; i < count; i++)
+      {
+        requiredAttributes.add(in.readUTF());
+      }
+    }
+    requiredColumns = null;
   }
 }
@@ -26,6 +26,7 @@ import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
 import org.mrgeo.data.vector.FeatureIdWritable;
+import org.mrgeo.data.vector.VectorInputFormatContext;
 import org.mrgeo.geometry.Geometry;
 import org.mrgeo.hdfs.utils.HadoopFileUtils;
 
@@ -76,6 +77,9 @@ public class DelimitedVectorRecordReader extends RecordReader<FeatureIdWritable,
       FileSplit fsplit = (FileSplit) split;
       delimitedParser = getDelimitedParser(fsplit.getPath().toString(),
           context.getConfiguration());
+      // only parse the attributes the job asked for (if it asked)
+      delimitedParser.setRequiredAttributes(
+          VectorInputFormatContext.load(context.getConfiguration()).getRequiredAttributes());
       recordReader = new LineRecordReader();
       recordReader.initialize(fsplit, context);
       // Skip the first
@@ -193,7 +197,8 @@ public class DelimitedVectorRecordReader extends RecordReader<FeatureIdWritable,
     {
       return null;
     }
-    return delimitedParser.parse(rawValue.toString());
+    // parse straight from the line's bytes, without decoding it into a String
+    return delimitedParser.parse(rawValue.getBytes(), rawValue.getLength());
   }
 
   @Override
@@ -95,6 +95,10 @@ public VectorReader getVectorReader() throws IOException
   {
     return new ShapefileVectorReader(this, new VectorReaderContext(), conf);
   }
+  else if (isSourceBinary(resourcePath))
+  {
+    return new BinaryVectorReader(this, new VectorReaderContext(), conf);
+  }
   throw new IOException("Unable to create vector reader for " + resourceName);
 }
 
@@ -111,6 +115,10 @@ public VectorReader getVectorReader(VectorReaderContext context) throws IOExcept
   {
     return new ShapefileVectorReader(this, context, conf);
   }
+  else if (isSourceBinary(resourcePath))
+  {
+    return new BinaryVectorReader(this, context, conf);
+  }
   throw new IOException("Unable to create vector reader for " + resourceName);
 }
 
@@ -123,6 +131,10 @@ public VectorWriter getVectorWriter() throws IOException
   {
     return new DelimitedVectorWriter(this, conf);
   }
+  else if (isSourceBinary(resourcePath))
+  {
+    return new BinaryVectorWriter(this, conf);
+  }
   // TODO:
 //    else if (isSourceShapefile(resourcePath))
 //    {
@@ -144,6 +156,10 @@ public RecordReader<FeatureIdWritable, Geometry> getRecordReader() throws IOExce
   {
     return new ShpInputFormat.ShpRecordReader();
   }
+  else if (isSourceBinary(resourcePath))
+  {
+    return new BinaryVectorInputFormat.BinaryVectorRecordReader();
+  }
   throw new IOException("Unable to create vector reader for " + resourceName);
 }
 
@@ -167,6 +183,10 @@ public VectorInputFormatProvider getVectorInputFormatProvider(VectorInputFormatC
   {
     return new ShapefileVectorInputFormatProvider(context);
   }
+  else if (isSourceBinary(resourcePath))
+  {
+    return new BinaryVectorInputFormatProvider(context);
+  }
   throw new IOException("Unable to create vector input format provider for " + resourceName);
 }
 
@@ -179,6 +199,10 @@ public VectorOutputFormatProvider getVectorOutputFormatProvider(VectorOutputForm
   {
     return new DelimitedVectorOutputFormatProvider(this, context);
   }
+  else if (isSourceBinary(resourcePath))
+  {
+    return new BinaryVectorOutputFormatProvider(this, context);
+  }
 //    else if (isSourceShapefile(resourcePath))
 //    {
 //      return new ShapefileVectorInputFormatProvider(context);
@@ -229,6 +253,19 @@ public static boolean isSourceShapefile(Path source)
   return false;
 }
 
+/**
+ * Binary vectors are directories of SequenceFiles of features (see BinaryVectorOutputFormat)
+ */
+public static boolean isSourceBinary(Path source)
+{
+  if (source != null)
+  {
+    String lowerPath = source.toString().toLowerCase();
+    return lowerPath.endsWith(".mrgv");
+  }
+  return false;
+}
+
 public static boolean canOpen(final Configuration conf, String input,
     final ProviderProperties providerProperties) throws IOException
 {
@@ -244,6 +281,10 @@ public static boolean canOpen(final Configuration conf, String input,
       {
         return true;
       }
+      if (isSourceBinary(p))
+      {
+        return true;
+      }
   }
   catch (IOException ignored)
   {
@@ -288,6 +329,10 @@ public static void delete(final Configuration conf, String input,
         }
       }
     }
+    else if (isSourceBinary(p))
+    {
+      HadoopFileUtils.delete(conf, p);
+    }
   }
 }
 
@@ -306,7 +351,8 @@ private static Path resolveName(final Configuration conf, final String input,
 {
   Path result = resolveNameToPath(conf, input, providerProperties, mustExist);
   // Check to see if the source is one of the supported formats
-  if (result != null && (isSourceDelimited(result, mustExist, conf) || isSourceShapefile(result)))
+  if (result != null && (isSourceDelimited(result, mustExist, conf) || isSourceShapefile(result) ||
+      isSourceBinary(result)))
   {
     return result;
   }
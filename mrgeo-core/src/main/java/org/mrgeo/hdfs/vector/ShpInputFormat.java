@@ -17,12 +17,17 @@
 package org.mrgeo.hdfs.vector;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.*;
 import org.mrgeo.data.vector.FeatureIdWritable;
 import org.mrgeo.geometry.Geometry;
-import org.mrgeo.hdfs.vector.shp.ShapefileReader;
+import org.mrgeo.geometry.WritableGeometry;
+import org.mrgeo.hdfs.utils.HadoopFileUtils;
+import org.mrgeo.hdfs.vector.shp.ShapefileRangeReader;
 import org.mrgeo.utils.GDALUtils;
 
 import java.io.DataInput;
@@ -42,6 +47,9 @@ public class ShpInputFormat extends InputFormat<FeatureIdWritable, Geometry>
     int endIndex;
     int startIndex;
 
+    // only used when scheduling, not serialized
+    private transient String[] locations = new String[0];
+
     /**
      * This is here so that we can re-create the input split on the
      * remote side. It uses reflection to construct the instance and
@@ -57,6 +65,12 @@ public class ShpInputFormat extends InputFormat<FeatureIdWritable, Geometry>
       endIndex = end;
     }
 
+    public GeometryInputSplit(int start, int end, String[] locations)
+    {
+      this(start, end);
+      this.locations = locations;
+    }
+
     public int getEnd()
     {
       return endIndex;
@@ -71,7 +85,7 @@ public class ShpInputFormat extends InputFormat<FeatureIdWritable, Geometry>
     @Override
     public String[] getLocations() throws IOException
     {
-      return new String[0];
+      return (locations == null) ? new String[0] : locations;
     }
 
     public int getStart()
@@ -98,7 +112,8 @@ public class ShpInputFormat extends InputFormat<FeatureIdWritable, Geometry>
   {
     private int currentIndex;
     private int end;
-    private ShapefileGeometryCollection gc;
+    private ShapefileRangeReader reader;
+    private Reprojector reprojector;
     private int start;
     private FeatureIdWritable key = new FeatureIdWritable();
     private Geometry value = null;
@@ -110,9 +125,9 @@ public class ShpInputFormat extends InputFormat<FeatureIdWritable, Geometry>
     @Override
     public void close() throws IOException
     {
-      if (gc != null)
+      if (reader != null)
       {
-        gc.close();
+        reader.close();
       }
     }
 
@@ -141,13 +156,18 @@ public class ShpInputFormat extends InputFormat<FeatureIdWritable, Geometry>
     {
       if (split instanceof GeometryInputSplit)
       {
-        gc = loadGeometryCollection(context.getConfiguration());
-
+        Configuration conf = context.getConfiguration();
         GeometryInputSplit gis = (GeometryInputSplit) split;
 
         this.start = gis.startIndex;
         this.end = gis.endIndex;
         currentIndex = start - 1;
+
+        // only the records in the split are read
+        reader = new ShapefileRangeReader(getShapefilePath(conf), start, end, conf);
+
+        // reproject into WGS84
+        reprojector = Reprojector.createFromWkt(reader.getProjection(), GDALUtils.EPSG4326());
       }
       else
       {
@@ -163,7 +183,10 @@ public class ShpInputFormat extends InputFormat<FeatureIdWritable, Geometry>
       if (currentIndex < end)
       {
         key.set(currentIndex);
-        value = gc.get(currentIndex);
+
+        WritableGeometry geometry = reader.next();
+        geometry.filter(reprojector);
+        value = geometry;
         return true;
       }
         
@@ -175,20 +198,14 @@ public class ShpInputFormat extends InputFormat<FeatureIdWritable, Geometry>
   {
   }
 
-  private static ShapefileGeometryCollection loadGeometryCollection(Configuration conf) throws IOException
+  private static Path getShapefilePath(Configuration conf)
   {
     if (conf.get("mapred.input.dir") != null)
     {
       Path path = new Path(conf.get("mapred.input.dir"));
       if (path.toString().toLowerCase().endsWith(".shp"))
       {
-        ShapefileReader sr = new ShapefileReader(path);
-
-        // reproject into WGS84
-        ReprojectedShapefileGeometryCollection rgc =
-                new ReprojectedShapefileGeometryCollection(sr, GDALUtils.EPSG4326());
-
-        return rgc;
+        return path;
       }
     }
     throw new IllegalArgumentException("Neither a geometry collection or filename was set.");
@@ -201,36 +218,58 @@ public class ShpInputFormat extends InputFormat<FeatureIdWritable, Geometry>
     return new ShpRecordReader();
   }
 
+  /**
+   * Splits the shapefile into ranges of records.  The record count comes from the size of the
+   * SHX, so nothing is read here except the SHX entries at the start of each split, which give
+   * the offset of the split in the SHP, and therefore its block locations.
+   */
   @Override
   public List<InputSplit> getSplits(JobContext context) throws IOException, InterruptedException
   {
     Configuration conf = context.getConfiguration();
-    ShapefileGeometryCollection gc = loadGeometryCollection(context.getConfiguration());
-    try
+    Path path = getShapefilePath(conf);
+
+    int size = ShapefileRangeReader.getRecordCount(path, conf);
+
+    FileSystem fs = HadoopFileUtils.getFileSystem(conf, path);
+    FileStatus status = fs.getFileStatus(path);
+
+    // at least one split per block of the shp
+    int numSplits = Math.max(conf.getInt("mapred.map.tasks", 2),
+        (int) Math.ceil((double) status.getLen() / (double) status.getBlockSize()));
+
+    // make sure there are at least 10k features per node.
+    final int MIN_FEATURES_PER_SPLIT = 10000;
+    if (size / MIN_FEATURES_PER_SPLIT < numSplits)
     {
-      int numSplits = conf.getInt("mapred.map.tasks", 2);
+      numSplits = (int) Math.ceil((double) size / (double) MIN_FEATURES_PER_SPLIT);
+    }
 
-      // make sure there are at least 10k features per node.
-      final int MIN_FEATURES_PER_SPLIT = 10000;
-      if (gc.size() / MIN_FEATURES_PER_SPLIT < numSplits)
-      {
-        numSplits = (int) Math.ceil((double) gc.size() / (double) MIN_FEATURES_PER_SPLIT);
-      }
+    int[] starts = new int[numSplits];
+    int[] ends = new int[numSplits];
+    for (int i = 0; i < numSplits; i++)
+    {
+      starts[i] = (int) Math.round((double) i * (double) size / numSplits);
+      ends[i] = (int) Math.round((double) (i + 1) * (double) size / numSplits);
+    }
+
+    long[] offsets = ShapefileRangeReader.getRecordOffsets(path, starts, conf);
 
-      List<InputSplit> result = new LinkedList<InputSplit>();
+    List<InputSplit> result = new LinkedList<InputSplit>();
+    for (int i = 0; i < numSplits; i++)
+    {
+      long length = ((i + 1 < numSplits) ? offsets[i + 1] : status.getLen()) - offsets[i];
 
-      for (int i = 0; i < numSplits; i++)
+      String[] hosts = new String[0];
+      BlockLocation[] blocks = fs.getFileBlockLocations(status, offsets[i], Math.max(length, 1));
+      if (blocks != null && blocks.length > 0)
       {
-        int start = (int) Math.round((double) i * (double) gc.size() / numSplits);
-        int end = (int) Math.round((double) (i + 1) * (double) gc.size() / numSplits);
-        result.add(new GeometryInputSplit(start, end));
+        hosts = blocks[0].getHosts();
       }
 
-      return result;
-    }
-    finally
-    {
-        gc.close();
+      result.add(new GeometryInputSplit(starts[i], ends[i], hosts));
     }
+
+    return result;
   }
 }
@@ -36,6 +36,11 @@ public class SeekableHdfsInput implements SeekableDataInput
 //    src = fs.open(p);
   }
 
+  public SeekableHdfsInput(FSDataInputStream src)
+  {
+    this.src = src;
+  }
+
   @Override
   public void close() throws IOException
   {
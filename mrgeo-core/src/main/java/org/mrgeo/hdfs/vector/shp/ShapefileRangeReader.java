@@ -0,0 +1,337 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.hdfs.vector.shp;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.mrgeo.geometry.GeometryFactory;
+import org.mrgeo.geometry.WritableGeometry;
+import org.mrgeo.hdfs.utils.HadoopFileUtils;
+import org.mrgeo.hdfs.vector.shp.dbase.DbaseException;
+import org.mrgeo.hdfs.vector.shp.dbase.DbaseFile;
+import org.mrgeo.hdfs.vector.shp.dbase.DbaseHeader;
+import org.mrgeo.hdfs.vector.shp.esri.ESRILayer;
+import org.mrgeo.hdfs.vector.shp.esri.FormatException;
+import org.mrgeo.hdfs.vector.shp.esri.ShpRecordDecoder;
+import org.mrgeo.hdfs.vector.shp.esri.geom.JShape;
+import org.mrgeo.utils.GDALUtils;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a range of records from a shapefile, without loading (or even opening) the rest of it.
+ * The SHX index gives the location of every record in the SHP, so a range of records is a range
+ * of bytes in the SHP, and the matching DBF rows are a range of bytes in the DBF (the rows are
+ * fixed length).  Both are read with large positional reads into buffers, and the records are
+ * decoded from those buffers, rather than through many small stream reads.
+ * <p>
+ * This is what lets ShpInputFormat split a shapefile between many tasks.  The geometries are in
+ * the shapefile's projection, see getProjection().
+ */
+public class ShapefileRangeReader implements Closeable
+{
+  private static final int SHX_HEADER_LENGTH = 100;
+  private static final int SHX_RECORD_LENGTH = 8;
+  private static final int SHP_RECORD_HEADER_LENGTH = 8;
+
+  private static final int BUFFER_SIZE = 4 * 1024 * 1024;
+
+  private final int start;
+  private final int end;
+
+  // the byte offset in the shp, and the content length, of each record in the range
+  private final long[] offsets;
+  private final int[] lengths;
+
+  private FSDataInputStream shp;
+  private final ShpRecordDecoder decoder;
+  private byte[] shpBuffer = new byte[0];
+  private ByteBuffer shpWindow = ByteBuffer.wrap(shpBuffer);
+  private long shpWindowStart = 0;
+
+  private FSDataInputStream dbf = null;
+  private DbaseHeader dbfHeader = null;
+  private String[] columns = null;
+  private byte[] dbfBuffer = null;
+  private int dbfWindowStart = 0;
+  private int dbfWindowCount = 0;
+
+  private final String projection;
+
+  private int current;
+
+  /**
+   * Opens the shapefile for reading the records from start (inclusive) to end (exclusive)
+   */
+  public ShapefileRangeReader(Path shpPath, int start, int end, Configuration conf) throws IOException
+  {
+    this.start = start;
+    this.end = end;
+    current = start;
+
+    String baseName = ESRILayer.getBaseName(shpPath.toString());
+    FileSystem fs = HadoopFileUtils.getFileSystem(conf, shpPath);
+
+    int count = end - start;
+    offsets = new long[count];
+    lengths = new int[count];
+
+    // all the index entries for the range, in one read
+    try (FSDataInputStream shx = fs.open(new Path(baseName + ".shx")))
+    {
+      byte[] index = new byte[count * SHX_RECORD_LENGTH];
+      shx.readFully(SHX_HEADER_LENGTH + (long) start * SHX_RECORD_LENGTH, index, 0, index.length);
+
+      // the index is big endian, in 16-bit words
+      ByteBuffer buffer = ByteBuffer.wrap(index).order(ByteOrder.BIG_ENDIAN);
+      for (int i = 0; i < count; i++)
+      {
+        offsets[i] = (buffer.getInt() & 0xffffffffL) * 2;
+        lengths[i] = buffer.getInt() * 2;
+      }
+    }
+
+    try
+    {
+      shp = fs.open(shpPath);
+      decoder = ShpRecordDecoder.open(new SeekableHdfsInput(shp));
+
+      Path dbfPath = new Path(baseName + ".dbf");
+      if (fs.exists(dbfPath))
+      {
+        dbf = fs.open(dbfPath);
+        dbfHeader = DbaseFile.readHeader(new SeekableHdfsInput(dbf));
+
+        columns = new String[dbfHeader.getFieldCount()];
+        for (int i = 0; i < columns.length; i++)
+        {
+          columns[i] = dbfHeader.getField(i).name;
+        }
+      }
+    }
+    catch (FormatException e)
+    {
+      close();
+      throw new IOException("Shapefile format error", e);
+    }
+    catch (DbaseException e)
+    {
+      close();
+      throw new IOException("Error reading shapefile", e);
+    }
+
+    projection = readProjection(fs, new Path(baseName + ".prj"));
+  }
+
+  /**
+   * The number of records in the shapefile, from the length of the SHX.
+   */
+  public static int getRecordCount(Path shpPath, Configuration conf) throws IOException
+  {
+    String baseName = ESRILayer.getBaseName(shpPath.toString());
+    Path shxPath = new Path(baseName + ".shx");
+
+    FileSystem fs = HadoopFileUtils.getFileSystem(conf, shxPath);
+    long length = fs.getFileStatus(shxPath).getLen();
+
+    return (int) ((length - SHX_HEADER_LENGTH) / SHX_RECORD_LENGTH);
+  }
+
+  /**
+   * The byte offset of each of the records in the SHP, one read per record.  Used for finding the
+   * locations of the splits.
+   */
+  public static long[] getRecordOffsets(Path shpPath, int[] records, Configuration conf) throws IOException
+  {
+    String baseName = ESRILayer.getBaseName(shpPath.toString());
+    Path shxPath = new Path(baseName + ".shx");
+
+    FileSystem fs = HadoopFileUtils.getFileSystem(conf, shxPath);
+    long[] result = new long[records.length];
+
+    try (FSDataInputStream shx = fs.open(shxPath))
+    {
+      byte[] entry = new byte[SHX_RECORD_LENGTH];
+      for (int i = 0; i < records.length; i++)
+      {
+        shx.readFully(SHX_HEADER_LENGTH + (long) records[i] * SHX_RECORD_LENGTH, entry, 0, entry.length);
+        result[i] = (ByteBuffer.wrap(entry).order(ByteOrder.BIG_ENDIAN).getInt() & 0xffffffffL) * 2;
+      }
+    }
+
+    return result;
+  }
+
+  private static String readProjection(FileSystem fs, Path prjPath) throws IOException
+  {
+    if (fs.exists(prjPath))
+    {
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(prjPath))))
+      {
+        String prj = reader.readLine();
+        if (prj != null && !prj.trim().isEmpty())
+        {
+          return prj;
+        }
+      }
+    }
+
+    // given no other information default to WGS84 (the same as ESRILayer)
+    return GDALUtils.EPSG4326();
+  }
+
+  public String getProjection()
+  {
+    return projection;
+  }
+
+  public int getStart()
+  {
+    return start;
+  }
+
+  public int getEnd()
+  {
+    return end;
+  }
+
+  /**
+   * The index of the record the next call to next() will return
+   */
+  public int getCurrentIndex()
+  {
+    return current;
+  }
+
+  public boolean hasNext()
+  {
+    return current < end;
+  }
+
+  /**
+   * Reads the next record, with its attributes.  Null shapes are returned as empty geometries.
+   */
+  public WritableGeometry next() throws IOException
+  {
+    int ndx = current - start;
+
+    JShape shape = decoder.decode(readShpRecord(ndx));
+
+    WritableGeometry geometry = (shape == null) ? GeometryFactory.createEmptyGeometry() :
+        ShapefileReader.convertToGeometry(shape);
+
+    if (dbfHeader != null)
+    {
+      List<?> attributes = readDbfRow(current);
+      for (int i = 0; i < attributes.size(); i++)
+      {
+        Object a = attributes.get(i);
+        geometry.setAttribute(columns[i], (a == null) ? null : a.toString());
+      }
+    }
+
+    current++;
+
+    return geometry;
+  }
+
+  private byte[] readShpRecord(int ndx) throws IOException
+  {
+    long offset = offsets[ndx];
+    int needed = SHP_RECORD_HEADER_LENGTH + lengths[ndx];
+
+    if (offset < shpWindowStart || offset + needed > shpWindowStart + shpWindow.limit())
+    {
+      // read as far into the range as the buffer allows
+      int last = offsets.length - 1;
+      long rangeEnd = offsets[last] + SHP_RECORD_HEADER_LENGTH + lengths[last];
+      int size = (int) Math.max(needed, Math.min(BUFFER_SIZE, rangeEnd - offset));
+
+      if (shpBuffer.length < size)
+      {
+        shpBuffer = new byte[size];
+      }
+      shp.readFully(offset, shpBuffer, 0, size);
+
+      shpWindow = ByteBuffer.wrap(shpBuffer, 0, size).order(ByteOrder.BIG_ENDIAN);
+      shpWindowStart = offset;
+    }
+
+    int pos = (int) (offset - shpWindowStart);
+
+    // the record header is big endian, the content is little endian (handled by the decoder)
+    int recordNumber = shpWindow.getInt(pos);
+    if (recordNumber != start + ndx + 1)
+    {
+      throw new IOException("Unequal SHP Record Number Specification (" + recordNumber + ")");
+    }
+    int contentLength = shpWindow.getInt(pos + 4) * 2;
+    if (contentLength != lengths[ndx])
+    {
+      throw new IOException("Unequal SHP/SHX Content Length Specification (" + contentLength + ")");
+    }
+
+    pos += SHP_RECORD_HEADER_LENGTH;
+    return Arrays.copyOfRange(shpBuffer, pos, pos + contentLength);
+  }
+
+  private List<?> readDbfRow(int row) throws IOException
+  {
+    int recordLength = dbfHeader.getRecordLength();
+
+    if (row < dbfWindowStart || row >= dbfWindowStart + dbfWindowCount)
+    {
+      int rows = Math.max(1, Math.min(BUFFER_SIZE / recordLength, end - row));
+      if (dbfBuffer == null || dbfBuffer.length < rows * recordLength)
+      {
+        dbfBuffer = new byte[rows * recordLength];
+      }
+
+      dbf.readFully(dbfHeader.getHeaderLength() + (long) row * recordLength, dbfBuffer, 0,
+          rows * recordLength);
+
+      dbfWindowStart = row;
+      dbfWindowCount = rows;
+    }
+
+    return DbaseFile.parseRow(dbfHeader, dbfBuffer, (row - dbfWindowStart) * recordLength);
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    if (shp != null)
+    {
+      shp.close();
+      shp = null;
+    }
+    if (dbf != null)
+    {
+      dbf.close();
+      dbf = null;
+    }
+  }
+}
@@ -122,7 +122,7 @@ private enum Source {
 
 private static final long serialVersionUID = 1L;
 
-private static WritableGeometry convertToGeometry(JShape shape)
+static WritableGeometry convertToGeometry(JShape shape)
 {
   WritableGeometry result;
 
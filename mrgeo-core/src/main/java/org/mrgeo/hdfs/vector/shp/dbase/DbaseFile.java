@@ -259,16 +259,37 @@ private void load(SeekableDataInput is) throws IOException, DbaseException
   loadRows(is, 0);
 }
 
-@SuppressWarnings({ "unchecked", "rawtypes" })
+@SuppressWarnings("rawtypes")
 private List loadRow(SeekableDataInput is, int i) throws IOException
 {
-  List arow = new ArrayList(header.getFieldCount());
   byte[] record = new byte[header.getRecordLength()];
   // read record
   is.readFully(record, 0, header.getRecordLength());
   if (flg != null)
     flg[i] = record[0];
   // load record
+  return parseRow(header, record, 0);
+}
+
+/**
+ * Reads the header of a DBF, for parsing rows with parseRow() without loading the file.
+ */
+public static DbaseHeader readHeader(SeekableDataInput is) throws IOException, DbaseException
+{
+  DbaseHeader header = new DbaseHeader();
+  is.seek(0L);
+  header.load(is);
+  return header;
+}
+
+/**
+ * Parses a row (record) that starts at offset in the buffer.  The first byte of the record is
+ * the deleted flag.
+ */
+@SuppressWarnings({ "unchecked", "rawtypes" })
+public static List parseRow(DbaseHeader header, byte[] record, int offset)
+{
+  List arow = new ArrayList(header.getFieldCount());
   for (int j = 0; j < header.getFieldCount(); j++)
   {
     try
@@ -280,14 +301,14 @@ private List loadRow(SeekableDataInput is, int i) throws IOException
       case DbaseField.CHARACTER:
         // legal: ASCII (OEM code page chars); rest= space, not \0 term
         // n = 1..254
-        tempStr = Convert.getString(record, field.offset, field.length);
+        tempStr = Convert.getString(record, offset + field.offset, field.length);
         arow.add(tempStr);
         break;
       case DbaseField.DATE:
         // legal since db3: "0123456789"
         // YYYYMMDD
         // n = 8
-        tempStr = Convert.getString(record, field.offset, field.length);
+        tempStr = Convert.getString(record, offset + field.offset, field.length);
         Date date = null;
         try
         {
@@ -301,13 +322,13 @@ private List loadRow(SeekableDataInput is, int i) throws IOException
         break;
       case DbaseField.FLOAT:
         // legal since db4: "-.0123456789"
-        tempStr = Convert.getString(record, field.offset, field.length);
+        tempStr = Convert.getString(record, offset + field.offset, field.length);
         arow.add(Double.valueOf(tempStr));
         break;
       case DbaseField.LOGICAL:
         // legal since db3: "YyNnTtFf space"
         // legal since db4: "YyNnTtFf ?"
-        tempStr = Convert.getString(record, field.offset, field.length);
+        tempStr = Convert.getString(record, offset + field.offset, field.length);
         Boolean logic = null;
         if (tempStr.equalsIgnoreCase("Y") || tempStr.equalsIgnoreCase("T"))
           logic = true;
@@ -322,7 +343,7 @@ private List loadRow(SeekableDataInput is, int i) throws IOException
         if (field.decimal == 0)
         {
           // int
-          tempStr = Convert.getString(record, field.offset, field.length);
+          tempStr = Convert.getString(record, offset + field.offset, field.length);
           try
           {
             arow.add(Integer.valueOf(tempStr));
@@ -335,7 +356,7 @@ private List loadRow(SeekableDataInput is, int i) throws IOException
         else
         {
           // double
-          tempStr = Convert.getString(record, field.offset, field.length);
+          tempStr = Convert.getString(record, offset + field.offset, field.length);
           try
           {
             arow.add(Double.valueOf(tempStr));
@@ -63,33 +63,35 @@ public class ShpFile
     in.seek(0);
     header.load(in);
     // initialize data interface
-    switch (header.shapeType)
+    data = createData(header.shapeType, index.recordCount);
+    // set parent
+    data.setParent(parent);
+    // read data
+    loadData(in, 0);
+  }
+
+  /**
+   * Creates the record decoder/cache for a shape type
+   */
+  static ShpData createData(int shapeType, int size) throws FormatException
+  {
+    switch (shapeType)
     {
     case JShape.POINT:
-      data = new ShpPoint(index.recordCount);
-      break;
+      return new ShpPoint(size);
     case JShape.POLYLINE:
-      data = new ShpPolyLine(index.recordCount);
-      break;
+      return new ShpPolyLine(size);
     case JShape.POLYGON:
-      data = new ShpPolygon(index.recordCount);
-      break;
+      return new ShpPolygon(size);
     case JShape.POINTZ:
-      data = new ShpPointZ(index.recordCount);
-      break;
+      return new ShpPointZ(size);
     case JShape.POLYLINEZ:
-      data = new ShpPolyLineZ(index.recordCount);
-      break;
+      return new ShpPolyLineZ(size);
     case JShape.POLYGONZ:
-      data = new ShpPolygonZ(index.recordCount);
-      break;
+      return new ShpPolygonZ(size);
     default:
-      throw new FormatException("Unhandled Shape Type: " + header.shapeType);
+      throw new FormatException("Unhandled Shape Type: " + shapeType);
     }
-    // set parent
-    data.setParent(parent);
-    // read data
-    loadData(in, 0);
   }
 
   protected void loadData(int i) throws IOException, FormatException
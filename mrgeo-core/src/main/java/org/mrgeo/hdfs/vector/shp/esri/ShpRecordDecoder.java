@@ -0,0 +1,90 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.hdfs.vector.shp.esri;
+
+import org.mrgeo.hdfs.vector.shp.SeekableDataInput;
+import org.mrgeo.hdfs.vector.shp.esri.geom.JShape;
+import org.mrgeo.hdfs.vector.shp.util.Convert;
+
+import java.io.IOException;
+
+
+/**
+ * Decodes individual SHP records (the content after the 8 byte record header) into shapes,
+ * using the same decoding as ShpFile, but without an ESRILayer and its record cache.  This lets
+ * a reader that has already located the records (e.g. from the SHX index) decode them straight
+ * from its own buffers.
+ */
+public class ShpRecordDecoder
+{
+  private final int shapeType;
+  private final ShpData data;
+
+  /**
+   * Reads the SHP file header for the shape type.
+   */
+  public static ShpRecordDecoder open(SeekableDataInput shp) throws IOException, FormatException
+  {
+    Header header = new Header();
+    shp.seek(0);
+    header.load(shp);
+
+    return new ShpRecordDecoder(header.shapeType);
+  }
+
+  public ShpRecordDecoder(int shapeType) throws FormatException
+  {
+    this.shapeType = shapeType;
+    data = ShpFile.createData(shapeType, 1);
+  }
+
+  public int getShapeType()
+  {
+    return shapeType;
+  }
+
+  /**
+   * Decodes a record, returns null for a null shape
+   */
+  public JShape decode(byte[] record)
+  {
+    if (record.length < 4 || Convert.getLEInteger(record, 0) == JShape.NULL)
+    {
+      return null;
+    }
+
+    data.load(0, record);
+
+    switch (shapeType)
+    {
+    case JShape.POINT:
+      return ((ShpPoint) data).p[0];
+    case JShape.POLYLINE:
+      return ((ShpPolyLine) data).p[0];
+    case JShape.POLYGON:
+      return ((ShpPolygon) data).p[0];
+    case JShape.POINTZ:
+      return ((ShpPointZ) data).p[0];
+    case JShape.POLYLINEZ:
+      return ((ShpPolyLineZ) data).p[0];
+    case JShape.POLYGONZ:
+      return ((ShpPolygonZ) data).p[0];
+    default:
+      return null;
+    }
+  }
+}
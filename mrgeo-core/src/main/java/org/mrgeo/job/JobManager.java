@@ -16,12 +16,17 @@
 
 package org.mrgeo.job;
 
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 public class JobManager
@@ -42,10 +47,23 @@ public class JobManager
   }
 
   private ExecutorService threadPool = Executors.newCachedThreadPool();
+  private AtomicLong nextJobId = new AtomicLong(1);
+  private Map<Long, Future<?>> runningJobs = new ConcurrentHashMap<Long, Future<?>>();
 
-@SuppressFBWarnings(value = "RV_RETURN_VALUE_IGNORED_BAD_PRACTICE",
-    justification = "For now, there is no monitoring.  Eventually there should be.")
-  public long submitJob(String name, RunnableJob job) {
+  public long submitJob(String name, RunnableJob job)
+  {
+    return submitJob(name, job, null);
+  }
+
+  /**
+   * Runs the job in the background.  When MrGeo is using a shared SparkContext (see
+   * MrGeoJobServer), the job's Spark work runs in the FAIR scheduler pool (e.g. one per tenant),
+   * or the pool for its job type if pool is null.
+   *
+   * @return the id to cancel the job with
+   */
+  public long submitJob(String name, final RunnableJob job, final String pool)
+  {
     // For now, we aren't going to worry about monitoring job status. We can add that
     // later as needed. To do this, we would need the applicationId which can be gotten
     // from SparkListener.onApplicationStart. We would actually need the applicationId
@@ -55,7 +73,60 @@ public class JobManager
     // to define a REST endpoint like ".../job/register/<jobId>" and pass that URI to
     // the remote side to call back from the MrGeoListener it sets up (or something
     // similar to that).
-    threadPool.submit(job);
-    return -1L;
+    final long jobId = nextJobId.getAndIncrement();
+    _log.info("Submitting job " + jobId + ": " + name);
+
+    FutureTask<Void> future = new FutureTask<>(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        MrGeoJobServer.setCurrentJob(jobId, pool);
+        try
+        {
+          job.run();
+        }
+        finally
+        {
+          MrGeoJobServer.clearCurrentJob();
+          runningJobs.remove(jobId);
+        }
+      }
+    }, null);
+
+    // registered before it can start, so it can always be cancelled, and removed when it ends
+    runningJobs.put(jobId, future);
+    try
+    {
+      threadPool.execute(future);
+    }
+    catch (RejectedExecutionException e)
+    {
+      runningJobs.remove(jobId);
+      throw e;
+    }
+
+    return jobId;
+  }
+
+  /**
+   * Cancels a running job.  Its Spark jobs are cancelled if it is running in the shared
+   * SparkContext, otherwise the job's thread is interrupted.
+   *
+   * @return false if the job isn't running
+   */
+  public boolean cancelJob(long jobId)
+  {
+    Future<?> future = runningJobs.remove(jobId);
+    if (future == null)
+    {
+      return false;
+    }
+
+    _log.info("Cancelling job " + jobId);
+    MrGeoJobServer.cancel(jobId);
+    future.cancel(true);
+
+    return true;
   }
 }
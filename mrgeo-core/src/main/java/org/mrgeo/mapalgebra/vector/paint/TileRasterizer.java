@@ -0,0 +1,648 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.mapalgebra.vector.paint;
+
+import org.mrgeo.geometry.*;
+import org.mrgeo.utils.Gaussian;
+import org.mrgeo.utils.tms.Bounds;
+
+import java.awt.image.*;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Scanline rasterizer that paints geometries directly into a primitive double[] tile, applying
+ * the aggregation as each pixel is covered.  This replaces painting through Java2D and the
+ * custom Composites, which is slow for double data.
+ * <p>
+ * Polygons are filled using the even-odd rule across all their rings, so holes are never painted.
+ * Each geometry affects a pixel at most once, even if several of its parts cover it.
+ * <p>
+ * Partially painted tiles can be combined with {@link #merge(TileRasterizer)}, so features for a tile
+ * can be painted in different tasks and merged afterward (e.g. with combineByKey).  Only the painted
+ * values are serialized, the scratch space is rebuilt as needed.
+ * <p>
+ * This class is not thread safe, but it holds no shared state, so each task can use its own
+ * instance.
+ */
+public final class TileRasterizer implements Serializable
+{
+private static final long serialVersionUID = 1L;
+
+public enum Coverage {
+  // a pixel is covered if its center is inside the geometry (lines and points use the pixel they fall in)
+  CENTER,
+  // a pixel is covered if any part of the geometry touches it
+  TOUCH
+}
+
+private final int width;
+private final int height;
+private final VectorPainter.AggregationType aggregation;
+private final Coverage coverage;
+
+private final double[] values;
+private final double[] counts;
+
+// marks the pixels already painted by the current geometry
+private transient int[] stamp = null;
+private transient int generation = 0;
+
+// world to pixel transform, pixel (0, 0) is the upper left
+private double originX;
+private double originY;
+private double scaleX = 1.0;
+private double scaleY = 1.0;
+
+private double weight = 1.0;
+
+// scratch space for the polygon scanline edges, reused between geometries
+private transient double[] edges = null;
+private transient double[] crossings = null;
+
+public TileRasterizer(int width, int height, VectorPainter.AggregationType aggregation, Coverage coverage)
+{
+  this.width = width;
+  this.height = height;
+  this.aggregation = aggregation;
+  this.coverage = coverage;
+
+  values = new double[width * height];
+  counts = (aggregation == VectorPainter.AggregationType.AVERAGE) ? new double[width * height] : null;
+
+  clear();
+}
+
+/**
+ * Reset the tile to all NaN, so the rasterizer can be reused for another tile
+ */
+public void clear()
+{
+  Arrays.fill(values, Double.NaN);
+  if (counts != null)
+  {
+    Arrays.fill(counts, 0.0);
+  }
+}
+
+/**
+ * Set the real world boundary (e.g. lat/lng) of the tile being painted.
+ */
+public void setBounds(final Bounds b)
+{
+  originX = b.w;
+  originY = b.n;
+  scaleX = width / (b.e - b.w);
+  scaleY = height / (b.n - b.s);
+}
+
+public int getWidth()
+{
+  return width;
+}
+
+public int getHeight()
+{
+  return height;
+}
+
+public void paint(final Geometry g, final double weight)
+{
+  this.weight = weight;
+  nextGeneration();
+
+  paint(g);
+}
+
+/**
+ * Paint a single pixel, for callers (e.g. rasterizing points) that have already calculated the
+ * pixel location.  Each call is treated as a separate feature.
+ */
+public void paintPixel(int px, int py, double weight)
+{
+  if (px >= 0 && px < width && py >= 0 && py < height)
+  {
+    this.weight = weight;
+    aggregate(py * width + px);
+  }
+}
+
+/**
+ * Combine the painted values of another (partial) tile, painted with the same aggregation, into
+ * this one.
+ */
+public void merge(final TileRasterizer other)
+{
+  if (other.aggregation != aggregation || other.values.length != values.length)
+  {
+    throw new IllegalArgumentException("Can only merge tiles of the same size and aggregation type");
+  }
+
+  for (int i = 0; i < values.length; i++)
+  {
+    final double o = other.values[i];
+    if (Double.isNaN(o))
+    {
+      continue;
+    }
+
+    final double v = values[i];
+    switch (aggregation)
+    {
+    case MASK:
+      values[i] = 0.0;
+      break;
+    case MIN:
+      values[i] = (Double.isNaN(v) || o < v) ? o : v;
+      break;
+    case MAX:
+      values[i] = (Double.isNaN(v) || o > v) ? o : v;
+      break;
+    case AVERAGE:
+      counts[i] += other.counts[i];
+      values[i] = Double.isNaN(v) ? o : v + o;
+      break;
+    default:
+      values[i] = Double.isNaN(v) ? o : v + o;
+      break;
+    }
+  }
+}
+
+public void paintEllipse(Point center, double major, double minor, double orientation, double weight)
+{
+  this.weight = weight;
+  nextGeneration();
+
+  final double area = Math.PI * (major / 2.0) * (minor / 2.0);
+  final double multiplier = weight / area;
+
+  final double a = major / 2.0;
+  final double b = minor / 2.0;
+  final double radius = Math.max(a, b);
+
+  final double cos = Math.cos(-orientation);
+  final double sin = Math.sin(-orientation);
+
+  final int x0 = Math.max(0, (int) Math.floor(toPixelX(center.getX() - radius)));
+  final int x1 = Math.min(width - 1, (int) Math.floor(toPixelX(center.getX() + radius)));
+  final int y0 = Math.max(0, (int) Math.floor(toPixelY(center.getY() + radius)));
+  final int y1 = Math.min(height - 1, (int) Math.floor(toPixelY(center.getY() - radius)));
+
+  for (int py = y0; py <= y1; py++)
+  {
+    final double dy = (originY - (py + 0.5) / scaleY) - center.getY();
+    for (int px = x0; px <= x1; px++)
+    {
+      final double dx = (originX + (px + 0.5) / scaleX) - center.getX();
+
+      // rotate the delta into the orientation of the ellipse
+      final double rx = dx * cos - dy * sin;
+      final double ry = dx * sin + dy * cos;
+
+      if ((rx * rx) / (a * a) + (ry * ry) / (b * b) <= 1.0)
+      {
+        if (aggregation == VectorPainter.AggregationType.GAUSSIAN)
+        {
+          this.weight = Gaussian.phi(rx, major) * Gaussian.phi(ry, minor) * multiplier;
+        }
+        apply(px, py);
+      }
+    }
+  }
+}
+
+/**
+ * The painted values, in row-major order.  AVERAGE tiles are not divided by their counts until
+ * {@link #toRaster()} is called.
+ */
+public double[] getValues()
+{
+  return values;
+}
+
+public WritableRaster toRaster()
+{
+  final double[] data = Arrays.copyOf(values, values.length);
+
+  if (counts != null)
+  {
+    for (int i = 0; i < data.length; i++)
+    {
+      if (!Double.isNaN(data[i]))
+      {
+        data[i] = (counts[i] == 0.0) ? Double.NaN : data[i] / counts[i];
+      }
+    }
+  }
+
+  final SampleModel model = new BandedSampleModel(DataBuffer.TYPE_DOUBLE, width, height, 1);
+  return Raster.createWritableRaster(model, new DataBufferDouble(data, data.length), null);
+}
+
+private void nextGeneration()
+{
+  if (stamp == null)
+  {
+    stamp = new int[width * height];
+    generation = 0;
+  }
+
+  generation++;
+  if (generation == Integer.MAX_VALUE)
+  {
+    Arrays.fill(stamp, 0);
+    generation = 1;
+  }
+}
+
+private void paint(final Geometry g)
+{
+  if (g instanceof Polygon)
+  {
+    paintPolygon((Polygon) g);
+  }
+  else if (g instanceof Point)
+  {
+    paintPoint((Point) g);
+  }
+  else if (g instanceof LineString)
+  {
+    paintLine((LineString) g);
+  }
+  else if (g instanceof GeometryCollection)
+  {
+    final GeometryCollection gc = (GeometryCollection) g;
+    for (int i = 0; i < gc.getNumGeometries(); i++)
+    {
+      paint(gc.getGeometry(i));
+    }
+  }
+  else
+  {
+    throw new IllegalArgumentException("Geometry type not implemented " + g.getClass().toString());
+  }
+}
+
+private double toPixelX(double x)
+{
+  return (x - originX) * scaleX;
+}
+
+private double toPixelY(double y)
+{
+  return (originY - y) * scaleY;
+}
+
+private void paintPoint(final Point p)
+{
+  final int px = (int) Math.floor(toPixelX(p.getX()));
+  final int py = (int) Math.floor(toPixelY(p.getY()));
+
+  if (px >= 0 && px < width && py >= 0 && py < height)
+  {
+    apply(px, py);
+  }
+}
+
+private void paintLine(final LineString ls)
+{
+  final int num = ls.getNumPoints();
+  if (num == 1)
+  {
+    paintPoint(ls.getPoint(0));
+    return;
+  }
+
+  Point p = ls.getPoint(0);
+  double x0 = toPixelX(p.getX());
+  double y0 = toPixelY(p.getY());
+  for (int i = 1; i < num; i++)
+  {
+    p = ls.getPoint(i);
+    final double x1 = toPixelX(p.getX());
+    final double y1 = toPixelY(p.getY());
+
+    segment(x0, y0, x1, y1);
+
+    x0 = x1;
+    y0 = y1;
+  }
+}
+
+private void paintPolygon(final Polygon polygon)
+{
+  int numEdges = 0;
+  numEdges = addRing(polygon.getExteriorRing(), numEdges);
+  for (int r = 0; r < polygon.getNumInteriorRings(); r++)
+  {
+    numEdges = addRing(polygon.getInteriorRing(r), numEdges);
+  }
+
+  fill(numEdges);
+
+  if (coverage == Coverage.TOUCH)
+  {
+    // the boundary pixels may not have their centers inside the polygon, but they are touched by it
+    for (int e = 0; e < numEdges; e++)
+    {
+      final int ndx = e * 4;
+      segment(edges[ndx], edges[ndx + 1], edges[ndx + 2], edges[ndx + 3]);
+    }
+  }
+}
+
+// adds the ring's edges (in pixel space) to the edge list, returning the new number of edges
+private int addRing(final LineString ring, int numEdges)
+{
+  final int num = ring.getNumPoints();
+  if (num < 2)
+  {
+    return numEdges;
+  }
+
+  final int needed = (numEdges + num) * 4;
+  if (edges == null)
+  {
+    edges = new double[Math.max(64, needed)];
+  }
+  else if (needed > edges.length)
+  {
+    edges = Arrays.copyOf(edges, Math.max(needed, edges.length * 2));
+  }
+
+  Point p = ring.getPoint(num - 1);
+  double x0 = toPixelX(p.getX());
+  double y0 = toPixelY(p.getY());
+  for (int i = 0; i < num; i++)
+  {
+    p = ring.getPoint(i);
+    final double x1 = toPixelX(p.getX());
+    final double y1 = toPixelY(p.getY());
+
+    // the closing edge of a ring that repeats its first point is zero length, skip it
+    if (x0 != x1 || y0 != y1)
+    {
+      final int ndx = numEdges * 4;
+      edges[ndx] = x0;
+      edges[ndx + 1] = y0;
+      edges[ndx + 2] = x1;
+      edges[ndx + 3] = y1;
+      numEdges++;
+    }
+
+    x0 = x1;
+    y0 = y1;
+  }
+
+  return numEdges;
+}
+
+// even-odd scanline fill of the pixels whose centers are inside the edges
+private void fill(int numEdges)
+{
+  if (numEdges == 0)
+  {
+    return;
+  }
+
+  double miny = Double.MAX_VALUE;
+  double maxy = -Double.MAX_VALUE;
+  for (int e = 0; e < numEdges; e++)
+  {
+    miny = Math.min(miny, Math.min(edges[e * 4 + 1], edges[e * 4 + 3]));
+    maxy = Math.max(maxy, Math.max(edges[e * 4 + 1], edges[e * 4 + 3]));
+  }
+
+  final int row0 = Math.max(0, (int) Math.ceil(miny - 0.5));
+  final int row1 = Math.min(height - 1, (int) Math.ceil(maxy - 0.5) - 1);
+
+  if (crossings == null || crossings.length < numEdges)
+  {
+    crossings = new double[numEdges];
+  }
+
+  for (int row = row0; row <= row1; row++)
+  {
+    final double yc = row + 0.5;
+
+    int num = 0;
+    for (int e = 0; e < numEdges; e++)
+    {
+      final int ndx = e * 4;
+      final double ey0 = edges[ndx + 1];
+      final double ey1 = edges[ndx + 3];
+
+      // half-open test, so a vertex on the scanline is only counted once
+      if ((ey0 <= yc && yc < ey1) || (ey1 <= yc && yc < ey0))
+      {
+        final double ex0 = edges[ndx];
+        final double ex1 = edges[ndx + 2];
+        crossings[num++] = ex0 + (yc - ey0) * (ex1 - ex0) / (ey1 - ey0);
+      }
+    }
+
+    Arrays.sort(crossings, 0, num);
+
+    for (int c = 0; c + 1 < num; c += 2)
+    {
+      final int from = Math.max(0, (int) Math.ceil(crossings[c] - 0.5));
+      final int to = Math.min(width - 1, (int) Math.ceil(crossings[c + 1] - 0.5) - 1);
+
+      for (int x = from; x <= to; x++)
+      {
+        apply(x, row);
+      }
+    }
+  }
+}
+
+// paints the pixels along a segment (in pixel space).  CENTER uses a bresenham style walk through
+// the pixels the segment falls in, TOUCH uses a supercover walk of every pixel the segment crosses.
+private void segment(double x0, double y0, double x1, double y1)
+{
+  // clip to the tile (with a 1 pixel border) so we don't walk huge segments outside the tile
+  final double[] clipped = clip(x0, y0, x1, y1, -1, -1, width + 1, height + 1);
+  if (clipped == null)
+  {
+    return;
+  }
+
+  x0 = clipped[0];
+  y0 = clipped[1];
+  x1 = clipped[2];
+  y1 = clipped[3];
+
+  int px = (int) Math.floor(x0);
+  int py = (int) Math.floor(y0);
+  final int ex = (int) Math.floor(x1);
+  final int ey = (int) Math.floor(y1);
+
+  if (coverage == Coverage.CENTER)
+  {
+    final int dx = Math.abs(ex - px);
+    final int dy = -Math.abs(ey - py);
+    final int sx = (px < ex) ? 1 : -1;
+    final int sy = (py < ey) ? 1 : -1;
+    int err = dx + dy;
+
+    while (true)
+    {
+      applyChecked(px, py);
+      if (px == ex && py == ey)
+      {
+        break;
+      }
+      final int e2 = 2 * err;
+      if (e2 >= dy)
+      {
+        err += dy;
+        px += sx;
+      }
+      if (e2 <= dx)
+      {
+        err += dx;
+        py += sy;
+      }
+    }
+  }
+  else
+  {
+    final double dx = x1 - x0;
+    final double dy = y1 - y0;
+
+    final int sx = (dx > 0) ? 1 : -1;
+    final int sy = (dy > 0) ? 1 : -1;
+
+    // distance along the segment (0 - 1) to the next vertical and horizontal pixel edge
+    final double deltaX = (dx == 0) ? Double.MAX_VALUE : Math.abs(1.0 / dx);
+    final double deltaY = (dy == 0) ? Double.MAX_VALUE : Math.abs(1.0 / dy);
+    double maxX = (dx == 0) ? Double.MAX_VALUE : ((sx > 0) ? (px + 1 - x0) : (x0 - px)) * deltaX;
+    double maxY = (dy == 0) ? Double.MAX_VALUE : ((sy > 0) ? (py + 1 - y0) : (y0 - py)) * deltaY;
+
+    final int steps = Math.abs(ex - px) + Math.abs(ey - py);
+
+    applyChecked(px, py);
+    for (int i = 0; i < steps; i++)
+    {
+      if (maxX < maxY)
+      {
+        maxX += deltaX;
+        px += sx;
+      }
+      else
+      {
+        maxY += deltaY;
+        py += sy;
+      }
+      applyChecked(px, py);
+    }
+  }
+}
+
+// Liang-Barsky line clipping, returns null if the segment is completely outside
+private static double[] clip(double x0, double y0, double x1, double y1,
+    double minx, double miny, double maxx, double maxy)
+{
+  final double dx = x1 - x0;
+  final double dy = y1 - y0;
+
+  final double[] p = {-dx, dx, -dy, dy};
+  final double[] q = {x0 - minx, maxx - x0, y0 - miny, maxy - y0};
+
+  double t0 = 0.0;
+  double t1 = 1.0;
+  for (int i = 0; i < 4; i++)
+  {
+    if (p[i] == 0)
+    {
+      if (q[i] < 0)
+      {
+        return null;
+      }
+    }
+    else
+    {
+      final double t = q[i] / p[i];
+      if (p[i] < 0)
+      {
+        if (t > t1)
+        {
+          return null;
+        }
+        t0 = Math.max(t0, t);
+      }
+      else
+      {
+        if (t < t0)
+        {
+          return null;
+        }
+        t1 = Math.min(t1, t);
+      }
+    }
+  }
+
+  return new double[]{x0 + t0 * dx, y0 + t0 * dy, x0 + t1 * dx, y0 + t1 * dy};
+}
+
+private void applyChecked(int px, int py)
+{
+  if (px >= 0 && px < width && py >= 0 && py < height)
+  {
+    apply(px, py);
+  }
+}
+
+private void apply(int px, int py)
+{
+  final int ndx = py * width + px;
+
+  if (stamp[ndx] == generation)
+  {
+    return;
+  }
+  stamp[ndx] = generation;
+
+  aggregate(ndx);
+}
+
+private void aggregate(int ndx)
+{
+  final double v = values[ndx];
+  switch (aggregation)
+  {
+  case MASK:
+    values[ndx] = 0.0;
+    break;
+  case MIN:
+    values[ndx] = (Double.isNaN(v) || weight < v) ? weight : v;
+    break;
+  case MAX:
+    values[ndx] = (Double.isNaN(v) || weight > v) ? weight : v;
+    break;
+  case AVERAGE:
+    counts[ndx] += 1.0;
+    values[ndx] = Double.isNaN(v) ? weight : v + weight;
+    break;
+  default:
+    // SUM and GAUSSIAN
+    values[ndx] = Double.isNaN(v) ? weight : v + weight;
+    break;
+  }
+}
+}
@@ -16,7 +16,6 @@
 
 package org.mrgeo.mapalgebra.vector.paint;
 
-import org.mrgeo.data.raster.RasterUtils;
 import org.mrgeo.data.raster.RasterWritable;
 import org.mrgeo.geometry.Geometry;
 import org.mrgeo.geometry.Point;
@@ -26,11 +25,6 @@ import org.mrgeo.utils.tms.Tile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.awt.image.DataBuffer;
-import java.awt.image.Raster;
-import java.awt.image.WritableRaster;
 import java.io.IOException;
 
 public class VectorPainter
@@ -45,12 +39,9 @@ private AggregationType aggregationType;
 private String valueColumn;
 private int tileSize;
 private int zoom;
+private TileRasterizer.Coverage coverage;
 
-private GeometryPainter rasterPainter;
-private Composite composite;
-private WritableRaster raster;
-private GeometryPainter totalPainter = null;
-private WritableRaster totalRaster;
+private TileRasterizer rasterizer = null;
 
 /**
  * Use this constructor if you need to use this class outside of the context of
@@ -59,97 +50,50 @@ private WritableRaster totalRaster;
  */
 public VectorPainter(int zoom, AggregationType aggregationType, String valueColumn,
     int tileSize)
+{
+  this(zoom, aggregationType, valueColumn, tileSize, TileRasterizer.Coverage.CENTER);
+}
+
+public VectorPainter(int zoom, AggregationType aggregationType, String valueColumn,
+    int tileSize, TileRasterizer.Coverage coverage)
 {
   this.zoom = zoom;
   this.aggregationType = aggregationType;
   this.valueColumn = valueColumn;
   this.tileSize = tileSize;
+  this.coverage = coverage;
 }
 
 public void beforePaintingTile(final long tileId)
 {
-  if (aggregationType == AggregationType.MIN)
-  {
-    composite = new MinCompositeDouble();
-  }
-  else if (aggregationType == AggregationType.MAX)
+  // the rasterizer is reused from tile to tile, so painting many tiles in the same
+  // task doesn't allocate new arrays for each one
+  if (rasterizer == null)
   {
-    composite = new MaxCompositeDouble();
-  }
-  else if (aggregationType == AggregationType.MASK)
-  {
-    // When a feature is painted in MASK mode, the src raster will contain
-    // 1.0 in each pixel that overlaps the feature. The MaskComposite will
-    // write a 0.0 to each pixel that was originally painted, and if any
-    // polygon holes are painted after that, those are written as NaN.
-    composite = new MaskComposite(1.0, 0.0, Double.NaN);
-  }
-  else if (aggregationType == AggregationType.GAUSSIAN)
-  {
-    composite = new GaussianComposite();
+    rasterizer = new TileRasterizer(tileSize, tileSize, aggregationType, coverage);
   }
   else
   {
-    composite = new AdditiveCompositeDouble();
+    rasterizer.clear();
   }
 
-  // Because of how MASK works, and having to properly handle inner rings of
-  // polygons, the raster is initialized to all 0's for the MASK aggregation.
-  // There is no way to paint NaN values onto the raster using the GeometryPainter
-  // so the non-masked pixels will be set to a value of 0 (which can be painted).
-  raster = RasterUtils.createEmptyRaster(tileSize, tileSize, 1,
-      DataBuffer.TYPE_DOUBLE, Double.NaN);
-
-  totalRaster = null;
-
   final Tile tile = TMSUtils.tileid(tileId, zoom);
   final Bounds tb = TMSUtils.tileBounds(tile.tx, tile.ty, zoom, tileSize);
-  Bounds b = new Bounds(tb.w, tb.s, tb.e, tb.n);
-  if (aggregationType == AggregationType.AVERAGE)
-  {
-    totalRaster = raster.createCompatibleWritableRaster();
-
-    final BufferedImage bi = RasterUtils.makeBufferedImage(totalRaster);
-    final Graphics2D gr = bi.createGraphics();
-
-    gr.setComposite(new AdditiveComposite());
-    gr.setStroke(new BasicStroke(0));
-
-    totalPainter = new GeometryPainter(gr, totalRaster, new Color(1, 1, 1), new Color(0, 0, 0));
-    totalPainter.setBounds(b);
-  }
-
-  final BufferedImage bi = RasterUtils.makeBufferedImage(raster);
-  final Graphics2D gr = bi.createGraphics();
-
-  gr.setComposite(composite);
-  gr.setStroke(new BasicStroke(0));
-
-  rasterPainter = new GeometryPainter(gr, raster, new Color(1, 1, 1),
-      new Color(0, 0, 0));
-  rasterPainter.setBounds(b);
+  rasterizer.setBounds(new Bounds(tb.w, tb.s, tb.e, tb.n));
 }
 
 public void paintGeometry(Geometry g)
 {
   if (valueColumn == null || aggregationType == AggregationType.MASK)
   {
-    rasterPainter.paint(g);
+    rasterizer.paint(g, 1.0);
   }
   else
   {
     final String sv = g.getAttribute(valueColumn);
     if (sv != null)
     {
-      final double v = Double.parseDouble(sv);
-      ((WeightedComposite)composite).setWeight(v);
-
-      rasterPainter.paint(g);
-
-      if (aggregationType == AggregationType.AVERAGE && totalPainter != null)
-      {
-        totalPainter.paint(g);
-      }
+      rasterizer.paint(g, Double.parseDouble(sv));
     }
     else
     {
@@ -159,58 +103,13 @@ public void paintGeometry(Geometry g)
 }
 
 
-public void paintEllipse(Point center, double majorWidth, double minorWidth, double orientation, double weight) {
-
-  if (composite instanceof WeightedComposite)
-  {
-    ((WeightedComposite) composite).setWeight(weight);
-  }
-  if (composite instanceof GaussianComposite)
-  {
-    ((GaussianComposite) composite).setEllipse(center, majorWidth, minorWidth, orientation, rasterPainter.getTransform());
-  }
-
-
-  rasterPainter.paintEllipse(center, majorWidth, minorWidth, orientation);
-}
-
-public RasterWritable afterPaintingTile() throws IOException
+public void paintEllipse(Point center, double majorWidth, double minorWidth, double orientation, double weight)
 {
-  if (aggregationType == AggregationType.AVERAGE)
-  {
-    averageRaster(raster, totalRaster);
-  }
-
-  return RasterWritable.toWritable(raster);
+  rasterizer.paintEllipse(center, majorWidth, minorWidth, orientation, weight);
 }
 
-
-private static void averageRaster(final WritableRaster raster, final Raster count)
+public RasterWritable afterPaintingTile() throws IOException
 {
-  for (int y = 0; y < raster.getHeight(); y++)
-  {
-    for (int x = 0; x < raster.getWidth(); x++)
-    {
-      for (int b = 0; b < raster.getNumBands(); b++)
-      {
-        double v = raster.getSampleDouble(x, y, b);
-        final double c = count.getSampleDouble(x, y, b);
-
-        if (!Double.isNaN(v))
-        {
-          if (c == 0.0)
-          {
-            v = Double.NaN;
-          }
-          else
-          {
-            v /= c;
-          }
-
-          raster.setSample(x, y, b, v);
-        }
-      }
-    }
-  }
+  return RasterWritable.toWritable(rasterizer.toRaster());
 }
 }
@@ -17,8 +17,10 @@
 package org.mrgeo.mapreduce;
 
 import org.apache.hadoop.io.Writable;
-import org.mrgeo.geometry.*;
-import org.mrgeo.utils.StringUtils;
+import org.mrgeo.geometry.Geometry;
+import org.mrgeo.geometry.GeometryCodec;
+import org.mrgeo.geometry.WktConverter;
+import org.mrgeo.utils.tms.Bounds;
 
 import java.io.DataInput;
 import java.io.DataOutput;
@@ -28,16 +30,20 @@ import java.util.Map;
 /**
  * Not to be confused with WritableGeometry the GeometryWritable class provides the ability to be
  * written using the Hadoop Writable interface.
- * 
+ * <p>
+ * The geometry is written with GeometryCodec.  When read, the encoded bytes are kept and only
+ * decoded when the geometry is asked for, so getBounds() can be used to filter geometries without
+ * decoding their coordinates.
+ *
  * @author jason.surratt
  */
 public class GeometryWritable implements Writable
 {
-  private static final String CHAR_ENCODING = "UTF8";
+  private Geometry geometry = null;
 
-  // This is exposed for performance reasons. Be sure you understand all the
-  // implications before you change the value.
-  public Geometry geometry = null;
+  // the encoded geometry, from readFields(), until it is decoded
+  private byte[] bytes = new byte[0];
+  private int length = 0;
 
   public GeometryWritable()
   {
@@ -49,123 +55,69 @@ public class GeometryWritable implements Writable
     geometry = g;
   }
 
-  private static void readAttributes(final DataInput in, final WritableGeometry g)
-    throws IOException
-  {
-    final int size = in.readInt();
-    for (int i = 0; i < size; i++)
-    {
-      String key = in.readUTF();
-      int attrByteLen = in.readInt();
-      byte[] attrBytes = new byte[attrByteLen];
-      in.readFully(attrBytes);
-      String value = new String(attrBytes, CHAR_ENCODING);
-      g.setAttribute(key, value);
-    }
-  }
-
-  private static void readLineString(final DataInput in, final WritableLineString ls)
-    throws IOException
-  {
-    final int size = in.readInt();
-    for (int i = 0; i < size; i++)
-    {
-      final WritablePoint p = GeometryFactory.createPoint();
-      readPoint(in, p);
-      ls.addPoint(p);
-    }
-  }
-
-  private static void readPoint(final DataInput in, final WritablePoint result) throws IOException
-  {
-    result.setX(in.readDouble());
-    result.setY(in.readDouble());
-    result.setZ(in.readDouble());
-  }
-
-  private static void readPolygon(final DataInput in, final WritablePolygon p) throws IOException
-  {
-    WritableLinearRing lr = GeometryFactory.createLinearRing();
-    readLineString(in, lr);
-    p.setExteriorRing(lr);
-    final int interiorSize = in.readInt();
-    for (int i = 0; i < interiorSize; i++)
-    {
-      lr = GeometryFactory.createLinearRing();
-      readLineString(in, lr);
-      p.addInteriorRing(lr);
-    }
-  }
-
-  private static void writeAttributes(final DataOutput out, final Geometry g) throws IOException
+  public Geometry getGeometry()
   {
-    out.writeInt(g.getAllAttributes().size());
-    for (Map.Entry attr : g.getAllAttributesSorted().entrySet())
+    if (geometry == null && length > 0)
     {
-      out.writeUTF(attr.getKey().toString());
-      // Cannot use writeUTF for the value because there is a limit of 64K
-      // characters that it will write to the stream, and geometry values can
-      // get longer than that.
-      StringUtils.write(attr.getValue().toString(), out);
-//      out.writeUTF(attr.getValue().toString());
+      try
+      {
+        geometry = GeometryCodec.fromBytes(bytes, 0, length);
+      }
+      catch (IOException e)
+      {
+        throw new IllegalStateException("Error decoding geometry", e);
+      }
+      length = 0;
     }
+    return geometry;
   }
 
-  private static void writeLineString(final DataOutput out, final LineString ls) throws IOException
+  /**
+   * The bounds of the geometry, null if it is empty.  If the geometry hasn't been decoded yet,
+   * they come from the encoded header.
+   */
+  public Bounds getBounds() throws IOException
   {
-    out.writeInt(ls.getNumPoints());
-    for (int i = 0; i < ls.getNumPoints(); i++)
+    if (geometry == null && length > 0)
     {
-      writePoint(out, ls.getPoint(i));
+      return GeometryCodec.boundsOf(bytes, 0, length);
     }
+    return (geometry == null || geometry.isEmpty()) ? null : geometry.getBounds();
   }
 
-  private static void writePoint(final DataOutput out, final Point p) throws IOException
+  @Override
+  public void readFields(final DataInput in) throws IOException
   {
-    out.writeDouble(p.getX());
-    out.writeDouble(p.getY());
-    out.writeDouble(p.getZ());
-  }
+    geometry = null;
 
-  private static void writePolygon(final DataOutput out, final Polygon p) throws IOException
-  {
-    writeLineString(out, p.getExteriorRing());
-    out.writeInt(p.getNumInteriorRings());
-    for (int i = 0; i < p.getNumInteriorRings(); i++)
+    length = in.readInt();
+    if (bytes.length < length)
     {
-      writeLineString(out, p.getInteriorRing(i));
+      bytes = new byte[length];
     }
+    in.readFully(bytes, 0, length);
   }
 
-  public Geometry getGeometry()
-  {
-    return geometry;
-  }
-
-  @Override
-  public void readFields(final DataInput in) throws IOException
-  {
-    geometry = readGeometry(in);
-    readAttributes(in, (WritableGeometry) geometry);
-  }
-
-  public void set(final WritableGeometry g)
+  public void set(final Geometry g)
   {
     geometry = g;
+    length = 0;
   }
 
   @Override
   public String toString()
   {
+    Geometry g = getGeometry();
+
     final StringBuffer result = new StringBuffer();
     result.append("[ ");
-    final Map<String, String> attr = geometry.getAllAttributes();
-    for (final String key : geometry.getAllAttributes().keySet())
+    final Map<String, String> attr = g.getAllAttributes();
+    for (final String key : g.getAllAttributes().keySet())
     {
       result.append(key + ": " + attr.get(key));
       result.append(", ");
     }
-    result.append("geom: " + WktConverter.toWkt(geometry));
+    result.append("geom: " + WktConverter.toWkt(g));
     result.append(" ]");
     return result.toString();
   }
@@ -173,95 +125,17 @@ public class GeometryWritable implements Writable
   @Override
   public void write(final DataOutput out) throws IOException
   {
-    writeGeometry(out, geometry);
-    writeAttributes(out, geometry);
-  }
-
-  private WritableGeometry readGeometry(final DataInput in) throws IOException
-  {
-    WritableGeometry result;
-
-    final Geometry.Type type = Geometry.Type.values()[in.readInt()];
-    switch (type)
-    {
-    case COLLECTION:
-      result = GeometryFactory.createGeometryCollection();
-      readGeometryCollection(in, (WritableGeometryCollection) result);
-      break;
-    case LINEARRING:
-      result = GeometryFactory.createLinearRing();
-      readLineString(in, (WritableLineString) result);
-      break;
-    case LINESTRING:
-      result = GeometryFactory.createLineString();
-      readLineString(in, (WritableLineString) result);
-      break;
-    case POINT:
-      result = GeometryFactory.createPoint();
-      readPoint(in, (WritablePoint) result);
-      break;
-    case POLYGON:
-      result = GeometryFactory.createPolygon();
-      readPolygon(in, (WritablePolygon) result);
-      break;
-    default:
-      throw new IllegalArgumentException("Unsupported geometry type");
-    }
-
-    if (result.isValid() == false)
+    if (geometry == null && length > 0)
     {
-      System.out.println("invalid geom");
-    }
-
-    return result;
-  }
-
-  private void readGeometryCollection(final DataInput in, final WritableGeometryCollection g)
-    throws IOException
-  {
-    final int size = in.readInt();
-    for (int i = 0; i < size; i++)
-    {
-      g.addGeometry(readGeometry(in));
-    }
-  }
-
-  private void writeGeometry(final DataOutput out, final Geometry g) throws IOException
-  {
-    out.writeInt(g.type().ordinal());
-    if (g instanceof Point)
-    {
-      writePoint(out, (Point) g);
-    }
-    else if (g instanceof LinearRing)
-    {
-      writeLineString(out, (LineString) g);
-    }
-    else if (g instanceof LineString)
-    {
-      writeLineString(out, (LineString) g);
-    }
-    else if (g instanceof Polygon)
-    {
-      writePolygon(out, (Polygon) g);
-    }
-    else if (g instanceof GeometryCollection)
-    {
-      writeGeometryCollection(out, (GeometryCollection) g);
+      // never decoded, write it back as is
+      out.writeInt(length);
+      out.write(bytes, 0, length);
     }
     else
     {
-      throw new IllegalArgumentException("Unsupported geometry type");
-    }
-  }
-
-  private void writeGeometryCollection(final DataOutput out, final GeometryCollection gc)
-    throws IOException
-  {
-    out.writeInt(gc.getGeometries().size());
-    for (final Geometry g : gc.getGeometries())
-    {
-      writeGeometry(out, g);
+      byte[] encoded = GeometryCodec.toBytes(geometry);
+      out.writeInt(encoded.length);
+      out.write(encoded);
     }
   }
 }
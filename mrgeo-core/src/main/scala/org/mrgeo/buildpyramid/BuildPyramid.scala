@@ -25,13 +25,14 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings
 import org.apache.commons.lang3.NotImplementedException
 import org.apache.hadoop.conf.Configuration
 import org.apache.spark.rdd.{PairRDDFunctions, RDD}
+import org.apache.spark.storage.StorageLevel
 import org.apache.spark.{SparkConf, SparkContext}
 import org.mrgeo.aggregators.{Aggregator, AggregatorRegistry, MeanAggregator}
 import org.mrgeo.data
 import org.mrgeo.data.DataProviderFactory.AccessMode
 import org.mrgeo.data.image.{ImageOutputFormatContext, MrsImageDataProvider, MrsImageReader, MrsImageWriter}
 import org.mrgeo.data.raster.{RasterUtils, RasterWritable}
-import org.mrgeo.data.rdd.RasterRDD
+import org.mrgeo.data.rdd.{PartitionPlanner, RasterRDD}
 import org.mrgeo.data.tile.TileIdWritable
 import org.mrgeo.data.{CloseableKVIterator, DataProviderFactory, KVIterator, ProviderProperties}
 import org.mrgeo.image.{ImageStats, MrsPyramid, MrsPyramidMetadata}
@@ -77,6 +78,114 @@ object BuildPyramid extends MrGeoDriver with Externalizable {
     bp.execute(context)
   }
 
+  /**
+    * Builds all the levels below maxLevel directly from the tiles of the max level, without reading
+    * any level back from the pyramid.  Each level is kept in memory (spilling to disk if needed) just
+    * long enough to save it, calculate its stats, and decimate it into the next level.
+    * <p>
+    * The max level must already have been saved to the provider, its metadata is used for the
+    * lower levels.
+    */
+  def build(tiles: RasterRDD, maxLevel: Int, provider: MrsImageDataProvider, aggregator: Aggregator,
+      context: SparkContext, providerProperties: ProviderProperties): Boolean = {
+
+    val metadata = provider.getMetadataReader.read
+    val tilesize = metadata.getTilesize
+    val nodatas = metadata.getDefaultValuesNumber
+    val aggregatorClass = aggregator.getClass.getName
+
+    var from: RDD[(TileIdWritable, RasterWritable)] = tiles
+    var persisted: RDD[(TileIdWritable, RasterWritable)] = null
+
+    for (fromlevel <- maxLevel until 1 by -1) {
+      val tolevel = fromlevel - 1
+
+      logInfo("Building pyramid for: " + provider.getResourceName + " from: " + fromlevel + " to: " + tolevel)
+
+      val decimated = decimate(from, fromlevel, tilesize, nodatas, aggregatorClass,
+        PartitionPlanner.partitions(metadata, tolevel, context))
+      decimated.persist(StorageLevel.MEMORY_AND_DISK_SER)
+
+      SparkUtils.saveMrsPyramid(RasterRDD(decimated), provider, tolevel, context.hadoopConfiguration,
+        providerProperties)
+
+      // the previous level has been decimated (and saved), so we don't need it anymore
+      if (persisted != null) {
+        persisted.unpersist()
+      }
+
+      persisted = decimated
+      from = decimated
+    }
+
+    if (persisted != null) {
+      persisted.unpersist()
+    }
+
+    true
+  }
+
+  // Decimates the tiles at fromlevel into the tiles at the next lower level.  The aggregator is
+  // passed by class name because aggregators aren't serializable.  Each level has a quarter of the
+  // tiles of the one above it, so the partitions are given for the lower level (< 0 keeps the
+  // partitions of the tiles).
+  private[mrgeo] def decimate(tiles: RDD[(TileIdWritable, RasterWritable)], fromlevel: Int, tilesize: Int,
+      nodatas: Array[Number], aggregatorClass: String,
+      partitions: Int = -1): RDD[(TileIdWritable, RasterWritable)] = {
+
+    val tolevel = fromlevel - 1
+
+    val decimated: RDD[(TileIdWritable, RasterWritable)] = tiles.mapPartitions(partition => {
+      val aggregator = Class.forName(aggregatorClass).newInstance().asInstanceOf[Aggregator]
+
+      partition.map(tile => {
+        val fromkey = tile._1
+        val fromraster = RasterWritable.toRaster(tile._2)
+
+        val fromtile: Tile = TMSUtils.tileid(fromkey.get, fromlevel)
+        val frombounds: Bounds = TMSUtils.tileBounds(fromtile.tx, fromtile.ty, fromlevel, tilesize)
+
+        // calculate the starting pixel for the from-tile (make sure to use the NW coordinate)
+        val fromcorner: Pixel = TMSUtils.latLonToPixelsUL(frombounds.n, frombounds.w, fromlevel, tilesize)
+
+        val totile: Tile = TMSUtils.latLonToTile(frombounds.s, frombounds.w, tolevel, tilesize)
+        val tobounds: Bounds = TMSUtils.tileBounds(totile.tx, totile.ty, tolevel, tilesize)
+
+        // calculate the starting pixel for the to-tile (make sure to use the NW coordinate) in the from-tile's pixel space
+        val tocorner: Pixel = TMSUtils.latLonToPixelsUL(tobounds.n, tobounds.w, fromlevel, tilesize)
+
+        val tokey = new TileIdWritable(TMSUtils.tileid(totile.tx, totile.ty, tolevel))
+
+        // create a compatible writable raster
+        val toraster: WritableRaster =
+          RasterUtils.createCompatibleEmptyRaster(fromraster, tilesize, tilesize, nodatas)
+
+        RasterUtils.decimate(fromraster, toraster,
+          (fromcorner.px - tocorner.px).toInt / 2, (fromcorner.py - tocorner.py).toInt / 2,
+          aggregator, nodatas)
+
+        (tokey, RasterWritable.toWritable(toraster))
+      })
+    })
+
+    val merge = (r1: RasterWritable, r2: RasterWritable) => {
+      val src = RasterWritable.toRaster(r1)
+      val dst = RasterUtils.makeRasterWritable(RasterWritable.toRaster(r2))
+
+      RasterUtils.mosaicTile(src, dst, nodatas)
+
+      RasterWritable.toWritable(dst)
+    }
+
+    val wrappedDecimated = new PairRDDFunctions(decimated)
+    if (partitions > 0) {
+      wrappedDecimated.reduceByKey(merge, partitions)
+    }
+    else {
+      wrappedDecimated.reduceByKey(merge)
+    }
+  }
+
   private def setupArguments(pyramid: String, aggregator: Aggregator, providerProperties: ProviderProperties):mutable.Map[String, String] = {
     val args = mutable.Map[String, String]()
 
@@ -177,52 +286,8 @@ class BuildPyramid extends MrGeoJob with Externalizable {
       if (tb.getWidth * tb.getHeight > BuildPyramid.MIN_TILES_FOR_SPARK) {
         val pyramid = SparkUtils.loadMrsPyramid(provider, fromlevel, context)
 
-        val decimated: RDD[(TileIdWritable, RasterWritable)] = pyramid.map(tile => {
-          val fromkey = tile._1
-          val fromraster = RasterWritable.toRaster(tile._2)
-
-          val fromtile: Tile = TMSUtils.tileid(fromkey.get, fromlevel)
-          val frombounds: Bounds = TMSUtils.tileBounds(fromtile.tx, fromtile.ty, fromlevel, tilesize)
-
-          // calculate the starting pixel for the from-tile (make sure to use the NW coordinate)
-          val fromcorner: Pixel = TMSUtils.latLonToPixelsUL(frombounds.n, frombounds.w, fromlevel, tilesize)
-
-          val totile: Tile = TMSUtils.latLonToTile(frombounds.s, frombounds.w, tolevel, tilesize)
-          val tobounds: Bounds = TMSUtils.tileBounds(totile.tx, totile.ty, tolevel, tilesize)
-
-          // calculate the starting pixel for the to-tile (make sure to use the NW coordinate) in the from-tile's pixel space
-          val tocorner: Pixel = TMSUtils.latLonToPixelsUL(tobounds.n, tobounds.w, fromlevel, tilesize)
-
-          val tokey = new TileIdWritable(TMSUtils.tileid(totile.tx, totile.ty, tolevel))
-
-          // create a compatible writable raster
-          val toraster: WritableRaster =
-            RasterUtils.createCompatibleEmptyRaster(fromraster, tilesize, tilesize, nodatas)
-
-          logDebug("from  tx: " + fromtile.tx + " ty: " + fromtile.ty + " (" + fromlevel + ") to tx: " + totile.tx +
-              " ty: " + totile.ty + " (" + tolevel + ") x: "
-              + ((fromcorner.px - tocorner.px) / 2) + " y: " + ((fromcorner.py - tocorner.py) / 2) +
-              " w: " + fromraster.getWidth + " h: " + fromraster.getHeight)
-
-          RasterUtils.decimate(fromraster, toraster,
-            (fromcorner.px - tocorner.px).toInt / 2, (fromcorner.py - tocorner.py).toInt / 2,
-            aggregator, nodatas)
-
-          (tokey, RasterWritable.toWritable(toraster))
-        })
-
-
-        //val tileBounds = TMSUtils.boundsToTile(metadata.getBounds, tolevel, tilesize)
-
-        val wrappedDecimated = new PairRDDFunctions(decimated)
-        val mergedTiles = wrappedDecimated.reduceByKey((r1, r2) => {
-          val src = RasterWritable.toRaster(r1)
-          val dst = RasterUtils.makeRasterWritable(RasterWritable.toRaster(r2))
-
-          RasterUtils.mosaicTile(src, dst, metadata.getDefaultValues)
-
-          RasterWritable.toWritable(dst)
-        })
+        val mergedTiles = BuildPyramid.decimate(pyramid, fromlevel, tilesize, nodatas, aggregator.getClass.getName,
+          PartitionPlanner.partitions(metadata, tolevel, context))
 
         // while we were running, there is chance the pyramid was removed from the cache and
         // reopened by another process. Re-opening it here will avoid some potential conflicts.
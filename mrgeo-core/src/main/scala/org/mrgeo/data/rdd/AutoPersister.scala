@@ -22,54 +22,123 @@ import org.apache.spark.storage.StorageLevel
 
 import scala.collection.mutable
 
+/**
+  * Persists RDDs that will be read more than once, following a plan made before the work starts
+  * (see org.mrgeo.mapalgebra.PersistencePlanner), instead of counting references as RDDs are
+  * created.
+  *
+  * Some reads are hidden inside utilities (the bounds and stats calculations) and happen while a
+  * map op is executing, before the planner has seen its RDD.  Those utilities call scan() first,
+  * which persists the RDD if it is the output of the executing map op and the plan expects it to
+  * be read again.  scan() also records which persisted RDDs have been computed, so the planner
+  * knows when their inputs aren't needed anymore.
+  *
+  * All of this is scoped to a map algebra job, which runs in a single thread: the planner calls
+  * begin() before and end() after the job.  Outside of a job nothing is expected or recorded.
+  */
 object AutoPersister extends Logging {
 
-  val references = mutable.Map.empty[Int, Int]
-
   val defaultStorageLevel = StorageLevel.MEMORY_AND_DISK_SER
 
-  def getRef(rdd:RDD[_]): Int = {
-    references.getOrElse(rdd.id, 0)
-  }
+  private class Expectation(val output: () => Option[RDD[_]], val reads: Int, val level: StorageLevel)
 
-  // force a persist
-  def persist(rdd:RDD[_], storageLevel: StorageLevel = defaultStorageLevel) = {
-    rdd.persist(storageLevel)
-    incrementRef(rdd)
+  private class Scope {
+    var expectation: Expectation = null
+
+    // persisted RDDs that have been fully computed at least once
+    val scanned = mutable.Set.empty[Int]
   }
 
-  // force an unpersist
-  def unpersist(rdd:RDD[_]) = {
-    rdd.unpersist()
-    references.remove(rdd.id)
+  // per thread, map algebra jobs can run concurrently in a shared context
+  private val scope = new ThreadLocal[Scope]
+
+  /**
+    * Starts a map algebra job on this thread
+    */
+  def begin(): Unit = {
+    scope.set(new Scope)
   }
 
-  // decrement the ref count, unpersist if needed
-  def decrementRef(rdd:RDD[_]):Int = {
-    val cnt = references.getOrElse(rdd.id, return 0) - 1
-    logDebug("decrement ref: " + rdd.id + " from: " + (cnt + 1) + " to: " + cnt + (if (cnt <= 0) " unpersisting" else ""))
+  /**
+    * Ends the job, forgetting what it expected and scanned
+    */
+  def end(): Unit = {
+    scope.remove()
+  }
 
-    references.put(rdd.id, cnt)
-    if (cnt <= 0 && rdd.getStorageLevel != StorageLevel.NONE) {
-      rdd.unpersist()
-      references.remove(rdd.id)
+  /**
+    * Called by the planner before executing a map op: output gets the map op's RDD (once it has
+    * one), and reads is the number of times it will be read after the map op is done.
+    */
+  def expect(output: () => Option[RDD[_]], reads: Int, level: StorageLevel = defaultStorageLevel): Unit = {
+    val current = scope.get()
+    if (current != null) {
+      current.expectation = new Expectation(output, reads, level)
     }
+  }
 
-    cnt
+  def clearExpectation(): Unit = {
+    val current = scope.get()
+    if (current != null) {
+      current.expectation = null
+    }
   }
 
-  // increment the ref count, persist when the count hits 2 (no need to persist over that)
-  def incrementRef(rdd:RDD[_], storageLevel: StorageLevel = defaultStorageLevel):Int = {
+  /**
+    * Called before a full pass over the RDD.
+    */
+  def scan(rdd: RDD[_]): Unit = {
+    val current = scope.get()
+    if (current == null) {
+      return
+    }
 
-    val cnt = references.getOrElseUpdate(rdd.id, 0) + 1
+    val exp = current.expectation
+    if (exp != null && exp.reads > 0) {
+      // the utilities wrap plain RDDs in a RasterRDD, so look through the wrapper too
+      val output = exp.output().orNull
+      if (output != null && output.getStorageLevel == StorageLevel.NONE &&
+          (output.id == rdd.id || rdd.dependencies.exists(_.rdd.id == output.id))) {
+        logDebug("persisting " + output.id + " (" + exp.level.description + ") before a scan, " +
+            exp.reads + " reads to follow")
+        output.persist(exp.level)
+      }
+    }
 
-    logDebug("increment ref: " + rdd.id + " from: " + (cnt - 1) + " to: " + cnt + (if (cnt == 2) " persisting" else ""))
-    references.put(rdd.id, cnt)
+    markScanned(current, rdd)
+    rdd.dependencies.foreach(dep => markScanned(current, dep.rdd))
+  }
 
-    if (cnt == 2 && rdd.getStorageLevel == StorageLevel.NONE) {
+  private def markScanned(current: Scope, rdd: RDD[_]): Unit = {
+    if (rdd.getStorageLevel != StorageLevel.NONE) {
+      current.scanned += rdd.id
+    }
+  }
+
+  /**
+    * True if the RDD is persisted and has been computed, so reading it doesn't read its parents.
+    */
+  def isMaterialized(rdd: RDD[_]): Boolean = {
+    val current = scope.get()
+    current != null && rdd.getStorageLevel != StorageLevel.NONE && current.scanned.contains(rdd.id)
+  }
+
+  // force a persist
+  def persist(rdd: RDD[_], storageLevel: StorageLevel = defaultStorageLevel) = {
+    if (rdd.getStorageLevel == StorageLevel.NONE) {
       rdd.persist(storageLevel)
     }
-    cnt
+  }
+
+  // force an unpersist
+  def unpersist(rdd: RDD[_]) = {
+    if (rdd.getStorageLevel != StorageLevel.NONE) {
+      rdd.unpersist(blocking = false)
+    }
+    val current = scope.get()
+    if (current != null) {
+      current.scanned.remove(rdd.id)
+    }
   }
 
 }
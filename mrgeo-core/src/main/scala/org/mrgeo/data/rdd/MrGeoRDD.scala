@@ -20,51 +20,22 @@ import org.apache.spark.annotation.DeveloperApi
 import org.apache.spark.rdd.RDD
 import org.apache.spark.storage.StorageLevel
 import org.apache.spark.{Partition, TaskContext}
+import org.mrgeo.spark.MrGeoListener
 
 import scala.reflect.ClassTag
 
 @SerialVersionUID(1L)
 class MrGeoRDD[K:ClassTag, V:ClassTag](parent: RDD[(K, V)])  extends RDD[(K, V)](parent) {
 
-  AutoPersister.incrementRef(this)
-  walkTree(this)
+  // the instrumented job's tile counts, its tasks count the tiles they encode and decode
+  private val tiles = MrGeoListener.tiles(parent.context)
 
   if (log.isDebugEnabled()) {
     logDebug("***************==")
-    //    Thread.currentThread().getStackTrace.foreach(st => {
-    //      logDebug(st.toString)
-    //    })
     printDependencies(this)
-    ///logDebug(this.toDebugString)
     logDebug("***************--")
   }
 
-  private def walkTree(rdd: RDD[_], increment:Boolean = true): Boolean = {
-    var lclinc = increment
-    rdd.dependencies.foreach(dep => {
-      dep.rdd match {
-      case mrgeo:MrGeoRDD[_,_] =>
-        if (increment) {
-          AutoPersister.incrementRef(mrgeo)
-          lclinc = false
-        }
-        else {
-          AutoPersister.decrementRef(mrgeo)
-        }
-      case _ =>
-      }})
-
-      rdd.dependencies.foreach(dep => {
-        walkTree(dep.rdd, lclinc)
-      })
-
-    lclinc
-  }
-
-//  override def finalize(): Unit = {
-//    AutoPersister.decrementRef(this)
-//  }
-
   private def printDependencies(rdd:RDD[_], level:Int = 0) {
 
     val sb = StringBuilder.newBuilder
@@ -74,10 +45,8 @@ class MrGeoRDD[K:ClassTag, V:ClassTag](parent: RDD[(K, V)])  extends RDD[(K, V)]
     sb ++= rdd.id + " (" + rdd.getClass.getSimpleName + ")"
 
     sb ++= "  " + (if (rdd.getStorageLevel != StorageLevel.NONE) rdd.getStorageLevel.description else "")
-    rdd match {
-    case mrgeo:MrGeoRDD[_,_] =>
-      sb ++= " --- MrGeoRDD ref: " + AutoPersister.getRef(mrgeo)
-    case _ =>
+    if (AutoPersister.isMaterialized(rdd)) {
+      sb ++= " (materialized)"
     }
 
     logDebug(sb.toString())
@@ -89,6 +58,7 @@ class MrGeoRDD[K:ClassTag, V:ClassTag](parent: RDD[(K, V)])  extends RDD[(K, V)]
 
   @DeveloperApi
   override def compute(split: Partition, context: TaskContext): Iterator[(K, V)] = {
+    tiles.foreach(_.countTask(context))
     firstParent[(K, V)].iterator(split, context)
   }
 
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.data.rdd
+
+import java.awt.image.Raster
+
+import org.apache.spark.rdd.RDD
+import org.apache.spark.{Logging, SparkContext}
+import org.mrgeo.core.{MrGeoConstants, MrGeoProperties}
+import org.mrgeo.data.raster.RasterUtils
+import org.mrgeo.image.MrsPyramidMetadata
+import org.mrgeo.utils.SparkUtils
+import org.mrgeo.utils.tms.{Bounds, TMSUtils}
+
+/**
+  * Decides how many partitions tiles should be in, from how many bytes the tiles take instead of
+  * how the input happened to be split.  A tile's size is estimated from the metadata (tilesize,
+  * bands and data type), times partition.compression.ratio in mrgeo.conf for how much smaller tiles
+  * are when serialized (1.0 by default, RasterWritables aren't compressed), and each partition
+  * holds about partition.target.size (64m by default) of tiles.  As long as there are enough tiles,
+  * there is at least one partition per core (the default parallelism), so small images, e.g. small
+  * tiles or byte data, still use every core, and there are never more partitions than tiles.
+  *
+  * The plan is applied when loading an image (only by coalescing, a load never shuffles), by the
+  * shuffles that build tiles (as their number of partitions) and when saving, with the block size
+  * as the target (see BlockSizePartitioner).
+  */
+object PartitionPlanner extends Logging {
+  final val DEFAULT_TARGET_SIZE = "64m"
+  final val DEFAULT_COMPRESSION_RATIO = 1.0
+
+  def targetBytes:Long = {
+    SparkUtils.humantokb(MrGeoProperties.getInstance().getProperty(MrGeoConstants.MRGEO_PARTITION_TARGET_SIZE,
+      DEFAULT_TARGET_SIZE)) * 1024L
+  }
+
+  def compressionRatio:Double = {
+    val ratio = MrGeoProperties.getInstance().getProperty(MrGeoConstants.MRGEO_PARTITION_COMPRESSION_RATIO)
+    if (ratio != null && ratio.trim.nonEmpty) ratio.trim.toDouble else DEFAULT_COMPRESSION_RATIO
+  }
+
+  /**
+    * Estimated bytes of a (serialized) tile
+    */
+  def tileBytes(width:Int, height:Int, bands:Int, tiletype:Int):Long = {
+    // unknown types are treated as doubles, the largest
+    val element = if (tiletype >= 0) RasterUtils.getElementSize(tiletype) else RasterUtils.DOUBLE_BYTES
+
+    math.max(1L, (width.toLong * height * math.max(1, bands) * element * compressionRatio).toLong)
+  }
+
+  def tileBytes(tilesize:Int, bands:Int, tiletype:Int):Long = tileBytes(tilesize, tilesize, bands, tiletype)
+
+  def tileBytes(metadata:MrsPyramidMetadata):Long = {
+    tileBytes(metadata.getTilesize, metadata.getBands, metadata.getTileType)
+  }
+
+  def tileBytes(raster:Raster):Long = {
+    tileBytes(raster.getWidth, raster.getHeight, raster.getNumBands, raster.getTransferType)
+  }
+
+  /**
+    * Estimated number of tiles at a zoom level, within the bounds if there are any (0 if they
+    * don't overlap the image).  It counts every tile in the bounds, so sparse images are
+    * overestimated.
+    */
+  def tiles(metadata:MrsPyramidMetadata, zoom:Int, bounds:Bounds = null):Long = {
+    val b = if (bounds == null) metadata.getBounds
+    else if (metadata.getBounds == null) bounds
+    else {
+      val intersection = metadata.getBounds.intersection(bounds)
+      if (intersection == null) {
+        return 0
+      }
+      intersection
+    }
+
+    if (b != null) {
+      val tb = TMSUtils.boundsToTile(b, zoom, metadata.getTilesize)
+      tb.width() * tb.height()
+    }
+    else {
+      val tb = metadata.getTileBounds(zoom)
+      if (tb != null) tb.getWidth * tb.getHeight else 0
+    }
+  }
+
+  /**
+    * Partitions for tiles of tileBytes each, holding about target bytes each
+    */
+  def partitions(tiles:Long, tileBytes:Long, target:Long, parallelism:Int):Int = {
+    if (tiles <= 0) {
+      math.max(1, parallelism)
+    }
+    else {
+      val bysize = math.ceil(tiles.toDouble * tileBytes / math.max(1L, target)).toLong
+      math.max(1L, math.min(tiles, math.max(bysize, parallelism))).min(Int.MaxValue).toInt
+    }
+  }
+
+  def partitions(tiles:Long, tileBytes:Long, context:SparkContext):Int = {
+    partitions(tiles, tileBytes, targetBytes, context.defaultParallelism)
+  }
+
+  def partitions(metadata:MrsPyramidMetadata, zoom:Int, context:SparkContext):Int = {
+    partitions(tiles(metadata, zoom), tileBytes(metadata), context)
+  }
+
+  /**
+    * Coalesces freshly loaded tiles if the input was split into (many) more partitions than
+    * planned.  Fewer partitions than planned are left alone, the next shuffle fixes those, and
+    * saving writes the planned partitions, so the next load is split right.
+    */
+  def afterLoad(rdd:RasterRDD, metadata:MrsPyramidMetadata, zoom:Int, bounds:Bounds,
+      context:SparkContext):RasterRDD = {
+    val planned = partitions(tiles(metadata, zoom, bounds), tileBytes(metadata), context)
+    val current = rdd.partitions.length
+
+    if (current > planned * 2) {
+      logInfo("Coalescing " + current + " input splits into " + planned + " partitions")
+      RasterRDD(rdd.coalesce(planned))
+    }
+    else {
+      rdd
+    }
+  }
+
+  /**
+    * Repartitions (or coalesces) to the planned partitions, for work where the partitions are
+    * fixed for a long time (e.g. iterations)
+    */
+  def repartition[T](rdd:RDD[T], planned:Int):RDD[T] = {
+    val current = rdd.partitions.length
+    if (current < planned) {
+      logInfo("Repartitioning " + current + " partitions to " + planned)
+      rdd.repartition(planned)
+    }
+    else if (current > planned) {
+      logInfo("Coalescing " + current + " partitions to " + planned)
+      rdd.coalesce(planned)
+    }
+    else {
+      rdd
+    }
+  }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.data.rdd
+
+import com.vividsolutions.jts.index.strtree.STRtree
+import org.apache.spark.rdd.{PairRDDFunctions, RDD}
+import org.apache.spark.storage.StorageLevel
+import org.mrgeo.data.vector.FeatureIdWritable
+import org.mrgeo.geometry.Geometry
+import org.mrgeo.hdfs.partitioners.TileRangePartitioner
+import org.mrgeo.utils.SparkUtils
+import org.mrgeo.utils.tms.{Bounds, TMSUtils}
+
+import scala.collection.JavaConversions._
+import scala.collection.mutable
+
+object SpatialVectorRDD {
+  // number of tile ids sampled for each partition when picking the partition ranges
+  val SamplesPerPartition = 20
+
+  /**
+    * Spatially partition the vectors into (about) the requested number of partitions.  The tile
+    * ranges are picked from a sample of the vectors, so each partition gets roughly the same number
+    * of features.
+    */
+  def apply(vectors:RDD[(FeatureIdWritable, Geometry)], zoom:Int, tilesize:Int,
+      partitions:Int):SpatialVectorRDD = {
+    val count = vectors.count()
+
+    val fraction = if (count > 0) Math.min(1.0, partitions.toDouble * SamplesPerPartition / count) else 1.0
+    val sample = vectors.sample(withReplacement = false, fraction).flatMap(feature => {
+      val bounds = feature._2.getBounds
+      if (bounds != null) {
+        val tile = TMSUtils.latLonToTile((bounds.s + bounds.n) / 2.0, (bounds.w + bounds.e) / 2.0, zoom, tilesize)
+        Some(TMSUtils.tileid(tile.tx, tile.ty, zoom))
+      }
+      else {
+        None
+      }
+    }).collect()
+
+    apply(vectors, TileRangePartitioner.fromSample(sample, partitions), zoom, tilesize)
+  }
+
+  /**
+    * Spatially partition the vectors so the partitions line up with the partitions of the raster.
+    * The raster's partitions need to hold sorted tile id ranges, as a raster read from or partitioned
+    * for a pyramid does.
+    */
+  def apply(vectors:RDD[(FeatureIdWritable, Geometry)], raster:RasterRDD, zoom:Int,
+      tilesize:Int):SpatialVectorRDD = {
+    apply(vectors, TileRangePartitioner(SparkUtils.calculateSplitData(raster)), zoom, tilesize)
+  }
+
+  def apply(vectors:RDD[(FeatureIdWritable, Geometry)], partitioner:TileRangePartitioner, zoom:Int,
+      tilesize:Int):SpatialVectorRDD = {
+
+    // A feature is copied into every partition one of its tiles falls into, so any partition can
+    // answer a query without looking at its neighbors.  The copy in the partition holding the
+    // feature's lowest tile id is the primary one, and is the only one returned when iterating.
+    val keyed = vectors.flatMap(feature => {
+      val bounds = feature._2.getBounds
+      if (bounds == null) {
+        // geometries without bounds can't be found by a query, but still belong to the data set
+        Array((partitioner.endIds(0), (feature._1, feature._2, true))).iterator
+      }
+      else {
+        val touched = partitionsFor(bounds, partitioner, zoom, tilesize)
+        val primary = touched.min
+        touched.iterator.map(p => (partitioner.endIds(p), (feature._1, feature._2, p == primary)))
+      }
+    })
+
+    val partitioned = new PairRDDFunctions(keyed).partitionBy(partitioner)
+
+    // the shuffled geometries are read here, not in a VectorRDD, so register their attribute schemas
+    val schemas = VectorRDD.schemas(vectors)
+
+    val indexes = partitioned.mapPartitions(features => {
+      VectorRDD.register(schemas)
+      val entries = features.map(_._2).toArray
+      val index = new STRtree()
+
+      var i:Int = 0
+      while (i < entries.length) {
+        val bounds = entries(i)._2.getBounds
+        if (bounds != null) {
+          index.insert(bounds.toEnvelope, Int.box(i))
+        }
+        i += 1
+      }
+      index.build()
+
+      Iterator(new SpatialVectorPartition(entries, index))
+    }, preservesPartitioning = true)
+
+    // keep the indexes as objects, rebuilding a tree is much more expensive than deserializing it
+    indexes.persist(StorageLevel.MEMORY_ONLY)
+
+    new SpatialVectorRDD(indexes, partitioner, zoom, tilesize)
+  }
+
+  // the partitions any of the tiles in the bounds fall into
+  private[rdd] def partitionsFor(bounds:Bounds, partitioner:TileRangePartitioner, zoom:Int,
+      tilesize:Int):mutable.BitSet = {
+    val tb = TMSUtils.boundsToTileExact(bounds, zoom, tilesize)
+    val touched = mutable.BitSet()
+
+    // the tiles in a row are a contiguous range of ids, so they are a contiguous range of partitions
+    var ty = tb.s
+    while (ty <= tb.n) {
+      val start = partitioner.partition(TMSUtils.tileid(tb.w, ty, zoom))
+      val end = partitioner.partition(TMSUtils.tileid(tb.e, ty, zoom))
+      touched ++= (start to end)
+      ty += 1
+    }
+
+    touched
+  }
+
+  // the partition that reports a query result, so a feature copied into several partitions is
+  // only returned once
+  private[rdd] def owner(bounds:Bounds, query:Bounds, partitioner:TileRangePartitioner, zoom:Int,
+      tilesize:Int):Int = {
+    val overlap = bounds.intersection(query)
+    val tb = TMSUtils.boundsToTileExact(if (overlap == null) bounds else overlap, zoom, tilesize)
+    partitioner.partition(TMSUtils.tileid(tb.w, tb.s, zoom))
+  }
+}
+
+/**
+  * The features in one partition of a SpatialVectorRDD, along with an STR R-tree of their bounds.
+  * The tree values are indexes into the entries array.
+  */
+@SerialVersionUID(1L)
+class SpatialVectorPartition(val entries:Array[(FeatureIdWritable, Geometry, Boolean)], val index:STRtree)
+    extends Serializable {
+
+  def candidates(bounds:Bounds):Iterator[(FeatureIdWritable, Geometry, Boolean)] = {
+    index.query(bounds.toEnvelope).iterator().map(ndx => entries(ndx.asInstanceOf[Int]))
+  }
+}
+
+/**
+  * A VectorRDD that is spatially partitioned by tile id ranges (see TileRangePartitioner) and keeps an
+  * R-tree of the feature bounds for each partition, so range and intersects queries only look at
+  * the features near the query instead of scanning (and shuffling) the whole data set.
+  * <p>
+  * Iterating the RDD returns each feature exactly once.  tilePartitioner can be used to partition
+  * tile keyed data (e.g. a RasterRDD) the same way, so the partitions can be zipped together.
+  */
+@SerialVersionUID(1L)
+class SpatialVectorRDD private(val indexes:RDD[SpatialVectorPartition], val tilePartitioner:TileRangePartitioner,
+    val zoom:Int, val tilesize:Int) extends VectorRDD(indexes.flatMap(part => {
+  part.entries.iterator.filter(_._3).map(entry => (entry._1, entry._2))
+}))
+{
+  /**
+    * The features whose bounds intersect the query bounds
+    */
+  def range(query:Bounds):VectorRDD = {
+    search(query, null)
+  }
+
+  /**
+    * The features whose geometry intersects the query bounds
+    */
+  def intersects(query:Bounds):VectorRDD = {
+    val envelope = query.toEnvelope
+    search(query, geometry => {
+      val jts = geometry.toJTS
+      jts.getFactory.toGeometry(envelope).intersects(jts)
+    })
+  }
+
+  /**
+    * The features whose geometry intersects the query geometry
+    */
+  def intersects(query:Geometry):VectorRDD = {
+    val bounds = query.getBounds
+    if (bounds == null) {
+      VectorRDD(indexes.context.emptyRDD[(FeatureIdWritable, Geometry)])
+    }
+    else {
+      val jtsQuery = query.toJTS
+      search(bounds, geometry => jtsQuery.intersects(geometry.toJTS))
+    }
+  }
+
+  /**
+    * The tiles touched by the bounds of the features (within the query bounds, if there are any), each
+    * with the features whose bounds intersect that tile.  A tile is only produced by the partition
+    * tilePartitioner puts it in, and each partition produces its tiles in tile id order, so per-tile
+    * work (e.g. rasterizing) needs no shuffle.
+    */
+  def tiles(query:Bounds):RDD[(Long, Iterator[(FeatureIdWritable, Geometry)])] = {
+    val partitioner = tilePartitioner
+    val z = zoom
+    val ts = tilesize
+
+    indexes.mapPartitionsWithIndex((partition, parts) => {
+      parts.flatMap(part => {
+        val ids = mutable.SortedSet.empty[Long]
+
+        part.entries.foreach(entry => {
+          val bounds = entry._2.getBounds
+          val clipped = if (bounds == null || query == null) bounds else bounds.intersection(query)
+          if (clipped != null) {
+            val tb = TMSUtils.boundsToTileExact(clipped, z, ts)
+            var ty = tb.s
+            while (ty <= tb.n) {
+              var tx = tb.w
+              while (tx <= tb.e) {
+                val id = TMSUtils.tileid(tx, ty, z)
+                if (partitioner.partition(id) == partition) {
+                  ids += id
+                }
+                tx += 1
+              }
+              ty += 1
+            }
+          }
+        })
+
+        ids.iterator.map(id => {
+          val tile = TMSUtils.tileid(id, z)
+          (id, part.candidates(TMSUtils.tileBounds(tile.tx, tile.ty, z, ts)).filter(entry => {
+            query == null || query.intersects(entry._2.getBounds)
+          }).map(entry => (entry._1, entry._2)))
+        })
+      })
+    }, preservesPartitioning = true)
+  }
+
+  private def search(query:Bounds, filter:Geometry => Boolean):VectorRDD = {
+    val partitioner = tilePartitioner
+    val z = zoom
+    val ts = tilesize
+
+    // only the partitions the query touches can hold results
+    val touched = SpatialVectorRDD.partitionsFor(query, partitioner, z, ts)
+
+    VectorRDD(indexes.mapPartitionsWithIndex((partition, parts) => {
+      if (touched.contains(partition)) {
+        parts.flatMap(part => part.candidates(query).filter(entry => {
+          SpatialVectorRDD.owner(entry._2.getBounds, query, partitioner, z, ts) == partition &&
+              (filter == null || filter(entry._2))
+        }).map(entry => (entry._1, entry._2)))
+      }
+      else {
+        Iterator.empty
+      }
+    }, preservesPartitioning = true))
+  }
+}
@@ -20,7 +20,9 @@ import org.apache.spark.annotation.DeveloperApi
 import org.apache.spark.rdd.RDD
 import org.apache.spark.{Partition, TaskContext}
 import org.mrgeo.data.vector.FeatureIdWritable
-import org.mrgeo.geometry.Geometry
+import org.mrgeo.geometry.{AttributeDictionary, Geometry, PackedGeometry}
+
+import scala.collection.mutable
 
 @SerialVersionUID(1L)
 object VectorRDD {
@@ -30,12 +32,81 @@ object VectorRDD {
   def apply(parent: RDD[(FeatureIdWritable, Geometry)]): VectorRDD = {
     new VectorRDD(parent)
   }
+
+  /**
+    * Converts the geometries to packed geometries (see PackedGeometry).  The known columns (e.g. the
+    * attributes a vector load was projected to) become the RDD's attribute schema, so they are
+    * shuffled as indexes instead of names, and all the geometries share it.  Without known columns
+    * there is nothing to share, so the geometries are left as they are.
+    * <p>
+    * The schema is kept in the returned RDD, and in every VectorRDD built on it, which registers it
+    * with the task before reading any geometries (see register()).
+    */
+  def pack(parent: RDD[(FeatureIdWritable, Geometry)], columns: Seq[String]): VectorRDD = {
+    if (columns == null || columns.isEmpty) {
+      VectorRDD(parent)
+    }
+    else {
+      val schema = AttributeDictionary.createSchema(columns.distinct.toArray)
+
+      new VectorRDD(parent.mapPartitions(features => {
+        val dictionary = new AttributeDictionary(schema)
+        features.map(feature => (feature._1, PackedGeometry.pack(feature._2, dictionary)))
+      }, preservesPartitioning = true), Array(schema))
+    }
+  }
+
+  /**
+    * The attribute schemas of the packed geometries in the RDD, from the VectorRDDs in its lineage.
+    * Code reading packed geometries outside of a VectorRDD (e.g. after a partitionBy()) ships these
+    * with its closure and calls register() before reading.
+    */
+  def schemas(rdd: RDD[_]): Array[AttributeDictionary] = {
+    val found = mutable.LinkedHashMap.empty[Long, AttributeDictionary]
+    val visited = mutable.HashSet.empty[Int]
+
+    val pending = mutable.Stack[RDD[_]](rdd)
+    while (pending.nonEmpty) {
+      val current = pending.pop()
+      if (visited.add(current.id)) {
+        current match {
+        case vector: VectorRDD =>
+          // a VectorRDD already has the schemas from its own lineage
+          vector.schemas.foreach(schema => found.put(schema.getId, schema))
+        case _ =>
+          current.dependencies.foreach(dep => pending.push(dep.rdd))
+        }
+      }
+    }
+
+    found.values.toArray
+  }
+
+  /**
+    * Caches the schemas in this JVM, so geometries packed with them can be deserialized
+    */
+  def register(schemas: Array[AttributeDictionary]): Unit = {
+    schemas.foreach(schema => AttributeDictionary.registerSchema(schema.getId, schema.getSchemaKeys))
+  }
 }
 
+/**
+  * The features of a vector data set.  The RDD carries the attribute schemas of any packed geometries
+  * (see VectorRDD.pack()) from its lineage, and registers them with each task before reading.
+  */
 @SerialVersionUID(1L)
-class VectorRDD(parent: RDD[(FeatureIdWritable, Geometry)]) extends RDD[(FeatureIdWritable, Geometry)](parent) {
+class VectorRDD private[rdd] (parent: RDD[(FeatureIdWritable, Geometry)], packed: Array[AttributeDictionary])
+    extends RDD[(FeatureIdWritable, Geometry)](parent) {
+
+  private[rdd] val schemas: Array[AttributeDictionary] = VectorRDD.schemas(parent) ++ packed
+
+  def this(parent: RDD[(FeatureIdWritable, Geometry)]) = {
+    this(parent, Array.empty[AttributeDictionary])
+  }
+
   @DeveloperApi
   override def compute(split: Partition, context: TaskContext): Iterator[(FeatureIdWritable, Geometry)] = {
+    VectorRDD.register(schemas)
     firstParent[(FeatureIdWritable, Geometry)].iterator(split, context)
   }
 
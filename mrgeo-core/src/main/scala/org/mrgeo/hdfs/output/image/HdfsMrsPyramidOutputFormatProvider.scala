@@ -20,20 +20,28 @@ import java.io.IOException
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings
 import org.apache.hadoop.conf.Configuration
-import org.apache.hadoop.fs.{FileSystem, Path}
-import org.apache.hadoop.io.{SequenceFile, Writable, WritableComparable}
+import org.apache.hadoop.fs.{FileAlreadyExistsException, FileContext, FileSystem, Options, Path}
+import org.apache.hadoop.io.compress.DefaultCodec
+import org.apache.hadoop.io.{MapFile, SequenceFile, Writable, WritableComparable}
 import org.apache.hadoop.mapreduce.{Job, OutputFormat}
 import org.apache.hadoop.mapreduce.lib.output.{FileOutputFormat, SequenceFileOutputFormat}
-import org.apache.spark.rdd.PairRDDFunctions
+import org.apache.hadoop.util.ReflectionUtils
+import org.apache.spark.rdd.{PairRDDFunctions, RDD}
+import org.apache.spark.{SerializableWritable, TaskContext}
+import org.apache.spark.storage.StorageLevel
 import org.mrgeo.data.DataProviderException
 import org.mrgeo.data.image.{ImageOutputFormatContext, MrsImageOutputFormatProvider}
+import org.mrgeo.data.raster.{RasterUtils, RasterWritable}
 import org.mrgeo.data.rdd.RasterRDD
 import org.mrgeo.data.tile.TileIdWritable
 import org.mrgeo.hdfs.image.HdfsMrsImageDataProvider
-import org.mrgeo.hdfs.partitioners.{BlockSizePartitioner, FileSplitPartitioner, RowPartitioner}
+import org.mrgeo.hdfs.partitioners.{BlockSizePartitioner, FileSplitPartitioner, RowPartitioner, TileRangePartitioner}
 import org.mrgeo.hdfs.tile.FileSplit
+import org.mrgeo.hdfs.tile.FileSplit.FileSplitInfo
 import org.mrgeo.hdfs.utils.HadoopFileUtils
 
+import scala.collection.mutable.ArrayBuffer
+
 
 @SuppressFBWarnings(value = Array("NM_FIELD_NAMING_CONVENTION"), justification = "PartitionType is Enumeration")
 class HdfsMrsPyramidOutputFormatProvider(context: ImageOutputFormatContext) extends MrsImageOutputFormatProvider(context) {
@@ -125,6 +133,187 @@ class HdfsMrsPyramidOutputFormatProvider(context: ImageOutputFormatContext) exte
     sparkPartitioner.writeSplits(sorted, context.getOutput, context.getZoomLevel, jobconf)
   }
 
+  override def supportsUpdate(): Boolean = true
+
+  /**
+    * Merges the tiles into the existing level.  The tiles are partitioned by the level's splits, so
+    * only the part files (MapFiles) that receive new tiles are rewritten, each one by merging the
+    * existing (sorted) file with the (sorted) new tiles into a temporary MapFile, which then
+    * replaces the original.  The splits file is rewritten with the new id ranges of those parts.
+    * <p>
+    * If the level doesn't exist yet, the tiles are simply saved.
+    */
+  override def update(raster: RasterRDD, nodatas: Array[Double],
+      conf: Configuration): RDD[(TileIdWritable, (RasterWritable, RasterWritable))] = {
+
+    implicit val tileIdOrdering = new Ordering[TileIdWritable] {
+      override def compare(x: TileIdWritable, y: TileIdWritable): Int = x.compareTo(y)
+    }
+
+    val outputWithZoom: String = provider.getResolvedResourceName(false) + "/" + context.getZoomLevel
+    val outputPath: Path = new Path(outputWithZoom)
+
+    val fs: FileSystem = HadoopFileUtils.getFileSystem(conf, outputPath)
+    if (!fs.exists(outputPath)) {
+      val written = raster.map(tile => (tile._1, (tile._2, null.asInstanceOf[RasterWritable])))
+      written.persist(StorageLevel.MEMORY_AND_DISK_SER)
+
+      save(RasterRDD(written.map(tile => (tile._1, tile._2._1))), conf)
+
+      return written
+    }
+
+    val splits = new FileSplit
+    splits.readSplits(outputPath)
+    val infos = splits.getSplits.map(_.asInstanceOf[FileSplitInfo])
+
+    val names = infos.map(_.getName)
+    val tmpPath = HadoopFileUtils.createUniqueTmpPath(conf)
+    val tmpdir = tmpPath.toString
+
+    // the tasks use the job's configuration (file system, credentials, etc.), not the defaults
+    val jobconf = raster.context.broadcast(new SerializableWritable(conf))
+
+    val sorted = raster.repartitionAndSortWithinPartitions(TileRangePartitioner(infos))
+
+    val updated = sorted.mapPartitionsWithIndex((partition, tiles) => {
+      val written = ArrayBuffer.empty[(TileIdWritable, (RasterWritable, RasterWritable))]
+
+      if (tiles.hasNext) {
+        val conf = new Configuration(jobconf.value.value)
+        // add every tile to the index
+        conf.set("io.map.index.interval", "1")
+
+        val existing = new Path(outputWithZoom, names(partition))
+        val fs = existing.getFileSystem(conf)
+
+        // each attempt writes its own file, which is renamed to the part name once it is complete.  A
+        // failed, or duplicate (speculative), attempt never leaves a partial part behind.
+        val committed = new Path(tmpdir, names(partition))
+        val attempt = new Path(tmpdir, "_attempt-" + TaskContext.get().taskAttemptId() + "-" + names(partition))
+
+        val reader = if (fs.exists(existing)) new MapFile.Reader(existing, conf) else null
+        val writer = new MapFile.Writer(conf, attempt,
+          MapFile.Writer.keyClass(classOf[TileIdWritable]),
+          MapFile.Writer.valueClass(classOf[RasterWritable]),
+          MapFile.Writer.compression(SequenceFile.CompressionType.RECORD,
+            ReflectionUtils.newInstance(classOf[DefaultCodec], conf)))
+
+        var closed = false
+        try {
+          var key = new TileIdWritable()
+          var value = new RasterWritable()
+          var more = reader != null && reader.next(key, value)
+
+          tiles.foreach(tile => {
+            // copy the existing tiles before the new one
+            while (more && key.compareTo(tile._1) < 0) {
+              writer.append(key, value)
+              more = reader.next(key, value)
+            }
+
+            if (more && key.compareTo(tile._1) == 0) {
+              val merged = RasterUtils.makeRasterWritable(RasterWritable.toRaster(value))
+              RasterUtils.mosaicTile(RasterWritable.toRaster(tile._2), merged, nodatas)
+
+              val mergedWritable = RasterWritable.toWritable(merged)
+              writer.append(key, mergedWritable)
+              written += ((new TileIdWritable(key), (mergedWritable, value)))
+
+              // the old value is kept in written, so we need new objects for the next read
+              key = new TileIdWritable()
+              value = new RasterWritable()
+              more = reader.next(key, value)
+            }
+            else {
+              writer.append(tile._1, tile._2)
+              written += ((new TileIdWritable(tile._1), (tile._2, null.asInstanceOf[RasterWritable])))
+            }
+          })
+
+          // and the existing tiles after the last new one
+          while (more) {
+            writer.append(key, value)
+            more = reader.next(key, value)
+          }
+
+          writer.close()
+          closed = true
+
+          // commit.  The rename fails if the part is already there, so exactly one attempt commits.
+          try {
+            FileContext.getFileContext(committed.toUri, conf).rename(attempt, committed, Options.Rename.NONE)
+          }
+          catch {
+            case _: FileAlreadyExistsException =>
+            // another attempt has already committed, its part has the same tiles
+          }
+        }
+        finally {
+          if (!closed) {
+            writer.close()
+          }
+          if (reader != null) {
+            reader.close()
+          }
+          if (fs.exists(attempt)) {
+            fs.delete(attempt, true)
+          }
+        }
+      }
+
+      written.iterator
+    })
+
+    // the merge writes the files, so make sure it only runs once
+    updated.persist(StorageLevel.MEMORY_AND_DISK_SER)
+    updated.count()
+
+    try {
+      // swap in the rewritten parts, and update their id ranges
+      val replaced = if (fs.exists(tmpPath)) fs.listStatus(tmpPath).map(_.getPath.getName).toSet else Set.empty[String]
+      val updatedInfos = infos.map(info => {
+        if (replaced.contains(info.getName)) {
+          val part = new Path(outputPath, info.getName)
+          if (fs.exists(part)) {
+            fs.delete(part, true)
+          }
+          if (!fs.rename(new Path(tmpPath, info.getName), part)) {
+            throw new DataProviderException("Error replacing " + part)
+          }
+
+          val reader = new MapFile.Reader(part, conf)
+          try {
+            val value = new RasterWritable()
+            val first = reader.getClosest(new TileIdWritable(0), value).asInstanceOf[TileIdWritable]
+            val last = reader.getClosest(new TileIdWritable(Long.MaxValue), value, true).asInstanceOf[TileIdWritable]
+            new FileSplitInfo(first.get, last.get, info.getName, info.getPartition)
+          }
+          finally {
+            reader.close()
+          }
+        }
+        else {
+          info
+        }
+      })
+
+      val newSplits = new FileSplit
+      newSplits.generateSplits(updatedInfos)
+      newSplits.writeSplits(outputPath)
+    }
+    catch {
+      case e: IOException =>
+        throw new DataProviderException("Error updating " + outputWithZoom, e)
+    }
+    finally {
+      fs.delete(tmpPath, true)
+      jobconf.unpersist()
+    }
+
+    updated
+  }
+
   override def finalizeExternalSave(conf: Configuration): Unit = {
     try {
       val imagePath: String = provider.getResolvedResourceName(true)
@@ -19,8 +19,8 @@ package org.mrgeo.hdfs.partitioners
 import java.io.{Externalizable, ObjectInput, ObjectOutput}
 
 import org.apache.hadoop.fs.Path
-import org.mrgeo.data.raster.{RasterUtils, RasterWritable}
-import org.mrgeo.data.rdd.RasterRDD
+import org.mrgeo.data.raster.RasterWritable
+import org.mrgeo.data.rdd.{PartitionPlanner, RasterRDD}
 import org.mrgeo.hdfs.utils.HadoopFileUtils
 
 
@@ -44,12 +44,8 @@ class BlockSizePartitioner() extends FileSplitPartitioner() with Externalizable
 
     val tile = RasterWritable.toRaster(raster.first()._2)
 
-    val pixelbytes = RasterUtils.getElementSize(tile.getSampleModel.getDataType) * tile.getNumBands
-    val imagebytes = pixelbytes * tile.getWidth * tile.getHeight
-
-    val tilesperblock = (blocksize / imagebytes) - 1  // subtract 1 for the 0-based counting
-
-    partitions = Math.ceil(raster.count() / tilesperblock.toDouble).toInt
+    // about a block of tiles per file (at least 1 tile, even if it is bigger than a block)
+    partitions = PartitionPlanner.partitions(raster.count(), PartitionPlanner.tileBytes(tile), blocksize, 1)
 
     partitions
   }
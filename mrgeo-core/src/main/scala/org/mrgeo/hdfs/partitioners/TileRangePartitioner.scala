@@ -0,0 +1,177 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.hdfs.partitioners
+
+import java.io.{Externalizable, ObjectInput, ObjectOutput}
+
+import org.mrgeo.data.rdd.RasterRDD
+import org.mrgeo.data.tile.TileIdWritable
+import org.mrgeo.hdfs.tile.FileSplit.FileSplitInfo
+import org.mrgeo.utils.tms.{TMSUtils, TileBounds}
+
+import scala.collection.mutable.ArrayBuffer
+
+object TileRangePartitioner {
+
+  /**
+    * Create a partitioner that puts tile ids into the same partitions as the splits (usually from
+    * SparkUtils.calculateSplitData() on a RasterRDD).  Empty splits are kept, so the partition
+    * indexes line up with the raster's partitions, but they will never be assigned any tile ids.
+    */
+  def apply(splits:Array[FileSplitInfo]):TileRangePartitioner = {
+    val ends = Array.ofDim[Long](splits.length)
+
+    var last = Long.MinValue
+    var i:Int = 0
+    while (i < splits.length) {
+      // an empty partition has a start id > end id
+      if (splits(i).getStartId <= splits(i).getEndId) {
+        last = Math.max(last, splits(i).getEndId)
+      }
+      ends(i) = last
+      i += 1
+    }
+
+    new TileRangePartitioner(ends)
+  }
+
+  /**
+    * Create a partitioner from a sample of tile ids (the ids need not be sorted or unique).  The
+    * split points are picked so each partition holds roughly the same number of sampled ids.
+    */
+  def fromSample(sample:Array[Long], partitions:Int):TileRangePartitioner = {
+    val sorted = sample.sorted
+    val ends = ArrayBuffer.empty[Long]
+
+    if (sorted.length > 0) {
+      var p:Int = 1
+      while (p < partitions) {
+        val id = sorted(Math.max(0, (p.toLong * sorted.length / partitions).toInt - 1))
+        if (ends.isEmpty || id > ends.last) {
+          ends += id
+        }
+        p += 1
+      }
+    }
+
+    // the last partition is open ended
+    ends += Long.MaxValue
+
+    new TileRangePartitioner(ends.toArray)
+  }
+
+  /**
+    * Create a partitioner that splits the tiles in the tile bounds into ranges holding (about) the
+    * same number of tiles.  Ids outside the bounds still fall into the first or last partitions.
+    */
+  def fromBounds(bounds:TileBounds, zoom:Int, partitions:Int):TileRangePartitioner = {
+    val total = bounds.width() * bounds.height()
+    val ends = ArrayBuffer.empty[Long]
+
+    // tile ids increase along a row, then from row to row, so the n-th tile in the bounds is
+    // found from its row and column
+    var p:Int = 1
+    while (p < Math.min(partitions.toLong, total)) {
+      val ndx = p * total / partitions - 1
+      ends += TMSUtils.tileid(bounds.w + ndx % bounds.width(), bounds.s + ndx / bounds.width(), zoom)
+      p += 1
+    }
+
+    // the last partition is open ended
+    ends += Long.MaxValue
+
+    new TileRangePartitioner(ends.toArray)
+  }
+}
+
+/**
+  * Partitions tile ids into contiguous, sorted ranges of ids.  Each partition is described by the
+  * largest tile id it holds, ids larger than the last end id fall into the last partition.
+  * <p>
+  * Because the ranges are contiguous, the tiles in any row of a tile bounds map to a contiguous
+  * range of partitions, which is what SpatialVectorRDD uses to find the partitions a geometry touches.
+  * Keys can be either TileIdWritable or raw Long tile ids.
+  */
+@SerialVersionUID(1L)
+class TileRangePartitioner() extends FileSplitPartitioner() with Externalizable
+{
+  private var ends:Array[Long] = Array(Long.MaxValue)
+
+  def this(ends:Array[Long])
+  {
+    this()
+    this.ends = ends
+  }
+
+  def endIds:Array[Long] = ends
+
+  override def numPartitions: Int = {
+    ends.length
+  }
+
+  override def getPartition(key: Any): Int = {
+    key match {
+    case id: TileIdWritable => partition(id.get())
+    case id: Long => partition(id)
+    case _ => throw new RuntimeException("Bad type sent into TileRangePartitioner.getPartition(): " +
+        key.getClass + ". Expected org.mrgeo.data.tile.TileIdWritable or a Long.")
+    }
+  }
+
+  // the first partition whose end id is >= the tile id
+  def partition(tileid:Long):Int = {
+    var lo = 0
+    var hi = ends.length - 1
+    while (lo < hi) {
+      val mid = (lo + hi) >>> 1
+      if (ends(mid) < tileid) {
+        lo = mid + 1
+      }
+      else {
+        hi = mid
+      }
+    }
+    lo
+  }
+
+  override def calculateNumPartitions(raster:RasterRDD, output:String):Int = numPartitions
+
+  override def equals(other: Any): Boolean = {
+    other match {
+    case p: TileRangePartitioner => java.util.Arrays.equals(ends, p.ends)
+    case _ => false
+    }
+  }
+
+  override def hashCode(): Int = java.util.Arrays.hashCode(ends)
+
+  override def readExternal(in: ObjectInput): Unit = {
+    ends = Array.ofDim[Long](in.readInt())
+    var i:Int = 0
+    while (i < ends.length) {
+      ends(i) = in.readLong()
+      i += 1
+    }
+  }
+
+  override def writeExternal(out: ObjectOutput): Unit = {
+    out.writeInt(ends.length)
+    ends.foreach(out.writeLong)
+  }
+
+  def hasFixedPartitions:Boolean = true
+}
@@ -17,26 +17,32 @@
 package org.mrgeo.ingest
 
 import java.io._
+import java.net.URI
 import java.util
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings
 import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.Path
 import org.apache.hadoop.io.SequenceFile
 import org.apache.spark.rdd.PairRDDFunctions
+import org.apache.spark.storage.StorageLevel
 import org.apache.spark.{SparkConf, SparkContext}
-import org.gdal.gdal.gdal
+import org.gdal.gdal.{Dataset, gdal}
 import org.gdal.gdalconst.gdalconstConstants
+import org.gdal.osr.{CoordinateTransformation, SpatialReference}
+import org.mrgeo.aggregators.{Aggregator, MeanAggregator, ModeAggregator}
+import org.mrgeo.buildpyramid.BuildPyramid
 import org.mrgeo.data
 import org.mrgeo.data.DataProviderFactory.AccessMode
-import org.mrgeo.data.image.MrsImageDataProvider
+import org.mrgeo.data.image.{ImageOutputFormatContext, MrsImageDataProvider}
 import org.mrgeo.data.raster.{RasterUtils, RasterWritable}
-import org.mrgeo.data.rdd.RasterRDD
+import org.mrgeo.data.rdd.{PartitionPlanner, RasterRDD}
 import org.mrgeo.data.tile.TileIdWritable
-import org.mrgeo.data.{DataProviderFactory, ProtectionLevelUtils, ProviderProperties}
+import org.mrgeo.data.{DataProviderFactory, DataProviderNotFound, ProtectionLevelUtils, ProviderProperties}
 import org.mrgeo.hdfs.utils.HadoopFileUtils
 import org.mrgeo.job.{JobArguments, MrGeoDriver, MrGeoJob}
 import org.mrgeo.utils._
-import org.mrgeo.utils.tms.{Bounds, TMSUtils}
+import org.mrgeo.utils.tms.{Bounds, TMSUtils, TileBounds}
 
 import scala.collection.JavaConversions._
 import scala.collection.mutable
@@ -56,12 +62,45 @@ object IngestImage extends MrGeoDriver with Externalizable {
   private val Tags = "tags"
   private val Protection = "protection"
   private val ProviderProperties = "provider.properties"
+  private val Aggregator = "aggregator"
+  private val Update = "update"
+
+  // width & height, in tiles, of the windows a source image is split into for ingest
+  private val TileBlock = 8
+
+  // points sampled along each edge of a window when finding the source pixels under it, and the
+  // extra source pixels read around them
+  private val EdgeSamples = 8
+  private val WindowMargin = 2
 
   def ingest(inputs: Array[String], output: String,
       categorical: Boolean, conf: Configuration, bounds: Bounds,
       zoomlevel: Int, tilesize: Int, nodata: Array[Number], bands: Int, tiletype: Int,
       tags: java.util.Map[String, String], protectionLevel: String,
       providerProperties: ProviderProperties): Boolean = {
+    ingest(inputs, output, categorical, conf, bounds, zoomlevel, tilesize, nodata, bands, tiletype, tags,
+      protectionLevel, providerProperties, null)
+  }
+
+  // If aggregator is not null, the pyramid levels are built from the ingested tiles as part of the
+  // ingest, so the max level is never read back (see BuildPyramid.build(RasterRDD, ...))
+  def ingest(inputs: Array[String], output: String,
+      categorical: Boolean, conf: Configuration, bounds: Bounds,
+      zoomlevel: Int, tilesize: Int, nodata: Array[Number], bands: Int, tiletype: Int,
+      tags: java.util.Map[String, String], protectionLevel: String,
+      providerProperties: ProviderProperties, aggregator: Aggregator): Boolean = {
+    ingest(inputs, output, categorical, conf, bounds, zoomlevel, tilesize, nodata, bands, tiletype, tags,
+      protectionLevel, providerProperties, aggregator, update = false)
+  }
+
+  // If update is true, and the output already exists, the images are merged into it (see
+  // SparkUtils.updateMrsPyramid()) at the existing image's zoom level and tilesize, instead of
+  // replacing it.  Only the existing pyramid levels are updated.
+  def ingest(inputs: Array[String], output: String,
+      categorical: Boolean, conf: Configuration, bounds: Bounds,
+      zoomlevel: Int, tilesize: Int, nodata: Array[Number], bands: Int, tiletype: Int,
+      tags: java.util.Map[String, String], protectionLevel: String,
+      providerProperties: ProviderProperties, aggregator: Aggregator, update: Boolean): Boolean = {
 
     val name = "IngestImage"
 
@@ -69,19 +108,78 @@ object IngestImage extends MrGeoDriver with Externalizable {
       tiletype, tags, protectionLevel,
       providerProperties)
 
+    if (aggregator != null) {
+      args += Aggregator -> aggregator.getClass.getName
+    }
+    args += Update -> update.toString
+
     run(name, classOf[IngestImage].getName, args.toMap, conf)
 
     true
   }
 
+  /**
+    * Returns true if an update (see ingest()) can merge images into the output: either the output
+    * doesn't exist yet (it is ingested instead), or its data provider can update an existing level.
+    */
+  def supportsUpdate(output: String, providerProperties: ProviderProperties): Boolean = {
+    val dp = try {
+      DataProviderFactory.getMrsImageDataProvider(output, AccessMode.READ, providerProperties)
+    }
+    catch {
+      case e: DataProviderNotFound => null
+    }
+
+    dp == null || supportsUpdate(dp)
+  }
+
+  private def supportsUpdate(dp: MrsImageDataProvider): Boolean = {
+    val metadata = dp.getMetadataReader.read()
+    val maxzoom = metadata.getMaxZoomLevel
+
+    val context = new ImageOutputFormatContext(dp.getResourceName, metadata.getBounds, maxzoom,
+      metadata.getTilesize, metadata.getProtectionLevel, metadata.getTileType, metadata.getBands)
+    dp.getTiledOutputFormatProvider(context).supportsUpdate()
+  }
+
   def ingest(context: SparkContext, inputs:Array[String], zoom:Int, tilesize:Int, categorical:Boolean, nodata: Array[Number]) = {
-    // force 1 partition per file, this will keep the size of each ingest task as small as possible, so we
-    // won't eat up too much memory
-    val in = context.parallelize(inputs, inputs.length)
+    // Images GDAL can read in place are opened by each of their windows' tasks, the others are read
+    // once, and only the source pixels under each window are passed on to be tiled
+    val (streamed, read) = inputs.partition(image => IngestImage.streamingPath(image) != null)
+
+    // Plan the work as tile-aligned windows of each file (1 partition per file while planning, the
+    // images need to be opened to get their bounds)
+    val windows = if (streamed.nonEmpty) {
+      context.parallelize(streamed, streamed.length).flatMap(input => {
+        IngestImage.makeWindows(input, zoom, tilesize, nodata)
+      }).collect()
+    }
+    else {
+      Array.empty[(String, TileBounds)]
+    }
+
+    logInfo("Ingesting " + streamed.length + " images as " + windows.length + " windows, and " + read.length +
+        " images GDAL can't read in place")
+
+    // force 1 partition per window, this will keep the size of each ingest task as small as possible, so we
+    // won't eat up too much memory, even for very large images
+    val streamedTiles = context.parallelize(windows, Math.max(1, windows.length)).flatMap(window => {
+      IngestImage.makeTiles(window._1, window._2, zoom, tilesize, categorical, nodata)
+    })
+
+    val rawtiles = new PairRDDFunctions(if (read.nonEmpty) {
+      // the source windows are spread over the cluster, so the tiling isn't done by the reading tasks
+      val sourceWindows = context.parallelize(read, read.length).flatMap(input => {
+        IngestImage.readWindows(input, zoom, tilesize, nodata)
+      }).repartition(Math.max(context.defaultParallelism, read.length))
 
-    val rawtiles = new PairRDDFunctions(in.flatMap(input => {
-      IngestImage.makeTiles(input, zoom, tilesize, categorical, nodata)
-    }))
+      streamedTiles.union(sourceWindows.flatMap(window => {
+        IngestImage.makeTiles(window, zoom, tilesize, categorical, nodata)
+      }))
+    }
+    else {
+      streamedTiles
+    })
 
     val tiles = rawtiles.reduceByKey((r1, r2) => {
       val src = RasterWritable.toRaster(r1)
@@ -94,18 +192,8 @@ object IngestImage extends MrGeoDriver with Externalizable {
     val meta = SparkUtils.calculateMetadata(RasterRDD(tiles), zoom, nodata, bounds = null, calcStats = false)
 
 
-    // repartition, because chances are the RDD only has 1 partition (ingest a single file)
-    val numExecutors = math.max(context.getConf.getInt("spark.executor.instances", 0),
-      math.max(tiles.partitions.length, meta.getTileBounds(zoom).getHeight.toInt))
-
-    val repartitioned = if (numExecutors > 0) {
-      logInfo("Repartitioning to " + numExecutors + " partitions")
-      tiles.repartition(numExecutors)
-    }
-    else {
-      //      logInfo("No need to repartition")
-      tiles
-    }
+    // repartition, because the tiles are partitioned by window, not by how big they are
+    val repartitioned = PartitionPlanner.repartition(tiles, PartitionPlanner.partitions(meta, zoom, context))
 
     (RasterRDD(repartitioned), meta)
   }
@@ -208,164 +296,497 @@ object IngestImage extends MrGeoDriver with Externalizable {
     true
   }
 
+  // GDAL 2.4 added /vsihdfs/, which reads HDFS files in place (through libhdfs)
+  private lazy val hasVsiHdfs = {
+    GDALUtils.register()
+    gdal.VersionInfo("VERSION_NUM").toInt >= 2040000
+  }
+
+  // The name GDAL can open the image by without it being copied, GDAL then only reads the parts of the
+  // file it needs.  Returns null if GDAL can't read the image in place.
+  private[ingest] def streamingPath(image: String): String = {
+    val uri = new URI(image)
+    uri.getScheme match {
+    case null => image
+    case "file" => uri.getPath
+    case "http" | "https" | "ftp" => "/vsicurl/" + image
+    case "hdfs" if hasVsiHdfs => "/vsihdfs/" + image
+    case _ => null
+    }
+  }
+
+  private def forceNodata(src: Dataset, nodata: Array[Number]) = {
+    val bands = src.GetRasterCount()
+
+    for (i <- 1 to bands) {
+      val band = src.GetRasterBand(i)
+      band.SetNoDataValue(nodata(i - 1).doubleValue())
+    }
+  }
+
+  // Opens the image and forces the nodata values, returns null if the image can't be opened.  Images
+  // GDAL can't read in place are read into memory, so they should only be opened by a single task
+  // (see readWindows())
+  private def openImage(image: String, nodata: Array[Number]): Dataset = {
+    val path = streamingPath(image)
+    val src = if (path == null || path == image) {
+      GDALUtils.open(image)
+    }
+    else {
+      gdal.Open(path, gdalconstConstants.GA_ReadOnly)
+    }
+
+    if (src != null) {
+      forceNodata(src, nodata)
+    }
+    else {
+      if (log.isDebugEnabled) {
+        logDebug("Could not open " + image)
+      }
+    }
+
+    src
+  }
+
+  // Splits the tiles covered by the image into blocks of (at most) TileBlock x TileBlock tiles.
+  private def makeWindows(image: String, imageBounds: Bounds, zoom: Int, tilesize: Int): Array[(String, TileBounds)] = {
+    val tiles = TMSUtils.boundsToTile(imageBounds, zoom, tilesize)
+    val windows = Array.newBuilder[(String, TileBounds)]
+
+    var n: Long = tiles.n
+    while (n >= tiles.s) {
+      val s = Math.max(tiles.s, n - TileBlock + 1)
+      var w: Long = tiles.w
+      while (w <= tiles.e) {
+        val e = Math.min(tiles.e, w + TileBlock - 1)
+        windows += ((image, new TileBounds(w, s, e, n)))
+        w += TileBlock
+      }
+      n -= TileBlock
+    }
+
+    windows.result()
+  }
+
+  private def makeWindows(image: String, zoom: Int, tilesize: Int, nodata: Array[Number]): Array[(String, TileBounds)] = {
+    try {
+      val src = openImage(image, nodata)
+      if (src != null) {
+        val imageBounds = try {
+          GDALUtils.getBounds(src)
+        }
+        finally {
+          GDALUtils.close(src)
+        }
+
+        val windows = makeWindows(image, imageBounds, zoom, tilesize)
+        if (log.isDebugEnabled) {
+          logDebug("Split " + image + " into " + windows.length + " ingest windows")
+        }
+        return windows
+      }
+    }
+    catch {
+      case ioe: IOException =>
+        // this can happen in "skip preprocessing" mode, the image is skipped
+        logWarning("Could not open " + image + ", skipping it", ioe)
+    }
+
+    Array.empty[(String, TileBounds)]
+  }
+
+  // Tiles an entire image, one window at a time, so only a single window is ever held in memory.  The
+  // image is closed once all the tiles have been read.
   private def makeTiles(image: String, zoom: Int, tilesize: Int,
+      categorical: Boolean, nodata: Array[Number]): Iterator[(TileIdWritable, RasterWritable)] = {
+
+    val src = try {
+      openImage(image, nodata)
+    }
+    catch {
+      case ioe: IOException =>
+        // this can happen in "skip preprocessing" mode, the image is skipped
+        logWarning("Could not open " + image + ", skipping it", ioe)
+        null
+    }
+
+    if (src == null) {
+      return Iterator.empty
+    }
+
+    val windows = try {
+      makeWindows(image, GDALUtils.getBounds(src), zoom, tilesize)
+    }
+    catch {
+      case e: Exception =>
+        GDALUtils.close(src)
+        throw e
+    }
+
+    new Iterator[(TileIdWritable, RasterWritable)] {
+      private val remaining = windows.iterator
+      private var tiles: Iterator[(TileIdWritable, RasterWritable)] = Iterator.empty
+      private var open = true
+
+      override def hasNext: Boolean = {
+        while (!tiles.hasNext && open && remaining.hasNext) {
+          val result = ListBuffer[(TileIdWritable, RasterWritable)]()
+          try {
+            makeTiles(src, image, remaining.next()._2, zoom, tilesize, categorical, result)
+          }
+          catch {
+            case e: Exception =>
+              close()
+              throw e
+          }
+          tiles = result.iterator
+        }
+
+        if (!tiles.hasNext) {
+          close()
+        }
+        tiles.hasNext
+      }
+
+      override def next(): (TileIdWritable, RasterWritable) = {
+        if (!hasNext) {
+          throw new NoSuchElementException
+        }
+        tiles.next()
+      }
+
+      private def close() = {
+        if (open) {
+          GDALUtils.close(src)
+          open = false
+
+          if (log.isDebugEnabled) {
+            logDebug("Ingested " + windows.length + " windows from " + image)
+          }
+        }
+      }
+    }
+  }
+
+  // Tiles a single window of an image
+  private def makeTiles(image: String, window: TileBounds, zoom: Int, tilesize: Int,
       categorical: Boolean, nodata: Array[Number]): TraversableOnce[(TileIdWritable, RasterWritable)] = {
 
     val result = ListBuffer[(TileIdWritable, RasterWritable)]()
 
-    //val start = System.currentTimeMillis()
-
-    // open the image
     try {
-      val src = GDALUtils.open(image)
+      val src = openImage(image, nodata)
 
       if (src != null) {
-        val datatype = src.GetRasterBand(1).getDataType
-        val datasize = gdal.GetDataTypeSize(datatype) / 8
+        try {
+          makeTiles(src, image, window, zoom, tilesize, categorical, result)
+        }
+        finally {
+          GDALUtils.close(src)
+        }
+      }
+    }
+    catch {
+      case ioe: IOException =>
+        // this can happen in "skip preprocessing" mode, the window is skipped
+        logWarning("Could not ingest " + image + " window " + window + ", skipping it", ioe)
+    }
 
-        val bands = src.GetRasterCount()
+    if (log.isDebugEnabled) {
+      logDebug("Ingested " + result.length + " tiles from " + image + " window " + window)
+    }
+    result.iterator
+  }
 
-        // force the nodata values...
-        for (i <- 1 to bands) {
-          val band = src.GetRasterBand(i)
-          band.SetNoDataValue(nodata(i - 1).doubleValue())
-        }
+  // Reads the source pixels under each window of an image GDAL can't read in place (see streamingPath()).
+  // Only this task copies the image, the windows' pixels are handed off to other tasks to be warped
+  // (see makeTiles(SourceWindow, ...)).  The copy is deleted once all the windows have been read.
+  @SuppressFBWarnings(value = Array("PATH_TRAVERSAL_IN"), justification = "Temp file for a copy of the image")
+  private def readWindows(image: String, zoom: Int, tilesize: Int, nodata: Array[Number]): Iterator[SourceWindow] = {
+    val path = new Path(new URI(image))
+    val local = File.createTempFile("mrgeo-ingest-", "-" + path.getName)
+    local.deleteOnExit()
 
-        val imageBounds = GDALUtils.getBounds(src)
-        val tiles = TMSUtils.boundsToTile(imageBounds, zoom, tilesize)
-        val tileBounds = TMSUtils.tileBounds(imageBounds, zoom, tilesize)
+    val src = try {
+      logInfo("Copying " + image + " to " + local)
+      HadoopFileUtils.getFileSystem(path).copyToLocalFile(false, path, new Path(local.toURI), true)
 
-        val w = tiles.width() * tilesize
-        val h = tiles.height() * tilesize
+      openImage(local.getPath, nodata)
+    }
+    catch {
+      case ioe: IOException =>
+        // this can happen in "skip preprocessing" mode, the image is skipped
+        logWarning("Could not open " + image + ", skipping it", ioe)
+        null
+    }
 
-        val res = TMSUtils.resolution(zoom, tilesize)
+    if (src == null) {
+      if (!local.delete()) {
+        logWarning("Could not delete local copy of " + image + ": " + local)
+      }
+      return Iterator.empty
+    }
 
-        //val scaledsize = w * h * bands * datasize
+    val windows = try {
+      makeWindows(image, GDALUtils.getBounds(src), zoom, tilesize)
+    }
+    catch {
+      case e: Exception =>
+        GDALUtils.close(src)
+        local.delete()
+        throw e
+    }
 
-        if (log.isDebugEnabled) {
-          logDebug("Image info:  " + image)
-          logDebug("  bands:  " + bands)
-          logDebug("  data type:  " + datatype)
-          logDebug("  width:  " + src.getRasterXSize)
-          logDebug("  height:  " + src.getRasterYSize)
-          logDebug("  bounds:  " + imageBounds)
-          logDebug("  tiles:  " + tiles)
-          logDebug("  tile width:  " + w)
-          logDebug("  tile height:  " + h)
+    new Iterator[SourceWindow] {
+      private val remaining = windows.iterator
+      private var pending: SourceWindow = null
+      private var open = true
+
+      override def hasNext: Boolean = {
+        while (pending == null && open && remaining.hasNext) {
+          try {
+            pending = readWindow(src, image, remaining.next()._2, zoom, tilesize)
+          }
+          catch {
+            case e: Exception =>
+              close()
+              throw e
+          }
+        }
+
+        if (pending == null) {
+          close()
         }
+        pending != null
+      }
 
-        // TODO:  Figure out chunking...
-        val scaled = GDALUtils.createEmptyMemoryRaster(src, w.toInt, h.toInt)
-
-        val xform = Array.ofDim[Double](6)
-
-        xform(0) = tileBounds.w /* top left x */
-        xform(1) = res /* w-e pixel resolution */
-        xform(2) = 0 /* 0 */
-        xform(3) = tileBounds.n /* top left y */
-        xform(4) = 0 /* 0 */
-        xform(5) = -res /* n-s pixel resolution (negative value) */
-
-        scaled.SetGeoTransform(xform)
-        scaled.SetProjection(GDALUtils.EPSG4326)
-
-
-        val resample =
-          if (categorical) {
-            // use gdalconstConstants.GRA_Mode for categorical, which may not exist in earlier versions of gdal,
-            // in which case we will use GRA_NearestNeighbour
-            try {
-              val mode = classOf[gdalconstConstants].getDeclaredField("GRA_Mode")
-              mode.getInt()
-            }
-            catch {
-              case _ : RuntimeException | _: Exception => gdalconstConstants.GRA_NearestNeighbour
-            }
+      override def next(): SourceWindow = {
+        if (!hasNext) {
+          throw new NoSuchElementException
+        }
+        val window = pending
+        pending = null
+        window
+      }
+
+      private def close() = {
+        if (open) {
+          GDALUtils.close(src)
+          open = false
+
+          if (!local.delete()) {
+            logWarning("Could not delete local copy of " + image + ": " + local)
           }
-          else {
-            gdalconstConstants.GRA_Bilinear
+          if (log.isDebugEnabled) {
+            logDebug("Read " + windows.length + " windows from " + image)
           }
+        }
+      }
+    }
+  }
 
-        gdal.ReprojectImage(src, scaled, src.GetProjection(), GDALUtils.EPSG4326, resample)
+  // Reads the source pixels under the window, plus a margin for the resampling kernel.  Returns null if
+  // the window misses the image.
+  private def readWindow(src: Dataset, image: String, window: TileBounds, zoom: Int, tilesize: Int): SourceWindow = {
+    val bounds = TMSUtils.tileToBounds(window, zoom, tilesize)
 
-        //    val time = System.currentTimeMillis() - start
-        //    println("scale: " + time)
+    val srcxform = src.GetGeoTransform
+    val inverse = Array.ofDim[Double](6)
+    gdal.InvGeoTransform(srcxform, inverse)
 
-        //    val band = scaled.GetRasterBand(1)
-        //    val minmax = Array.ofDim[Double](2)
-        //    band.ComputeRasterMinMax(minmax, 0)
+    val tx = new CoordinateTransformation(new SpatialReference(GDALUtils.EPSG4326),
+      new SpatialReference(src.GetProjection))
 
-        //GDALUtils.saveRaster(scaled, "/data/export/scaled.tif")
+    var minx = Double.MaxValue
+    var miny = Double.MaxValue
+    var maxx = -Double.MaxValue
+    var maxy = -Double.MaxValue
 
-        // close the image
-        GDALUtils.close(src)
+    // the edges of the window may be curved in the source projection, so sample points along them
+    var i: Int = 0
+    while (i <= EdgeSamples) {
+      val lon = bounds.w + bounds.width() * i / EdgeSamples
+      val lat = bounds.s + bounds.height() * i / EdgeSamples
+
+      for (pt <- Array(Array(lon, bounds.s), Array(lon, bounds.n), Array(bounds.w, lat), Array(bounds.e, lat))) {
+        val projected = if (tx != null) tx.TransformPoint(pt(0), pt(1)) else pt
+
+        val px = inverse(0) + projected(0) * inverse(1) + projected(1) * inverse(2)
+        val py = inverse(3) + projected(0) * inverse(4) + projected(1) * inverse(5)
+
+        minx = Math.min(minx, px)
+        miny = Math.min(miny, py)
+        maxx = Math.max(maxx, px)
+        maxy = Math.max(maxy, py)
+      }
+      i += 1
+    }
+
+    val x = Math.max(0, Math.floor(minx).toInt - WindowMargin)
+    val y = Math.max(0, Math.floor(miny).toInt - WindowMargin)
+    val w = Math.min(src.GetRasterXSize, Math.ceil(maxx).toInt + WindowMargin) - x
+    val h = Math.min(src.GetRasterYSize, Math.ceil(maxy).toInt + WindowMargin) - y
+
+    if (w <= 0 || h <= 0) {
+      return null
+    }
+
+    val bands = src.GetRasterCount()
+    val datatype = src.GetRasterBand(1).getDataType
+    val datasize = gdal.GetDataTypeSize(datatype) / 8
+
+    val data = Array.ofDim[Byte](w * h * bands * datasize)
+    val success = src.ReadRaster(x, y, w, h, w, h, datatype, data, null)
+    if (success != gdalconstConstants.CE_None) {
+      throw new IOException("Failed reading window " + window + " from " + image + " (error " + success + ")")
+    }
+
+    // the geotransform of the source pixels, moved to the upper left of the window
+    val xform = srcxform.clone()
+    xform(0) = srcxform(0) + x * srcxform(1) + y * srcxform(2)
+    xform(3) = srcxform(3) + x * srcxform(4) + y * srcxform(5)
+
+    new SourceWindow(image, window, w, h, bands, datatype, xform, src.GetProjection, data)
+  }
+
+  // Tiles a window from the source pixels read by readWindows()
+  private def makeTiles(window: SourceWindow, zoom: Int, tilesize: Int,
+      categorical: Boolean, nodata: Array[Number]): TraversableOnce[(TileIdWritable, RasterWritable)] = {
+
+    val result = ListBuffer[(TileIdWritable, RasterWritable)]()
+
+    val src = GDALUtils.createEmptyMemoryRaster(window.width, window.height, window.bands, window.datatype)
+    try {
+      src.SetGeoTransform(window.xform)
+      src.SetProjection(window.projection)
+      src.WriteRaster(0, 0, window.width, window.height, window.width, window.height, window.datatype,
+        window.data, null)
+      forceNodata(src, nodata)
+
+      makeTiles(src, window.image, window.window, zoom, tilesize, categorical, result)
+    }
+    finally {
+      GDALUtils.close(src)
+    }
+
+    if (log.isDebugEnabled) {
+      logDebug("Ingested " + result.length + " tiles from " + window.image + " window " + window.window)
+    }
+    result.iterator
+  }
+
+  private def makeTiles(src: Dataset, image: String, tiles: TileBounds, zoom: Int, tilesize: Int,
+      categorical: Boolean, result: ListBuffer[(TileIdWritable, RasterWritable)]) = {
 
-        val bandlist = Array.ofDim[Int](bands)
-        var x: Int = 0
-        while (x < bands) {
-          bandlist(x) = x + 1 // bands are ones based
-          x += 1
+    //val start = System.currentTimeMillis()
+
+    val datatype = src.GetRasterBand(1).getDataType
+    val datasize = gdal.GetDataTypeSize(datatype) / 8
+
+    val bands = src.GetRasterCount()
+
+    // the upper left tile gives us the upper left corner of the window
+    val tileBounds = TMSUtils.tileBounds(tiles.w, tiles.n, zoom, tilesize)
+
+    val w = tiles.width() * tilesize
+    val h = tiles.height() * tilesize
+
+    val res = TMSUtils.resolution(zoom, tilesize)
+
+    if (log.isDebugEnabled) {
+      logDebug("Image info:  " + image)
+      logDebug("  bands:  " + bands)
+      logDebug("  data type:  " + datatype)
+      logDebug("  width:  " + src.getRasterXSize)
+      logDebug("  height:  " + src.getRasterYSize)
+      logDebug("  tiles:  " + tiles)
+      logDebug("  tile width:  " + w)
+      logDebug("  tile height:  " + h)
+    }
+
+    // Only the window is warped, the warper works out (and only reads) the part of the source
+    // it needs for the destination, so the memory used is bounded by the window size, not the image
+    val scaled = GDALUtils.createEmptyMemoryRaster(src, w.toInt, h.toInt)
+    try {
+      val xform = Array.ofDim[Double](6)
+
+      xform(0) = tileBounds.w /* top left x */
+      xform(1) = res /* w-e pixel resolution */
+      xform(2) = 0 /* 0 */
+      xform(3) = tileBounds.n /* top left y */
+      xform(4) = 0 /* 0 */
+      xform(5) = -res /* n-s pixel resolution (negative value) */
+
+      scaled.SetGeoTransform(xform)
+      scaled.SetProjection(GDALUtils.EPSG4326)
+
+
+      val resample =
+        if (categorical) {
+          // use gdalconstConstants.GRA_Mode for categorical, which may not exist in earlier versions of gdal,
+          // in which case we will use GRA_NearestNeighbour
+          try {
+            val mode = classOf[gdalconstConstants].getDeclaredField("GRA_Mode")
+            mode.getInt()
+          }
+          catch {
+            case _ : RuntimeException | _: Exception => gdalconstConstants.GRA_NearestNeighbour
+          }
+        }
+        else {
+          gdalconstConstants.GRA_Bilinear
         }
 
+      gdal.ReprojectImage(src, scaled, src.GetProjection(), GDALUtils.EPSG4326, resample)
+
+      //    val time = System.currentTimeMillis() - start
+      //    println("scale: " + time)
 
-        val buffer = Array.ofDim[Byte](datasize * tilesize * tilesize * bands)
+      val bandlist = Array.ofDim[Int](bands)
+      var x: Int = 0
+      while (x < bands) {
+        bandlist(x) = x + 1 // bands are ones based
+        x += 1
+      }
 
-        var dty: Int = 0
-        while (dty < tiles.height.toInt) {
-          var dtx: Int = 0
-          while (dtx < tiles.width.toInt) {
 
-            //val start = System.currentTimeMillis()
+      val buffer = Array.ofDim[Byte](datasize * tilesize * tilesize * bands)
 
-            val tx: Long = dtx + tiles.w
-            val ty: Long = tiles.n - dty
+      var dty: Int = 0
+      while (dty < tiles.height.toInt) {
+        var dtx: Int = 0
+        while (dtx < tiles.width.toInt) {
 
-            val x: Int = dtx * tilesize
-            val y: Int = dty * tilesize
+          val tx: Long = dtx + tiles.w
+          val ty: Long = tiles.n - dty
 
-            val success = scaled.ReadRaster(x, y, tilesize, tilesize, tilesize, tilesize, datatype, buffer, null)
+          val x: Int = dtx * tilesize
+          val y: Int = dty * tilesize
 
-            if (success != gdalconstConstants.CE_None) {
-              println("Failed reading raster" + success)
-            }
+          val success = scaled.ReadRaster(x, y, tilesize, tilesize, tilesize, tilesize, datatype, buffer, null)
 
+          if (success != gdalconstConstants.CE_None) {
+            logError("Failed reading tile " + tx + ", " + ty + " from " + image + " (error " + success +
+                "), skipping it")
+          }
+          else {
             // switch the byte order...
             GDALUtils.swapBytes(buffer, datatype)
 
             val writable = RasterWritable.toWritable(buffer, tilesize, tilesize,
               bands, GDALUtils.toRasterDataBufferType(datatype))
 
-            // save the tile...
-            //        GDALUtils.saveRaster(RasterWritable.toRaster(writable),
-            //          "/data/export/tiles/tile-" + ty + "-" + tx, tx, ty, zoom, tilesize, GDALUtils.getnodata(scaled))
-
             result.append((new TileIdWritable(TMSUtils.tileid(tx, ty, zoom)), writable))
-
-
-            //val time = System.currentTimeMillis() - start
-            //println(tx + ", " + ty + ", " + time)
-            dtx += 1
           }
-          dty += 1
-        }
 
-        GDALUtils.close(scaled)
-      }
-      else {
-        if (log.isDebugEnabled) {
-          logDebug("Could not open " + image)
+          dtx += 1
         }
+        dty += 1
       }
     }
-    catch {
-      case ioe: IOException =>
-        ioe.printStackTrace()  // no op, this can happen in "skip preprocessing" mode
+    finally {
+      GDALUtils.close(scaled)
     }
-
-    if (log.isDebugEnabled) {
-      logDebug("Ingested " + result.length + " tiles from " + image)
-    }
-    result.iterator
   }
 
 
@@ -506,6 +927,8 @@ class IngestImage extends MrGeoJob with Externalizable {
   private[ingest] var categorical:Boolean = false
   private[ingest] var providerproperties:ProviderProperties = null
   private[ingest] var protectionlevel:String = null
+  private[ingest] var aggregator:Aggregator = null
+  private[ingest] var update:Boolean = false
 
 
   override def registerClasses(): Array[Class[_]] = {
@@ -515,6 +938,10 @@ class IngestImage extends MrGeoJob with Externalizable {
     classes += classOf[RasterWritable]
 
     classes += classOf[Array[String]]
+    classes += classOf[TileBounds]
+    classes += classOf[SourceWindow]
+    classes += classOf[Array[Double]]
+    classes += classOf[Array[Byte]]
 
     classes.result()
   }
@@ -554,17 +981,81 @@ class IngestImage extends MrGeoJob with Externalizable {
 
     providerproperties = ProviderProperties.fromDelimitedString(job.getSetting(IngestImage.ProviderProperties))
 
+    if (job.hasSetting(IngestImage.Aggregator)) {
+      aggregator = getClass.getClassLoader.loadClass(job.getSetting(IngestImage.Aggregator)).newInstance()
+          .asInstanceOf[Aggregator]
+    }
+
+    update = job.getSetting(IngestImage.Update, "false").toBoolean
+
     true
   }
 
 
   override def execute(context: SparkContext): Boolean = {
 
+    if (update) {
+      val dp = try {
+        DataProviderFactory.getMrsImageDataProvider(output, AccessMode.READ, providerproperties)
+      }
+      catch {
+        case e: DataProviderNotFound => null
+      }
+
+      if (dp != null) {
+        return updateExisting(context, dp)
+      }
+
+      logInfo(output + " does not exist, ingesting it instead of updating it")
+    }
+
     val ingested = IngestImage.ingest(context, inputs, zoom, tilesize, categorical, nodata)
 
     val dp = DataProviderFactory.getMrsImageDataProvider(output, AccessMode.OVERWRITE, providerproperties)
+
+    if (aggregator != null) {
+      // the tiles are used to save the max level and to build the pyramid, so keep them around
+      ingested._1.persist(StorageLevel.MEMORY_AND_DISK_SER)
+    }
+
     SparkUtils.saveMrsPyramid(ingested._1, dp, ingested._2, zoom, context.hadoopConfiguration, providerproperties)
 
+    if (aggregator != null) {
+      BuildPyramid.build(ingested._1, zoom, dp, aggregator, context, providerproperties)
+      ingested._1.unpersist()
+    }
+
+    true
+  }
+
+  private def updateExisting(context: SparkContext, dp: MrsImageDataProvider): Boolean = {
+    if (!IngestImage.supportsUpdate(dp)) {
+      logError("The data provider for " + output + " can not update an existing image")
+      return false
+    }
+
+    // the new tiles need to line up with the existing ones
+    val metadata = dp.getMetadataReader.read()
+    val maxzoom = metadata.getMaxZoomLevel
+    if (maxzoom != zoom || metadata.getTilesize != tilesize) {
+      logInfo("Updating " + output + " at its zoom level (" + maxzoom + ") and tilesize (" + metadata.getTilesize +
+          ") instead of " + zoom + " and " + tilesize)
+    }
+
+    val ingested = IngestImage.ingest(context, inputs, maxzoom, metadata.getTilesize, categorical, nodata)
+
+    // the aggregator is null when the pyramid isn't being built, the existing levels still need one
+    val agg = if (aggregator != null) {
+      aggregator
+    }
+    else if (categorical) {
+      new ModeAggregator
+    }
+    else {
+      new MeanAggregator
+    }
+    SparkUtils.updateMrsPyramid(ingested._1, dp, maxzoom, ingested._2.getBounds, agg, context.hadoopConfiguration)
+
     true
   }
 
@@ -579,3 +1070,10 @@ class IngestImage extends MrGeoJob with Externalizable {
   override def writeExternal(out: ObjectOutput) {
   }
 }
+
+// The source pixels under an ingest window, along with their geotransform and projection (see
+// IngestImage.readWindows())
+@SerialVersionUID(1L)
+private[ingest] class SourceWindow(val image: String, val window: TileBounds, val width: Int, val height: Int,
+    val bands: Int, val datatype: Int, val xform: Array[Double], val projection: String,
+    val data: Array[Byte]) extends Serializable
@@ -17,23 +17,52 @@
 package org.mrgeo.job
 
 import com.esotericsoftware.kryo.Kryo
+import org.apache.spark.SparkEnv
 import org.apache.spark.serializer.KryoRegistrator
-import org.mrgeo.data.raster.RasterWritable
+import org.mrgeo.data.raster.{RasterWritable, TileCounters}
 import org.mrgeo.data.tile.TileIdWritable
-import org.mrgeo.job.serializers.{PixelSerializer, BoundsSerializer, RasterWritableSerializer}
+import org.mrgeo.data.vector.FeatureIdWritable
+import org.mrgeo.geometry._
+import org.mrgeo.job.serializers._
+import org.mrgeo.spark.MrGeoListener
 import org.mrgeo.utils.tms.{Pixel, Bounds}
 
+object KryoRegistrar {
+  final val COMPRESS_RASTERS = "spark.mrgeo.kryo.compress.rasters"
+}
+
 class KryoRegistrar extends KryoRegistrator
 {
   override def registerClasses(kryo: Kryo) {
     //    kryo.setReferences(false)
 
-    kryo.register(classOf[TileIdWritable])
-    kryo.register(classOf[RasterWritable], new RasterWritableSerializer)
+    // set from mrgeo.conf by MrGeoJob, when registering the classes
+    val compress = Option(SparkEnv.get).exists(_.conf.getBoolean(KryoRegistrar.COMPRESS_RASTERS, false))
+
+    // the executors' side of MrGeoListener's instrumentation
+    if (Option(SparkEnv.get).exists(_.conf.getBoolean(MrGeoListener.INSTRUMENTATION, false))) {
+      TileCounters.enable()
+    }
+
+    kryo.register(classOf[TileIdWritable], new TileIdWritableSerializer)
+    kryo.register(classOf[RasterWritable], new RasterWritableSerializer(compress))
+    kryo.register(classOf[FeatureIdWritable], new FeatureIdWritableSerializer)
 
     kryo.register(classOf[Bounds], new BoundsSerializer)
     kryo.register(classOf[Pixel], new PixelSerializer)
 
+    val geometry = new GeometrySerializer
+    kryo.register(classOf[PointImpl], geometry)
+    kryo.register(classOf[LineStringImpl], geometry)
+    kryo.register(classOf[LinearRingImpl], geometry)
+    kryo.register(classOf[PolygonImpl], geometry)
+    kryo.register(classOf[GeometryCollectionImpl], geometry)
+
+    val packed = new PackedGeometrySerializer
+    kryo.register(classOf[PackedLineString], packed)
+    kryo.register(classOf[PackedLinearRing], packed)
+    kryo.register(classOf[PackedPolygon], packed)
+
     kryo.register(classOf[Array[Long]])
     kryo.register(Class.forName("org.apache.spark.util.BoundedPriorityQueue"))
 
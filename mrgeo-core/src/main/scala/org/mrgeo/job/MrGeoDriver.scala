@@ -168,8 +168,9 @@ abstract class MrGeoDriver extends Logging {
 
           val conf = MrGeoDriver.prepareJob(job)
 
-          // yarn needs to be run in its own client code, so we'll set up it up separately
-          if (job.isYarn) {
+          // yarn needs to be run in its own client code, so we'll set up it up separately (unless
+          // there is a shared context, which runs in this process as a yarn client)
+          if (job.isYarn && !MrGeoJobServer.isEnabled) {
 
             val jobclass = cl.loadClass(classOf[MrGeoYarnDriver].getCanonicalName)
             val jobinstance = jobclass.newInstance().asInstanceOf[MrGeoYarnDriver]
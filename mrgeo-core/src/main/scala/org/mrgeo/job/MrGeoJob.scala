@@ -24,12 +24,26 @@ import org.mrgeo.data.tile.TileIdWritable
 import org.mrgeo.hdfs.tile.FileSplit.FileSplitInfo
 import org.mrgeo.hdfs.utils.HadoopFileUtils
 import org.mrgeo.image.ImageStats
+import org.mrgeo.spark.MrGeoListener
 import org.mrgeo.utils.tms.Bounds
 
 import scala.collection.mutable
 import scala.reflect.ClassTag
 
 object MrGeoJob extends Logging {
+    // runs the job, with instrumentation if it's turned on
+    private[job] def execute(mrgeoJob: MrGeoJob, job: JobArguments, context: SparkContext): Boolean = {
+      val start = System.currentTimeMillis()
+      MrGeoListener.start(context)
+      try {
+        mrgeoJob.execute(context)
+      }
+      finally {
+        MrGeoListener.report(context, job.name, start)
+      }
+    }
+
+
     def setupSerializer(mrgeoJob: MrGeoJob, conf: SparkConf) = {
       val classes = Array.newBuilder[Class[_]]
 
@@ -78,6 +92,8 @@ object MrGeoJob extends Logging {
 
           conf.set("spark.kryo.classesToRegister", all.mkString(","))
           conf.set("spark.kryo.registrator", classOf[KryoRegistrar].getName)
+          conf.set(KryoRegistrar.COMPRESS_RASTERS,
+            MrGeoProperties.getInstance().getProperty(MrGeoConstants.MRGEO_KRYO_COMPRESS_RASTERS, "false"))
           conf.set("spark.serializer", classOf[KryoSerializer].getName)
         }
         catch {
@@ -108,22 +124,27 @@ abstract class MrGeoJob extends Logging {
     logInfo("Setting up job")
     setup(job, conf)
 
-    val context = SparkContext.getOrCreate(conf)
+    MrGeoListener.setup(conf)
 
-    //context.addSparkListener(new MrGeoListener(context))
+    if (MrGeoJobServer.isEnabled) {
+      MrGeoJobServer.run(this, job, conf)
+    }
+    else {
+      val context = SparkContext.getOrCreate(conf)
 
-    val checkpointDir = HadoopFileUtils.createJobTmp(context.hadoopConfiguration).toString
+      val checkpointDir = HadoopFileUtils.createJobTmp(context.hadoopConfiguration).toString
 
-    try {
-      logInfo("Running job")
-      context.setCheckpointDir(checkpointDir)
-      execute(context)
-    }
-    finally {
-      logInfo("Stopping spark context")
-      context.stop()
+      try {
+        logInfo("Running job")
+        context.setCheckpointDir(checkpointDir)
+        MrGeoJob.execute(this, job, context)
+      }
+      finally {
+        logInfo("Stopping spark context")
+        context.stop()
 
-      HadoopFileUtils.delete(context.hadoopConfiguration, checkpointDir)
+        HadoopFileUtils.delete(context.hadoopConfiguration, checkpointDir)
+      }
     }
 
     teardown(job, conf)
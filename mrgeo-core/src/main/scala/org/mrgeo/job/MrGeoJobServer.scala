@@ -0,0 +1,216 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.job
+
+import java.util.concurrent.atomic.AtomicLong
+
+import org.apache.hadoop.fs.Path
+import org.apache.spark.scheduler.{SparkListener, SparkListenerJobStart}
+import org.apache.spark.{Logging, SparkConf, SparkContext}
+import org.mrgeo.core.{MrGeoConstants, MrGeoProperties}
+import org.mrgeo.hdfs.utils.HadoopFileUtils
+
+import scala.collection.mutable
+
+/**
+  * A resident SparkContext that MrGeo jobs are run in, instead of each job creating (and
+  * stopping) its own.  Executor startup, which on YARN can take longer than the job itself, is
+  * only paid by the first job.  It is turned on with shared.spark.context=true in mrgeo.conf,
+  * otherwise each job still gets its own context.
+  *
+  * Jobs run concurrently, with the FAIR scheduler, in a pool per job type unless the submitter
+  * asked for a pool (e.g. per tenant).  Each job runs in its own Spark job group, so it can be
+  * cancelled.
+  *
+  * Nothing is meant to stay persisted between jobs.  The RDDs each job's Spark jobs use are
+  * tracked by job group (from the scheduler's job start events), and when a job finishes its
+  * persisted RDDs and checkpoint files are released, unless another running job uses them too.
+  * When the last running job finishes, anything left (e.g. RDDs that were persisted but never
+  * computed) is unpersisted and the checkpoint directory is replaced.
+  */
+object MrGeoJobServer extends Logging {
+  final val POOL_PROPERTY = "spark.scheduler.pool"
+
+  private val nextGroup = new AtomicLong(0)
+
+  // set by the JobManager on the thread running the job
+  private val currentJob = new ThreadLocal[(Long, String)]
+
+  private var context:SparkContext = null
+  private var checkpointDir:String = null
+  private var activeJobs = 0
+
+  // the RDD ids used by the running job groups
+  private val groupRdds = mutable.HashMap.empty[String, mutable.Set[Int]]
+
+  // records the RDDs of each Spark job, only for the groups that are running in the server
+  private object RddTracker extends SparkListener {
+    override def onJobStart(jobStart: SparkListenerJobStart): Unit = {
+      val group = Option(jobStart.properties).map(_.getProperty("spark.jobGroup.id")).orNull
+      if (group != null) {
+        MrGeoJobServer.synchronized {
+          groupRdds.get(group).foreach(rdds => jobStart.stageInfos.foreach(stage => rdds ++= stage.rddInfos.map(_.id)))
+        }
+      }
+    }
+  }
+
+  def isEnabled:Boolean = {
+    MrGeoProperties.getInstance().getProperty(MrGeoConstants.MRGEO_SHARED_CONTEXT, "false").equals("true")
+  }
+
+  /**
+    * Associates the calling thread with a JobManager job, so the Spark jobs it runs can be
+    * cancelled by that id, and run in the pool (null for the job type's pool).
+    */
+  def setCurrentJob(jobId:Long, pool:String):Unit = {
+    currentJob.set((jobId, pool))
+  }
+
+  def clearCurrentJob():Unit = {
+    currentJob.remove()
+  }
+
+  /**
+    * Cancels the running Spark jobs of a JobManager job.
+    *
+    * @return false if there is no shared context (so nothing to cancel)
+    */
+  def cancel(jobId:Long):Boolean = synchronized {
+    if (context != null) {
+      logInfo("Cancelling job " + jobId)
+      context.cancelJobGroup(groupName(jobId))
+      true
+    }
+    else {
+      false
+    }
+  }
+
+  /**
+    * Stops the shared context, e.g. when the web tier shuts down.  The next job starts a new one.
+    */
+  def stop():Unit = synchronized {
+    if (context != null) {
+      logInfo("Stopping shared spark context")
+      context.stop()
+      HadoopFileUtils.delete(context.hadoopConfiguration, checkpointDir)
+
+      context = null
+      checkpointDir = null
+      groupRdds.clear()
+    }
+  }
+
+  private[job] def run(job:MrGeoJob, args:JobArguments, conf:SparkConf):Unit = {
+    val (group, pool) = Option(currentJob.get()) match {
+    case Some((jobId, p)) => (groupName(jobId), p)
+    case _ => ("mrgeo-local-" + nextGroup.getAndIncrement, null)
+    }
+
+    val ctx = start(conf, group)
+
+    try {
+      ctx.setJobGroup(group, args.name, interruptOnCancel = true)
+      ctx.setLocalProperty(POOL_PROPERTY,
+        if (pool != null) pool else args.getSetting(POOL_PROPERTY, job.getClass.getSimpleName))
+
+      logInfo("Running job " + args.name + " in shared spark context (group " + group + ")")
+      MrGeoJob.execute(job, args, ctx)
+    }
+    finally {
+      ctx.clearJobGroup()
+      ctx.setLocalProperty(POOL_PROPERTY, null)
+
+      finish(ctx, group)
+    }
+  }
+
+  // the RDDs seen so far for a running job group
+  private[job] def jobRdds(group:String):Set[Int] = synchronized {
+    groupRdds.get(group).map(_.toSet).getOrElse(Set.empty)
+  }
+
+  private def groupName(jobId:Long) = "mrgeo-job-" + jobId
+
+  private def start(conf:SparkConf, group:String):SparkContext = synchronized {
+    if (context == null) {
+      logInfo("Starting shared spark context")
+
+      conf.set("spark.scheduler.mode", "FAIR")
+
+      // the shared context lives in this process, so the driver can't be run inside YARN
+      if (conf.get("spark.master", "").equals("yarn-cluster")) {
+        conf.setMaster("yarn-client")
+      }
+
+      context = SparkContext.getOrCreate(conf)
+      context.addSparkListener(RddTracker)
+
+      checkpointDir = HadoopFileUtils.createJobTmp(context.hadoopConfiguration).toString
+      context.setCheckpointDir(checkpointDir)
+    }
+    else {
+      // The context's conf is fixed, only the jars can be added to it.  Kryo registration is
+      // fixed too, but it doesn't require registration, so other classes still serialize.
+      conf.getOption("spark.jars").foreach(_.split(",").filter(jar => jar.nonEmpty && !context.jars.contains(jar))
+          .foreach(context.addJar))
+    }
+
+    activeJobs += 1
+    groupRdds.put(group, mutable.Set.empty[Int])
+    context
+  }
+
+  private def finish(ctx:SparkContext, group:String):Unit = synchronized {
+    activeJobs -= 1
+    val used = groupRdds.remove(group).getOrElse(mutable.Set.empty[Int])
+
+    if (ctx eq context) {
+      if (activeJobs == 0) {
+        logInfo("Shared spark context is idle, cleaning up")
+
+        ctx.getPersistentRDDs.values.foreach(_.unpersist(blocking = false))
+
+        HadoopFileUtils.delete(ctx.hadoopConfiguration, checkpointDir)
+        checkpointDir = HadoopFileUtils.createJobTmp(ctx.hadoopConfiguration).toString
+        ctx.setCheckpointDir(checkpointDir)
+      }
+      else {
+        // the running jobs' RDDs are theirs, even if this job used them
+        val owned = used -- groupRdds.values.flatten
+        logInfo("Releasing " + owned.size + " RDDs of job group " + group)
+        release(ctx, owned)
+      }
+    }
+  }
+
+  private def release(ctx:SparkContext, rdds:scala.collection.Set[Int]):Unit = {
+    ctx.getPersistentRDDs.filterKeys(rdds.contains).values.foreach(_.unpersist(blocking = false))
+
+    // checkpoint files are named by RDD id (rdd-<id>), in a directory under the one we set
+    ctx.getCheckpointDir.foreach(dir => {
+      val path = new Path(dir)
+      val fs = HadoopFileUtils.getFileSystem(ctx.hadoopConfiguration, path)
+      if (fs.exists(path)) {
+        fs.listStatus(path).map(_.getPath).filter(file => {
+          file.getName.startsWith("rdd-") && rdds.contains(file.getName.substring(4).toInt)
+        }).foreach(fs.delete(_, true))
+      }
+    })
+  }
+}
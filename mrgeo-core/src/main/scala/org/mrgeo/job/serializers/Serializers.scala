@@ -16,25 +16,97 @@
 
 package org.mrgeo.job.serializers
 
+import java.io.{DataInputStream, DataOutputStream}
+
 import com.esotericsoftware.kryo.io.{Input, Output}
-import com.esotericsoftware.kryo.{Kryo, Serializer}
+import com.esotericsoftware.kryo.{Kryo, KryoException, Serializer}
+import net.jpountz.lz4.LZ4Factory
 import org.mrgeo.data.raster.RasterWritable
+import org.mrgeo.data.tile.TileIdWritable
+import org.mrgeo.data.vector.FeatureIdWritable
+import org.mrgeo.geometry._
 import org.mrgeo.utils.tms.{Pixel, Bounds}
 
 class Serializers {}
 
-class RasterWritableSerializer extends Serializer[RasterWritable] {
-  override def write(kryo: Kryo, output: Output, rw: RasterWritable) = {
+/**
+  * Writes exactly the raster's bytes (a reused BytesWritable's backing array can be longer).  With
+  * compress, tiles are LZ4 compressed in the stream, unless that doesn't make them smaller.  A flag
+  * per tile says which, so either setting reads both.
+  */
+class RasterWritableSerializer(compress:Boolean) extends Serializer[RasterWritable] {
+  private lazy val lz4 = LZ4Factory.fastestInstance()
+
+  def this() = this(false)
 
+  override def write(kryo: Kryo, output: Output, rw: RasterWritable) = {
+    val length = rw.getLength
     val bytes = rw.getBytes
-    output.writeInt(bytes.length)
-    output.writeBytes(bytes)
+
+    if (compress && length > 0) {
+      val compressor = lz4.fastCompressor()
+      val compressed = new Array[Byte](compressor.maxCompressedLength(length))
+      val clength = compressor.compress(bytes, 0, length, compressed, 0, compressed.length)
+
+      if (clength < length) {
+        output.writeBoolean(true)
+        output.writeInt(length, true)
+        output.writeInt(clength, true)
+        output.writeBytes(compressed, 0, clength)
+      }
+      else {
+        output.writeBoolean(false)
+        output.writeInt(length, true)
+        output.writeBytes(bytes, 0, length)
+      }
+    }
+    else {
+      output.writeBoolean(false)
+      output.writeInt(length, true)
+      output.writeBytes(bytes, 0, length)
+    }
   }
 
   override def read(kryo: Kryo, input: Input, `type`: Class[RasterWritable]): RasterWritable = {
+    val compressed = input.readBoolean()
+    val length = input.readInt(true)
+
+    if (compressed) {
+      val clength = input.readInt(true)
+      val bytes = new Array[Byte](length)
+      lz4.fastDecompressor().decompress(input.readBytes(clength), 0, bytes, 0, length)
+      new RasterWritable(bytes)
+    }
+    else {
+      new RasterWritable(input.readBytes(length))
+    }
+  }
+}
+
+/**
+  * Tile ids are non-negative, and usually small enough to fit a varlong in fewer than 8 bytes.
+  */
+class TileIdWritableSerializer extends Serializer[TileIdWritable] {
+  override def write(kryo: Kryo, output: Output, id: TileIdWritable): Unit = {
+    output.writeLong(id.get(), true)
+  }
 
-    val length = input.readInt()
-    new RasterWritable(input.readBytes(length))
+  override def read(kryo: Kryo, input: Input, `type`: Class[TileIdWritable]): TileIdWritable = {
+    new TileIdWritable(input.readLong(true))
+  }
+}
+
+/**
+  * Feature ids are often -1 (the input format doesn't have one), so they are zig-zag encoded,
+  * making -1 a single byte.
+  */
+class FeatureIdWritableSerializer extends Serializer[FeatureIdWritable] {
+  override def write(kryo: Kryo, output: Output, id: FeatureIdWritable): Unit = {
+    output.writeLong(id.get(), false)
+  }
+
+  override def read(kryo: Kryo, input: Input, `type`: Class[FeatureIdWritable]): FeatureIdWritable = {
+    new FeatureIdWritable(input.readLong(false))
   }
 }
 
@@ -61,3 +133,187 @@ class PixelSerializer extends Serializer[Pixel] {
     new Pixel(input.readLong(), input.readLong())
   }
 }
+
+/**
+  * Writes (unpacked) geometries with GeometryCodec, straight into Kryo's buffers.  The streams
+  * don't buffer, so they are safe to wrap around the Kryo input/output for each geometry.
+  */
+class GeometrySerializer extends Serializer[Geometry] {
+  override def write(kryo: Kryo, output: Output, geometry: Geometry): Unit = {
+    GeometryCodec.write(geometry, new DataOutputStream(output))
+  }
+
+  override def read(kryo: Kryo, input: Input, `type`: Class[Geometry]): Geometry = {
+    GeometryCodec.read(new DataInputStream(input))
+  }
+}
+
+/**
+  * Writes packed geometries as the attributes followed by the raw coordinates (and ring offsets).
+  * The attributes are written against the geometry's attribute schema (see AttributeDictionary):
+  * the schema id, then the columns from the schema by index and any others by name.
+  * <p>
+  * When reading, geometries whose columns are all in the schema share the schema as their
+  * dictionary, and geometries with the same other keys share a dictionary extending the schema.
+  * The schema has to be known in this JVM (see VectorRDD.register()).  Values are interned per
+  * serializer, a Kryo instance is only used by one thread at a time, so none of this needs to be
+  * synchronized.
+  */
+class PackedGeometrySerializer extends Serializer[PackedGeometry] {
+  private val MaxDictionaries = 1024
+
+  private var schema:AttributeDictionary = AttributeDictionary.EMPTY
+  private val interned = new java.util.HashMap[String, String]()
+  // the dictionaries for keys outside the schema, by schema id and keys
+  private val dictionaries = new java.util.HashMap[String, AttributeDictionary]()
+
+  private def extended(key:String, names:Array[String]):AttributeDictionary = {
+    val existing = dictionaries.get(key)
+    if (existing != null) {
+      existing
+    }
+    else {
+      if (dictionaries.size() >= MaxDictionaries) {
+        dictionaries.clear()
+      }
+
+      val dictionary = new AttributeDictionary(schema)
+      names.foreach(name => if (name != null) dictionary.column(name))
+      dictionaries.put(key, dictionary)
+      dictionary
+    }
+  }
+
+  private def intern(value:String):String = {
+    val existing = interned.get(value)
+    if (existing != null) {
+      existing
+    }
+    else {
+      if (interned.size() >= AttributeDictionary.MAX_INTERNED_VALUES) {
+        interned.clear()
+      }
+      interned.put(value, value)
+      value
+    }
+  }
+
+  override def write(kryo: Kryo, output: Output, geometry: PackedGeometry): Unit = {
+    output.writeByte(geometry.`type`().ordinal())
+
+    val dictionary = geometry.getDictionary
+    output.writeLong(dictionary.getId)
+
+    val values = geometry.getValues
+    val count = if (values == null) 0 else values.count(_ != null)
+    output.writeInt(count, true)
+    if (count > 0) {
+      var i:Int = 0
+      while (i < values.length) {
+        if (values(i) != null) {
+          // schema columns are written as index + 1, others as 0 and the key
+          if (i < dictionary.getSchemaSize) {
+            output.writeInt(i + 1, true)
+          }
+          else {
+            output.writeInt(0, true)
+            output.writeString(dictionary.key(i))
+          }
+          output.writeString(values(i))
+        }
+        i += 1
+      }
+    }
+
+    geometry match {
+    case line: PackedLineString =>
+      // only write the points used by this line, rings can be views into a polygon's coordinates
+      output.writeInt(line.getNumPoints, true)
+      var i:Int = 0
+      while (i < line.getNumPoints) {
+        output.writeDouble(line.getX(i))
+        output.writeDouble(line.getY(i))
+        i += 1
+      }
+    case polygon: PackedPolygon =>
+      val offsets = polygon.getRingOffsets
+      output.writeInt(offsets.length, true)
+      offsets.foreach(offset => output.writeInt(offset, true))
+
+      val coords = polygon.getCoordinates
+      output.writeInt(coords.length, true)
+      coords.foreach(output.writeDouble)
+    }
+  }
+
+  override def read(kryo: Kryo, input: Input, `type`: Class[PackedGeometry]): PackedGeometry = {
+    val geomtype = Geometry.Type.values()(input.readByte())
+
+    val id = input.readLong()
+    if (id != schema.getId) {
+      val known = AttributeDictionary.getSchema(id)
+      if (known == null) {
+        throw new KryoException("Unknown attribute schema " + id + ", packed geometries need to be read " +
+            "through a VectorRDD, or with its schemas registered (see VectorRDD.register())")
+      }
+      schema = known
+    }
+
+    var dictionary = schema
+    val count = input.readInt(true)
+    val values = if (count > 0) {
+      // schema columns are read as their index, others by name (null for the schema columns)
+      val columns = new Array[Int](count)
+      val names = new Array[String](count)
+      val read = new Array[String](count)
+      var extra:java.lang.StringBuilder = null
+
+      var i:Int = 0
+      while (i < count) {
+        val index = input.readInt(true)
+        if (index > 0) {
+          columns(i) = index - 1
+        }
+        else {
+          columns(i) = -1
+          names(i) = input.readString()
+          if (extra == null) {
+            extra = new java.lang.StringBuilder(java.lang.Long.toString(schema.getId))
+          }
+          extra.append(0.toChar).append(names(i))
+        }
+        read(i) = intern(input.readString())
+        i += 1
+      }
+
+      // geometries with the same keys outside the schema share a dictionary
+      if (extra != null) {
+        dictionary = extended(extra.toString, names)
+      }
+
+      val packed = new Array[String](dictionary.size())
+      i = 0
+      while (i < count) {
+        packed(if (columns(i) >= 0) columns(i) else dictionary.find(names(i))) = read(i)
+        i += 1
+      }
+      packed
+    }
+    else {
+      null
+    }
+
+    geomtype match {
+    case Geometry.Type.POLYGON =>
+      val offsets = Array.fill[Int](input.readInt(true))(input.readInt(true))
+      val coords = Array.fill[Double](input.readInt(true))(input.readDouble())
+      PackedGeometry.createPolygon(coords, offsets, dictionary, values)
+    case Geometry.Type.LINEARRING =>
+      val coords = Array.fill[Double](input.readInt(true) * 2)(input.readDouble())
+      PackedGeometry.createLinearRing(coords, dictionary, values)
+    case _ =>
+      val coords = Array.fill[Double](input.readInt(true) * 2)(input.readDouble())
+      PackedGeometry.createLineString(coords, dictionary, values)
+    }
+  }
+}
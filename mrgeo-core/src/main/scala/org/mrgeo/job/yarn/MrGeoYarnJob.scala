@@ -23,6 +23,7 @@ import org.apache.hadoop.fs.Path
 import org.apache.spark.{Logging, SparkContext}
 import org.mrgeo.hdfs.utils.HadoopFileUtils
 import org.mrgeo.job.{JobArguments, MrGeoJob}
+import org.mrgeo.spark.MrGeoListener
 import org.mrgeo.utils.SparkUtils
 
 @SuppressFBWarnings(value=Array("ST_WRITE_TO_STATIC_FROM_INSTANCE_METHOD"), justification = "Scala generated code")
@@ -125,17 +126,18 @@ object MrGeoYarnJob extends Logging {
 
         logInfo("Setting up job: " + job.name)
         if (mrgeo.setup(job, conf)) {
+          MrGeoListener.setup(conf)
+
           logInfo("SparkConf parameters")
           conf.getAll.foreach(kv => {logDebug("  " + kv._1 + ": " + kv._2)})
 
           val context = SparkContext.getOrCreate(conf)
 
-          //context.addSparkListener(new MrGeoListener)
           val checkpointDir = HadoopFileUtils.createJobTmp(context.hadoopConfiguration).toString
           try {
             logInfo("Running job: " + job.name)
             context.setCheckpointDir(checkpointDir)
-            if (!mrgeo.execute(context)) {
+            if (!MrGeoJob.execute(mrgeo, job, context)) {
               logError("Error in execute")
             }
           }
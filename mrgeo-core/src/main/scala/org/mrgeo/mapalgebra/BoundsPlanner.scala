@@ -0,0 +1,92 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.mapalgebra
+
+import org.apache.spark.Logging
+import org.mrgeo.mapalgebra.parser.{ParserFunctionNode, ParserNode}
+import org.mrgeo.mapalgebra.raster.MrsPyramidMapOp
+import org.mrgeo.utils.tms.Bounds
+
+import scala.collection.JavaConversions._
+import scala.collection.mutable
+
+/**
+  * Works out, before anything is loaded, the area of each input pyramid the expression needs,
+  * and limits the pyramid's MrsPyramidMapOp to it, so only the splits and tiles intersecting it
+  * are read.
+  *
+  * The area needed from a map op is the union of what each of its readers need, and everything
+  * for the saved map op and map ops nothing reads.  A reader that implements InputBounds (e.g.
+  * crop, or pixel by pixel math) says what it needs of each input for the area needed of its own
+  * output; any other reader needs all of its inputs.
+  */
+class BoundsPlanner(variables: String => Option[ParserNode]) extends Logging {
+
+  def plan(nodes: Array[ParserNode], saved: Option[MapOp]): Unit = {
+    val functions = mutable.ArrayBuffer.empty[ParserFunctionNode]
+    nodes.foreach(walk(_, functions))
+
+    // None is everything
+    val required = mutable.Map.empty[MapOp, Option[Bounds]]
+    saved.foreach(required.put(_, None))
+
+    // readers come after what they read, so a map op has all of its readers' needs by the time
+    // it is reached
+    functions.reverseIterator.foreach(function => {
+      val mapop = function.getMapOp
+      val bounds = required.getOrElse(mapop, None)
+
+      function.getChildren.zipWithIndex.foreach(child => {
+        MapOp.decodeToMapOp(child._1, variables).foreach(input => {
+          val needed = mapop match {
+          case ib: InputBounds => ib.inputBounds(child._2, bounds)
+          case _ => None
+          }
+
+          required.put(input, required.get(input) match {
+          case Some(prev) => union(prev, needed)
+          case None => needed
+          })
+        })
+      })
+    })
+
+    required.foreach {
+    case (pyramid: MrsPyramidMapOp, Some(bounds)) =>
+      logInfo("Limiting an input image to " + bounds)
+      pyramid.setBounds(bounds)
+    case _ =>
+    }
+  }
+
+  private def union(a: Option[Bounds], b: Option[Bounds]): Option[Bounds] = {
+    (a, b) match {
+    case (Some(ba), Some(bb)) => Some(ba.union(bb))
+    case _ => None
+    }
+  }
+
+  // the map op function nodes, children first
+  private def walk(node: ParserNode, functions: mutable.ArrayBuffer[ParserFunctionNode]): Unit = {
+    node.getChildren.foreach(walk(_, functions))
+
+    node match {
+    case function: ParserFunctionNode if function.getMapOp != null => functions += function
+    case _ =>
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.mapalgebra
+
+import org.apache.spark.Logging
+import org.mrgeo.mapalgebra.parser.{ParserConstantNode, ParserFunctionNode, ParserNode, ParserVariableNode}
+
+import scala.collection.JavaConversions._
+import scala.collection.mutable
+
+/**
+  * Rewrites a parsed expression before its map ops are built:
+  *
+  *   - constant-only arithmetic is folded, "[a] * (2 + 3)" becomes "[a] * 5"
+  *   - repeated subexpressions are only computed once, in "slope([dem]) * 2 + slope([dem])" the
+  *     second slope() is replaced with a variable holding the first one
+  *
+  * Identities (x + 0, x * 1, ...) are kept: the math map op they build converts its input to its
+  * own output type and nodata, so it isn't a no-op, and "[a] + 0" is the usual way to get a copy
+  * of an image.
+  *
+  * Subexpressions are matched by structure (function name and arguments), across all the lines of
+  * the expression.  The replacement variables come from define(), which must make them findable
+  * through variables(), like any other variable.
+  *
+  * Lines must be optimized in order, each one before its map ops are built.
+  */
+class ExpressionOptimizer(variables: String => Option[ParserNode],
+    define: ParserNode => ParserVariableNode) extends Logging {
+
+  // functions with side effects, never shared
+  private val unique = Set("=", "save", "export")
+
+  // structure -> first occurrence, and the variable replacing the others
+  private val subexpressions = mutable.Map.empty[String, ParserNode]
+  private val replacements = mutable.Map.empty[String, String]
+
+  // ParserNode doesn't override equals(), so these are by identity
+  private val ids = mutable.Map.empty[ParserNode, Int]
+
+  def optimize(node: ParserNode): ParserNode = {
+    rewrite(node)._1
+  }
+
+  // returns the (possibly replaced) node and its structure, if it can be shared
+  private def rewrite(node: ParserNode): (ParserNode, Option[String]) = {
+    node match {
+    case const: ParserConstantNode => (const, Some(constantKey(const.getValue)))
+    case variable: ParserVariableNode =>
+      variables(variable.getName) match {
+      case Some(value) => (variable, Some("$" + variable.getName + "@" + ids.getOrElseUpdate(value, ids.size)))
+      case _ => (variable, None)
+      }
+    case function: ParserFunctionNode =>
+      val keys = function.getChildren.indices.map(i => {
+        val (child, key) = rewrite(function.getChild(i))
+        function.getChildren.set(i, child)
+        key
+      })
+
+      val name = function.getName
+      if (unique.contains(name)) {
+        (function, None)
+      }
+      else {
+        fold(function) match {
+        case Some(const) =>
+          logDebug("folded " + function.getName + " to " + const.getValue)
+          (const, Some(constantKey(const.getValue)))
+        case _ =>
+          if (keys.forall(_.isDefined)) {
+            val key = name + keys.flatten.mkString("(", ",", ")")
+            subexpressions.get(key) match {
+            case Some(first) =>
+              val variable = new ParserVariableNode
+              variable.setNativeNode(null)
+              variable.setName(replacements.getOrElseUpdate(key, define(first).getName))
+              logDebug("reusing " + key + " as " + variable.getName)
+              (variable, Some(key))
+            case _ =>
+              subexpressions.put(key, function)
+              (function, Some(key))
+            }
+          }
+          else {
+            (function, None)
+          }
+        }
+      }
+    case _ => (node, None)
+    }
+  }
+
+  private def fold(function: ParserFunctionNode): Option[ParserConstantNode] = {
+    val values = function.getChildren.map(number)
+    if (values.isEmpty || values.exists(_.isEmpty)) {
+      return None
+    }
+
+    // everything is decoded as a double anyway
+    val value: Option[Double] = (function.getName, values.map(_.get.doubleValue())) match {
+    case ("uminus", Seq(a)) => Some(-a)
+    case ("+", Seq(a, b)) => Some(a + b)
+    case ("-", Seq(a, b)) => Some(a - b)
+    case ("*", Seq(a, b)) => Some(a * b)
+    case ("/", Seq(a, b)) => Some(a / b)
+    case _ => None
+    }
+
+    value.map(v => {
+      val const = new ParserConstantNode
+      const.setNativeNode(null)
+      const.setValue(java.lang.Double.valueOf(v))
+      const.setName(v.toString)
+      const
+    })
+  }
+
+  private def number(node: ParserNode): Option[Number] = {
+    node match {
+    case const: ParserConstantNode =>
+      const.getValue match {
+      case n: Number => Some(n)
+      case _ => None
+      }
+    case _ => None
+    }
+  }
+
+  private def constantKey(value: AnyRef): String = {
+    value match {
+    case n: Number => "#" + n.doubleValue()
+    case v => "'" + v + "'"
+    }
+  }
+}
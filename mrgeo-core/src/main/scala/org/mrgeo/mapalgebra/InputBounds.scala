@@ -0,0 +1,38 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.mapalgebra
+
+import org.mrgeo.utils.tms.Bounds
+
+/**
+  * Implemented by map ops that can produce part of their output from part of their inputs, so
+  * BoundsPlanner can limit the input pyramids to the area the expression actually needs.  Map ops
+  * that don't implement it need all of their inputs.
+  *
+  * The default is for map ops where each output pixel only depends on the input pixels at the
+  * same location.
+  */
+trait InputBounds {
+  /**
+    * The area of an input needed to produce an area of the output.
+    *
+    * @param input  the index of the input in the map op's arguments
+    * @param bounds the area of the output needed, None for all of it
+    * @return the area of the input needed, None for all of it
+    */
+  def inputBounds(input: Int, bounds: Option[Bounds]): Option[Bounds] = bounds
+}
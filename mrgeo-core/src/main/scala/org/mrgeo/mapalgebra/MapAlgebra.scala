@@ -30,6 +30,7 @@ import org.mrgeo.job.{JobArguments, MrGeoDriver, MrGeoJob}
 import org.mrgeo.mapalgebra.parser._
 import org.mrgeo.mapalgebra.raster.{MrsPyramidMapOp, RasterMapOp}
 import org.mrgeo.mapalgebra.vector.{VectorDataMapOp, VectorMapOp}
+import org.mrgeo.spark.MrGeoListener
 import org.mrgeo.utils.StringUtils
 
 import scala.collection.JavaConversions._
@@ -105,6 +106,7 @@ class MapAlgebra() extends MrGeoJob with Externalizable {
   private val filePattern = Pattern.compile("\\s*\\[([^\\]]+)\\]\\s*")
   private val parser = ParserAdapterFactory.createParserAdapter
   private val variables = mutable.Map.empty[ParserVariableNode, Option[ParserNode]]
+  private var executed = 0
 
   {
     val cn: ParserConstantNode = new ParserConstantNode
@@ -187,8 +189,9 @@ class MapAlgebra() extends MrGeoJob with Externalizable {
       lines += line.result()
     }
 
+    val optimizer = new ExpressionOptimizer(findVariable, defineSubexpression)
     lines.result().foreach(line => {
-      val node = parser.parse(line)
+      val node = optimizer.optimize(parser.parse(line))
       buildMapOps(node)
       nodes += node
     })
@@ -253,6 +256,16 @@ class MapAlgebra() extends MrGeoJob with Externalizable {
     exp
   }
 
+  // a hidden variable for a repeated subexpression, see ExpressionOptimizer
+  private def defineSubexpression(value: ParserNode): ParserVariableNode = {
+    val vn = new ParserVariableNode
+    vn.setNativeNode(null)
+    vn.setName("__subexpression_" + variables.size + "__")
+
+    variables.put(vn, Some(value))
+    vn
+  }
+
   def findVariable(name: String): Option[ParserNode] = {
     variables.find(variable => variable._1.getName == name) match {
     case Some(v) => v._2
@@ -442,22 +455,50 @@ class MapAlgebra() extends MrGeoJob with Externalizable {
       case _ =>
     }
 
-    // execute the mapalgebra
-    nodes.foreach(node => {
-      execute(node, context)
-    })
+    val saved = nodes.reverseIterator.map(savedMapOp).find(_.isDefined).flatten
 
-    // now take the last RDD created and save it
-    nodes.reverseIterator.foreach { node =>
-      if (save(node, output, providerproperties, context)) {
-        return true
+    new BoundsPlanner(findVariable).plan(nodes, saved)
+
+    val planner = new PersistencePlanner(context, findVariable)
+    planner.plan(nodes, saved)
+
+    try {
+      // execute the mapalgebra
+      nodes.foreach(node => {
+        execute(node, context, planner)
+      })
+
+      // now take the last RDD created and save it
+      MrGeoListener.running(context, "save")
+      nodes.reverseIterator.foreach { node =>
+        if (save(node, output, providerproperties, context)) {
+          return true
+        }
       }
     }
+    finally {
+      MrGeoListener.running(context, null)
+      planner.finish()
+    }
 
     false
   }
 
 
+  // the map op save() will save
+  private def savedMapOp(node: ParserNode): Option[MapOp] = {
+    node match {
+    case function: ParserFunctionNode =>
+      function.getMapOp match {
+      case rmo: RasterMapOp => Some(rmo)
+      case vmo: VectorMapOp => Some(vmo)
+      case _ => function.getChildren.map(savedMapOp).find(_.isDefined).flatten
+      }
+    case variable: ParserVariableNode => MapOp.decodeToMapOp(variable, findVariable)
+    case _ => None
+    }
+  }
+
   private def save(node: ParserNode, output: String, providerproperties: ProviderProperties,
       context: SparkContext): Boolean = {
 
@@ -500,10 +541,10 @@ class MapAlgebra() extends MrGeoJob with Externalizable {
   }
 
   @SuppressFBWarnings(value = Array("RCN_REDUNDANT_NULLCHECK_OF_NONNULL_VALUE"), justification = "Scala generated code")
-  private def execute(node: ParserNode, context: SparkContext): Unit = {
+  private def execute(node: ParserNode, context: SparkContext, planner: PersistencePlanner): Unit = {
     // depth first run
     node.getChildren.foreach(child => {
-      execute(child, context)
+      execute(child, context, planner)
     })
 
     node match {
@@ -514,7 +555,20 @@ class MapAlgebra() extends MrGeoJob with Externalizable {
         val mapop = function.getMapOp
 
         if (mapop != null) {
+          // e.g. slope#3, for the instrumentation
+          val name = function.getName + "#" + executed
+          executed += 1
+
+          MrGeoListener.running(context, name)
+          planner.before(mapop)
           mapop.execute(context)
+          planner.after(mapop)
+
+          mapop match {
+          case rmo: RasterMapOp => rmo.rdd().foreach(MrGeoListener.label(context, _, name))
+          case vmo: VectorMapOp => vmo.rdd().foreach(MrGeoListener.label(context, _, name))
+          case _ =>
+          }
         }
       }
     case _ => // no op, nothing to do if we're not a function (MapOp)
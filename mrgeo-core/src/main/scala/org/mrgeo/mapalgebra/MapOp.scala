@@ -212,6 +212,19 @@ object MapOp {
     case _ => None
     }
   }
+
+  // the map op of a function, or of the function a variable holds
+  def decodeToMapOp(node: ParserNode, variables: String => Option[ParserNode]): Option[MapOp] = {
+    node match {
+    case function: ParserFunctionNode => Option(function.getMapOp)
+    case variable: ParserVariableNode =>
+      decodeVariable(variable, variables) match {
+      case Some(function: ParserFunctionNode) => Option(function.getMapOp)
+      case _ => None
+      }
+    case _ => None
+    }
+  }
 }
 
 abstract class MapOp extends Logging {
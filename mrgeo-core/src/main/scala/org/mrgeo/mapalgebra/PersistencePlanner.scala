@@ -0,0 +1,202 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.mapalgebra
+
+import java.awt.image.DataBuffer
+
+import org.apache.spark.storage.StorageLevel
+import org.apache.spark.{Logging, SparkContext}
+import org.mrgeo.data.rdd.AutoPersister
+import org.mrgeo.mapalgebra.parser.{ParserFunctionNode, ParserNode}
+import org.mrgeo.mapalgebra.raster.{MrsPyramidMapOp, RasterMapOp}
+
+import scala.collection.JavaConversions._
+import scala.collection.mutable
+
+/**
+  * Decides which map op outputs to persist, and when to unpersist them, from the parsed
+  * expression before anything is run.
+  *
+  * Every reference to a raster map op (e.g. both sides of "a + a", every use of a variable, and
+  * the final save) is a pending read of its RDD.  An RDD with two or more pending reads left when
+  * its map op is done executing is persisted, at a storage level picked from its estimated size
+  * and the cache memory available.  It is unpersisted once all of its readers have read it, which
+  * is only true when a reader's own RDD is materialized (persisted and computed), otherwise a
+  * later pass over the reader would recompute it from this RDD.  A reader that isn't materialized
+  * holds on to its inputs until it is released itself.
+  *
+  * File inputs (MrsPyramidMapOp) are not planned, reading them again is no worse than reading a
+  * cached copy of them from disk.
+  */
+class PersistencePlanner(context: SparkContext, variables: String => Option[ParserNode]) extends Logging {
+
+  private val pending = mutable.Map.empty[RasterMapOp, Int]
+  private val inputs = mutable.Map.empty[RasterMapOp, mutable.ListBuffer[RasterMapOp]]
+  private val deferred = mutable.Map.empty[RasterMapOp, mutable.ListBuffer[RasterMapOp]]
+  private val released = mutable.Set.empty[RasterMapOp]
+
+  def plan(nodes: Array[ParserNode], saved: Option[MapOp]): Unit = {
+    AutoPersister.begin()
+    nodes.foreach(walk)
+
+    // the save is one more read
+    saved match {
+    case Some(rmo: RasterMapOp) if pending.contains(rmo) => pending(rmo) += 1
+    case _ =>
+    }
+
+    if (log.isDebugEnabled) {
+      pending.foreach(p => logDebug("planned " + p._1.getClass.getSimpleName + ": " + p._2 + " reads"))
+    }
+  }
+
+  /**
+    * Called before executing a map op, so reads hidden inside the execution (e.g. calculating
+    * bounds or stats) can persist the RDD first.  The metadata isn't known yet, so those use the
+    * default storage level.
+    */
+  def before(mapop: MapOp): Unit = {
+    mapop match {
+    case rmo: RasterMapOp if pending.contains(rmo) =>
+      AutoPersister.expect(() => rmo.rdd(), pending(rmo))
+    case _ =>
+    }
+  }
+
+  def after(mapop: MapOp): Unit = {
+    AutoPersister.clearExpectation()
+
+    mapop match {
+    case rmo: RasterMapOp if pending.contains(rmo) =>
+      val rdd = rmo.rdd()
+
+      if (pending(rmo) >= 2) {
+        rdd.foreach(r => AutoPersister.persist(r, storageLevel(rmo)))
+      }
+
+      val materialized = rdd.exists(AutoPersister.isMaterialized)
+      inputs.getOrElse(rmo, Nil).foreach(input => {
+        if (materialized) {
+          read(input)
+        }
+        else {
+          deferred.getOrElseUpdate(rmo, mutable.ListBuffer.empty[RasterMapOp]) += input
+        }
+      })
+
+      if (pending(rmo) <= 0) {
+        release(rmo)
+      }
+    case _ =>
+    }
+  }
+
+  /**
+    * Unpersists everything that is still persisted and ends the job's AutoPersister scope, call
+    * after saving.
+    */
+  def finish(): Unit = {
+    AutoPersister.clearExpectation()
+
+    pending.keys.foreach(rmo => {
+      if (!released.contains(rmo)) {
+        unpersist(rmo)
+      }
+    })
+    pending.clear()
+    inputs.clear()
+    deferred.clear()
+    released.clear()
+
+    AutoPersister.end()
+  }
+
+  private def read(rmo: RasterMapOp): Unit = {
+    pending(rmo) -= 1
+    if (pending(rmo) <= 0) {
+      release(rmo)
+    }
+  }
+
+  private def release(rmo: RasterMapOp): Unit = {
+    if (released.add(rmo)) {
+      unpersist(rmo)
+      deferred.remove(rmo).foreach(_.foreach(read))
+    }
+  }
+
+  private def unpersist(rmo: RasterMapOp): Unit = {
+    rmo.rdd().foreach(rdd => {
+      if (rdd.getStorageLevel != StorageLevel.NONE) {
+        logDebug("unpersisting " + rdd.id + " (" + rmo.getClass.getSimpleName + ")")
+        AutoPersister.unpersist(rdd)
+      }
+    })
+  }
+
+  private def walk(node: ParserNode): Unit = {
+    node.getChildren.foreach(walk)
+
+    node match {
+    case function: ParserFunctionNode if function.getName != "=" =>
+      function.getMapOp match {
+      case rmo: RasterMapOp if planned(rmo) =>
+        pending.getOrElseUpdate(rmo, 0)
+        val in = inputs.getOrElseUpdate(rmo, mutable.ListBuffer.empty[RasterMapOp])
+        function.getChildren.foreach(child => {
+          MapOp.decodeToMapOp(child, variables) match {
+          case Some(input: RasterMapOp) if planned(input) =>
+            pending(input) = pending.getOrElse(input, 0) + 1
+            in += input
+          case _ =>
+          }
+        })
+      case _ =>
+      }
+    case _ =>
+    }
+  }
+
+  private def planned(rmo: RasterMapOp) = !rmo.isInstanceOf[MrsPyramidMapOp]
+
+  private def storageLevel(rmo: RasterMapOp): StorageLevel = {
+    val available = context.getExecutorMemoryStatus.values.map(_._2).sum
+    estimatedSize(rmo) match {
+    case Some(size) if available > 0 && size <= available / 2 => StorageLevel.MEMORY_ONLY_SER
+    case Some(size) if available > 0 && size > available => StorageLevel.DISK_ONLY
+    case _ => AutoPersister.defaultStorageLevel
+    }
+  }
+
+  // uncompressed bytes of the map op's output, from its metadata
+  private def estimatedSize(rmo: RasterMapOp): Option[Long] = {
+    rmo.metadata() match {
+    case Some(meta) if meta.getBands > 0 &&
+        meta.getTileType >= DataBuffer.TYPE_BYTE && meta.getTileType <= DataBuffer.TYPE_DOUBLE =>
+      val tb = meta.getTileBounds(meta.getMaxZoomLevel)
+      if (tb != null) {
+        val tilesize = meta.getTilesize.toLong
+        Some(tb.getWidth * tb.getHeight * tilesize * tilesize * meta.getBands *
+            (DataBuffer.getDataTypeSize(meta.getTileType) / 8))
+      }
+      else {
+        None
+      }
+    case _ => None
+    }
+  }
+}
@@ -60,10 +60,20 @@ class MrsPyramidMapOp private[raster] (dataprovider: MrsImageDataProvider)
     rasterRDD
   }
 
+  /**
+    * The raster at its max zoom level, asking the data provider for only some of the bands (0 based).
+    * Providers that can't read a subset of the bands return all of them, so the tiles may have either.
+    * The RDD is not kept, rdd() still returns all the bands.
+    */
+  private[mapalgebra] def rdd(bands:Array[Int]):Option[RasterRDD] = {
+    load()
+    Some(SparkUtils.loadMrsPyramid(dataprovider, maxZoomForRDD.get, getBounds.orNull, bands, context()))
+  }
+
   @SuppressFBWarnings(value = Array("CN_IDIOM_NO_SUPER_CALL"), justification = "No need to call super.clone()")
   override def clone = MrsPyramidMapOp(dataprovider)
 
-  private def getBounds: Option[Bounds] = {
+  private[mapalgebra] def getBounds: Option[Bounds] = {
     mapOpForBounds match {
       case Some(op) =>
         Some(op.metadata().getOrElse(
@@ -140,7 +150,10 @@ class MrsPyramidMapOp private[raster] (dataprovider: MrsImageDataProvider)
         val meta = super.metadata()
         meta match {
           case Some(m) =>
-            m.setBounds(b)
+            // the bounds can be larger than the image (e.g. when limited to what the expression
+            // needs), only report the part that has data
+            val clipped = if (m.getBounds != null) m.getBounds.intersection(b) else null
+            m.setBounds(if (clipped != null) clipped else b)
             Some(m)
           case None => meta
         }
@@ -24,6 +24,9 @@ import org.mrgeo.data.vector.VectorDataProvider
 import org.mrgeo.job.JobArguments
 import org.mrgeo.mapalgebra.MapOp
 import org.mrgeo.utils.SparkVectorUtils
+import org.mrgeo.utils.tms.Bounds
+
+import scala.collection.mutable
 
 object VectorDataMapOp {
   def apply(dataprovider: VectorDataProvider) = {
@@ -40,6 +43,7 @@ object VectorDataMapOp {
 
 class VectorDataMapOp(dataprovider: VectorDataProvider) extends VectorMapOp {
   private var vectorRDD: Option[VectorRDD] = None
+  private val projectedRDDs = mutable.Map.empty[(Option[Bounds], Set[String]), VectorRDD]
 
   def rdd(zoom:Int):Option[VectorRDD]  = {
     load(zoom)
@@ -51,6 +55,34 @@ class VectorDataMapOp(dataprovider: VectorDataProvider) extends VectorMapOp {
     vectorRDD
   }
 
+  /**
+    * The features with only the listed attributes.  Each set of attributes gets its own RDD, so
+    * other consumers of this map op still see all the attributes from rdd().
+    */
+  def rdd(attributes:Set[String]):Option[VectorRDD] = {
+    rdd(null, attributes)
+  }
+
+  /**
+    * The features intersecting the bounds (null for everywhere), with only the listed attributes.
+    * Both are passed down to the data provider, which may use them to read less (e.g. a GeoWave
+    * spatial query), but is not required to, so the RDD can still contain other features.
+    */
+  def rdd(bounds:Bounds, attributes:Set[String]):Option[VectorRDD] = {
+    if (vectorRDD.isDefined) {
+      // already loaded with everything, no need to read it again
+      vectorRDD
+    }
+    else {
+      if (context == null) {
+        throw new IOException("Error creating VectorRDD, can not create an RDD without a SparkContext")
+      }
+
+      Some(projectedRDDs.getOrElseUpdate((Option(bounds), attributes),
+        SparkVectorUtils.loadVectorRDD(dataprovider, bounds, attributes, context())))
+    }
+  }
+
   private def load(zoom:Int = -1)  = {
 
     if (vectorRDD.isEmpty) {
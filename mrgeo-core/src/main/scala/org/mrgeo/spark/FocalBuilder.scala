@@ -21,6 +21,7 @@ import java.awt.image.{Raster, WritableRaster}
 import org.apache.spark.rdd.{PairRDDFunctions, RDD}
 import org.apache.spark.{Logging, SparkContext}
 import org.mrgeo.data.raster.{RasterUtils, RasterWritable}
+import org.mrgeo.data.rdd.PartitionPlanner
 import org.mrgeo.data.tile.TileIdWritable
 import org.mrgeo.utils.tms.{Tile, Bounds, TMSUtils}
 
@@ -47,7 +48,9 @@ object FocalBuilder extends Logging {
     val maxX = tb.e
     val maxY = tb.n
 
-    val partitions = Math.min(context.getConf.getInt("spark.executor.cores", Int.MaxValue) * 2, tiles.partitions.length)
+    // each tile is grouped with its neighbors' edges, so they're bigger than the source tiles
+    val partitions = PartitionPlanner.partitions(tb.width() * tb.height(),
+      PartitionPlanner.tileBytes(dstW, dstH, sample.getNumBands, sample.getTransferType), context)
 
     logInfo("Using " + partitions + " partitions for grouping")
 
@@ -110,7 +113,7 @@ object FocalBuilder extends Logging {
       }
       pieces.iterator
 
-    })).groupByKey() // .groupByKey(partitions)
+    })).groupByKey(partitions)
 
     val focal = pieces.map(tile => {
       val first = RasterWritable.toRaster(tile._2.head._5)
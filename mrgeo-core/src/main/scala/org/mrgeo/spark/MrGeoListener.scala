@@ -16,123 +16,379 @@
 
 package org.mrgeo.spark
 
-import org.apache.spark.SparkContext
+import java.io.OutputStreamWriter
+import java.util
+import java.util.Properties
+
+import org.apache.hadoop.fs.Path
+import org.apache.spark.executor.TaskMetrics
+import org.apache.spark.rdd.RDD
 import org.apache.spark.scheduler._
+import org.apache.spark.{Accumulator, Logging, SparkConf, SparkContext, TaskContext}
+import org.codehaus.jackson.map.ObjectMapper
+import org.codehaus.jackson.util.DefaultPrettyPrinter
+import org.mrgeo.core.{MrGeoConstants, MrGeoProperties}
+import org.mrgeo.data.raster.TileCounters
+import org.mrgeo.hdfs.utils.HadoopFileUtils
+
+import scala.collection.JavaConversions._
+import scala.collection.mutable
+
+/**
+  * Per job instrumentation, turned on with instrumentation.enabled=true in mrgeo.conf.
+  *
+  * Spark task metrics are summed by stage, and each stage is attributed to a map op: the last one
+  * whose output RDD (see label()) is computed in the stage, otherwise the one that was running
+  * when the stage was submitted (see running()).  When the job is done, report() writes the
+  * totals per map op and per stage, and the tiles encoded/decoded by the job's tasks, as JSON to
+  * the log and, if instrumentation.report.dir is set, to a file there.
+  *
+  * The tile counts are accumulators of the job.  MrGeoRDDs created while the job is running carry
+  * them (see tiles()), so the tasks computing them count the tiles their thread encodes and
+  * decodes, on whichever executor they run.
+  *
+  * There is one listener per SparkContext, jobs sharing a context are kept apart by job group.
+  * Only the groups start() was called for are instrumented.
+  */
+object MrGeoListener extends Logging {
+  // set in the spark conf, so executors count tiles too
+  final val INSTRUMENTATION = "spark.mrgeo.instrumentation"
 
-//class MrGeoListener(val context:SparkContext) extends SparkFirehoseListener with Logging {
-//  override def onEvent(event: SparkListenerEvent): Unit = {
-//    log.info("*** " + event.getClass.getName)
-//    super.onEvent(event)
-//  }
-//}
+  final val MAPOP_PROPERTY = "mrgeo.mapop"
+  private final val GROUP_PROPERTY = "spark.jobGroup.id"
 
+  // how long report() waits for the listener bus to deliver the job's last events
+  private final val DRAIN_TIMEOUT = 10000L
 
-class MrGeoListener(val context:SparkContext) extends SparkListener {
-  override def onStageCompleted(stageCompleted: SparkListenerStageCompleted): Unit = {
-    println("Stage Completed " + stageCompleted)
-    super.onStageCompleted(stageCompleted)
+  private val listeners = new util.WeakHashMap[SparkContext, MrGeoListener]()
+
+  def isEnabled:Boolean = {
+    MrGeoProperties.getInstance().getProperty(MrGeoConstants.MRGEO_INSTRUMENTATION, "false").equals("true")
   }
 
-  override def onStageSubmitted(stageSubmitted: SparkListenerStageSubmitted): Unit = {
-    println("Stage Submitted " + stageSubmitted.stageInfo.name)
+  def setup(conf:SparkConf):Unit = {
+    if (isEnabled) {
+      conf.set(INSTRUMENTATION, "true")
+      TileCounters.enable()
+    }
+  }
 
-    println("  RDDs in stage")
-    stageSubmitted.stageInfo.rddInfos.foreach(info => {
-      println("    " + info.name)
-    })
+  /**
+    * Starts instrumenting the calling thread's job group.
+    */
+  def start(context:SparkContext):Unit = {
+    apply(context).foreach(_.start(group(context), context))
+  }
+
+  /**
+    * The tile accumulators of the calling thread's job group, if it is instrumented.
+    */
+  def tiles(context:SparkContext):Option[TileAccumulators] = {
+    if (isEnabled) {
+      Option(listeners.synchronized(listeners.get(context))).flatMap(_.job(group(context))).map(_.tiles)
+    }
+    else {
+      None
+    }
+  }
 
-//    val pools = context.getAllPools
-//    val rdds = context.getRDDStorageInfo
-    val tracker = context.statusTracker
-
-     tracker.getActiveJobIds().foreach(id => {
-       val jobinfo = tracker.getJobInfo(id)
-       println(id)
-     })
-    tracker.getActiveStageIds().foreach(id => {
-      val stageinfo = tracker.getStageInfo(id)
-      println(id)
+  private def apply(context:SparkContext):Option[MrGeoListener] = listeners.synchronized {
+    if (isEnabled) {
+      Some(Option(listeners.get(context)).getOrElse({
+        val listener = new MrGeoListener
+        context.addSparkListener(listener)
+        listeners.put(context, listener)
+        listener
+      }))
+    }
+    else {
+      None
+    }
+  }
+
+  /**
+    * Names the map op that is running, for the stages it submits (null when none is).
+    */
+  def running(context:SparkContext, mapop:String):Unit = {
+    if (isEnabled) {
+      context.setLocalProperty(MAPOP_PROPERTY, mapop)
+    }
+  }
+
+  /**
+    * Attributes the stages computing this RDD to a map op.  The name shows up in the Spark UI too.
+    */
+  def label(context:SparkContext, rdd:RDD[_], mapop:String):Unit = {
+    apply(context).foreach(listener => {
+      rdd.setName(mapop)
+      listener.job(group(context)).foreach(_.labels.put(rdd.id, mapop))
     })
-    super.onStageSubmitted(stageSubmitted)
   }
 
-  override def onTaskStart(taskStart: SparkListenerTaskStart): Unit = {
-    println("Task Start " + taskStart)
+  /**
+    * Reports on everything run in the calling thread's job group, and forgets it.
+    */
+  def report(context:SparkContext, name:String, start:Long):Unit = {
+    apply(context).foreach(listener => listener.finish(group(context)).foreach(job => {
+      val json = job.toJson(name, System.currentTimeMillis() - start)
+      logInfo("Instrumentation for " + name + ":\n" + json)
 
-//    val pools = context.getAllPools
-//    val rdds = context.getRDDStorageInfo
-//    val tracker = context.statusTracker
+      val dir = MrGeoProperties.getInstance().getProperty(MrGeoConstants.MRGEO_INSTRUMENTATION_REPORT_DIR)
+      if (dir != null && dir.nonEmpty) {
+        val path = new Path(dir, name.replaceAll("[^\\w.-]", "_") + "-" + start + ".json")
+        try {
+          val fs = HadoopFileUtils.getFileSystem(context.hadoopConfiguration, path)
+          val writer = new OutputStreamWriter(fs.create(path, true), "UTF-8")
+          try {
+            writer.write(json)
+          }
+          finally {
+            writer.close()
+          }
+        }
+        catch {
+          case e:Exception => logWarning("Unable to write instrumentation report to " + path, e)
+        }
+      }
+    }))
+  }
 
-    super.onTaskStart(taskStart)
+  private def group(context:SparkContext) = Option(context.getLocalProperty(GROUP_PROPERTY)).getOrElse("")
+
+  private def group(properties:Properties) = {
+    Option(properties).flatMap(p => Option(p.getProperty(GROUP_PROPERTY))).getOrElse("")
   }
 
-  override def onTaskGettingResult(taskGettingResult: SparkListenerTaskGettingResult): Unit = {
-    println("Task Get Result " + taskGettingResult)
-    super.onTaskGettingResult(taskGettingResult)
+  private class Metrics {
+    var stages = 0
+    var tasks = 0
+    var runTime = 0L
+    var gcTime = 0L
+    var inputBytes = 0L
+    var inputRecords = 0L
+    var outputBytes = 0L
+    var outputRecords = 0L
+    var shuffleReadBytes = 0L
+    var shuffleReadRecords = 0L
+    var shuffleWriteBytes = 0L
+    var shuffleWriteRecords = 0L
+    var memorySpilled = 0L
+    var diskSpilled = 0L
+
+    def add(m:TaskMetrics):Unit = {
+      tasks += 1
+      runTime += m.executorRunTime
+      gcTime += m.jvmGCTime
+      memorySpilled += m.memoryBytesSpilled
+      diskSpilled += m.diskBytesSpilled
+      m.inputMetrics.foreach(im => {
+        inputBytes += im.bytesRead
+        inputRecords += im.recordsRead
+      })
+      m.outputMetrics.foreach(om => {
+        outputBytes += om.bytesWritten
+        outputRecords += om.recordsWritten
+      })
+      m.shuffleReadMetrics.foreach(sr => {
+        shuffleReadBytes += sr.totalBytesRead
+        shuffleReadRecords += sr.recordsRead
+      })
+      m.shuffleWriteMetrics.foreach(sw => {
+        shuffleWriteBytes += sw.shuffleBytesWritten
+        shuffleWriteRecords += sw.shuffleRecordsWritten
+      })
+    }
+
+    def add(m:Metrics):Unit = {
+      stages += m.stages
+      tasks += m.tasks
+      runTime += m.runTime
+      gcTime += m.gcTime
+      inputBytes += m.inputBytes
+      inputRecords += m.inputRecords
+      outputBytes += m.outputBytes
+      outputRecords += m.outputRecords
+      shuffleReadBytes += m.shuffleReadBytes
+      shuffleReadRecords += m.shuffleReadRecords
+      shuffleWriteBytes += m.shuffleWriteBytes
+      shuffleWriteRecords += m.shuffleWriteRecords
+      memorySpilled += m.memorySpilled
+      diskSpilled += m.diskSpilled
+    }
+
+    def toMap(map:util.Map[String, Any]):util.Map[String, Any] = {
+      map.put("stages", stages)
+      map.put("tasks", tasks)
+      map.put("executorRunTimeMs", runTime)
+      map.put("gcTimeMs", gcTime)
+      map.put("inputBytes", inputBytes)
+      map.put("inputRecords", inputRecords)
+      map.put("outputBytes", outputBytes)
+      map.put("outputRecords", outputRecords)
+      map.put("shuffleReadBytes", shuffleReadBytes)
+      map.put("shuffleReadRecords", shuffleReadRecords)
+      map.put("shuffleWriteBytes", shuffleWriteBytes)
+      map.put("shuffleWriteRecords", shuffleWriteRecords)
+      map.put("memoryBytesSpilled", memorySpilled)
+      map.put("diskBytesSpilled", diskSpilled)
+      map
+    }
   }
 
-  override def onTaskEnd(taskEnd: SparkListenerTaskEnd): Unit = {
-    println("Task End " + taskEnd)
+  private class Stage(val id:Int, val name:String, val mapop:String) {
+    val metrics = new Metrics
+    metrics.stages = 1
+  }
+
+  private class Job(val tiles:TileAccumulators) {
+    val labels = mutable.Map.empty[Int, String]
+    val stages = mutable.LinkedHashMap.empty[Int, Stage]
+    var started = 0
+    var ended = 0
+
+    def toJson(name:String, elapsed:Long):String = {
+      val byMapOp = mutable.LinkedHashMap.empty[String, Metrics]
+      stages.values.foreach(stage => byMapOp.getOrElseUpdate(stage.mapop, new Metrics).add(stage.metrics))
+
+      val report = new util.LinkedHashMap[String, Any]()
+      report.put("job", name)
+      report.put("elapsedMs", elapsed)
+
+      val mapops = new util.ArrayList[util.Map[String, Any]]()
+      byMapOp.foreach(m => {
+        val map = new util.LinkedHashMap[String, Any]()
+        map.put("mapop", m._1)
+        mapops.add(m._2.toMap(map))
+      })
+      report.put("mapops", mapops)
 
-//    val pools = context.getAllPools
-//    val rdds = context.getRDDStorageInfo
-//    val tracker = context.statusTracker
+      val stagelist = new util.ArrayList[util.Map[String, Any]]()
+      stages.values.foreach(stage => {
+        val map = new util.LinkedHashMap[String, Any]()
+        map.put("id", stage.id)
+        map.put("name", stage.name)
+        map.put("mapop", stage.mapop)
+        stagelist.add(stage.metrics.toMap(map))
+      })
+      report.put("stages", stagelist)
 
-    super.onTaskEnd(taskEnd)
+      val counters = new util.LinkedHashMap[String, Any]()
+      counters.put("encodes", tiles.encodes.value)
+      counters.put("encodedBytes", tiles.encodedBytes.value)
+      counters.put("decodes", tiles.decodes.value)
+      counters.put("decodedBytes", tiles.decodedBytes.value)
+      report.put("tiles", counters)
+
+      new ObjectMapper().prettyPrintingWriter(new DefaultPrettyPrinter()).writeValueAsString(report)
+    }
   }
+}
+
+class MrGeoListener private() extends SparkListener with Logging {
+  import MrGeoListener._
+
+  private val jobs = mutable.Map.empty[String, Job]
+  private val stageGroups = mutable.Map.empty[Int, String]
+  private val jobGroups = mutable.Map.empty[Int, String]
 
-  override def onJobStart(jobStart: SparkListenerJobStart): Unit = {
-    println("Job Start " + jobStart)
-    super.onJobStart(jobStart)
+  private def start(group:String, context:SparkContext):Unit = synchronized {
+    jobs.put(group, new Job(new TileAccumulators(context)))
   }
 
-  override def onJobEnd(jobEnd: SparkListenerJobEnd): Unit = {
-    println("Job End " + jobEnd)
-    super.onJobEnd(jobEnd)
+  // only the instrumented groups have a job
+  private def job(group:String):Option[Job] = synchronized {
+    jobs.get(group)
   }
 
-  override def onEnvironmentUpdate(environmentUpdate: SparkListenerEnvironmentUpdate): Unit = {
-    println("Environment Update ")
-    super.onEnvironmentUpdate(environmentUpdate)
+  // waits (a little) for the listener bus to catch up, then forgets the job
+  private def finish(group:String):Option[Job] = synchronized {
+    jobs.get(group).map(j => {
+      val timeout = System.currentTimeMillis() + DRAIN_TIMEOUT
+      var seen = -1
+      while ((j.started != j.ended || seen != j.started) && System.currentTimeMillis() < timeout) {
+        seen = j.started
+        wait(200)
+      }
+      jobs.remove(group)
+      stageGroups.retain((_, g) => g != group)
+      jobGroups.retain((_, g) => g != group)
+      j
+    })
   }
 
-  override def onBlockManagerAdded(blockManagerAdded: SparkListenerBlockManagerAdded): Unit = {
-    println("BlockManager Added " + blockManagerAdded)
-    super.onBlockManagerAdded(blockManagerAdded)
+  override def onJobStart(jobStart:SparkListenerJobStart):Unit = synchronized {
+    val g = group(jobStart.properties)
+    job(g).foreach(j => {
+      jobGroups.put(jobStart.jobId, g)
+      j.started += 1
+      notifyAll()
+    })
   }
 
-  override def onBlockManagerRemoved(blockManagerRemoved: SparkListenerBlockManagerRemoved): Unit = {
-    println("BlockManager Removed " + blockManagerRemoved)
-    super.onBlockManagerRemoved(blockManagerRemoved)
+  override def onJobEnd(jobEnd:SparkListenerJobEnd):Unit = synchronized {
+    // the job end event has no properties
+    jobGroups.remove(jobEnd.jobId).flatMap(job).foreach(j => {
+      j.ended += 1
+      notifyAll()
+    })
   }
 
-  override def onUnpersistRDD(unpersistRDD: SparkListenerUnpersistRDD): Unit = {
-    println("UnpersistRDD " + unpersistRDD)
-    super.onUnpersistRDD(unpersistRDD)
+  override def onStageSubmitted(stageSubmitted:SparkListenerStageSubmitted):Unit = synchronized {
+    val info = stageSubmitted.stageInfo
+    val g = group(stageSubmitted.properties)
+    job(g).foreach(j => {
+      // the last map op in the stage's pipeline
+      val labeled = info.rddInfos.filter(rdd => j.labels.contains(rdd.id))
+      val mapop = if (labeled.nonEmpty) {
+        j.labels(labeled.maxBy(_.id).id)
+      }
+      else {
+        Option(stageSubmitted.properties).flatMap(p => Option(p.getProperty(MAPOP_PROPERTY))).getOrElse("(none)")
+      }
+
+      stageGroups.put(info.stageId, g)
+      j.stages.put(info.stageId, new Stage(info.stageId, info.name, mapop))
+    })
   }
 
-  override def onApplicationStart(applicationStart: SparkListenerApplicationStart): Unit = {
-    println("Application Start " + applicationStart)
-    super.onApplicationStart(applicationStart)
+  override def onTaskEnd(taskEnd:SparkListenerTaskEnd):Unit = synchronized {
+    if (taskEnd.taskMetrics != null) {
+      stageGroups.get(taskEnd.stageId).flatMap(job).foreach(j => {
+        j.stages.get(taskEnd.stageId).foreach(_.metrics.add(taskEnd.taskMetrics))
+      })
+    }
   }
+}
 
-  override def onApplicationEnd(applicationEnd: SparkListenerApplicationEnd): Unit = {
-    println("Application End " + applicationEnd)
-    super.onApplicationEnd(applicationEnd)
+/**
+  * A job's tile counts.  Installed as the TileCounters listener of a task's thread (see
+  * countTask()), so the counts come back to the driver with the task's accumulator updates.
+  */
+@SerialVersionUID(1L)
+class TileAccumulators private[spark] (context:SparkContext) extends TileCounters.Listener with Serializable {
+  val encodes:Accumulator[Long] = context.accumulator(0L, "mrgeo tile encodes")
+  val encodedBytes:Accumulator[Long] = context.accumulator(0L, "mrgeo tile encoded bytes")
+  val decodes:Accumulator[Long] = context.accumulator(0L, "mrgeo tile decodes")
+  val decodedBytes:Accumulator[Long] = context.accumulator(0L, "mrgeo tile decoded bytes")
+
+  override def encoded(bytes:Int):Unit = {
+    encodes += 1L
+    encodedBytes += bytes.toLong
   }
 
-  override def onExecutorMetricsUpdate(executorMetricsUpdate: SparkListenerExecutorMetricsUpdate): Unit = {
-    println("ExecutorMetrics Update " + executorMetricsUpdate)
-    super.onExecutorMetricsUpdate(executorMetricsUpdate)
+  override def decoded(bytes:Int):Unit = {
+    decodes += 1L
+    decodedBytes += bytes.toLong
   }
 
-//  override def onExecutorAdded(executorAdded: SparkListenerExecutorAdded): Unit = {
-//    println("Executor Added " + executorAdded)
-//    super.onExecutorAdded(executorAdded)
-//  }
-//
-//  override def onExecutorRemoved(executorRemoved: SparkListenerExecutorRemoved): Unit = {
-//    println("Executor Removed " + executorRemoved)
-//    super.onExecutorRemoved(executorRemoved)
-//  }
+  /**
+    * Counts the tiles the running task encodes and decodes, until it completes.
+    */
+  def countTask(task:TaskContext):Unit = {
+    // every MrGeoRDD in the task's pipeline asks
+    if (TileCounters.getListener ne this) {
+      TileCounters.setListener(this)
+      task.addTaskCompletionListener((tc:TaskContext) => TileCounters.clearListener())
+    }
+  }
 }
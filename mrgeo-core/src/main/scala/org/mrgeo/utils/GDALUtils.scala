@@ -418,9 +418,16 @@ object GDALUtils extends Logging {
       val fs = HadoopFileUtils.getFileSystem(p)
       val is = fs.open(p)
 
-      val bytes = IOUtils.toByteArray(is)
+      val bytes = try {
+        IOUtils.toByteArray(is)
+      }
+      finally {
+        is.close()
+      }
 
-      val vsiname = VSI_PREFIX + imagename
+      // the name needs to be unique, close() unlinks the buffer, and the same image can be open more
+      // than once in a JVM (executors run several tasks)
+      val vsiname = VSI_PREFIX + HadoopUtils.createRandomString(10) + "/" + p.getName
       gdal.FileFromMemBuffer(vsiname, bytes)
 
       val image = gdal.Open(vsiname)
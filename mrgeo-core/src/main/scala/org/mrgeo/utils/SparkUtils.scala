@@ -26,9 +26,12 @@ import org.apache.hadoop.conf.Configuration
 import org.apache.hadoop.mapreduce.Job
 import org.apache.spark._
 import org.apache.spark.rdd.RDD
+import org.apache.spark.storage.StorageLevel
+import org.mrgeo.aggregators.Aggregator
+import org.mrgeo.buildpyramid.BuildPyramid
 import org.mrgeo.data.image.{ImageInputFormatContext, ImageOutputFormatContext, MrsImageDataProvider}
 import org.mrgeo.data.raster.RasterWritable
-import org.mrgeo.data.rdd.{AutoPersister, RasterRDD}
+import org.mrgeo.data.rdd.{AutoPersister, PartitionPlanner, RasterRDD}
 import org.mrgeo.data.tile._
 import org.mrgeo.data.{DataProviderFactory, MrsPyramidInputFormat, ProviderProperties}
 import org.mrgeo.hdfs.tile.FileSplit.FileSplitInfo
@@ -311,10 +314,10 @@ object SparkUtils extends Logging {
 
     logInfo("Loading MrsPyramid " + provider.getResourceName)
 
-    RasterRDD(context.newAPIHadoopRDD(job.getConfiguration,
+    PartitionPlanner.afterLoad(RasterRDD(context.newAPIHadoopRDD(job.getConfiguration,
       classOf[MrsPyramidInputFormat],
       classOf[TileIdWritable],
-      classOf[RasterWritable]))
+      classOf[RasterWritable])), metadata, zoom, null, context)
 
     //        FileInputFormat.addInputPath(job, new Path(provider.getResourceName, zoom.toString))
     //        FileInputFormat.setInputPathFilter(job, classOf[MapFileFilter])
@@ -331,11 +334,22 @@ object SparkUtils extends Logging {
   }
 
   def loadMrsPyramid(provider:MrsImageDataProvider, zoom:Int, bounds:Bounds, context: SparkContext): RasterRDD = {
+    loadMrsPyramid(provider, zoom, bounds, null, context)
+  }
+
+  /**
+    * Load the pyramid asking for only some of the bands (0 based, see ImageInputFormatContext.getBands()).
+    * Only some data providers can read a subset of the bands, the others return all the bands, so the
+    * tiles may have either.  bounds and bands can be null.
+    */
+  def loadMrsPyramid(provider:MrsImageDataProvider, zoom:Int, bounds:Bounds, bands:Array[Int],
+      context: SparkContext): RasterRDD = {
     val metadata: MrsPyramidMetadata = provider.getMetadataReader.read()
 
     val conf1 = provider.setupSparkJob(context.hadoopConfiguration)
     val tifc = new ImageInputFormatContext(zoom, metadata.getTilesize,
       provider.getResourceName, bounds, provider.getProviderProperties)
+    tifc.setBands(bands)
     val ifp = provider.getImageInputFormatProvider(tifc)
     val conf2 = ifp.setupSparkJob(conf1, provider)
 
@@ -349,10 +363,10 @@ object SparkUtils extends Logging {
 
     //    log.warn("Running loadPyramid with configuration " + job.getConfiguration + " with input format " +
     //      inputFormatClass.getName)
-    RasterRDD(context.newAPIHadoopRDD(job.getConfiguration,
+    PartitionPlanner.afterLoad(RasterRDD(context.newAPIHadoopRDD(job.getConfiguration,
       classOf[MrsPyramidInputFormat],
       classOf[TileIdWritable],
-      classOf[RasterWritable]))
+      classOf[RasterWritable])), metadata, zoom, bounds, context)
 
     //        FileInputFormat.addInputPath(job, new Path(provider.getResourceName, zoom.toString))
     //        FileInputFormat.setInputPathFilter(job, classOf[MapFileFilter])
@@ -432,15 +446,14 @@ object SparkUtils extends Logging {
   def saveMrsPyramid(tiles: RasterRDD, outputProvider: MrsImageDataProvider, metadata:MrsPyramidMetadata,
       zoom:Int, conf: Configuration, providerproperties:ProviderProperties): Unit = {
 
-    AutoPersister.incrementRef(tiles)
-
-    //    val localpersist = if (tiles.getStorageLevel == StorageLevel.NONE) {
-    //      tiles.persist(StorageLevel.MEMORY_AND_DISK_SER)
-    //      true
-    //    }
-    //    else {
-    //      false
-    //    }
+    // the tiles are read at least twice (stats and save), persist them unless the caller already has
+    val localpersist = if (tiles.getStorageLevel == StorageLevel.NONE) {
+      AutoPersister.persist(tiles)
+      true
+    }
+    else {
+      false
+    }
 
     val output = outputProvider.getResourceName
 
@@ -475,7 +488,135 @@ object SparkUtils extends Logging {
     MrsPyramid.calculateMetadata(zoom, outputProvider, stats,
       metadata)
 
-    AutoPersister.decrementRef(tiles)
+    if (localpersist) {
+      AutoPersister.unpersist(tiles)
+    }
+  }
+
+  /**
+    * Merges the tiles into an existing pyramid, instead of rewriting it.  The tiles are mosaicked
+    * over the existing tiles of the max zoom level (new pixels win, except where they are nodata),
+    * then only the ancestors of the changed tiles are rebuilt at each level below it.  A changed
+    * tile completely determines its quadrant of the parent tile, and the mosaic never removes valid
+    * pixels, so mosaicking the decimated tiles over the existing parents gives the same result as
+    * rebuilding the level from scratch.
+    * <p>
+    * The statistics are updated from the replaced and replacing tiles only, without reading the
+    * rest of the image.  Count, sum and mean are exact, but min and max can only widen, a value
+    * that was overwritten may still be reported as the min or max.
+    * <p>
+    * Levels below the max zoom level are only updated if they have been built.
+    */
+  def updateMrsPyramid(tiles: RasterRDD, provider: MrsImageDataProvider, zoom: Int, bounds: Bounds,
+      aggregator: Aggregator, conf: Configuration): Unit = {
+
+    val metadata = provider.getMetadataReader.read()
+    if (metadata.getMaxZoomLevel != zoom) {
+      throw new IllegalArgumentException("Can't update " + provider.getResourceName + " at zoom level " + zoom +
+          ", its max zoom level is " + metadata.getMaxZoomLevel)
+    }
+
+    val tilesize = metadata.getTilesize
+    val bands = metadata.getBands
+    val nodatas = metadata.getDefaultValues
+    val aggregatorClass = aggregator.getClass.getName
+
+    val updatedBounds = if (bounds == null) calculateBounds(tiles, zoom, tilesize) else bounds
+    metadata.setBounds(metadata.getBounds.union(updatedBounds))
+
+    var changed: RDD[(TileIdWritable, RasterWritable)] = tiles
+    var previous: RDD[(TileIdWritable, (RasterWritable, RasterWritable))] = null
+
+    var level = zoom
+    while (level >= 1 && (level == zoom || metadata.getName(level) != null)) {
+      if (level < zoom) {
+        changed = BuildPyramid.decimate(previous.map(tile => (tile._1, tile._2._1)), level + 1, tilesize,
+          metadata.getDefaultValuesNumber, aggregatorClass)
+      }
+
+      logInfo("Updating " + provider.getResourceName + " at level " + level)
+
+      val tofc = new ImageOutputFormatContext(provider.getResourceName, metadata.getBounds, level, tilesize,
+        metadata.getProtectionLevel, metadata.getTileType, bands)
+      val tofp = provider.getTiledOutputFormatProvider(tofc)
+
+      val updated = tofp.update(RasterRDD(changed), nodatas, conf)
+
+      val stats = metadata.getImageStats(level)
+      if (stats != null) {
+        metadata.setImageStats(level, updateStats(stats, updated, bands, nodatas))
+      }
+
+      val tb = TMSUtils.boundsToTile(metadata.getBounds, level, tilesize)
+      metadata.setTileBounds(level, tb.toLongRectangle)
+
+      val pll: Pixel = TMSUtils.latLonToPixels(metadata.getBounds.s, metadata.getBounds.w, level, tilesize)
+      val pur: Pixel = TMSUtils.latLonToPixels(metadata.getBounds.n, metadata.getBounds.e, level, tilesize)
+      metadata.setPixelBounds(level, new LongRectangle(0, 0, pur.px - pll.px, pur.py - pll.py))
+
+      // the changed tiles of the previous level have been decimated (and saved), so we don't need them anymore
+      if (previous != null) {
+        previous.unpersist()
+      }
+      previous = updated
+
+      level -= 1
+    }
+
+    if (previous != null) {
+      previous.unpersist()
+    }
+
+    if (metadata.getImageStats(zoom) != null) {
+      metadata.setStats(metadata.getImageStats(zoom))
+    }
+
+    provider.getMetadataWriter.write(metadata)
+  }
+
+  // Adjust the stats by the difference between the updated tiles and the tiles they replaced
+  private def updateStats(stats: Array[ImageStats], updated: RDD[(TileIdWritable, (RasterWritable, RasterWritable))],
+      bands: Int, nodatas: Array[Double]): Array[ImageStats] = {
+
+    val zero = ImageStats.initializeStatsArray(bands)
+
+    val delta = updated.aggregate(zero)((delta, t) => {
+      ImageStats.computeAndUpdateStats(delta, RasterWritable.toRaster(t._2._1), nodatas)
+
+      if (t._2._2 != null) {
+        val replaced = ImageStats.computeStats(RasterWritable.toRaster(t._2._2), nodatas)
+        for (b <- delta.indices) {
+          delta(b).count -= replaced(b).count
+          delta(b).sum -= replaced(b).sum
+        }
+      }
+
+      delta
+    },
+      (delta1, delta2) => {
+        for (b <- delta1.indices) {
+          delta1(b).count += delta2(b).count
+          delta1(b).sum += delta2(b).sum
+          delta1(b).max = Math.max(delta1(b).max, delta2(b).max)
+          delta1(b).min = Math.min(delta1(b).min, delta2(b).min)
+        }
+
+        delta1
+      })
+
+    val result = Array.ofDim[ImageStats](bands)
+    for (b <- result.indices) {
+      val count = stats(b).count + delta(b).count
+      val sum = stats(b).sum + delta(b).sum
+
+      result(b) = new ImageStats(Math.min(stats(b).min, delta(b).min), Math.max(stats(b).max, delta(b).max),
+        sum, count)
+      if (count == 0) {
+        result(b).mean = 0
+      }
+    }
+
+    result
   }
 
   @deprecated("Use RasterRDD method instead", "")
@@ -488,6 +629,8 @@ object SparkUtils extends Logging {
   def calculateStats(rdd: RasterRDD, bands: Int,
       nodata: Array[Number]): Array[ImageStats] = {
 
+    AutoPersister.scan(rdd)
+
     val zero = Array.ofDim[ImageStats](bands)
 
     for (i <- zero.indices) {
@@ -543,6 +686,8 @@ object SparkUtils extends Logging {
 
   def calculateBounds(rdd: RasterRDD, zoom: Int, tilesize: Int): Bounds = {
 
+    AutoPersister.scan(rdd)
+
     val bounds = rdd.aggregate(null.asInstanceOf[Bounds])((bounds:Bounds, t) => {
       val tile = TMSUtils.tileid(t._1.get, zoom)
       val tb = TMSUtils.tileBounds(tile.tx, tile.ty, zoom, tilesize)
@@ -651,6 +796,8 @@ object SparkUtils extends Logging {
 
   def calculateBoundsAndStats(rdd: RasterRDD, bands: Int, zoom: Int, tilesize: Int,
       nodata: Array[Number]): (Bounds, Array[ImageStats]) = {
+    AutoPersister.scan(rdd)
+
     val zero = Array.ofDim[ImageStats](bands)
 
     for (i <- zero.indices) {
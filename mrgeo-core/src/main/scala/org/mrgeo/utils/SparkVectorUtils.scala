@@ -16,13 +16,16 @@
 
 package org.mrgeo.utils
 
+import org.apache.hadoop.fs.Path
 import org.apache.hadoop.mapreduce.Job
 import org.apache.spark.SparkContext
+import org.apache.spark.rdd.PairRDDFunctions
 import org.apache.spark.storage.StorageLevel
 import org.mrgeo.data.rdd.VectorRDD
 import org.mrgeo.data.vector._
 import org.mrgeo.data.{DataProviderFactory, ProviderProperties}
 import org.mrgeo.geometry.Geometry
+import org.mrgeo.hdfs.vector.HdfsVectorDataProvider
 import org.mrgeo.utils.tms.Bounds
 
 import scala.collection.JavaConversions._
@@ -38,16 +41,40 @@ object SparkVectorUtils
   }
 
   def loadVectorRDD(provider:VectorDataProvider, context: SparkContext): VectorRDD = {
+    loadVectorRDD(provider, null, context)
+  }
+
+  /**
+    * Load the features, only keeping the listed attributes (null keeps them all).  Providers that
+    * support it (e.g. delimited text) never parse the other attributes.
+    */
+  def loadVectorRDD(provider:VectorDataProvider, requiredAttributes: Set[String],
+      context: SparkContext): VectorRDD = {
+    loadVectorRDD(provider, null, requiredAttributes, context)
+  }
+
+  /**
+    * Load the features the caller needs: those intersecting the bounds (null for everywhere), with
+    * only the listed attributes (null keeps them all).  Both are hints, providers that can query
+    * spatially (e.g. GeoWave) skip the other features, the rest may still return them.
+    * <p>
+    * When the attributes are listed, the lines and polygons are packed (see VectorRDD.pack()), with
+    * those attributes as the attribute schema.  Otherwise the geometries are returned as the
+    * provider read them (e.g. with lazily parsed attributes).
+    */
+  def loadVectorRDD(provider:VectorDataProvider, bounds: Bounds, requiredAttributes: Set[String],
+      context: SparkContext): VectorRDD = {
     //    val conf1 = provider.setupOutput(context.hadoopConfiguration)
     val inputs = Set(provider.getPrefixedResourceName)
-    val vifc = new VectorInputFormatContext(inputs, provider.getProviderProperties)
+    val vifc = new VectorInputFormatContext(inputs, provider.getProviderProperties, bounds,
+      if (requiredAttributes == null) null else new java.util.HashSet[String](requiredAttributes))
     val vfp = provider.getVectorInputFormatProvider(vifc)
     val job = Job.getInstance(context.hadoopConfiguration)
     val conf2 = vfp.setupJob(job, provider.getProviderProperties)
-    VectorRDD(context.newAPIHadoopRDD(job.getConfiguration,
+    VectorRDD.pack(context.newAPIHadoopRDD(job.getConfiguration,
       classOf[VectorInputFormat],
       classOf[FeatureIdWritable],
-      classOf[Geometry]))
+      classOf[Geometry]), if (requiredAttributes == null) null else requiredAttributes.toSeq)
   }
 
   def calculateBounds(rdd: VectorRDD): Bounds = {
@@ -77,25 +104,29 @@ object SparkVectorUtils
 
     features.persist(StorageLevel.MEMORY_AND_DISK_SER)
 
-    //    val output = outputProvider.getResourceName
-    //    val tofc = new VectorOutputFormatContext(output)
-    //    val tofp = outputProvider.getVectorOutputFormatProvider(tofc)
-    //    val job = Job.getInstance(context.hadoopConfiguration)
-    //    tofp.setupJob(job)
+    outputProvider match {
+    case hdfs: HdfsVectorDataProvider
+      if HdfsVectorDataProvider.isSourceBinary(new Path(hdfs.getResolvedResourceName(false))) =>
+      // binary vectors are written by the executors, the features never come back to the driver
+      val tofp = hdfs.getVectorOutputFormatProvider(new VectorOutputFormatContext(hdfs.getResourceName))
+      val job = Job.getInstance(context.hadoopConfiguration)
+      tofp.setupJob(job)
 
-    //    println("Num features: " + features.count())
-    //    features.saveAsNewAPIHadoopDataset(job.getConfiguration)
-    val writer = outputProvider.getVectorWriter
-    try {
-      // TODO: The following call to collect introduces a limitation on how much
-      // vector data can be saved because all the data will have to be brought
-      // back to this node, and thus it must fit into memory. However, for current
-      // requirements regarding vector data output, this is acceptable.
-      features.collect.foreach(U => {
-        writer.append(U._1, U._2)
-      })
-    } finally {
-      writer.close()
+      new PairRDDFunctions(features).saveAsNewAPIHadoopDataset(job.getConfiguration)
+      tofp.teardown(job)
+    case _ =>
+      val writer = outputProvider.getVectorWriter
+      try {
+        // TODO: The following call to collect introduces a limitation on how much
+        // vector data can be saved because all the data will have to be brought
+        // back to this node, and thus it must fit into memory. However, for current
+        // requirements regarding vector data output, this is acceptable.
+        features.collect.foreach(U => {
+          writer.append(U._1, U._2)
+        })
+      } finally {
+        writer.close()
+      }
     }
     features.unpersist()
   }
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.data.raster;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mrgeo.junit.UnitTest;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.io.IOException;
+
+public class TileCountersTest
+{
+  @Test
+  @Category(UnitTest.class)
+  public void countsEncodesAndDecodes() throws IOException
+  {
+    TileCounters.enable();
+    Assert.assertTrue(TileCounters.isEnabled());
+
+    long encodes = TileCounters.INSTANCE.getEncodes();
+    long encodedBytes = TileCounters.INSTANCE.getEncodedBytes();
+    long decodes = TileCounters.INSTANCE.getDecodes();
+    long decodedBytes = TileCounters.INSTANCE.getDecodedBytes();
+
+    Raster raster = RasterUtils.createEmptyRaster(16, 16, 1, DataBuffer.TYPE_FLOAT, 0.0);
+    RasterWritable rw = RasterWritable.toWritable(raster);
+    RasterWritable.toRaster(rw);
+    RasterWritable.toRaster(rw);
+
+    Assert.assertEquals(encodes + 1, TileCounters.INSTANCE.getEncodes());
+    Assert.assertEquals(encodedBytes + rw.getLength(), TileCounters.INSTANCE.getEncodedBytes());
+    Assert.assertEquals(decodes + 2, TileCounters.INSTANCE.getDecodes());
+    Assert.assertEquals(decodedBytes + 2 * rw.getBytes().length, TileCounters.INSTANCE.getDecodedBytes());
+
+    // enabling again is harmless (and doesn't register the MBean twice)
+    TileCounters.enable();
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void countsForThreadListener() throws IOException
+  {
+    TileCounters.enable();
+
+    final long[] counts = new long[4];
+    TileCounters.setListener(new TileCounters.Listener()
+    {
+      @Override
+      public void encoded(int bytes)
+      {
+        counts[0]++;
+        counts[1] += bytes;
+      }
+
+      @Override
+      public void decoded(int bytes)
+      {
+        counts[2]++;
+        counts[3] += bytes;
+      }
+    });
+
+    Raster raster = RasterUtils.createEmptyRaster(16, 16, 1, DataBuffer.TYPE_FLOAT, 0.0);
+    RasterWritable rw;
+    try
+    {
+      rw = RasterWritable.toWritable(raster);
+      RasterWritable.toRaster(rw);
+    }
+    finally
+    {
+      TileCounters.clearListener();
+    }
+
+    // not counted for the listener anymore
+    RasterWritable.toRaster(rw);
+
+    Assert.assertEquals(1, counts[0]);
+    Assert.assertEquals(rw.getLength(), counts[1]);
+    Assert.assertEquals(1, counts[2]);
+    Assert.assertEquals(rw.getBytes().length, counts[3]);
+  }
+}
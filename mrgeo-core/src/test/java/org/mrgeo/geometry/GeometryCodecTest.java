@@ -0,0 +1,212 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+package org.mrgeo.geometry;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mrgeo.junit.UnitTest;
+import org.mrgeo.mapreduce.GeometryWritable;
+import org.mrgeo.utils.tms.Bounds;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+@SuppressWarnings("static-method")
+public class GeometryCodecTest
+{
+private static final double EPSILON = 0.0;
+
+private static WritableLinearRing ring(double w, double s, double e, double n)
+{
+  return GeometryFactory.createLinearRing(GeometryFactory.createPoint(w, s), GeometryFactory.createPoint(e, s),
+      GeometryFactory.createPoint(e, n), GeometryFactory.createPoint(w, n), GeometryFactory.createPoint(w, s));
+}
+
+private static WritablePolygon polygon()
+{
+  WritablePolygon polygon = GeometryFactory.createPolygon();
+  polygon.setExteriorRing(ring(0, 0, 10, 10));
+  polygon.addInteriorRing(ring(2, 2, 4, 4));
+  polygon.setAttribute("name", "park");
+  return polygon;
+}
+
+private static WritableLineString line()
+{
+  WritableLineString line = GeometryFactory.createLineString(GeometryFactory.createPoint(1, 2),
+      GeometryFactory.createPoint(3, 4), GeometryFactory.createPoint(-1, 5));
+  line.setAttribute("highway", "residential");
+  return line;
+}
+
+private static Geometry roundTrip(Geometry geometry) throws IOException
+{
+  return GeometryCodec.fromBytes(GeometryCodec.toBytes(geometry));
+}
+
+private static void assertGeometry(Geometry expected, Geometry actual)
+{
+  Assert.assertEquals(expected.type(), actual.type());
+  Assert.assertEquals(expected.getAllAttributes(), actual.getAllAttributes());
+  Assert.assertEquals(expected.isEmpty(), actual.isEmpty());
+  if (!expected.isEmpty())
+  {
+    Assert.assertTrue(actual.toString(), expected.toJTS().equalsExact(actual.toJTS()));
+    Assert.assertEquals(expected.getBounds(), actual.getBounds());
+  }
+}
+
+@Test
+@Category(UnitTest.class)
+public void point() throws IOException
+{
+  WritablePoint point = GeometryFactory.createPoint(-122.4194155, 37.7749295);
+  point.setAttribute("id", "1");
+
+  assertGeometry(point, roundTrip(point));
+}
+
+@Test
+@Category(UnitTest.class)
+public void point3d() throws IOException
+{
+  Point point = (Point) roundTrip(GeometryFactory.createPoint(1.5, 2.5, 100.25));
+
+  Assert.assertEquals(1.5, point.getX(), EPSILON);
+  Assert.assertEquals(2.5, point.getY(), EPSILON);
+  Assert.assertEquals(100.25, point.getZ(), EPSILON);
+}
+
+@Test
+@Category(UnitTest.class)
+public void emptyPoint() throws IOException
+{
+  WritablePoint point = GeometryFactory.createPoint();
+  point.setAttribute("id", "empty");
+
+  Geometry result = roundTrip(point);
+  assertGeometry(point, result);
+  Assert.assertNull(GeometryCodec.boundsOf(GeometryCodec.toBytes(point), 0, GeometryCodec.toBytes(point).length));
+}
+
+@Test
+@Category(UnitTest.class)
+public void lineString() throws IOException
+{
+  assertGeometry(line(), roundTrip(line()));
+}
+
+@Test
+@Category(UnitTest.class)
+public void polygonWithHole() throws IOException
+{
+  Polygon result = (Polygon) roundTrip(polygon());
+
+  assertGeometry(polygon(), result);
+  Assert.assertEquals(1, result.getNumInteriorRings());
+}
+
+@Test
+@Category(UnitTest.class)
+public void collection() throws IOException
+{
+  WritableGeometryCollection collection = GeometryFactory.createGeometryCollection();
+  collection.addGeometry(GeometryFactory.createPoint(5, 6));
+  collection.addGeometry(line());
+  collection.addGeometry(polygon());
+  collection.setAttribute("kind", "mixed");
+
+  assertGeometry(collection, roundTrip(collection));
+}
+
+@Test
+@Category(UnitTest.class)
+public void packed() throws IOException
+{
+  Geometry packed = PackedGeometry.pack(polygon(), new AttributeDictionary());
+
+  assertGeometry(polygon(), roundTrip(packed));
+}
+
+@Test
+@Category(UnitTest.class)
+public void nullAttribute() throws IOException
+{
+  WritableLineString line = line();
+  line.setAttribute("ref", null);
+
+  Geometry result = roundTrip(line);
+  Assert.assertTrue(result.hasAttribute("ref"));
+  Assert.assertNull(result.getAttribute("ref"));
+  Assert.assertEquals("residential", result.getAttribute("highway"));
+}
+
+@Test
+@Category(UnitTest.class)
+public void readBounds() throws IOException
+{
+  Geometry[] geometries = { GeometryFactory.createPoint(3, 4), line(), polygon() };
+
+  ByteArrayOutputStream baos = new ByteArrayOutputStream();
+  DataOutputStream out = new DataOutputStream(baos);
+  for (Geometry geometry : geometries)
+  {
+    GeometryCodec.write(geometry, out);
+  }
+  out.close();
+
+  // the bounds are read without the coordinates, and the stream is left at the next geometry
+  DataInputStream in = new DataInputStream(new ByteArrayInputStream(baos.toByteArray()));
+  for (Geometry geometry : geometries)
+  {
+    Assert.assertEquals(geometry.getBounds(), GeometryCodec.readBounds(in));
+  }
+  Assert.assertEquals(0, in.available());
+
+  byte[] bytes = GeometryCodec.toBytes(polygon());
+  Assert.assertEquals(new Bounds(0, 0, 10, 10), GeometryCodec.boundsOf(bytes, 0, bytes.length));
+}
+
+@Test
+@Category(UnitTest.class)
+public void writable() throws IOException
+{
+  ByteArrayOutputStream baos = new ByteArrayOutputStream();
+  DataOutputStream out = new DataOutputStream(baos);
+  new GeometryWritable(polygon()).write(out);
+  out.close();
+
+  GeometryWritable writable = new GeometryWritable();
+  writable.readFields(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+
+  Assert.assertEquals(new Bounds(0, 0, 10, 10), writable.getBounds());
+  assertGeometry(polygon(), writable.getGeometry());
+
+  // an undecoded writable is written back unchanged
+  GeometryWritable copy = new GeometryWritable();
+  writable.readFields(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+  ByteArrayOutputStream again = new ByteArrayOutputStream();
+  writable.write(new DataOutputStream(again));
+  Assert.assertArrayEquals(baos.toByteArray(), again.toByteArray());
+
+  copy.readFields(new DataInputStream(new ByteArrayInputStream(again.toByteArray())));
+  assertGeometry(polygon(), copy.getGeometry());
+}
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.geometry;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mrgeo.job.serializers.PackedGeometrySerializer;
+import org.mrgeo.junit.UnitTest;
+import org.mrgeo.utils.tms.Bounds;
+
+import java.io.ByteArrayOutputStream;
+
+@SuppressWarnings("static-method")
+public class PackedGeometryTest
+{
+private static final double EPSILON = 1e-12;
+
+private static WritableLinearRing ring(double w, double s, double e, double n)
+{
+  return GeometryFactory.createLinearRing(GeometryFactory.createPoint(w, s), GeometryFactory.createPoint(e, s),
+      GeometryFactory.createPoint(e, n), GeometryFactory.createPoint(w, n), GeometryFactory.createPoint(w, s));
+}
+
+private static WritablePolygon polygon()
+{
+  WritablePolygon polygon = GeometryFactory.createPolygon();
+  polygon.setExteriorRing(ring(0, 0, 10, 10));
+  polygon.addInteriorRing(ring(2, 2, 4, 4));
+  polygon.setAttribute("name", "park");
+  return polygon;
+}
+
+private static WritableLineString line(String highway)
+{
+  WritableLineString line = GeometryFactory.createLineString(GeometryFactory.createPoint(1, 2),
+      GeometryFactory.createPoint(3, 4), GeometryFactory.createPoint(-1, 5));
+  line.setAttribute("highway", highway);
+  return line;
+}
+
+@Test
+@Category(UnitTest.class)
+public void packLineString()
+{
+  AttributeDictionary dictionary = new AttributeDictionary();
+  LineString packed = (LineString) PackedGeometry.pack(line("residential"), dictionary);
+
+  Assert.assertTrue(packed instanceof PackedLineString);
+  Assert.assertEquals(3, packed.getNumPoints());
+  Assert.assertEquals(3.0, packed.getPoint(1).getX(), EPSILON);
+  Assert.assertEquals(4.0, packed.getPoint(1).getY(), EPSILON);
+  Assert.assertEquals("residential", packed.getAttribute("highway"));
+  Assert.assertFalse(packed.hasAttribute("name"));
+  Assert.assertEquals(new Bounds(-1, 2, 3, 5), packed.getBounds());
+
+  Assert.assertTrue(packed.toJTS().equalsExact(line("residential").toJTS()));
+  Assert.assertEquals(line("residential").toString(), packed.toString());
+}
+
+@Test
+@Category(UnitTest.class)
+public void packPolygon()
+{
+  AttributeDictionary dictionary = new AttributeDictionary();
+  Polygon packed = (Polygon) PackedGeometry.pack(polygon(), dictionary);
+
+  Assert.assertTrue(packed instanceof PackedPolygon);
+  Assert.assertEquals(1, packed.getNumInteriorRings());
+  Assert.assertEquals(5, packed.getExteriorRing().getNumPoints());
+  Assert.assertEquals(2.0, packed.getInteriorRing(0).getPoint(0).getX(), EPSILON);
+  Assert.assertEquals(new Bounds(0, 0, 10, 10), packed.getBounds());
+  Assert.assertTrue(packed.isValid());
+
+  Assert.assertTrue(packed.toJTS().equalsExact(polygon().toJTS()));
+  Assert.assertEquals(96.0, packed.toJTS().getArea(), EPSILON);
+
+  WritableGeometry unpacked = packed.createWritableClone();
+  Assert.assertTrue(unpacked instanceof WritablePolygon);
+  Assert.assertEquals("park", unpacked.getAttribute("name"));
+}
+
+@Test
+@Category(UnitTest.class)
+public void sharedAttributes()
+{
+  AttributeDictionary dictionary = new AttributeDictionary();
+  PackedGeometry g1 = (PackedGeometry) PackedGeometry.pack(line(new String("primary")), dictionary);
+  PackedGeometry g2 = (PackedGeometry) PackedGeometry.pack(line(new String("primary")), dictionary);
+
+  Assert.assertEquals(1, dictionary.size());
+  // the values are interned, so both geometries reference the same string
+  Assert.assertSame(g1.getAttribute("highway"), g2.getAttribute("highway"));
+}
+
+@Test
+@Category(UnitTest.class)
+public void kryo()
+{
+  Kryo kryo = new Kryo();
+  PackedGeometrySerializer serializer = new PackedGeometrySerializer();
+  kryo.register(PackedLineString.class, serializer);
+  kryo.register(PackedLinearRing.class, serializer);
+  kryo.register(PackedPolygon.class, serializer);
+
+  AttributeDictionary dictionary = new AttributeDictionary();
+  Geometry line = PackedGeometry.pack(line("residential"), dictionary);
+  Geometry polygon = PackedGeometry.pack(polygon(), dictionary);
+
+  ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+  Output output = new Output(bytes);
+  kryo.writeClassAndObject(output, line);
+  kryo.writeClassAndObject(output, polygon);
+  output.close();
+
+  Input input = new Input(bytes.toByteArray());
+  LineString readLine = (LineString) kryo.readClassAndObject(input);
+  Polygon readPolygon = (Polygon) kryo.readClassAndObject(input);
+
+  Assert.assertTrue(readLine.toJTS().equalsExact(line.toJTS()));
+  Assert.assertEquals("residential", readLine.getAttribute("highway"));
+
+  Assert.assertTrue(readPolygon.toJTS().equalsExact(polygon.toJTS()));
+  Assert.assertEquals("park", readPolygon.getAttribute("name"));
+}
+
+@Test
+@Category(UnitTest.class)
+public void kryoSchema()
+{
+  Kryo kryo = new Kryo();
+  kryo.register(PackedLineString.class, new PackedGeometrySerializer());
+  kryo.register(PackedPolygon.class, new PackedGeometrySerializer());
+
+  AttributeDictionary schema = AttributeDictionary.createSchema(new String[]{"highway"});
+
+  Geometry line = PackedGeometry.pack(line("residential"), new AttributeDictionary(schema));
+  Geometry unknown = PackedGeometry.pack(line("residential"), new AttributeDictionary());
+  Geometry unknown2 = PackedGeometry.pack(line("primary"), new AttributeDictionary());
+  // "name" isn't in the schema
+  Geometry polygon = PackedGeometry.pack(polygon(), new AttributeDictionary(schema));
+
+  Output output = new Output(1024, -1);
+  kryo.writeClassAndObject(output, line);
+  int schemaBytes = output.position();
+  kryo.writeClassAndObject(output, unknown);
+  int nameBytes = output.position() - schemaBytes;
+  kryo.writeClassAndObject(output, polygon);
+  kryo.writeClassAndObject(output, unknown2);
+
+  // the key is written as a column index instead of "highway"
+  Assert.assertTrue(schemaBytes < nameBytes);
+
+  Input input = new Input(output.toBytes());
+  PackedGeometry readLine = (PackedGeometry) kryo.readClassAndObject(input);
+  PackedGeometry readUnknown = (PackedGeometry) kryo.readClassAndObject(input);
+  PackedGeometry readPolygon = (PackedGeometry) kryo.readClassAndObject(input);
+  PackedGeometry readUnknown2 = (PackedGeometry) kryo.readClassAndObject(input);
+
+  Assert.assertEquals("residential", readLine.getAttribute("highway"));
+  Assert.assertSame(schema, readLine.getDictionary());
+  Assert.assertEquals("residential", readUnknown.getAttribute("highway"));
+  Assert.assertEquals("park", readPolygon.getAttribute("name"));
+  Assert.assertNull(readPolygon.getAttribute("highway"));
+
+  // the values are interned by the serializer
+  Assert.assertSame(readLine.getAttribute("highway"), readUnknown.getAttribute("highway"));
+
+  // geometries with the same keys outside the schema share a dictionary
+  Assert.assertEquals("primary", readUnknown2.getAttribute("highway"));
+  Assert.assertSame(readUnknown.getDictionary(), readUnknown2.getDictionary());
+}
+
+@Test
+@Category(UnitTest.class)
+public void registerSchema()
+{
+  AttributeDictionary schema = AttributeDictionary.registerSchema(42, new String[]{"highway", "name"});
+
+  Assert.assertEquals(42, schema.getId());
+  Assert.assertSame(schema, AttributeDictionary.getSchema(42));
+  Assert.assertSame(schema, AttributeDictionary.registerSchema(42, new String[]{"highway", "name"}));
+  Assert.assertArrayEquals(new String[]{"highway", "name"}, schema.getSchemaKeys());
+
+  Assert.assertNull(AttributeDictionary.getSchema(43));
+}
+
+@Test
+@Category(UnitTest.class)
+public void pointsNotPacked()
+{
+  AttributeDictionary dictionary = new AttributeDictionary();
+  WritablePoint point = GeometryFactory.createPoint(1, 2);
+  point.setAttribute("name", "here");
+
+  Assert.assertSame(point, PackedGeometry.pack(point, dictionary));
+  // the point's attributes aren't added to the dictionary
+  Assert.assertEquals(0, dictionary.size());
+}
+
+@Test
+@Category(UnitTest.class)
+public void zNotPacked()
+{
+  AttributeDictionary dictionary = new AttributeDictionary();
+  WritableLineString line = GeometryFactory.createLineString(GeometryFactory.createPoint(1, 2, 3),
+      GeometryFactory.createPoint(3, 4, 5));
+  line.setAttribute("highway", "primary");
+
+  // packing would lose the z values
+  Geometry packed = PackedGeometry.pack(line, dictionary);
+  Assert.assertSame(line, packed);
+  Assert.assertEquals(5.0, ((LineString) packed).getPoint(1).getZ(), EPSILON);
+  Assert.assertEquals(0, dictionary.size());
+}
+
+@Test(expected = UnsupportedOperationException.class)
+@Category(UnitTest.class)
+public void schemaIsImmutable()
+{
+  AttributeDictionary.createSchema(new String[]{"highway"}).column("name");
+}
+}
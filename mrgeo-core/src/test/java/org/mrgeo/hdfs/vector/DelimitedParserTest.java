@@ -0,0 +1,149 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.hdfs.vector;
+
+import org.apache.hadoop.io.Text;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mrgeo.geometry.Geometry;
+import org.mrgeo.geometry.Point;
+import org.mrgeo.junit.UnitTest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+@SuppressWarnings("static-method")
+public class DelimitedParserTest
+{
+  private static final double EPSILON = 0.0;
+
+  private static DelimitedParser pointParser()
+  {
+    return new DelimitedParser(Arrays.asList("name", "x", "y", "value"), 1, 2, -1, ',', '"', false);
+  }
+
+  private static Geometry parseBytes(DelimitedParser parser, String line)
+  {
+    Text text = new Text(line);
+    return parser.parse(text.getBytes(), text.getLength());
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void parseBytesMatchesString()
+  {
+    String[] lines = {
+        "a,-122.4194155,37.7749295,1",
+        "\"quoted, name\",0.000123,-0.5,2.5",
+        "b,1.5e3,-2E-2,",
+        "c,12345678901234567890,1e-30,x",
+        "d,été,3,4"
+    };
+
+    for (String line: lines)
+    {
+      Geometry expected = pointParser().parse(line);
+      Geometry actual = parseBytes(pointParser(), line);
+
+      Assert.assertEquals(line, expected.getAllAttributes(), actual.getAllAttributes());
+      Assert.assertEquals(line, expected.type(), actual.type());
+      if (expected instanceof Point)
+      {
+        Assert.assertEquals(line, ((Point) expected).getX(), ((Point) actual).getX(), EPSILON);
+        Assert.assertEquals(line, ((Point) expected).getY(), ((Point) actual).getY(), EPSILON);
+      }
+    }
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void parseNumbers()
+  {
+    String[] values = {"0", "-0", "1", "-1.25", "3.14159265358979", "0.1", "100.", ".5", "+7",
+        "1e22", "1e23", "4.9e-324", "179.99999999999997", " 42 "};
+
+    for (String value: values)
+    {
+      Text text = new Text(value);
+      DelimitedFields fields = new DelimitedFields();
+      fields.split(text.getBytes(), text.getLength(), ',', '"');
+
+      Assert.assertEquals(value, Double.parseDouble(value.trim()), fields.getDouble(text.getBytes(), 0), EPSILON);
+    }
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void badCoordinate()
+  {
+    Geometry geom = parseBytes(pointParser(), "a,abc,37.5,1");
+
+    // the same as the String parser, no point, just the attributes
+    Assert.assertTrue(Double.isNaN(((Point) geom).getX()));
+    Assert.assertEquals("abc", geom.getAttribute("x"));
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void requiredAttributes()
+  {
+    DelimitedParser parser = pointParser();
+    parser.setRequiredAttributes(new HashSet<>(Collections.singletonList("value")));
+
+    Point pt = (Point) parseBytes(parser, "a,10.5,-20.25,7");
+
+    Assert.assertEquals(10.5, pt.getX(), EPSILON);
+    Assert.assertEquals(-20.25, pt.getY(), EPSILON);
+    Assert.assertEquals("7", pt.getAttribute("value"));
+    Assert.assertFalse(pt.hasAttribute("name"));
+    Assert.assertEquals(1, pt.getAllAttributes().size());
+
+    // the string parser honors them too
+    Point pt2 = (Point) parser.parse("a,10.5,-20.25,7");
+    Assert.assertEquals(pt.getAllAttributes(), pt2.getAllAttributes());
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void lazyAttributes()
+  {
+    DelimitedParser parser = pointParser();
+    Text text = new Text("a,1,2,3");
+    Geometry geom = parser.parse(text.getBytes(), text.getLength());
+
+    // the parser's buffer is reused for the next line, the attributes must not change
+    text.set("b,4,5,6");
+    parser.parse(text.getBytes(), text.getLength());
+
+    Assert.assertEquals("a", geom.getAttribute("name"));
+    Assert.assertEquals("3", geom.getAttribute("value"));
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void wkt()
+  {
+    DelimitedParser parser = new DelimitedParser(Arrays.asList("id", "geometry"), -1, -1, 1, '\t', '"', false);
+
+    Geometry geom = parseBytes(parser, "12\tLINESTRING(0 0, 1 1)");
+
+    Assert.assertEquals(Geometry.Type.LINESTRING, geom.type());
+    Assert.assertEquals("12", geom.getAttribute("id"));
+  }
+}
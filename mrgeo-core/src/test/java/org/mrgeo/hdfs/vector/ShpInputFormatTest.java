@@ -29,6 +29,8 @@ import org.junit.experimental.categories.Category;
 import org.mrgeo.data.vector.FeatureIdWritable;
 import org.mrgeo.geometry.Geometry;
 import org.mrgeo.geometry.Point;
+import org.mrgeo.hdfs.vector.shp.ShapefileRangeReader;
+import org.mrgeo.hdfs.vector.shp.ShapefileReader;
 import org.mrgeo.junit.UnitTest;
 import org.mrgeo.test.TestUtils;
 import org.mrgeo.utils.HadoopUtils;
@@ -208,4 +210,29 @@ public class ShpInputFormatTest
     }
   }
 
+  @Test
+  @Category(UnitTest.class)
+  public void testRecordRange() throws Exception
+  {
+    Configuration conf = new Configuration();
+    Path shp = new Path(input, "country.shp");
+
+    ShapefileReader full = new ShapefileReader(shp);
+    try (ShapefileRangeReader range = new ShapefileRangeReader(shp, 10, 20, conf))
+    {
+      Assert.assertEquals(full.size(), ShapefileRangeReader.getRecordCount(shp, conf));
+      Assert.assertEquals(full.getProjection(), range.getProjection());
+
+      int index = 10;
+      while (range.hasNext())
+      {
+        Assert.assertEquals(full.get(index++).toString(), range.next().toString());
+      }
+      Assert.assertEquals(20, index);
+    }
+    finally
+    {
+      full.close();
+    }
+  }
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.job;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mrgeo.junit.UnitTest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@SuppressWarnings("static-method")
+public class JobManagerTest
+{
+  private JobManager manager;
+
+  private static class BlockingJob implements RunnableJob
+  {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+
+    @Override
+    public void setJobResults(JobResults jr)
+    {
+    }
+
+    @Override
+    public void run()
+    {
+      started.countDown();
+      try
+      {
+        Thread.sleep(60000);
+      }
+      catch (InterruptedException e)
+      {
+        interrupted.countDown();
+      }
+    }
+  }
+
+  @Before
+  public void setUp()
+  {
+    manager = JobTestManager.getInstance();
+  }
+
+  @After
+  public void tearDown()
+  {
+    JobTestManager.reset();
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void cancelRunningJob() throws Exception
+  {
+    BlockingJob job = new BlockingJob();
+    long jobId = manager.submitJob("blocking", job);
+
+    Assert.assertTrue(job.started.await(10, TimeUnit.SECONDS));
+    Assert.assertTrue(manager.cancelJob(jobId));
+    Assert.assertTrue(job.interrupted.await(10, TimeUnit.SECONDS));
+
+    // already cancelled
+    Assert.assertFalse(manager.cancelJob(jobId));
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void uniqueJobIds() throws Exception
+  {
+    BlockingJob job1 = new BlockingJob();
+    BlockingJob job2 = new BlockingJob();
+
+    long id1 = manager.submitJob("job 1", job1);
+    long id2 = manager.submitJob("job 2", job2, "tenant");
+
+    Assert.assertTrue(id1 != id2);
+
+    Assert.assertTrue(manager.cancelJob(id1));
+    Assert.assertTrue(manager.cancelJob(id2));
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void cancelUnknownJob()
+  {
+    Assert.assertFalse(manager.cancelJob(12345L));
+  }
+}
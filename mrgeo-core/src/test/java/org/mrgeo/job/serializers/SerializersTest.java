@@ -0,0 +1,145 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.job.serializers;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mrgeo.data.raster.RasterWritable;
+import org.mrgeo.data.tile.TileIdWritable;
+import org.mrgeo.data.vector.FeatureIdWritable;
+import org.mrgeo.junit.UnitTest;
+
+import java.util.Arrays;
+import java.util.Random;
+
+@SuppressWarnings("static-method")
+public class SerializersTest
+{
+  private static byte[] write(Kryo kryo, Object obj)
+  {
+    Output output = new Output(1024, -1);
+    kryo.writeObject(output, obj);
+    return output.toBytes();
+  }
+
+  private static <T> T read(Kryo kryo, byte[] bytes, Class<T> clazz)
+  {
+    return kryo.readObject(new Input(bytes), clazz);
+  }
+
+  private static byte[] randomBytes(int length)
+  {
+    byte[] bytes = new byte[length];
+    new Random(1).nextBytes(bytes);
+    return bytes;
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void rasterExactLength()
+  {
+    Kryo kryo = new Kryo();
+    kryo.register(RasterWritable.class, new RasterWritableSerializer(false));
+
+    byte[] data = randomBytes(1000);
+    RasterWritable rw = new RasterWritable(data);
+    // a reused writable can have a backing array much longer than its data
+    rw.setCapacity(10000);
+    Assert.assertEquals(1000, rw.getLength());
+
+    byte[] bytes = write(kryo, rw);
+    // flag, varint length, data
+    Assert.assertEquals(1 + 2 + 1000, bytes.length);
+
+    RasterWritable result = read(kryo, bytes, RasterWritable.class);
+    Assert.assertEquals(1000, result.getLength());
+    Assert.assertArrayEquals(data, Arrays.copyOf(result.getBytes(), result.getLength()));
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void rasterCompressed()
+  {
+    Kryo compressing = new Kryo();
+    compressing.register(RasterWritable.class, new RasterWritableSerializer(true));
+    Kryo plain = new Kryo();
+    plain.register(RasterWritable.class, new RasterWritableSerializer(false));
+
+    // a mostly empty tile
+    byte[] data = new byte[512 * 512];
+    Arrays.fill(data, 0, 100, (byte) 7);
+
+    byte[] bytes = write(compressing, new RasterWritable(data));
+    Assert.assertTrue("Expected compression: " + bytes.length, bytes.length < data.length / 10);
+
+    // either serializer reads both
+    RasterWritable result = read(plain, bytes, RasterWritable.class);
+    Assert.assertArrayEquals(data, Arrays.copyOf(result.getBytes(), result.getLength()));
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void rasterIncompressible()
+  {
+    Kryo kryo = new Kryo();
+    kryo.register(RasterWritable.class, new RasterWritableSerializer(true));
+
+    byte[] data = randomBytes(4096);
+    byte[] bytes = write(kryo, new RasterWritable(data));
+
+    // stored as is, not bigger
+    Assert.assertEquals(1 + 2 + 4096, bytes.length);
+
+    RasterWritable result = read(kryo, bytes, RasterWritable.class);
+    Assert.assertArrayEquals(data, Arrays.copyOf(result.getBytes(), result.getLength()));
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void tileId()
+  {
+    Kryo kryo = new Kryo();
+    kryo.register(TileIdWritable.class, new TileIdWritableSerializer());
+
+    Assert.assertEquals(1, write(kryo, new TileIdWritable(5)).length);
+    Assert.assertEquals(3, write(kryo, new TileIdWritable(1L << 20)).length);
+
+    for (long id : new long[]{0L, 127L, 128L, 123456789L, Long.MAX_VALUE})
+    {
+      Assert.assertEquals(id, read(kryo, write(kryo, new TileIdWritable(id)), TileIdWritable.class).get());
+    }
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void featureId()
+  {
+    Kryo kryo = new Kryo();
+    kryo.register(FeatureIdWritable.class, new FeatureIdWritableSerializer());
+
+    Assert.assertEquals(1, write(kryo, new FeatureIdWritable(-1L)).length);
+
+    for (long id : new long[]{-1L, 0L, 42L, -123456L, Long.MIN_VALUE})
+    {
+      Assert.assertEquals(id, read(kryo, write(kryo, new FeatureIdWritable(id)), FeatureIdWritable.class).get());
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.mapalgebra.vector.paint;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mrgeo.geometry.*;
+import org.mrgeo.junit.UnitTest;
+import org.mrgeo.utils.tms.Bounds;
+
+import java.awt.image.Raster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("static-method")
+public class TileRasterizerTest
+{
+private static final double epsilon = 0.0000001;
+
+// 10x10 pixel tile, each pixel is 1x1 in world coordinates
+private static TileRasterizer create(VectorPainter.AggregationType type, TileRasterizer.Coverage coverage)
+{
+  TileRasterizer rasterizer = new TileRasterizer(10, 10, type, coverage);
+  rasterizer.setBounds(new Bounds(0, 0, 10, 10));
+  return rasterizer;
+}
+
+private static WritableLinearRing ring(double w, double s, double e, double n)
+{
+  return GeometryFactory.createLinearRing(GeometryFactory.createPoint(w, s), GeometryFactory.createPoint(e, s),
+      GeometryFactory.createPoint(e, n), GeometryFactory.createPoint(w, n), GeometryFactory.createPoint(w, s));
+}
+
+private static WritablePolygon box(double w, double s, double e, double n)
+{
+  WritablePolygon polygon = GeometryFactory.createPolygon();
+  polygon.setExteriorRing(ring(w, s, e, n));
+  return polygon;
+}
+
+private static int countPainted(Raster raster)
+{
+  int count = 0;
+  for (int y = 0; y < raster.getHeight(); y++)
+  {
+    for (int x = 0; x < raster.getWidth(); x++)
+    {
+      if (!Double.isNaN(raster.getSampleDouble(x, y, 0)))
+      {
+        count++;
+      }
+    }
+  }
+  return count;
+}
+
+@Test
+@Category(UnitTest.class)
+public void fillPolygon()
+{
+  TileRasterizer rasterizer = create(VectorPainter.AggregationType.SUM, TileRasterizer.Coverage.CENTER);
+  rasterizer.paint(box(2, 2, 5, 5), 1.0);
+
+  Raster raster = rasterizer.toRaster();
+  assertEquals(9, countPainted(raster));
+
+  // world y 2 - 5 is pixel row 5 - 7
+  assertEquals(1.0, raster.getSampleDouble(2, 5, 0), epsilon);
+  assertEquals(1.0, raster.getSampleDouble(4, 7, 0), epsilon);
+  assertTrue(Double.isNaN(raster.getSampleDouble(5, 7, 0)));
+}
+
+@Test
+@Category(UnitTest.class)
+public void polygonHole()
+{
+  WritablePolygon polygon = box(1, 1, 9, 9);
+  polygon.addInteriorRing(ring(4, 4, 6, 6));
+
+  TileRasterizer rasterizer = create(VectorPainter.AggregationType.MASK, TileRasterizer.Coverage.CENTER);
+  rasterizer.paint(polygon, 1.0);
+
+  Raster raster = rasterizer.toRaster();
+  assertEquals(60, countPainted(raster));
+  assertEquals(0.0, raster.getSampleDouble(1, 1, 0), epsilon);
+  assertTrue(Double.isNaN(raster.getSampleDouble(4, 4, 0)));
+}
+
+@Test
+@Category(UnitTest.class)
+public void sumOverlaps()
+{
+  TileRasterizer rasterizer = create(VectorPainter.AggregationType.SUM, TileRasterizer.Coverage.CENTER);
+
+  // the parts of a single geometry only count once
+  WritableGeometryCollection collection = GeometryFactory.createGeometryCollection();
+  collection.addGeometry(box(0, 0, 5, 5));
+  collection.addGeometry(box(2, 2, 7, 7));
+  rasterizer.paint(collection, 1.0);
+
+  rasterizer.paint(box(2, 2, 7, 7), 3.0);
+
+  Raster raster = rasterizer.toRaster();
+  assertEquals(1.0, raster.getSampleDouble(0, 9, 0), epsilon);
+  assertEquals(4.0, raster.getSampleDouble(3, 6, 0), epsilon);
+}
+
+@Test
+@Category(UnitTest.class)
+public void minMaxAverage()
+{
+  TileRasterizer min = create(VectorPainter.AggregationType.MIN, TileRasterizer.Coverage.CENTER);
+  TileRasterizer max = create(VectorPainter.AggregationType.MAX, TileRasterizer.Coverage.CENTER);
+  TileRasterizer avg = create(VectorPainter.AggregationType.AVERAGE, TileRasterizer.Coverage.CENTER);
+
+  for (TileRasterizer r : new TileRasterizer[]{min, max, avg})
+  {
+    r.paint(box(0, 0, 10, 10), 2.0);
+    r.paint(box(0, 0, 10, 10), 4.0);
+  }
+
+  assertEquals(2.0, min.toRaster().getSampleDouble(5, 5, 0), epsilon);
+  assertEquals(4.0, max.toRaster().getSampleDouble(5, 5, 0), epsilon);
+  assertEquals(3.0, avg.toRaster().getSampleDouble(5, 5, 0), epsilon);
+}
+
+@Test
+@Category(UnitTest.class)
+public void lineCoverage()
+{
+  WritableLineString line = GeometryFactory.createLineString(GeometryFactory.createPoint(0.5, 9.5),
+      GeometryFactory.createPoint(9.5, 0.7));
+
+  TileRasterizer center = create(VectorPainter.AggregationType.SUM, TileRasterizer.Coverage.CENTER);
+  center.paint(line, 1.0);
+
+  TileRasterizer touch = create(VectorPainter.AggregationType.SUM, TileRasterizer.Coverage.TOUCH);
+  touch.paint(line, 1.0);
+
+  int centerCount = countPainted(center.toRaster());
+  assertEquals(10, centerCount);
+  assertTrue(countPainted(touch.toRaster()) > centerCount);
+}
+
+@Test
+@Category(UnitTest.class)
+public void smallPolygonTouch()
+{
+  // a polygon smaller than a pixel doesn't cover any pixel centers, but does touch a pixel
+  TileRasterizer center = create(VectorPainter.AggregationType.SUM, TileRasterizer.Coverage.CENTER);
+  center.paint(box(3.1, 3.1, 3.2, 3.2), 1.0);
+  assertEquals(0, countPainted(center.toRaster()));
+
+  TileRasterizer touch = create(VectorPainter.AggregationType.SUM, TileRasterizer.Coverage.TOUCH);
+  touch.paint(box(3.1, 3.1, 3.2, 3.2), 1.0);
+  assertEquals(1, countPainted(touch.toRaster()));
+}
+}
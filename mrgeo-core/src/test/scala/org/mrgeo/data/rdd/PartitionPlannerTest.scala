@@ -0,0 +1,107 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+
+package org.mrgeo.data.rdd
+
+import junit.framework.Assert
+import org.junit.experimental.categories.Category
+import org.junit.{Before, Test}
+import org.mrgeo.image.MrsPyramidMetadata
+import org.mrgeo.junit.UnitTest
+import org.mrgeo.utils.tms.{Bounds, TMSUtils}
+import org.scalatest.junit.AssertionsForJUnit
+
+class PartitionPlannerTest extends AssertionsForJUnit
+{
+  private val zoom = 8
+  private val tilesize = 512
+  private val bounds = new Bounds(-10, -10, 10, 10)
+
+  private var metadata:MrsPyramidMetadata = null
+
+  @Before
+  def setup():Unit =
+  {
+    metadata = new MrsPyramidMetadata
+    metadata.setTilesize(tilesize)
+    metadata.setBounds(bounds)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def partitionsBySize():Unit =
+  {
+    // 1000 1m tiles in 64m partitions
+    Assert.assertEquals(16, PartitionPlanner.partitions(1000, 1024 * 1024, 64 * 1024 * 1024, 2))
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def parallelismFloor():Unit =
+  {
+    // all of it fits in one partition, but there are 8 cores
+    Assert.assertEquals(8, PartitionPlanner.partitions(100, 1, 1000, 8))
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def tilesCap():Unit =
+  {
+    // never more partitions than tiles, even with more cores
+    Assert.assertEquals(3, PartitionPlanner.partitions(3, 1, 1000, 8))
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def oversizedTiles():Unit =
+  {
+    // tiles bigger than a block get one partition (block) each, not two
+    Assert.assertEquals(10, PartitionPlanner.partitions(10, 200, 100, 1))
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def noTiles():Unit =
+  {
+    Assert.assertEquals(4, PartitionPlanner.partitions(0, 100, 1000, 4))
+    Assert.assertEquals(1, PartitionPlanner.partitions(0, 100, 1000, 0))
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def tilesInBounds():Unit =
+  {
+    val all = TMSUtils.boundsToTile(bounds, zoom, tilesize)
+    Assert.assertEquals(all.width() * all.height(), PartitionPlanner.tiles(metadata, zoom))
+
+    val part = new Bounds(0, 0, 5, 5)
+    val tb = TMSUtils.boundsToTile(part, zoom, tilesize)
+    Assert.assertEquals(tb.width() * tb.height(), PartitionPlanner.tiles(metadata, zoom, part))
+
+    // only the part overlapping the image
+    val overlap = TMSUtils.boundsToTile(new Bounds(0, 0, 10, 10), zoom, tilesize)
+    Assert.assertEquals(overlap.width() * overlap.height(),
+      PartitionPlanner.tiles(metadata, zoom, new Bounds(0, 0, 50, 50)))
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def tilesNotOverlapping():Unit =
+  {
+    Assert.assertEquals(0L, PartitionPlanner.tiles(metadata, zoom, new Bounds(50, 50, 60, 60)))
+  }
+}
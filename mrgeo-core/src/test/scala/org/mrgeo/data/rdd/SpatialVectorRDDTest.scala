@@ -0,0 +1,148 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.data.rdd
+
+import junit.framework.Assert
+import org.apache.spark.rdd.RDD
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import org.mrgeo.data.vector.FeatureIdWritable
+import org.mrgeo.geometry.{Geometry, GeometryFactory, Point}
+import org.mrgeo.hdfs.partitioners.TileRangePartitioner
+import org.mrgeo.junit.UnitTest
+import org.mrgeo.test.SparkLocalRunnerTest
+import org.mrgeo.utils.tms.{Bounds, TMSUtils}
+
+import scala.collection.mutable.ListBuffer
+
+class SpatialVectorRDDTest extends SparkLocalRunnerTest
+{
+  private val zoom = 6
+  private val tilesize = 512
+
+  // the id of the diagonal line
+  private val line = 100L
+
+  // 100 points in a row along the equator, plus a diagonal line whose bounds cover far more than the line
+  private def vectors():RDD[(FeatureIdWritable, Geometry)] =
+  {
+    val features = ListBuffer[(FeatureIdWritable, Geometry)]()
+    for (i <- 0 until 100) {
+      features += ((new FeatureIdWritable(i), GeometryFactory.createPoint(i - 49.5, 0.5)))
+    }
+    features += ((new FeatureIdWritable(line), GeometryFactory.createLineString(
+      GeometryFactory.createPoint(-40, -40), GeometryFactory.createPoint(40, 40))))
+
+    sparkContext.parallelize(features, 3)
+  }
+
+  private def spatial():SpatialVectorRDD =
+  {
+    val partitioner = TileRangePartitioner.fromBounds(
+      TMSUtils.boundsToTileExact(new Bounds(-50, -40, 50, 40), zoom, tilesize), zoom, 4)
+
+    SpatialVectorRDD(vectors(), partitioner, zoom, tilesize)
+  }
+
+  private def ids(rdd:RDD[(FeatureIdWritable, Geometry)]):Set[Long] =
+  {
+    rdd.map(_._1.get).collect().toSet
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def eachFeatureOnce():Unit =
+  {
+    val rdd = spatial()
+
+    Assert.assertEquals(4, rdd.indexes.partitions.length)
+    Assert.assertEquals(101, rdd.count())
+    Assert.assertEquals((0L to line).toSet, ids(rdd))
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def fromSample():Unit =
+  {
+    val rdd = SpatialVectorRDD(vectors(), zoom, tilesize, 4)
+
+    Assert.assertEquals(101, rdd.count())
+    Assert.assertEquals((0L to line).toSet, ids(rdd))
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def range():Unit =
+  {
+    val rdd = spatial()
+
+    // points 60 - 69 (x = 10.5 - 19.5), and the line's bounds.  The line is in several partitions,
+    // but is only returned once
+    val found = rdd.range(new Bounds(10, 0, 20, 1))
+    Assert.assertEquals(11, found.count())
+    Assert.assertEquals((60L to 69L).toSet + line, ids(found))
+
+    // only the line's bounds
+    Assert.assertEquals(Set(line), ids(rdd.range(new Bounds(20, -30, 30, -20))))
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def intersects():Unit =
+  {
+    val rdd = spatial()
+
+    // the line runs through (0.5, 0.5), but not through the rest of the row
+    Assert.assertEquals((60L to 69L).toSet, ids(rdd.intersects(new Bounds(10, 0, 20, 1))))
+    Assert.assertEquals(Set(line), ids(rdd.intersects(new Bounds(20, 15, 30, 25))))
+    Assert.assertTrue(ids(rdd.intersects(new Bounds(20, -30, 30, -20))).isEmpty)
+
+    Assert.assertEquals(Set(50L, line), ids(rdd.intersects(GeometryFactory.createLineString(
+      GeometryFactory.createPoint(0, 0), GeometryFactory.createPoint(1, 1)))))
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def tiles():Unit =
+  {
+    val rdd = spatial()
+    val query = new Bounds(-20, -10, 20, 10)
+
+    val tiles = rdd.tiles(query).map(tile => (tile._1, tile._2.map(_._1.get).toSet)).collect()
+
+    // each tile is produced once
+    Assert.assertEquals(tiles.length, tiles.map(_._1).distinct.length)
+
+    // every point in the query is found in its own tile
+    rdd.collect().foreach(feature => {
+      feature._2 match {
+      case pt:Point if query.contains(pt.getX, pt.getY) =>
+        val t = TMSUtils.latLonToTile(pt.getY, pt.getX, zoom, tilesize)
+        val id = TMSUtils.tileid(t.tx, t.ty, zoom)
+        Assert.assertTrue(tiles.exists(tile => tile._1 == id && tile._2.contains(feature._1.get)))
+      case pt:Point =>
+        Assert.assertFalse(tiles.exists(_._2.contains(feature._1.get)))
+      case _ =>
+      }
+    })
+
+    // the line's bounds cover every tile in the query
+    val tb = TMSUtils.boundsToTileExact(query, zoom, tilesize)
+    Assert.assertEquals(tb.width() * tb.height(), tiles.length)
+    tiles.foreach(tile => Assert.assertTrue(tile._2.contains(line)))
+  }
+}
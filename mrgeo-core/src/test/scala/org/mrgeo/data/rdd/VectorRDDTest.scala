@@ -0,0 +1,79 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.data.rdd
+
+import junit.framework.Assert
+import org.apache.spark.rdd.RDD
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import org.mrgeo.data.vector.FeatureIdWritable
+import org.mrgeo.geometry.{Geometry, GeometryFactory, PackedGeometry}
+import org.mrgeo.junit.UnitTest
+import org.mrgeo.test.SparkLocalRunnerTest
+
+class VectorRDDTest extends SparkLocalRunnerTest
+{
+  private def lines():RDD[(FeatureIdWritable, Geometry)] =
+  {
+    sparkContext.parallelize(0 until 10, 2).map(i => {
+      val line = GeometryFactory.createLineString(GeometryFactory.createPoint(i, 0), GeometryFactory.createPoint(i, 1))
+      line.setAttribute("highway", "primary")
+      (new FeatureIdWritable(i), line.asInstanceOf[Geometry])
+    })
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def packWithColumns():Unit =
+  {
+    val packed = VectorRDD.pack(lines(), Seq("highway"))
+
+    Assert.assertEquals(1, packed.schemas.length)
+    Assert.assertEquals("highway", packed.schemas(0).key(0))
+
+    val geometries = packed.map(_._2).collect()
+    Assert.assertEquals(10, geometries.length)
+    geometries.foreach(geometry => {
+      Assert.assertTrue(geometry.isInstanceOf[PackedGeometry])
+      Assert.assertEquals("primary", geometry.getAttribute("highway"))
+    })
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def packWithoutColumns():Unit =
+  {
+    val vectors = VectorRDD.pack(lines(), null)
+
+    Assert.assertEquals(0, vectors.schemas.length)
+    vectors.map(_._2).collect().foreach(geometry => Assert.assertFalse(geometry.isInstanceOf[PackedGeometry]))
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def schemasFromLineage():Unit =
+  {
+    val packed = VectorRDD.pack(lines(), Seq("highway"))
+
+    // the schema follows the geometries through other RDDs and VectorRDDs
+    val mapped = packed.filter(_._1.get > 2)
+    Assert.assertEquals(packed.schemas.toSeq, VectorRDD.schemas(mapped).toSeq)
+    Assert.assertEquals(packed.schemas.toSeq, VectorRDD(mapped).schemas.toSeq)
+
+    Assert.assertEquals(0, VectorRDD.schemas(lines()).length)
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.hdfs.output.image
+
+import java.awt.image.DataBuffer
+import java.io.File
+import java.nio.file.Files
+
+import junit.framework.Assert
+import org.apache.commons.io.FileUtils
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.Path
+import org.apache.hadoop.io.MapFile
+import org.junit.experimental.categories.Category
+import org.junit.{After, Before, Test}
+import org.mockito.Mockito
+import org.mrgeo.data.image.ImageOutputFormatContext
+import org.mrgeo.data.raster.{RasterUtils, RasterWritable}
+import org.mrgeo.data.rdd.RasterRDD
+import org.mrgeo.data.tile.TileIdWritable
+import org.mrgeo.hdfs.image.HdfsMrsImageDataProvider
+import org.mrgeo.hdfs.tile.FileSplit
+import org.mrgeo.hdfs.tile.FileSplit.FileSplitInfo
+import org.mrgeo.junit.UnitTest
+import org.mrgeo.test.SparkLocalRunnerTest
+
+import scala.collection.mutable.ArrayBuffer
+
+class HdfsMrsPyramidOutputFormatProviderTest extends SparkLocalRunnerTest
+{
+  private val zoom = 3
+  private val tilesize = 4
+  private val nodatas = Array(Double.NaN)
+
+  private var dir:File = null
+  private var level:Path = null
+  private var conf:Configuration = null
+  private var subject:HdfsMrsPyramidOutputFormatProvider = null
+
+  @Before
+  def setup():Unit = {
+    dir = Files.createTempDirectory("update").toFile
+    level = new Path(dir.toURI.toString, zoom.toString)
+    conf = new Configuration()
+
+    // the existing level, 2 parts
+    writePart("part-r-00000", Seq(1L, 2L, 3L))
+    writePart("part-r-00001", Seq(10L, 11L))
+
+    val splits = new FileSplit
+    splits.generateSplits(Array(new FileSplitInfo(1, 3, "part-r-00000", 0),
+      new FileSplitInfo(10, 11, "part-r-00001", 1)))
+    splits.writeSplits(level)
+
+    val provider = Mockito.mock(classOf[HdfsMrsImageDataProvider])
+    Mockito.when(provider.getResolvedResourceName(false)).thenReturn(dir.toURI.toString)
+
+    subject = new HdfsMrsPyramidOutputFormatProvider(provider,
+      new ImageOutputFormatContext(dir.toURI.toString, null, zoom, tilesize, "", DataBuffer.TYPE_FLOAT, 1))
+  }
+
+  @After
+  def cleanup():Unit = {
+    FileUtils.deleteDirectory(dir)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def update():Unit = {
+    // tile 2 overlaps an existing tile (only its left half has data), 5 and 12 are new.  1, 3, 10
+    // and 11 aren't in the update.
+    val half = RasterUtils.createEmptyRaster(tilesize, tilesize, 1, DataBuffer.TYPE_FLOAT, Double.NaN)
+    for (y <- 0 until tilesize; x <- 0 until tilesize / 2) {
+      half.setSample(x, y, 0, 5.0)
+    }
+
+    val tiles = sparkContext.parallelize(Seq((new TileIdWritable(2), RasterWritable.toWritable(half)),
+      (new TileIdWritable(5), tile(7.0)), (new TileIdWritable(12), tile(7.0))))
+
+    val updated = subject.update(RasterRDD(tiles), nodatas, conf).collect().sortBy(_._1.get)
+
+    Assert.assertEquals(3, updated.length)
+    Assert.assertEquals(2L, updated(0)._1.get)
+    Assert.assertNotNull("the replaced tile", updated(0)._2._2)
+    Assert.assertEquals(1.0, RasterWritable.toRaster(updated(0)._2._2).getSampleDouble(3, 0, 0))
+    Assert.assertEquals(5L, updated(1)._1.get)
+    Assert.assertNull(updated(1)._2._2)
+    Assert.assertEquals(12L, updated(2)._1.get)
+    Assert.assertNull(updated(2)._2._2)
+
+    // the merged parts
+    val part0 = readPart("part-r-00000")
+    Assert.assertEquals(Seq(1L, 2L, 3L), part0.map(_._1))
+    val merged = RasterWritable.toRaster(part0(1)._2)
+    Assert.assertEquals(5.0, merged.getSampleDouble(0, 0, 0))
+    Assert.assertEquals(1.0, merged.getSampleDouble(tilesize - 1, tilesize - 1, 0))
+    Assert.assertEquals(1.0, RasterWritable.toRaster(part0(0)._2).getSampleDouble(0, 0, 0))
+    Assert.assertEquals(1.0, RasterWritable.toRaster(part0(2)._2).getSampleDouble(0, 0, 0))
+
+    val part1 = readPart("part-r-00001")
+    Assert.assertEquals(Seq(5L, 10L, 11L, 12L), part1.map(_._1))
+    Assert.assertEquals(7.0, RasterWritable.toRaster(part1(0)._2).getSampleDouble(0, 0, 0))
+    Assert.assertEquals(1.0, RasterWritable.toRaster(part1(1)._2).getSampleDouble(0, 0, 0))
+
+    // and the index
+    val splits = new FileSplit
+    splits.readSplits(level)
+    val infos = splits.getSplits.map(_.asInstanceOf[FileSplitInfo])
+    Assert.assertEquals(2, infos.length)
+    Assert.assertEquals("part-r-00000", infos(0).getName)
+    Assert.assertEquals(1L, infos(0).getStartId)
+    Assert.assertEquals(3L, infos(0).getEndId)
+    Assert.assertEquals("part-r-00001", infos(1).getName)
+    Assert.assertEquals(5L, infos(1).getStartId)
+    Assert.assertEquals(12L, infos(1).getEndId)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def untouchedParts():Unit = {
+    val data = new File(new File(dir, zoom + "/part-r-00001"), MapFile.DATA_FILE_NAME)
+    val modified = data.lastModified()
+
+    val tiles = sparkContext.parallelize(Seq((new TileIdWritable(1), tile(3.0))))
+    subject.update(RasterRDD(tiles), nodatas, conf).count()
+
+    Assert.assertEquals(3.0, RasterWritable.toRaster(readPart("part-r-00000").head._2).getSampleDouble(0, 0, 0))
+
+    // the part without new tiles isn't rewritten
+    Assert.assertTrue(data.exists())
+    Assert.assertEquals(modified, data.lastModified())
+    Assert.assertEquals(Seq(10L, 11L), readPart("part-r-00001").map(_._1))
+  }
+
+  private def tile(value:Double) = {
+    RasterWritable.toWritable(RasterUtils.createEmptyRaster(tilesize, tilesize, 1, DataBuffer.TYPE_FLOAT, value))
+  }
+
+  private def writePart(name:String, ids:Seq[Long]):Unit = {
+    val writer = new MapFile.Writer(conf, new Path(level, name),
+      MapFile.Writer.keyClass(classOf[TileIdWritable]),
+      MapFile.Writer.valueClass(classOf[RasterWritable]))
+    try {
+      ids.foreach(id => writer.append(new TileIdWritable(id), tile(1.0)))
+    }
+    finally {
+      writer.close()
+    }
+  }
+
+  private def readPart(name:String):Seq[(Long, RasterWritable)] = {
+    val result = ArrayBuffer.empty[(Long, RasterWritable)]
+    val reader = new MapFile.Reader(new Path(level, name), conf)
+    try {
+      var key = new TileIdWritable()
+      var value = new RasterWritable()
+      while (reader.next(key, value)) {
+        result += ((key.get, value))
+        key = new TileIdWritable()
+        value = new RasterWritable()
+      }
+    }
+    finally {
+      reader.close()
+    }
+    result
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.hdfs.partitioners
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, ObjectInputStream, ObjectOutputStream}
+
+import junit.framework.Assert
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import org.mrgeo.data.tile.TileIdWritable
+import org.mrgeo.hdfs.tile.FileSplit.FileSplitInfo
+import org.mrgeo.junit.UnitTest
+import org.mrgeo.utils.tms.{TMSUtils, TileBounds}
+import org.scalatest.junit.AssertionsForJUnit
+
+class TileRangePartitionerTest extends AssertionsForJUnit
+{
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def partition():Unit =
+  {
+    val partitioner = new TileRangePartitioner(Array(10L, 20L, 30L))
+
+    Assert.assertEquals(3, partitioner.numPartitions)
+    Assert.assertEquals(0, partitioner.getPartition(new TileIdWritable(0)))
+    Assert.assertEquals(0, partitioner.getPartition(new TileIdWritable(10)))
+    Assert.assertEquals(1, partitioner.getPartition(11L))
+    Assert.assertEquals(2, partitioner.getPartition(30L))
+
+    // ids past the last range go into the last partition
+    Assert.assertEquals(2, partitioner.getPartition(100L))
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def fromSplits():Unit =
+  {
+    // the 2nd partition is empty (start > end)
+    val splits = Array(new FileSplitInfo(0, 10, "part-r-00000", 0),
+      new FileSplitInfo(Long.MaxValue, Long.MinValue, "part-r-00001", 1),
+      new FileSplitInfo(11, 20, "part-r-00002", 2))
+
+    val partitioner = TileRangePartitioner(splits)
+
+    Assert.assertEquals(3, partitioner.numPartitions)
+    Assert.assertEquals(0, partitioner.getPartition(5L))
+    Assert.assertEquals(0, partitioner.getPartition(10L))
+    Assert.assertEquals(2, partitioner.getPartition(11L))
+    Assert.assertEquals(2, partitioner.getPartition(20L))
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def fromSample():Unit =
+  {
+    val sample = (1L to 100L).reverse.toArray
+
+    val partitioner = TileRangePartitioner.fromSample(sample, 4)
+    Assert.assertEquals(4, partitioner.numPartitions)
+
+    val counts = Array.ofDim[Int](4)
+    sample.foreach(id => counts(partitioner.getPartition(id)) += 1)
+    counts.foreach(count => Assert.assertEquals(25, count))
+
+    // duplicate ids can't be split, so there are fewer partitions
+    val duplicates = TileRangePartitioner.fromSample(Array.fill(100)(5L), 4)
+    Assert.assertEquals(2, duplicates.numPartitions)
+    Assert.assertEquals(0, duplicates.getPartition(5L))
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def fromBounds():Unit =
+  {
+    val zoom = 10
+    val bounds = new TileBounds(100, 200, 109, 219)
+
+    val partitioner = TileRangePartitioner.fromBounds(bounds, zoom, 4)
+    Assert.assertEquals(4, partitioner.numPartitions)
+
+    // 200 tiles, 50 per partition
+    val counts = Array.ofDim[Int](4)
+    for (ty <- bounds.s to bounds.n; tx <- bounds.w to bounds.e) {
+      counts(partitioner.getPartition(TMSUtils.tileid(tx, ty, zoom))) += 1
+    }
+    counts.foreach(count => Assert.assertEquals(50, count))
+
+    // never more partitions than tiles
+    Assert.assertEquals(2, TileRangePartitioner.fromBounds(new TileBounds(5, 5, 6, 5), zoom, 4).numPartitions)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def externalize():Unit =
+  {
+    val partitioner = new TileRangePartitioner(Array(10L, 20L, Long.MaxValue))
+
+    val bytes = new ByteArrayOutputStream()
+    val out = new ObjectOutputStream(bytes)
+    out.writeObject(partitioner)
+    out.close()
+
+    val in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray))
+    val read = in.readObject().asInstanceOf[TileRangePartitioner]
+
+    Assert.assertEquals(partitioner, read)
+  }
+}
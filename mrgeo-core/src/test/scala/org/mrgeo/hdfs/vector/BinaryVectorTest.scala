@@ -0,0 +1,179 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.hdfs.vector
+
+import java.io.File
+import java.nio.file.Files
+
+import junit.framework.Assert
+import org.apache.commons.io.FileUtils
+import org.apache.spark.serializer.KryoSerializer
+import org.apache.spark.{SparkConf, SparkContext}
+import org.junit.experimental.categories.Category
+import org.junit.{After, Before, Test}
+import org.mrgeo.data.DataProviderFactory.AccessMode
+import org.mrgeo.data.rdd.VectorRDD
+import org.mrgeo.data.vector.{FeatureIdWritable, VectorDataProvider}
+import org.mrgeo.data.{DataProviderFactory, ProviderProperties}
+import org.mrgeo.geometry.{Geometry, GeometryFactory}
+import org.mrgeo.job.KryoRegistrar
+import org.mrgeo.junit.UnitTest
+import org.mrgeo.utils.{HadoopUtils, SparkVectorUtils}
+import org.mrgeo.utils.tms.Bounds
+import org.scalatest.junit.AssertionsForJUnit
+
+import scala.collection.mutable
+
+class BinaryVectorTest extends AssertionsForJUnit
+{
+  private var dir:File = null
+  private var context:SparkContext = null
+
+  @Before
+  def setup():Unit = {
+    dir = Files.createTempDirectory("binaryvector").toFile
+
+    DataProviderFactory.initialize(HadoopUtils.createConfiguration())
+    DataProviderFactory.invalidateCache()
+
+    val conf = new SparkConf()
+    conf.setMaster("local")
+    conf.setAppName("BinaryVectorTest")
+    conf.set("spark.serializer", classOf[KryoSerializer].getName)
+    conf.set("spark.kryo.registrator", classOf[KryoRegistrar].getName)
+
+    context = SparkContext.getOrCreate(conf)
+  }
+
+  @After
+  def teardown():Unit = {
+    if (context != null) {
+      context.stop()
+    }
+    FileUtils.deleteDirectory(dir)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def writerRoundTrip():Unit = {
+    val provider = createProvider("writer.mrgv")
+
+    val writer = provider.getVectorWriter
+    Assert.assertTrue(writer.isInstanceOf[BinaryVectorWriter])
+    try {
+      features.foreach(feature => writer.append(feature._1, feature._2))
+    }
+    finally {
+      writer.close()
+    }
+
+    verify(provider)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def saveRoundTrip():Unit = {
+    val provider = createProvider("save.mrgv")
+
+    // 2 partitions, so there are 2 part files
+    SparkVectorUtils.save(VectorRDD(context.parallelize(features, 2)), provider, context, new ProviderProperties())
+
+    verify(provider)
+  }
+
+  private def createProvider(name:String):VectorDataProvider = {
+    val provider = DataProviderFactory.getVectorDataProvider(new File(dir, name).toURI.toString,
+      AccessMode.OVERWRITE, new ProviderProperties())
+    Assert.assertTrue(provider.isInstanceOf[HdfsVectorDataProvider])
+    provider
+  }
+
+  private def features:Seq[(FeatureIdWritable, Geometry)] = {
+    val point = GeometryFactory.createPoint(0, 0)
+    point.setAttribute("name", "origin")
+
+    val point2 = GeometryFactory.createPoint(10, 10)
+    point2.setAttribute("name", "ten")
+
+    val line = GeometryFactory.createLineString(GeometryFactory.createPoint(20, 20),
+      GeometryFactory.createPoint(30, 30))
+    line.setAttribute("name", "road")
+    line.setAttribute("highway", "primary")
+
+    val polygon = GeometryFactory.createPolygon(GeometryFactory.createPoint(40, 40),
+      GeometryFactory.createPoint(50, 40), GeometryFactory.createPoint(50, 50),
+      GeometryFactory.createPoint(40, 50), GeometryFactory.createPoint(40, 40))
+    polygon.setAttribute("name", "park")
+
+    Seq((new FeatureIdWritable(1), point), (new FeatureIdWritable(2), point2),
+      (new FeatureIdWritable(3), line), (new FeatureIdWritable(4), polygon))
+  }
+
+  private def verify(provider:VectorDataProvider):Unit = {
+    val expected = features.map(feature => (feature._1.get, feature._2)).toMap
+
+    val reader = provider.getVectorReader
+    try {
+      Assert.assertTrue(reader.isInstanceOf[BinaryVectorReader])
+      Assert.assertEquals(4, reader.count())
+
+      val all = read(reader.get())
+      Assert.assertEquals(expected.keySet, all.keySet)
+      all.foreach(feature => assertSame(expected(feature._1), feature._2))
+
+      // the 2nd point and the line
+      val queried = read(reader.get(new Bounds(5, 5, 25, 25)))
+      Assert.assertEquals(Set(2L, 3L), queried.keySet)
+
+      Assert.assertTrue(read(reader.get(new Bounds(-50, -50, -40, -40))).isEmpty)
+
+      assertSame(expected(4), reader.get(new FeatureIdWritable(4)))
+      Assert.assertNull(reader.get(new FeatureIdWritable(5)))
+    }
+    finally {
+      reader.close()
+    }
+
+    // and as an RDD, with an attribute schema
+    val rdd = SparkVectorUtils.loadVectorRDD(provider, Set("name"), context)
+    val loaded = rdd.map(feature => (feature._1.get, feature._2)).collect()
+
+    Assert.assertEquals(4, loaded.length)
+    loaded.foreach(feature => assertSame(expected(feature._1), feature._2))
+  }
+
+  private def read(iter:org.mrgeo.data.CloseableKVIterator[FeatureIdWritable, Geometry]):Map[Long, Geometry] = {
+    val result = mutable.Map.empty[Long, Geometry]
+    try {
+      while (iter.hasNext) {
+        val geometry = iter.next()
+        result.put(iter.currentKey().get, geometry)
+      }
+    }
+    finally {
+      iter.close()
+    }
+    result.toMap
+  }
+
+  private def assertSame(expected:Geometry, actual:Geometry):Unit = {
+    Assert.assertNotNull(actual)
+    Assert.assertEquals(expected.`type`(), actual.`type`())
+    Assert.assertTrue(expected.toJTS.equalsExact(actual.toJTS))
+    Assert.assertEquals(expected.getAllAttributesSorted, actual.getAllAttributesSorted)
+  }
+}
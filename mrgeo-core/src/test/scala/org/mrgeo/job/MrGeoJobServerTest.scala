@@ -0,0 +1,128 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+
+package org.mrgeo.job
+
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+
+import junit.framework.Assert
+import org.apache.hadoop.fs.Path
+import org.apache.spark.rdd.RDD
+import org.apache.spark.{SparkConf, SparkContext}
+import org.junit.experimental.categories.Category
+import org.junit.{After, Test}
+import org.mrgeo.hdfs.utils.HadoopFileUtils
+import org.mrgeo.junit.UnitTest
+import org.scalatest.junit.AssertionsForJUnit
+
+class MrGeoJobServerTest extends AssertionsForJUnit {
+
+  // persists (and checkpoints) an RDD, then waits to be released before finishing
+  class PersistJob(release:CountDownLatch) extends MrGeoJob {
+    val running = new CountDownLatch(1)
+    var context:SparkContext = null
+    var rdd:RDD[Int] = null
+
+    override def registerClasses(): Array[Class[_]] = Array.empty[Class[_]]
+
+    override def setup(job: JobArguments, conf: SparkConf): Boolean = true
+
+    override def execute(context: SparkContext): Boolean = {
+      this.context = context
+      rdd = context.parallelize(1 to 100, 2).map(_ * 2).persist()
+      rdd.checkpoint()
+      rdd.count()
+
+      // the job's RDDs are tracked from the (asynchronous) job start events
+      val group = context.getLocalProperty("spark.jobGroup.id")
+      val timeout = System.currentTimeMillis() + 10000
+      while (!MrGeoJobServer.jobRdds(group).contains(rdd.id) && System.currentTimeMillis() < timeout) {
+        Thread.sleep(10)
+      }
+
+      running.countDown()
+      release.await(30, TimeUnit.SECONDS)
+    }
+
+    override def teardown(job: JobArguments, conf: SparkConf): Boolean = true
+  }
+
+  @After
+  def stop(): Unit = {
+    MrGeoJobServer.stop()
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def releasesEachJob():Unit = {
+    val release1 = new CountDownLatch(1)
+    val release2 = new CountDownLatch(1)
+
+    val job1 = new PersistJob(release1)
+    val job2 = new PersistJob(release2)
+
+    val thread1 = runJob(job1, "job1")
+    Assert.assertTrue(job1.running.await(30, TimeUnit.SECONDS))
+    val thread2 = runJob(job2, "job2")
+    Assert.assertTrue(job2.running.await(30, TimeUnit.SECONDS))
+
+    val context = job1.context
+    Assert.assertSame(context, job2.context)
+    Assert.assertTrue(context.getPersistentRDDs.contains(job1.rdd.id))
+    Assert.assertTrue(context.getPersistentRDDs.contains(job2.rdd.id))
+    Assert.assertTrue(checkpointed(context, job1.rdd))
+    Assert.assertTrue(checkpointed(context, job2.rdd))
+
+    // finishing the second job only releases its RDD
+    release2.countDown()
+    thread2.join(30000)
+
+    Assert.assertFalse(context.getPersistentRDDs.contains(job2.rdd.id))
+    Assert.assertFalse(checkpointed(context, job2.rdd))
+    Assert.assertTrue(context.getPersistentRDDs.contains(job1.rdd.id))
+    Assert.assertTrue(checkpointed(context, job1.rdd))
+
+    // and once the server is idle, nothing is left
+    val checkpoint1 = checkpoint(context, job1.rdd).get
+    release1.countDown()
+    thread1.join(30000)
+
+    Assert.assertTrue(context.getPersistentRDDs.isEmpty)
+    Assert.assertFalse(HadoopFileUtils.exists(context.hadoopConfiguration, checkpoint1))
+  }
+
+  private def runJob(job:MrGeoJob, name:String):Thread = {
+    val args = new JobArguments()
+    args.name = name
+
+    val conf = new SparkConf().setMaster("local[2]").setAppName("MrGeoJobServerTest")
+
+    val thread = new Thread(new Runnable {
+      override def run(): Unit = MrGeoJobServer.run(job, args, conf)
+    })
+    thread.start()
+    thread
+  }
+
+  private def checkpoint(context:SparkContext, rdd:RDD[_]):Option[Path] = {
+    context.getCheckpointDir.map(dir => new Path(dir, "rdd-" + rdd.id))
+  }
+
+  private def checkpointed(context:SparkContext, rdd:RDD[_]):Boolean = {
+    checkpoint(context, rdd).exists(HadoopFileUtils.exists(context.hadoopConfiguration, _))
+  }
+}
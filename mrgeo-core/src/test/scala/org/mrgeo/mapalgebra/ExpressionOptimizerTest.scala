@@ -0,0 +1,159 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.mapalgebra
+
+import junit.framework.Assert
+import org.junit.experimental.categories.Category
+import org.junit.{Before, Test}
+import org.mrgeo.junit.UnitTest
+import org.mrgeo.mapalgebra.parser.{ParserConstantNode, ParserFunctionNode, ParserNode, ParserVariableNode}
+import org.scalatest.junit.AssertionsForJUnit
+
+import scala.collection.mutable
+
+class ExpressionOptimizerTest extends AssertionsForJUnit
+{
+  private val variables = mutable.Map.empty[String, ParserNode]
+  private var optimizer:ExpressionOptimizer = null
+
+  @Before
+  def setup():Unit =
+  {
+    variables.clear()
+    variables.put("__file_0__", function("dem"))
+
+    optimizer = new ExpressionOptimizer(variables.get, value => {
+      val name = "__subexpression_" + variables.size + "__"
+      variables.put(name, value)
+      variable(name)
+    })
+  }
+
+  private def function(name:String, children:ParserNode*):ParserFunctionNode =
+  {
+    val fn = new ParserFunctionNode
+    fn.setName(name)
+    children.foreach(fn.addChild)
+    fn
+  }
+
+  private def constant(value:AnyRef):ParserConstantNode =
+  {
+    val cn = new ParserConstantNode
+    cn.setValue(value)
+    cn.setName(value.toString)
+    cn
+  }
+
+  private def variable(name:String):ParserVariableNode =
+  {
+    val vn = new ParserVariableNode
+    vn.setName(name)
+    vn
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def foldConstants():Unit =
+  {
+    // [dem] * (2 + 3)
+    val result = optimizer.optimize(function("*", variable("__file_0__"),
+      function("+", constant(Integer.valueOf(2)), constant(Integer.valueOf(3)))))
+
+    Assert.assertEquals("*", result.getName)
+    result.getChild(1) match {
+    case c:ParserConstantNode => Assert.assertEquals(java.lang.Double.valueOf(5.0), c.getValue)
+    case _ => Assert.fail("Expected a constant")
+    }
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def foldNested():Unit =
+  {
+    // -(4 / 2) * 1.5
+    val result = optimizer.optimize(function("*",
+      function("uminus", function("/", constant(Integer.valueOf(4)), constant(Integer.valueOf(2)))),
+      constant(java.lang.Double.valueOf(1.5))))
+
+    result match {
+    case c:ParserConstantNode => Assert.assertEquals(java.lang.Double.valueOf(-3.0), c.getValue)
+    case _ => Assert.fail("Expected a constant")
+    }
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def identitiesKept():Unit =
+  {
+    // [dem] + 0 copies (and converts) the image, it isn't [dem]
+    val dem = variable("__file_0__")
+    val result = optimizer.optimize(function("+", dem, constant(Integer.valueOf(0))))
+
+    Assert.assertEquals("+", result.getName)
+    Assert.assertTrue(result.isInstanceOf[ParserFunctionNode])
+    Assert.assertSame(dem, result.getChild(0))
+
+    val times = optimizer.optimize(function("*", constant(Integer.valueOf(1)), variable("__file_0__")))
+    Assert.assertEquals("*", times.getName)
+    Assert.assertEquals(2, times.getNumChildren)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def commonSubexpressions():Unit =
+  {
+    // slope([dem]) * 2 + slope([dem])
+    val first = function("slope", variable("__file_0__"))
+    val result = optimizer.optimize(function("+",
+      function("*", first, constant(Integer.valueOf(2))),
+      function("slope", variable("__file_0__"))))
+
+    Assert.assertSame(first, result.getChild(0).getChild(0))
+
+    result.getChild(1) match {
+    case v:ParserVariableNode => Assert.assertSame(first, variables(v.getName))
+    case _ => Assert.fail("Expected a variable")
+    }
+
+    // and in a later line, through the same variable
+    val later = optimizer.optimize(function("abs", function("slope", variable("__file_0__"))))
+    Assert.assertEquals(result.getChild(1).getName, later.getChild(0).getName)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def differentArguments():Unit =
+  {
+    val result = optimizer.optimize(function("+",
+      function("slope", variable("__file_0__"), constant("rad")),
+      function("slope", variable("__file_0__"), constant("deg"))))
+
+    Assert.assertTrue(result.getChild(0).isInstanceOf[ParserFunctionNode])
+    Assert.assertTrue(result.getChild(1).isInstanceOf[ParserFunctionNode])
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def saveNotShared():Unit =
+  {
+    optimizer.optimize(function("save", variable("__file_0__"), constant("out")))
+    val result = optimizer.optimize(function("save", variable("__file_0__"), constant("out")))
+
+    Assert.assertTrue(result.isInstanceOf[ParserFunctionNode])
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+
+package org.mrgeo.mapalgebra
+
+import junit.framework.Assert
+import org.apache.spark.storage.StorageLevel
+import org.apache.spark.{SparkConf, SparkContext}
+import org.junit.experimental.categories.Category
+import org.junit.{Before, Test}
+import org.mrgeo.data.raster.RasterWritable
+import org.mrgeo.data.rdd.{AutoPersister, RasterRDD}
+import org.mrgeo.data.tile.TileIdWritable
+import org.mrgeo.job.JobArguments
+import org.mrgeo.junit.UnitTest
+import org.mrgeo.mapalgebra.parser.{ParserFunctionNode, ParserNode, ParserVariableNode}
+import org.mrgeo.mapalgebra.raster.RasterMapOp
+import org.mrgeo.test.SparkLocalRunnerTest
+
+import scala.collection.JavaConversions._
+import scala.collection.mutable
+
+class PersistencePlannerTest extends SparkLocalRunnerTest
+{
+  // a map op with an empty RDD, that optionally scans it (like a bounds or stats calculation)
+  class TestMapOp(scans:Boolean = false) extends RasterMapOp
+  {
+    private var output:Option[RasterRDD] = None
+
+    override def rdd():Option[RasterRDD] = output
+
+    override def execute(context:SparkContext):Boolean =
+    {
+      val rdd = new RasterRDD(context.parallelize(Seq.empty[(TileIdWritable, RasterWritable)], 1))
+      output = Some(rdd)
+      if (scans) {
+        AutoPersister.scan(rdd)
+        rdd.count()
+      }
+      true
+    }
+
+    override def setup(job:JobArguments, conf:SparkConf):Boolean = true
+
+    override def teardown(job:JobArguments, conf:SparkConf):Boolean = true
+
+    def persisted:Boolean = output.exists(_.getStorageLevel != StorageLevel.NONE)
+  }
+
+  private val variables = mutable.Map.empty[String, ParserNode]
+
+  @Before
+  def setup():Unit =
+  {
+    variables.clear()
+  }
+
+  private def function(mapop:MapOp, children:ParserNode*):ParserFunctionNode =
+  {
+    val fn = new ParserFunctionNode
+    fn.setName(if (mapop == null) "=" else "test")
+    fn.setMapOp(mapop)
+    children.foreach(fn.addChild)
+    fn
+  }
+
+  private def variable(name:String):ParserVariableNode =
+  {
+    val vn = new ParserVariableNode
+    vn.setName(name)
+    vn
+  }
+
+  // name = value
+  private def assign(name:String, value:ParserFunctionNode):ParserFunctionNode =
+  {
+    variables.put(name, value)
+    function(null, variable(name), value)
+  }
+
+  // the same depth first order MapAlgebra executes in
+  private def execute(node:ParserNode, planner:PersistencePlanner):Unit =
+  {
+    node.getChildren.foreach(execute(_, planner))
+    node match {
+    case fn:ParserFunctionNode if fn.getMapOp != null =>
+      planner.before(fn.getMapOp)
+      fn.getMapOp.execute(sparkContext)
+      planner.after(fn.getMapOp)
+    case _ =>
+    }
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def sharedSubexpression():Unit =
+  {
+    // a = test(); test(a, a)
+    val a = new TestMapOp
+    val b = new TestMapOp
+    val nodes = Array[ParserNode](assign("a", function(a)), function(b, variable("a"), variable("a")))
+
+    val planner = new PersistencePlanner(sparkContext, variables.get)
+    planner.plan(nodes, Some(b))
+
+    execute(nodes(0), planner)
+    Assert.assertTrue("a is read twice", a.persisted)
+
+    // b isn't materialized, so a is still needed by any pass over b
+    execute(nodes(1), planner)
+    Assert.assertTrue(a.persisted)
+    Assert.assertFalse(b.persisted)
+
+    planner.finish()
+    Assert.assertFalse(a.persisted)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def materializedReaderReleasesInputs():Unit =
+  {
+    // a = test(); b = test(a, a); test(b, b), where b is scanned while executing
+    val a = new TestMapOp
+    val b = new TestMapOp(scans = true)
+    val c = new TestMapOp
+    val nodes = Array[ParserNode](assign("a", function(a)), assign("b", function(b, variable("a"), variable("a"))),
+      function(c, variable("b"), variable("b")))
+
+    val planner = new PersistencePlanner(sparkContext, variables.get)
+    planner.plan(nodes, Some(c))
+
+    execute(nodes(0), planner)
+    Assert.assertTrue(a.persisted)
+
+    // b was persisted before its scan, so a has been fully read
+    execute(nodes(1), planner)
+    Assert.assertTrue(b.persisted)
+    Assert.assertTrue(AutoPersister.isMaterialized(b.rdd().get))
+    Assert.assertFalse(a.persisted)
+
+    execute(nodes(2), planner)
+    Assert.assertTrue(b.persisted)
+    Assert.assertFalse(c.persisted)
+
+    planner.finish()
+    Assert.assertFalse(b.persisted)
+
+    // the scans were scoped to the job
+    Assert.assertFalse(AutoPersister.isMaterialized(b.rdd().get))
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def singleUseChain():Unit =
+  {
+    // test(test(test()))
+    val a = new TestMapOp(scans = true)
+    val b = new TestMapOp(scans = true)
+    val c = new TestMapOp
+    val nodes = Array[ParserNode](function(c, function(b, function(a))))
+
+    val planner = new PersistencePlanner(sparkContext, variables.get)
+    planner.plan(nodes, Some(c))
+    execute(nodes(0), planner)
+
+    Assert.assertFalse(a.persisted)
+    Assert.assertFalse(b.persisted)
+    Assert.assertFalse(c.persisted)
+
+    planner.finish()
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def saveIsARead():Unit =
+  {
+    // a = test(); test(a), saving a
+    val a = new TestMapOp
+    val b = new TestMapOp
+    val nodes = Array[ParserNode](assign("a", function(a)), function(b, variable("a")))
+
+    val planner = new PersistencePlanner(sparkContext, variables.get)
+    planner.plan(nodes, Some(a))
+
+    execute(nodes(0), planner)
+    Assert.assertTrue(a.persisted)
+    execute(nodes(1), planner)
+    Assert.assertTrue("a is still needed by the save", a.persisted)
+
+    planner.finish()
+    Assert.assertFalse(a.persisted)
+
+    // the same expression, saving b, doesn't persist a
+    val a2 = new TestMapOp
+    val b2 = new TestMapOp
+    val nodes2 = Array[ParserNode](assign("a", function(a2)), function(b2, variable("a")))
+
+    val planner2 = new PersistencePlanner(sparkContext, variables.get)
+    planner2.plan(nodes2, Some(b2))
+    execute(nodes2(0), planner2)
+    Assert.assertFalse(a2.persisted)
+    execute(nodes2(1), planner2)
+    Assert.assertFalse(b2.persisted)
+
+    planner2.finish()
+  }
+}
@@ -23,12 +23,12 @@ import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.security.Authorizations;
 import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.lang3.NotImplementedException;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.compress.CodecPool;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.Decompressor;
 import org.mrgeo.core.MrGeoProperties;
+import org.mrgeo.data.CloseableKVIterator;
 import org.mrgeo.data.DataProviderException;
 import org.mrgeo.data.KVIterator;
 import org.mrgeo.data.accumulo.metadata.AccumuloMrsPyramidMetadataReader;
@@ -39,6 +39,7 @@ import org.mrgeo.data.image.MrsPyramidReaderContext;
 import org.mrgeo.data.raster.RasterWritable;
 import org.mrgeo.data.image.MrsImageReader;
 import org.mrgeo.data.tile.TileIdWritable;
+import org.mrgeo.hdfs.image.HdfsMrsImageReader;
 import org.mrgeo.image.MrsImageException;
 import org.mrgeo.image.MrsPyramidMetadata;
 import org.mrgeo.utils.HadoopUtils;
@@ -53,9 +54,14 @@ import java.awt.image.Raster;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AccumuloMrsImageReader extends MrsImageReader
 {
@@ -69,9 +75,6 @@ public class AccumuloMrsImageReader extends MrsImageReader
   // single threaded scanner
   protected Scanner scanner;
 
-  // multithreaded scanner
-  protected BatchScanner batchScanner;
-
   // compression items
   private CompressionCodec codec;
   private Decompressor decompressor;
@@ -101,8 +104,12 @@ public class AccumuloMrsImageReader extends MrsImageReader
   // zppkeeper servers
   private String zooServers = null;
 
-  // number of threads to use for the connection
-  private int numQueryThreads = 2;
+  // number of threads the BatchScanner uses for multi-tile queries
+  private int numQueryThreads = MrGeoAccumuloConstants.MRGEO_ACC_DEFAULT_QUERY_THREADS;
+
+  // iterators whose BatchScanner is still open, closed with the reader
+  private final Set<BatchScannerIterator> openIterators =
+      Collections.newSetFromMap(new ConcurrentHashMap<BatchScannerIterator, Boolean>());
 
   // zoom level being accessed
   protected int zoomLevel = -1;
@@ -256,7 +263,7 @@ public class AccumuloMrsImageReader extends MrsImageReader
     this.user = user;
     this.pass = pass;
 
-    // this.numQueryThreads = numQueryThreads;
+    this.numQueryThreads = numQueryThreads;
 
     // check if we are in test mode
     if(MrGeoProperties.getInstance().containsKey("accumulo.connector")){
@@ -289,6 +296,10 @@ public class AccumuloMrsImageReader extends MrsImageReader
         useCompression = Boolean.parseBoolean(AMTR_props.getProperty(MrGeoAccumuloConstants.MRGEO_ACC_KEY_COMPRESS));
       }
 
+      if(AMTR_props.getProperty(MrGeoAccumuloConstants.MRGEO_ACC_KEY_QUERY_THREADS) != null){
+        numQueryThreads = Integer.parseInt(AMTR_props.getProperty(MrGeoAccumuloConstants.MRGEO_ACC_KEY_QUERY_THREADS));
+      }
+
     }
 
     try {
@@ -336,9 +347,8 @@ public class AccumuloMrsImageReader extends MrsImageReader
 
       }
 
-      // establish the scanners
+      // establish the scanner, BatchScanners are created per query (see getRanges)
       scanner = connector.createScanner(this.table, this.auths);
-      batchScanner = connector.createBatchScanner(this.table, this.auths, numQueryThreads);
 
     }
     catch (final TableNotFoundException | TableExistsException | AccumuloException | AccumuloSecurityException | IOException e)
@@ -451,12 +461,14 @@ public class AccumuloMrsImageReader extends MrsImageReader
   @Override
   public void close()
   {
-    if(batchScanner != null){
-      batchScanner.close();
-    }
     if(scanner != null){
       scanner.close();
     }
+
+    // iterators that weren't exhausted (or closed) by their callers
+    for(BatchScannerIterator it : new ArrayList<>(openIterators)){
+      it.close();
+    }
   } // end close
 
 
@@ -501,16 +513,8 @@ public class AccumuloMrsImageReader extends MrsImageReader
   @Override
   public KVIterator<TileIdWritable, Raster> get(final LongRectangle tileBounds){
 
-    // TODO: make this work for specific varying ranges that will come out of this request
-
-    throw new NotImplementedException(this.getClass().getName() + ".get from Bounds not implemented");
-
-//    return get(new TileIdWritable(TMSUtils.tileid(tileBounds.getMinX(),
-//                                                  tileBounds.getMinY(),
-//                                                  zoomLevel)),
-//               new TileIdWritable(TMSUtils.tileid(tileBounds.getMaxX(),
-//                                                  tileBounds.getMaxY(),
-//                                                  zoomLevel)));
+    // each row of tiles is a contiguous range of tile ids
+    return getRanges(AccumuloUtils.toRanges(tileBounds, getZoomlevel()));
   } // end get
 
 
@@ -521,15 +525,185 @@ public class AccumuloMrsImageReader extends MrsImageReader
   @Override
   public KVIterator<Bounds, Raster> get(final Bounds bounds){
 
-    //TODO: make this bounds request work
-//    TileBounds tileBounds = TMSUtils.boundsToTile(bounds,
-//                                                           zoomLevel,
-//                                                           getTileSize());
+    TileBounds tileBounds = TMSUtils.boundsToTile(bounds, getZoomlevel(), getTileSize());
+    return new HdfsMrsImageReader.BoundsResultScanner(
+        get(new LongRectangle(tileBounds.w, tileBounds.s, tileBounds.e, tileBounds.n)),
+        getZoomlevel(), getTileSize());
+  } // end get
+
 
-    throw new NotImplementedException("AccumuloReader.get from Bounds not implemented");
+  /**
+   * This will get an iterator over a set of tiles, in one BatchScanner query.  Runs of
+   * consecutive tile ids are requested as a single range.
+   *
+   * @param keys the tiles to get, in any order
+   * @return an iterator over the tiles found, in no particular order
+   */
+  public KVIterator<TileIdWritable, Raster> get(final Collection<TileIdWritable> keys){
+
+    long[] tileIds = new long[keys.size()];
+    int i = 0;
+    for(TileIdWritable key : keys){
+      tileIds[i++] = key.get();
+    }
+
+    return getRanges(AccumuloUtils.toRanges(tileIds));
   } // end get
 
 
+  /**
+   * Query a set of ranges with a BatchScanner.  The tablet servers are queried in parallel
+   * (numQueryThreads, from accumulo.querythreads), instead of a round-trip per tile, so the tiles
+   * come back in no particular order.  Callers (e.g. the WMS mosaic) place tiles by their key.
+   *
+   * @param ranges the row ranges to query
+   * @return an iterator over the tiles, the BatchScanner is closed when it is exhausted, the
+   * iterator is closed, or the reader is closed
+   */
+  protected CloseableKVIterator<TileIdWritable, Raster> getRanges(final Collection<Range> ranges){
+
+    // a BatchScanner needs at least one range
+    if(ranges.isEmpty()){
+      return new EmptyIterator();
+    }
+
+    final BatchScanner batchScanner;
+    try
+    {
+      batchScanner = connector.createBatchScanner(this.table, this.auths, numQueryThreads);
+    }
+    catch (final TableNotFoundException e)
+    {
+      throw new MrsImageException(e);
+    }
+
+    batchScanner.setRanges(ranges);
+    if(getZoomlevel() != -1){
+      batchScanner.fetchColumnFamily(new Text(Integer.toString(getZoomlevel())));
+    }
+
+    BatchScannerIterator it = new BatchScannerIterator(batchScanner);
+    openIterators.add(it);
+    return it;
+  } // end getRanges
+
+
+  /**
+   * The results of a query with no ranges.
+   */
+  private static class EmptyIterator implements CloseableKVIterator<TileIdWritable, Raster>
+  {
+    @Override
+    public boolean hasNext()
+    {
+      return false;
+    }
+
+    @Override
+    public Raster next()
+    {
+      throw new NoSuchElementException();
+    }
+
+    @Override
+    public TileIdWritable currentKey()
+    {
+      return null;
+    }
+
+    @Override
+    public Raster currentValue()
+    {
+      return null;
+    }
+
+    @Override
+    public void close()
+    {
+    }
+
+    @Override
+    public void remove()
+    {
+      throw new UnsupportedOperationException("iterator is read-only");
+    }
+  } // end EmptyIterator
+
+
+  /**
+   * Iterates over the results of a BatchScanner, closing it at the end.
+   */
+  private class BatchScannerIterator implements CloseableKVIterator<TileIdWritable, Raster>
+  {
+    private final BatchScanner batchScanner;
+    private final Iterator<Map.Entry<Key, Value>> it;
+
+    private Map.Entry<Key, Value> current = null;
+    private volatile boolean closed = false;
+
+    BatchScannerIterator(BatchScanner batchScanner)
+    {
+      this.batchScanner = batchScanner;
+      this.it = batchScanner.iterator();
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      if(!closed && it.hasNext()){
+        return true;
+      }
+      close();
+      return false;
+    }
+
+    @Override
+    public synchronized void close()
+    {
+      if(!closed){
+        closed = true;
+        batchScanner.close();
+        openIterators.remove(this);
+      }
+    }
+
+    @Override
+    public Raster next()
+    {
+      if(!hasNext()){
+        throw new NoSuchElementException();
+      }
+      current = it.next();
+      return currentValue();
+    }
+
+    @Override
+    public TileIdWritable currentKey()
+    {
+      return new TileIdWritable(AccumuloUtils.toLong(current.getKey().getRow()));
+    }
+
+    @Override
+    public Raster currentValue()
+    {
+      try
+      {
+        return toNonWritable(current.getValue().get(), codec, decompressor);
+      }
+      catch (final IOException e)
+      {
+        throw new MrsImageException(e);
+      }
+    }
+
+    @Override
+    public void remove()
+    {
+      throw new UnsupportedOperationException("iterator is read-only");
+    }
+  } // end BatchScannerIterator
+
+
   /**
    * Retrieve a tile from the Accumulo instance.  This ignores zoom level and just
    * pulls from rowid.
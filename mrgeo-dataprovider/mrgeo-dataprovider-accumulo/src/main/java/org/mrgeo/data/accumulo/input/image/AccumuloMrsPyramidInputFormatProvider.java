@@ -20,6 +20,7 @@ import org.apache.accumulo.core.client.AccumuloSecurityException;
 import org.apache.accumulo.core.client.IteratorSetting;
 import org.apache.accumulo.core.client.mapreduce.AccumuloInputFormat;
 import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.iterators.user.RegExFilter;
 import org.apache.accumulo.core.security.Authorizations;
 import org.apache.accumulo.core.util.Pair;
@@ -29,6 +30,9 @@ import org.apache.hadoop.mapreduce.InputFormat;
 import org.apache.hadoop.mapreduce.Job;
 import org.mrgeo.data.DataProviderException;
 import org.mrgeo.data.accumulo.image.AccumuloMrsPyramidInputFormat;
+import org.mrgeo.data.accumulo.iterators.BandSubsetIterator;
+import org.mrgeo.data.accumulo.iterators.NodataTileFilter;
+import org.mrgeo.data.accumulo.iterators.TileBoundsFilter;
 import org.mrgeo.data.accumulo.utils.AccumuloConnector;
 import org.mrgeo.data.accumulo.utils.AccumuloUtils;
 import org.mrgeo.data.accumulo.utils.MrGeoAccumuloConstants;
@@ -38,6 +42,9 @@ import org.mrgeo.data.raster.RasterWritable;
 import org.mrgeo.data.tile.TileIdWritable;
 import org.mrgeo.data.image.ImageInputFormatContext;
 import org.mrgeo.utils.Base64Utils;
+import org.mrgeo.utils.LongRectangle;
+import org.mrgeo.utils.tms.TMSUtils;
+import org.mrgeo.utils.tms.TileBounds;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -302,12 +309,94 @@ private void setupConfig(final Job job,
   colFamColQual.add(p1);
   AccumuloMrsPyramidInputFormat.fetchColumns(job, colFamColQual);
   AccumuloMrsPyramidInputFormat.addIterator(job, regex);
+
+  setupServerSideIterators(job, provider);
+
   //job.setJarByClass(this.getClass());
   String cp = job.getConfiguration().get("mapred.job.classpath.files");
   log.info("mapred.job.classpath.files = " + cp);
 
 }
 
+/**
+ * Add the iterators that do the tile selection on the tablet servers, so only the needed
+ * tiles (and bands) are sent to the job:
+ *   - the bounds of the context become the scan range and a TileBoundsFilter (the range covers
+ *     whole rows of tiles, the filter drops the tiles to either side of the bounds)
+ *   - NodataTileFilter, if the accumulo.iterator.skipnodata provider property is true
+ *   - BandSubsetIterator, for the bands of the context (e.g. from a band extract), or the
+ *     accumulo.iterator.bands provider property
+ * The tile decoding iterators are not used for compressed tables.
+ */
+private void setupServerSideIterators(final Job job,
+    final MrsImageDataProvider provider) throws DataProviderException
+{
+  int zoom = context.getZoomLevel();
+
+  if(context.getBounds() != null){
+    TileBounds tb = TMSUtils.boundsToTile(context.getBounds(), zoom, context.getTileSize());
+    LongRectangle tiles = new LongRectangle(tb.w, tb.s, tb.e, tb.n);
+
+    log.info("limiting scan to tiles " + tiles);
+    Range range = new Range(AccumuloUtils.toRowId(TMSUtils.tileid(tb.w, tb.s, zoom)), true,
+        AccumuloUtils.toRowId(TMSUtils.tileid(tb.e, tb.n, zoom)), true);
+    AccumuloMrsPyramidInputFormat.setRanges(job, Collections.singletonList(range));
+
+    IteratorSetting bounds = new IteratorSetting(52, "tilebounds", TileBoundsFilter.class);
+    TileBoundsFilter.setBounds(bounds, tiles, zoom);
+    AccumuloMrsPyramidInputFormat.addIterator(job, bounds);
+  }
+
+  // the tile decoding iterators can't read compressed tiles
+  boolean compressed = Boolean.parseBoolean(props.getProperty(MrGeoAccumuloConstants.MRGEO_ACC_KEY_COMPRESS, "false"));
+  if(compressed){
+    return;
+  }
+
+  if(Boolean.parseBoolean(props.getProperty(MrGeoAccumuloConstants.MRGEO_ACC_KEY_ITERATOR_SKIP_NODATA, "false"))){
+    try
+    {
+      double[] nodata = provider.getMetadataReader().read().getDefaultValues();
+
+      IteratorSetting skip = new IteratorSetting(53, "skipnodata", NodataTileFilter.class);
+      NodataTileFilter.setNodata(skip, nodata);
+      AccumuloMrsPyramidInputFormat.addIterator(job, skip);
+    }
+    catch (IOException e)
+    {
+      throw new DataProviderException("Error reading metadata for " + provider.getResourceName(), e);
+    }
+  }
+
+  int[] bands = getBands();
+  if(bands != null && bands.length > 0){
+    log.info("limiting scan to bands " + Arrays.toString(bands));
+    IteratorSetting subset = new IteratorSetting(54, "bandsubset", BandSubsetIterator.class);
+    BandSubsetIterator.setBands(subset, bands);
+    AccumuloMrsPyramidInputFormat.addIterator(job, subset);
+  }
+}
+
+// the bands requested by the context, or the provider property, null for all the bands
+private int[] getBands()
+{
+  if(context.getBands() != null){
+    return context.getBands();
+  }
+
+  String str = props.getProperty(MrGeoAccumuloConstants.MRGEO_ACC_KEY_ITERATOR_BANDS);
+  if(str == null || str.trim().isEmpty()){
+    return null;
+  }
+
+  String[] values = str.split(",");
+  int[] bands = new int[values.length];
+  for(int i = 0; i < values.length; i++){
+    bands[i] = Integer.parseInt(values[i].trim());
+  }
+  return bands;
+}
+
 @Override
 public void teardown(Job job) throws DataProviderException
 {
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+package org.mrgeo.data.accumulo.iterators;
+
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.WrappingIterator;
+import org.mrgeo.data.raster.RasterUtils;
+import org.mrgeo.data.raster.RasterWritable;
+
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Tablet server side iterator that rewrites each tile with only a subset of its bands (in the
+ * order given), so a band extract of a multi-band image only transfers the bands it uses.
+ * <p>
+ * Only for uncompressed tables, the tile is decoded on the tablet server.
+ */
+public class BandSubsetIterator extends WrappingIterator
+{
+  public static final String BANDS = "bands";
+
+  private int[] bands;
+
+  private double[] samples;
+  private Key topKey = null;
+  private Value topValue = null;
+
+  /**
+   * Set the bands (0 based) to keep
+   */
+  public static void setBands(IteratorSetting setting, int[] bands)
+  {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < bands.length; i++)
+    {
+      if (i > 0)
+      {
+        sb.append(',');
+      }
+      sb.append(Integer.toString(bands[i]));
+    }
+    setting.addOption(BANDS, sb.toString());
+  }
+
+  @Override
+  public void init(SortedKeyValueIterator<Key, Value> source, Map<String, String> options,
+      IteratorEnvironment env) throws IOException
+  {
+    super.init(source, options, env);
+
+    String[] values = options.get(BANDS).split(",");
+    bands = new int[values.length];
+    for (int i = 0; i < values.length; i++)
+    {
+      bands[i] = Integer.parseInt(values[i].trim());
+    }
+  }
+
+  @Override
+  public Value getTopValue()
+  {
+    Key key = getSource().getTopKey();
+    if (topValue == null || !key.equals(topKey))
+    {
+      try
+      {
+        topValue = subset(getSource().getTopValue());
+      }
+      catch (IOException e)
+      {
+        throw new RasterWritable.RasterWritableException(e);
+      }
+      topKey = new Key(key);
+    }
+    return topValue;
+  }
+
+  private Value subset(Value value) throws IOException
+  {
+    Raster raster = RasterWritable.toRaster(new RasterWritable(value.get()));
+
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+
+    WritableRaster result = RasterUtils.createEmptyRaster(width, height, bands.length,
+        raster.getTransferType());
+
+    if (samples == null || samples.length < width * height)
+    {
+      samples = new double[width * height];
+    }
+
+    for (int b = 0; b < bands.length; b++)
+    {
+      raster.getSamples(raster.getMinX(), raster.getMinY(), width, height, bands[b], samples);
+      result.setSamples(0, 0, width, height, b, samples);
+    }
+
+    return new Value(RasterWritable.toBytes(result, null));
+  }
+
+  @Override
+  public SortedKeyValueIterator<Key, Value> deepCopy(IteratorEnvironment env)
+  {
+    BandSubsetIterator copy = new BandSubsetIterator();
+    copy.setSource(getSource().deepCopy(env));
+    copy.bands = bands;
+    return copy;
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+package org.mrgeo.data.accumulo.iterators;
+
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.Filter;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.mrgeo.data.raster.RasterWritable;
+import org.mrgeo.utils.FloatUtils;
+
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Tablet server side filter that drops tiles that are entirely nodata.  Every consumer of the
+ * tiles treats a missing tile the same as a nodata tile, so they don't need to be sent.
+ * <p>
+ * Only for uncompressed tables, the tile is decoded on the tablet server.
+ */
+public class NodataTileFilter extends Filter
+{
+  public static final String NODATA = "nodata";
+
+  private double[] nodata;
+  private double[] samples;
+
+  /**
+   * Set the nodata value of each band
+   */
+  public static void setNodata(IteratorSetting setting, double[] nodata)
+  {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < nodata.length; i++)
+    {
+      if (i > 0)
+      {
+        sb.append(',');
+      }
+      sb.append(Double.toString(nodata[i]));
+    }
+    setting.addOption(NODATA, sb.toString());
+  }
+
+  @Override
+  public void init(SortedKeyValueIterator<Key, Value> source, Map<String, String> options,
+      IteratorEnvironment env) throws IOException
+  {
+    super.init(source, options, env);
+
+    String[] values = options.get(NODATA).split(",");
+    nodata = new double[values.length];
+    for (int i = 0; i < values.length; i++)
+    {
+      nodata[i] = Double.parseDouble(values[i]);
+    }
+  }
+
+  @Override
+  public boolean accept(Key k, Value v)
+  {
+    Raster raster;
+    try
+    {
+      raster = RasterWritable.toRaster(new RasterWritable(v.get()));
+    }
+    catch (IOException e)
+    {
+      // can't tell, let the client deal with it
+      return true;
+    }
+
+    int size = raster.getWidth() * raster.getHeight();
+    if (samples == null || samples.length < size)
+    {
+      samples = new double[size];
+    }
+
+    for (int b = 0; b < raster.getNumBands(); b++)
+    {
+      double nd = (b < nodata.length) ? nodata[b] : nodata[nodata.length - 1];
+
+      raster.getSamples(raster.getMinX(), raster.getMinY(), raster.getWidth(), raster.getHeight(), b, samples);
+      for (int i = 0; i < size; i++)
+      {
+        if (!FloatUtils.isNodata(samples[i], nd))
+        {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public SortedKeyValueIterator<Key, Value> deepCopy(IteratorEnvironment env)
+  {
+    NodataTileFilter copy = (NodataTileFilter) super.deepCopy(env);
+    copy.nodata = nodata;
+    return copy;
+  }
+}
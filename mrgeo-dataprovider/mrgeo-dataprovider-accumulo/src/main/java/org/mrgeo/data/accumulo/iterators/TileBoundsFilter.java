@@ -0,0 +1,100 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+package org.mrgeo.data.accumulo.iterators;
+
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.Filter;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.mrgeo.data.accumulo.utils.AccumuloUtils;
+import org.mrgeo.utils.LongRectangle;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Tablet server side filter that only passes the tiles inside a rectangle of tiles.  The scan
+ * range can only be the span of tile ids from the first row of the rectangle to the last, this
+ * drops the tiles in that span that are to the left or right of the rectangle before they are
+ * sent to the client.
+ */
+public class TileBoundsFilter extends Filter
+{
+  public static final String ZOOM = "zoom";
+  public static final String BOUNDS = "bounds";
+
+  private long width;
+  private long minX;
+  private long minY;
+  private long maxX;
+  private long maxY;
+
+  /**
+   * Set the tile bounds (inclusive) of the filter
+   *
+   * @param setting the iterator setting to configure
+   * @param tileBounds tiles to keep
+   * @param zoomLevel zoom level of the tiles
+   */
+  public static void setBounds(IteratorSetting setting, LongRectangle tileBounds, int zoomLevel)
+  {
+    setting.addOption(ZOOM, Integer.toString(zoomLevel));
+    setting.addOption(BOUNDS, tileBounds.getMinX() + "," + tileBounds.getMinY() + "," +
+        tileBounds.getMaxX() + "," + tileBounds.getMaxY());
+  }
+
+  @Override
+  public void init(SortedKeyValueIterator<Key, Value> source, Map<String, String> options,
+      IteratorEnvironment env) throws IOException
+  {
+    super.init(source, options, env);
+
+    int zoom = Integer.parseInt(options.get(ZOOM));
+    // tile ids are numbered along the rows, see TMSUtils.tileid()
+    width = (long) Math.pow(2, zoom);
+
+    String[] b = options.get(BOUNDS).split(",");
+    minX = Long.parseLong(b[0]);
+    minY = Long.parseLong(b[1]);
+    maxX = Long.parseLong(b[2]);
+    maxY = Long.parseLong(b[3]);
+  }
+
+  @Override
+  public boolean accept(Key k, Value v)
+  {
+    long tileid = AccumuloUtils.toLong(k.getRowData().toArray());
+
+    long ty = tileid / width;
+    long tx = tileid - (ty * width);
+
+    return tx >= minX && tx <= maxX && ty >= minY && ty <= maxY;
+  }
+
+  @Override
+  public SortedKeyValueIterator<Key, Value> deepCopy(IteratorEnvironment env)
+  {
+    TileBoundsFilter copy = (TileBoundsFilter) super.deepCopy(env);
+    copy.width = width;
+    copy.minX = minX;
+    copy.minY = minY;
+    copy.maxX = maxX;
+    copy.maxY = maxY;
+    return copy;
+  }
+}
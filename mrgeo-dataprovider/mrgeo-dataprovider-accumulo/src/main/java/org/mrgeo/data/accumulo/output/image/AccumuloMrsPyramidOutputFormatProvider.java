@@ -19,7 +19,6 @@ package org.mrgeo.data.accumulo.output.image;
 import org.apache.accumulo.core.client.*;
 import org.apache.accumulo.core.security.ColumnVisibility;
 import org.apache.accumulo.core.util.Pair;
-import org.apache.commons.lang.NotImplementedException;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
@@ -27,6 +26,8 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.spark.api.java.JavaPairRDD;
+import org.apache.spark.storage.StorageLevel;
 import org.mrgeo.core.MrGeoConstants;
 import org.mrgeo.data.DataProviderException;
 import org.mrgeo.data.accumulo.image.AccumuloMrsImageDataProvider;
@@ -40,8 +41,11 @@ import org.mrgeo.data.raster.RasterWritable;
 import org.mrgeo.data.rdd.RasterRDD;
 import org.mrgeo.data.tile.TileIdWritable;
 import org.mrgeo.data.image.ImageOutputFormatContext;
+import org.mrgeo.hdfs.tile.FileSplit;
+import org.mrgeo.image.MrsImageException;
 import org.mrgeo.utils.Base64Utils;
 import org.mrgeo.utils.LongRectangle;
+import org.mrgeo.utils.SparkUtils;
 import org.mrgeo.utils.tms.Bounds;
 import org.mrgeo.utils.tms.TMSUtils;
 import org.mrgeo.utils.tms.TileBounds;
@@ -73,6 +77,9 @@ private long tileCount = -1;
 private boolean doBulk = false;
 private boolean forceBulk = false;
 
+// the Spark save path writes files that already match the tablets, they don't need compacting
+private boolean compactAfterImport = true;
+
 private Properties props;
 
 private ColumnVisibility cv = null;
@@ -166,40 +173,104 @@ public OutputFormat getOutputFormat()
   }
 } // end getOutputFormat
 
+/**
+ * Save the tiles by bulk loading them, the Spark path never writes through a BatchWriter.
+ * <p>
+ * The tiles are sorted into (sampled, so balanced) ranges of tile ids, one per partition.  The
+ * last tile id of each range becomes a split point of the table before anything is written, so
+ * each partition writes one sorted RFile that falls in exactly one tablet.  The files are then
+ * imported in one importDirectory call, without being split or compacted, so the cost of the
+ * ingest is in the executors, and scales with them.
+ */
 @Override
 public void save(RasterRDD raster, Configuration conf)
 {
-  // IMPLEMENT THIS SCALA CODE IN JAVA!
-  throw new NotImplementedException("AccumuloMrsPyramidOutputFormatProvider.save not yet implemeted");
-//  val sparkPartitioner = tofp.getSparkPartitioner
-//  val conf1 = tofp.setupOutput(conf)
-//
-//  // Repartition the output if the output data provider requires it
-//  val wrappedTiles = new OrderedRDDFunctions[TileIdWritable, RasterWritable, (TileIdWritable, RasterWritable)](tiles)
-//    val sorted: RasterRDD = RasterRDD(
-//  if (sparkPartitioner != null) {
-//    wrappedTiles.repartitionAndSortWithinPartitions(sparkPartitioner)
-//  }
-//  else {
-//    wrappedTiles.sortByKey()
-//  })
-//  //val sorted: RasterRDD = RasterRDD(tiles.sortByKey())
-//
-//
-//  val wrappedForSave = new PairRDDFunctions(sorted)
-//  wrappedForSave.saveAsNewAPIHadoopDataset(conf1)
-//
-////    if (localpersist) {
-////      tiles.unpersist()
-////    }
-//
-//  if (sparkPartitioner != null)
-//  {
-//    sparkPartitioner.writeSplits(sorted, output, zoom, conf1)
-//  }
-//  tofp.teardownForSpark(conf1)
+  // always bulk
+  doBulk = true;
+  compactAfterImport = false;
 
-}
+  try
+  {
+    Configuration conf1 = setupOutput(conf);
+
+    Job job = Job.getInstance(conf1);
+    job.setOutputFormatClass(AccumuloMrsPyramidFileOutputFormat.class);
+    job.setOutputKeyClass(TileIdWritable.class);
+    job.setOutputValueClass(RasterWritable.class);
+    AccumuloMrsPyramidFileOutputFormat.setOutputPath(job, new Path(workDir + "files"));
+
+    int partitions = Math.max(1, raster.partitions().length);
+    JavaPairRDD<TileIdWritable, RasterWritable> sorted =
+        JavaPairRDD.fromJavaRDD(raster.toJavaRDD()).sortByKey(true, partitions);
+
+    // the sorted tiles are used twice (splits, then save), don't sort them twice
+    sorted.persist(StorageLevel.MEMORY_AND_DISK_SER());
+    try
+    {
+      // the same per partition id ranges the HDFS provider writes as its splits
+      FileSplit.FileSplitInfo[] splits = SparkUtils.calculateSplitData(RasterRDD.apply(sorted.rdd()));
+      preSplit(AccumuloConnector.getConnector(), table, calculateSplitRows(splits));
+
+      sorted.saveAsNewAPIHadoopDataset(job.getConfiguration());
+    }
+    finally
+    {
+      sorted.unpersist();
+    }
+
+    performTeardown(job.getConfiguration());
+  }
+  catch (IOException | DataProviderException e)
+  {
+    throw new MrsImageException(e);
+  }
+} // end save
+
+/**
+ * The split rows for the partitions, the end of each partition's range of tile ids.  Accumulo
+ * puts a split row in the tablet before it, so partition i is tablet i.  The last partition needs
+ * no split, and empty partitions have no range.
+ *
+ * @param splits the tile id range of each partition
+ * @return the split rows, in order
+ */
+static SortedSet<Text> calculateSplitRows(FileSplit.FileSplitInfo[] splits)
+{
+  SortedSet<Text> splitRows = new TreeSet<Text>();
+  for(int x = 0; x < splits.length - 1; x++){
+    if(splits[x].getStartId() <= splits[x].getEndId()){
+      splitRows.add(AccumuloUtils.toRowId(splits[x].getEndId()));
+    }
+  }
+  return splitRows;
+} // end calculateSplitRows
+
+/**
+ * Create the table, if needed, and add the split rows to it.
+ *
+ * @param conn the Accumulo connection
+ * @param table the table to split
+ * @param splitRows the split rows (see calculateSplitRows())
+ */
+static void preSplit(final Connector conn, final String table,
+    final SortedSet<Text> splitRows) throws DataProviderException
+{
+  try
+  {
+    if(!conn.tableOperations().exists(table)){
+      conn.tableOperations().create(table, true);
+    }
+
+    log.info("Pre-splitting " + table + " into " + (splitRows.size() + 1) + " tablets");
+    if(!splitRows.isEmpty()){
+      conn.tableOperations().addSplits(table, splitRows);
+    }
+  }
+  catch (TableExistsException | TableNotFoundException | AccumuloSecurityException | AccumuloException e)
+  {
+    throw new DataProviderException("Problem pre-splitting " + table, e);
+  }
+} // end preSplit
 
 public boolean bulkJob(){
   //return false;
@@ -517,7 +588,9 @@ private void performTeardown(final Configuration conf) throws DataProviderExcept
       }
 
       conn.tableOperations().importDirectory(table, workDir + "files", workDir + "failures", true);
-      conn.tableOperations().compact(table, new Text("" + 0x00), new Text("" + 0xFF), true, false);
+      if(compactAfterImport){
+        conn.tableOperations().compact(table, new Text("" + 0x00), new Text("" + 0xFF), true, false);
+      }
 
       FSDataOutputStream fout = fs.create(completed);
       fout.write(("zoom level = " + Integer.toString(zoomLevel) + "\n").getBytes());
@@ -43,6 +43,7 @@ import org.mrgeo.image.MrsPyramidMetadata;
 import org.mrgeo.utils.Base64Utils;
 import org.mrgeo.utils.LongRectangle;
 import org.mrgeo.utils.tms.Bounds;
+import org.mrgeo.utils.tms.TMSUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -150,6 +151,52 @@ public class AccumuloUtils {
 	} // end toKey
 
 
+	/**
+	 * Create the row ranges covering a rectangle of tiles.  Tile ids are numbered along the rows,
+	 * so each row of the rectangle is one contiguous range of rowIds.
+	 *
+	 * @param tileBounds the tiles to cover (inclusive)
+	 * @param zoomLevel zoom level of the tiles
+	 * @return one range per row of tiles, suitable for a BatchScanner
+	 */
+	public static List<Range> toRanges(LongRectangle tileBounds, int zoomLevel) {
+		List<Range> ranges = new ArrayList<>((int) (tileBounds.getMaxY() - tileBounds.getMinY() + 1));
+		for (long ty = tileBounds.getMinY(); ty <= tileBounds.getMaxY(); ty++) {
+			long start = TMSUtils.tileid(tileBounds.getMinX(), ty, zoomLevel);
+			long end = TMSUtils.tileid(tileBounds.getMaxX(), ty, zoomLevel);
+			ranges.add(new Range(toRowId(start), true, toRowId(end), true));
+		}
+		return ranges;
+	} // end toRanges
+
+
+	/**
+	 * Create the row ranges covering a set of tiles.  Runs of consecutive tile ids are merged into
+	 * a single range.
+	 *
+	 * @param tileIds the tiles to cover, in any order
+	 * @return the ranges, suitable for a BatchScanner
+	 */
+	public static List<Range> toRanges(long[] tileIds) {
+		long[] sorted = Arrays.copyOf(tileIds, tileIds.length);
+		Arrays.sort(sorted);
+
+		List<Range> ranges = new ArrayList<>();
+		int ndx = 0;
+		while (ndx < sorted.length) {
+			long start = sorted[ndx];
+			long end = start;
+			ndx++;
+			while (ndx < sorted.length && sorted[ndx] <= end + 1) {
+				end = sorted[ndx];
+				ndx++;
+			}
+			ranges.add(new Range(toRowId(start), true, toRowId(end), true));
+		}
+		return ranges;
+	} // end toRanges
+
+
 	/*
 	 * done with tileId utilities
 	 */
@@ -69,6 +69,15 @@ public class MrGeoAccumuloConstants
   
   public static final String MRGEO_ACC_KEY_ZOOMLEVEL = "accumulo.zoomlevel";
 
+  // threads used by the BatchScanner for multi-tile reads
+  public static final String MRGEO_ACC_KEY_QUERY_THREADS = "accumulo.querythreads";
+  public static final int MRGEO_ACC_DEFAULT_QUERY_THREADS = 4;
+
+  // provider properties for the server side iterators of pyramid input (a comma separated list of
+  // 0 based bands to keep, and true to drop tiles that are all nodata)
+  public static final String MRGEO_ACC_KEY_ITERATOR_BANDS = "accumulo.iterator.bands";
+  public static final String MRGEO_ACC_KEY_ITERATOR_SKIP_NODATA = "accumulo.iterator.skipnodata";
+
   public static final String MRGEO_ACC_KEY_FORCE_BULK = "accumulo.forcebulk";
   
   public static final String MRGEO_ACC_FILE_NAME_BULK_DONE = "bulkDone";
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+package org.mrgeo.data.accumulo.image;
+
+import junit.framework.Assert;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mrgeo.core.MrGeoProperties;
+import org.mrgeo.data.CloseableKVIterator;
+import org.mrgeo.data.KVIterator;
+import org.mrgeo.data.accumulo.AccumuloDefs;
+import org.mrgeo.data.accumulo.utils.AccumuloConnector;
+import org.mrgeo.data.accumulo.utils.AccumuloUtils;
+import org.mrgeo.data.raster.RasterWritable;
+import org.mrgeo.data.tile.TileIdWritable;
+import org.mrgeo.junit.UnitTest;
+import org.mrgeo.test.TestUtils;
+import org.mrgeo.utils.LongRectangle;
+import org.mrgeo.utils.tms.Bounds;
+import org.mrgeo.utils.tms.TMSUtils;
+
+import java.awt.image.Raster;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public class AccumuloMrsImageReaderTest
+{
+  private static final String INSTANCE = "AccumuloMrsImageReaderTest";
+  private static final int ZOOM = 10;
+  private static final int TILESIZE = 512;
+
+  private String connectorType;
+
+  @Before
+  public void setup()
+  {
+    // the reader uses a mock connector when accumulo.connector is "mock"
+    connectorType = MrGeoProperties.getInstance().getProperty("accumulo.connector");
+    MrGeoProperties.getInstance().setProperty("accumulo.connector", "mock");
+  }
+
+  @After
+  public void teardown()
+  {
+    if (connectorType == null)
+    {
+      MrGeoProperties.getInstance().remove("accumulo.connector");
+    }
+    else
+    {
+      MrGeoProperties.getInstance().setProperty("accumulo.connector", connectorType);
+    }
+  }
+
+  private static long tileid(long tx, long ty)
+  {
+    return TMSUtils.tileid(tx, ty, ZOOM);
+  }
+
+  // A reader for a new table holding tiles 100-102 x 200-202 at ZOOM, each filled with its tile id,
+  // and a tile at another zoom level in the same row as one of them
+  private static AccumuloMrsImageReader createReader(String table) throws Exception
+  {
+    // the reader creates the table
+    AccumuloMrsImageReader reader = new AccumuloMrsImageReader(table, 2, INSTANCE, AccumuloDefs.ZOOKEEPERS,
+        AccumuloDefs.USER, AccumuloDefs.PASSWORDBLANK)
+    {
+      {
+        zoomLevel = ZOOM;
+      }
+
+      @Override
+      public int getTileSize()
+      {
+        return TILESIZE;
+      }
+    };
+
+    Connector conn = AccumuloConnector.getMockConnector(INSTANCE, AccumuloDefs.USER, AccumuloDefs.PASSWORDBLANK);
+    BatchWriter writer = conn.createBatchWriter(table, new BatchWriterConfig());
+    try
+    {
+      for (long ty = 200; ty <= 202; ty++)
+      {
+        for (long tx = 100; tx <= 102; tx++)
+        {
+          writer.addMutation(mutation(tileid(tx, ty), ZOOM, tileid(tx, ty)));
+        }
+      }
+      writer.addMutation(mutation(tileid(101, 200), ZOOM + 1, -1));
+    }
+    finally
+    {
+      writer.close();
+    }
+
+    return reader;
+  }
+
+  private static Mutation mutation(long id, int zoom, double value)
+  {
+    Mutation m = new Mutation(AccumuloUtils.toRowId(id));
+    RasterWritable rw = RasterWritable.toWritable(TestUtils.createConstRaster(2, 2, value));
+    m.put("" + zoom, "" + id, new Value(rw.copyBytes()));
+    return m;
+  }
+
+  // the tile ids returned by the iterator, checking each tile holds its own id
+  private static Set<Long> tileIds(KVIterator<TileIdWritable, Raster> it)
+  {
+    Set<Long> ids = new HashSet<>();
+    while (it.hasNext())
+    {
+      Raster raster = it.next();
+      long id = it.currentKey().get();
+      Assert.assertEquals((double) id, raster.getSampleDouble(0, 0, 0));
+      Assert.assertTrue("Tile " + id + " returned twice", ids.add(id));
+    }
+    return ids;
+  }
+
+  private static Set<Long> ids(long... ids)
+  {
+    Set<Long> set = new HashSet<>();
+    for (long id : ids)
+    {
+      set.add(id);
+    }
+    return set;
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void testGetLongRectangle() throws Exception
+  {
+    AccumuloMrsImageReader reader = createReader("getRectangle");
+    try
+    {
+      KVIterator<TileIdWritable, Raster> it = reader.get(new LongRectangle(100, 201, 101, 202));
+      Assert.assertEquals(ids(tileid(100, 201), tileid(101, 201), tileid(100, 202), tileid(101, 202)),
+          tileIds(it));
+
+      // the whole row range, the tile at the other zoom level isn't returned
+      it = reader.get(new LongRectangle(100, 200, 102, 200));
+      Assert.assertEquals(ids(tileid(100, 200), tileid(101, 200), tileid(102, 200)), tileIds(it));
+
+      // no tiles
+      it = reader.get(new LongRectangle(10, 10, 20, 20));
+      Assert.assertFalse(it.hasNext());
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void testGetBounds() throws Exception
+  {
+    AccumuloMrsImageReader reader = createReader("getBounds");
+    try
+    {
+      // just inside the tile, so the neighbors aren't touched
+      Bounds tile = TMSUtils.tileBounds(101, 201, ZOOM, TILESIZE);
+      double epsilon = tile.width() / 100;
+      Bounds inside = new Bounds(tile.w + epsilon, tile.s + epsilon, tile.e - epsilon, tile.n - epsilon);
+
+      KVIterator<Bounds, Raster> it = reader.get(inside);
+      Assert.assertTrue(it.hasNext());
+
+      Raster raster = it.next();
+      Assert.assertEquals((double) tileid(101, 201), raster.getSampleDouble(0, 0, 0));
+
+      Bounds bounds = it.currentKey();
+      Assert.assertEquals(tile.w, bounds.w, 1e-9);
+      Assert.assertEquals(tile.s, bounds.s, 1e-9);
+      Assert.assertEquals(tile.e, bounds.e, 1e-9);
+      Assert.assertEquals(tile.n, bounds.n, 1e-9);
+
+      Assert.assertFalse(it.hasNext());
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void testGetCollection() throws Exception
+  {
+    AccumuloMrsImageReader reader = createReader("getCollection");
+    try
+    {
+      // out of order, with a run of consecutive ids, a duplicate and a missing tile
+      KVIterator<TileIdWritable, Raster> it = reader.get(Arrays.asList(
+          new TileIdWritable(tileid(102, 202)), new TileIdWritable(tileid(101, 200)),
+          new TileIdWritable(tileid(100, 200)), new TileIdWritable(tileid(102, 202)),
+          new TileIdWritable(tileid(50, 50))));
+      Assert.assertEquals(ids(tileid(100, 200), tileid(101, 200), tileid(102, 202)), tileIds(it));
+
+      it = reader.get(Arrays.<TileIdWritable>asList());
+      Assert.assertFalse(it.hasNext());
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void testCloseIterator() throws Exception
+  {
+    AccumuloMrsImageReader reader = createReader("closeIterator");
+    try
+    {
+      CloseableKVIterator<TileIdWritable, Raster> it =
+          reader.getRanges(AccumuloUtils.toRanges(new LongRectangle(100, 200, 102, 202), ZOOM));
+      Assert.assertTrue(it.hasNext());
+      Assert.assertNotNull(it.next());
+
+      // closing part way through ends the iteration, and closing again is harmless
+      it.close();
+      Assert.assertFalse(it.hasNext());
+      it.close();
+
+      // the reader still works
+      Assert.assertEquals(3, tileIds(reader.get(new LongRectangle(100, 200, 102, 200))).size());
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void testCloseReader() throws Exception
+  {
+    AccumuloMrsImageReader reader = createReader("closeReader");
+
+    KVIterator<TileIdWritable, Raster> partial = reader.get(new LongRectangle(100, 200, 102, 202));
+    Assert.assertTrue(partial.hasNext());
+    Assert.assertNotNull(partial.next());
+
+    KVIterator<TileIdWritable, Raster> unread = reader.get(new LongRectangle(100, 200, 102, 202));
+
+    // closing the reader closes the iterators that weren't exhausted
+    reader.close();
+
+    Assert.assertFalse(partial.hasNext());
+    Assert.assertFalse(unread.hasNext());
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+package org.mrgeo.data.accumulo.iterators;
+
+import junit.framework.Assert;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.SortedMapIterator;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mrgeo.data.accumulo.utils.AccumuloUtils;
+import org.mrgeo.data.raster.RasterUtils;
+import org.mrgeo.data.raster.RasterWritable;
+import org.mrgeo.junit.UnitTest;
+import org.mrgeo.utils.LongRectangle;
+import org.mrgeo.utils.tms.TMSUtils;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+public class TileIteratorsTest
+{
+  private static final int ZOOM = 4;
+  private static final int SIZE = 4;
+
+  private static Key key(long tileid)
+  {
+    return new Key(AccumuloUtils.toRowId(tileid), new Text(Integer.toString(ZOOM)), new Text(Long.toString(tileid)));
+  }
+
+  private static Value tile(double... bandValues) throws Exception
+  {
+    WritableRaster raster = RasterUtils.createEmptyRaster(SIZE, SIZE, bandValues.length, DataBuffer.TYPE_FLOAT);
+    for (int b = 0; b < bandValues.length; b++)
+    {
+      for (int y = 0; y < SIZE; y++)
+      {
+        for (int x = 0; x < SIZE; x++)
+        {
+          raster.setSample(x, y, b, bandValues[b]);
+        }
+      }
+    }
+    return new Value(RasterWritable.toBytes(raster, null));
+  }
+
+  private static List<Long> scan(SortedKeyValueIterator<Key, Value> iter) throws Exception
+  {
+    List<Long> ids = new ArrayList<Long>();
+    iter.seek(new Range(), Collections.<ByteSequence>emptyList(), false);
+    while (iter.hasTop())
+    {
+      ids.add(AccumuloUtils.toLong(iter.getTopKey().getRow()));
+      iter.next();
+    }
+    return ids;
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void testTileBounds() throws Exception
+  {
+    TreeMap<Key, Value> tiles = new TreeMap<Key, Value>();
+    for (long ty = 0; ty < 4; ty++)
+    {
+      for (long tx = 0; tx < 4; tx++)
+      {
+        tiles.put(key(TMSUtils.tileid(tx, ty, ZOOM)), tile(1.0));
+      }
+    }
+
+    IteratorSetting setting = new IteratorSetting(52, "tilebounds", TileBoundsFilter.class);
+    TileBoundsFilter.setBounds(setting, new LongRectangle(1, 1, 2, 2), ZOOM);
+
+    TileBoundsFilter filter = new TileBoundsFilter();
+    filter.init(new SortedMapIterator(tiles), setting.getOptions(), null);
+
+    List<Long> ids = scan(filter);
+    Assert.assertEquals(4, ids.size());
+    for (long id : ids)
+    {
+      long tx = TMSUtils.tileid(id, ZOOM).tx;
+      long ty = TMSUtils.tileid(id, ZOOM).ty;
+      Assert.assertTrue(tx >= 1 && tx <= 2 && ty >= 1 && ty <= 2);
+    }
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void testNodataTiles() throws Exception
+  {
+    TreeMap<Key, Value> tiles = new TreeMap<Key, Value>();
+    tiles.put(key(1), tile(Double.NaN, -9999.0));
+    tiles.put(key(2), tile(Double.NaN, 5.0));
+    tiles.put(key(3), tile(7.0, -9999.0));
+
+    IteratorSetting setting = new IteratorSetting(53, "skipnodata", NodataTileFilter.class);
+    NodataTileFilter.setNodata(setting, new double[]{Double.NaN, -9999.0});
+
+    NodataTileFilter filter = new NodataTileFilter();
+    filter.init(new SortedMapIterator(tiles), setting.getOptions(), null);
+
+    List<Long> ids = scan(filter);
+    Assert.assertEquals(2, ids.size());
+    Assert.assertEquals(2L, (long) ids.get(0));
+    Assert.assertEquals(3L, (long) ids.get(1));
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void testBandSubset() throws Exception
+  {
+    TreeMap<Key, Value> tiles = new TreeMap<Key, Value>();
+    tiles.put(key(1), tile(1.0, 2.0, 3.0));
+    tiles.put(key(2), tile(4.0, 5.0, 6.0));
+
+    IteratorSetting setting = new IteratorSetting(54, "bandsubset", BandSubsetIterator.class);
+    BandSubsetIterator.setBands(setting, new int[]{2, 0});
+
+    BandSubsetIterator iter = new BandSubsetIterator();
+    iter.init(new SortedMapIterator(tiles), setting.getOptions(), null);
+
+    iter.seek(new Range(), Collections.<ByteSequence>emptyList(), false);
+
+    Raster r1 = RasterWritable.toRaster(new RasterWritable(iter.getTopValue().get()));
+    Assert.assertEquals(2, r1.getNumBands());
+    Assert.assertEquals(3.0, r1.getSampleDouble(0, 0, 0), 0.0);
+    Assert.assertEquals(1.0, r1.getSampleDouble(SIZE - 1, SIZE - 1, 1), 0.0);
+
+    iter.next();
+    Raster r2 = RasterWritable.toRaster(new RasterWritable(iter.getTopValue().get()));
+    Assert.assertEquals(6.0, r2.getSampleDouble(0, 0, 0), 0.0);
+    Assert.assertEquals(4.0, r2.getSampleDouble(0, 0, 1), 0.0);
+
+    iter.next();
+    Assert.assertFalse(iter.hasTop());
+  }
+}
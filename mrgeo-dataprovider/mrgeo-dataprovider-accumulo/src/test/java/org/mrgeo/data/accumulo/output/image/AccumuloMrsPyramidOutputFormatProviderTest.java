@@ -0,0 +1,106 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+package org.mrgeo.data.accumulo.output.image;
+
+import junit.framework.Assert;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mrgeo.data.accumulo.AccumuloDefs;
+import org.mrgeo.data.accumulo.utils.AccumuloConnector;
+import org.mrgeo.data.accumulo.utils.AccumuloUtils;
+import org.mrgeo.hdfs.tile.FileSplit.FileSplitInfo;
+import org.mrgeo.junit.UnitTest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+public class AccumuloMrsPyramidOutputFormatProviderTest
+{
+  private static FileSplitInfo split(long start, long end, int partition)
+  {
+    return new FileSplitInfo(start, end, String.format("part-r-%05d", partition), partition);
+  }
+
+  private static SortedSet<Text> rows(long... ids)
+  {
+    SortedSet<Text> rows = new TreeSet<Text>();
+    for (long id : ids)
+    {
+      rows.add(AccumuloUtils.toRowId(id));
+    }
+    return rows;
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void testCalculateSplitRows() throws Exception
+  {
+    // the 2nd partition is empty (start > end)
+    FileSplitInfo[] splits = new FileSplitInfo[]{split(1, 10, 0), split(Long.MAX_VALUE, Long.MIN_VALUE, 1),
+        split(11, 300, 2), split(301, 400, 3)};
+
+    SortedSet<Text> splitRows = AccumuloMrsPyramidOutputFormatProvider.calculateSplitRows(splits);
+
+    // no split for the empty or the last partition
+    Assert.assertEquals(rows(10, 300), splitRows);
+
+    // the row ids sort like the tile ids, so each partition's tiles are in a single tablet
+    List<Text> ordered = new ArrayList<Text>(splitRows);
+    Assert.assertTrue(AccumuloUtils.toRowId(9).compareTo(ordered.get(0)) < 0);
+    Assert.assertTrue(AccumuloUtils.toRowId(11).compareTo(ordered.get(0)) > 0);
+    Assert.assertTrue(AccumuloUtils.toRowId(256).compareTo(ordered.get(1)) < 0);
+    Assert.assertTrue(AccumuloUtils.toRowId(301).compareTo(ordered.get(1)) > 0);
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void testCalculateSplitRowsSinglePartition() throws Exception
+  {
+    Assert.assertTrue(AccumuloMrsPyramidOutputFormatProvider.calculateSplitRows(
+        new FileSplitInfo[]{split(1, 10, 0)}).isEmpty());
+    Assert.assertTrue(AccumuloMrsPyramidOutputFormatProvider.calculateSplitRows(new FileSplitInfo[0]).isEmpty());
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void testPreSplit() throws Exception
+  {
+    Connector conn = AccumuloConnector.getMockConnector("testPreSplit", AccumuloDefs.USER,
+        AccumuloDefs.PASSWORDBLANK);
+
+    // creates the table
+    AccumuloMrsPyramidOutputFormatProvider.preSplit(conn, "presplit", rows(10, 300));
+    Assert.assertTrue(conn.tableOperations().exists("presplit"));
+
+    Collection<Text> splits = conn.tableOperations().listSplits("presplit");
+    Assert.assertEquals(rows(10, 300), new TreeSet<Text>(splits));
+
+    // an existing table keeps its splits
+    AccumuloMrsPyramidOutputFormatProvider.preSplit(conn, "presplit", rows(300, 500));
+    splits = conn.tableOperations().listSplits("presplit");
+    Assert.assertEquals(rows(10, 300, 500), new TreeSet<Text>(splits));
+
+    // a single partition only creates the table
+    AccumuloMrsPyramidOutputFormatProvider.preSplit(conn, "nosplits", new TreeSet<Text>());
+    Assert.assertTrue(conn.tableOperations().exists("nosplits"));
+    Assert.assertTrue(conn.tableOperations().listSplits("nosplits").isEmpty());
+  }
+}
@@ -17,12 +17,17 @@
 package org.mrgeo.data.accumulo.utils;
 
 import junit.framework.Assert;
+import org.apache.accumulo.core.data.Range;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.mrgeo.junit.UnitTest;
+import org.mrgeo.utils.LongRectangle;
+import org.mrgeo.utils.tms.TMSUtils;
+
+import java.util.List;
 
 public class AccumuloUtilsTest {
 
@@ -47,5 +52,46 @@ public class AccumuloUtilsTest {
 		Assert.assertTrue(AccumuloUtils.validateProtectionLevel(pl3));
 		
 	}  // end testValidateProtectionLevel
+
+
+	@Test
+	@Category(UnitTest.class)
+	public void testRangesFromTileBounds(){
+
+		int zoom = 10;
+		LongRectangle tiles = new LongRectangle(100, 200, 104, 202);
+		List<Range> ranges = AccumuloUtils.toRanges(tiles, zoom);
+
+		// one range per row of tiles
+		Assert.assertEquals(3, ranges.size());
+		for(long ty = 200; ty <= 202; ty++){
+			Range r = ranges.get((int) (ty - 200));
+			for(long tx = 99; tx <= 105; tx++){
+				boolean inside = tx >= 100 && tx <= 104;
+				Assert.assertEquals(inside, r.contains(AccumuloUtils.toKey(TMSUtils.tileid(tx, ty, zoom))));
+			}
+		}
+
+	}  // end testRangesFromTileBounds
+
+
+	@Test
+	@Category(UnitTest.class)
+	public void testRangesFromTileIds(){
+
+		long[] ids = {7, 3, 4, 5, 10, 300, 11, 4};
+		List<Range> ranges = AccumuloUtils.toRanges(ids);
+
+		// 3-5, 7, 10-11, 300
+		Assert.assertEquals(4, ranges.size());
+		Assert.assertTrue(ranges.get(0).contains(AccumuloUtils.toKey(3)));
+		Assert.assertTrue(ranges.get(0).contains(AccumuloUtils.toKey(5)));
+		Assert.assertFalse(ranges.get(0).contains(AccumuloUtils.toKey(6)));
+		Assert.assertTrue(ranges.get(1).contains(AccumuloUtils.toKey(7)));
+		Assert.assertTrue(ranges.get(2).contains(AccumuloUtils.toKey(11)));
+		Assert.assertFalse(ranges.get(2).contains(AccumuloUtils.toKey(12)));
+		Assert.assertTrue(ranges.get(3).contains(AccumuloUtils.toKey(300)));
+
+	}  // end testRangesFromTileIds
 	
 } // end AccumuloUtilsTest
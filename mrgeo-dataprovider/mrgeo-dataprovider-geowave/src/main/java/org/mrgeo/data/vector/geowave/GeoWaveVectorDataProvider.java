@@ -35,6 +35,7 @@ import org.apache.hadoop.mapreduce.JobID;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.geotools.data.DataUtilities;
 import org.geotools.filter.text.cql2.CQLException;
 import org.geotools.filter.text.ecql.ECQL;
 import org.joda.time.DateTime;
@@ -45,6 +46,8 @@ import org.mrgeo.data.DataProviderException;
 import org.mrgeo.data.ProviderProperties;
 import org.mrgeo.data.vector.*;
 import org.mrgeo.geometry.Geometry;
+import org.mrgeo.utils.tms.Bounds;
+import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -357,6 +360,42 @@ public class GeoWaveVectorDataProvider extends VectorDataProvider{
     return query;
   }
 
+  /**
+   * Returns the query for this data provider, narrowed to the features that intersect
+   * the bounds. This is how a consumer that only needs part of the data (e.g. rasterizing
+   * within bounds) gets GeoWave to only scan the index ranges that cover those bounds.
+   * If bounds is null, this is the same as getQuery().
+   *
+   * @param bounds
+   * @return
+   * @throws IOException
+   */
+  public DistributableQuery getQuery(Bounds bounds) throws IOException
+  {
+    if (bounds == null)
+    {
+      return getQuery();
+    }
+    com.vividsolutions.jts.geom.Geometry boundsGeometry =
+            new com.vividsolutions.jts.geom.GeometryFactory().toGeometry(bounds.toEnvelope());
+    com.vividsolutions.jts.geom.Geometry spatialConstraint = getSpatialConstraint();
+    if (spatialConstraint != null)
+    {
+      // Both the data source and the consumer constrain the query
+      boundsGeometry = boundsGeometry.intersection(spatialConstraint);
+    }
+    Date startTimeConstraint = getStartTimeConstraint();
+    Date endTimeConstraint = getEndTimeConstraint();
+    if (startTimeConstraint != null || endTimeConstraint != null)
+    {
+      log.debug("Using GeoWave SpatialTemporalQuery for bounds " + bounds);
+      TemporalConstraints tc = getTemporalConstraints(startTimeConstraint, endTimeConstraint);
+      return new SpatialTemporalQuery(tc, boundsGeometry);
+    }
+    log.debug("Using GeoWave SpatialQuery for bounds " + bounds);
+    return new SpatialQuery(boundsGeometry);
+  }
+
   @SuppressFBWarnings(value="PZLA_PREFER_ZERO_LENGTH_ARRAYS", justification = "Null return value is valid")
   private String[] getAuthorizations(ProviderProperties providerProperties)
   {
@@ -388,6 +427,48 @@ public class GeoWaveVectorDataProvider extends VectorDataProvider{
     return queryOptions;
   }
 
+  /**
+   * Returns the query options, with GeoWave only returning the requested attributes
+   * of each feature rather than all of them. The geometry is always returned, as are
+   * any attributes used by the CQL filter, since the filter is applied after the
+   * features are read. If requiredAttributes is null, all of the attributes are returned.
+   *
+   * @param providerProperties
+   * @param requiredAttributes
+   * @return
+   * @throws IOException
+   */
+  public QueryOptions getQueryOptions(ProviderProperties providerProperties,
+                                      Set<String> requiredAttributes) throws IOException
+  {
+    QueryOptions queryOptions = getQueryOptions(providerProperties);
+    DataAdapter<?> adapter = getDataAdapter();
+    if (requiredAttributes != null && adapter instanceof FeatureDataAdapter)
+    {
+      SimpleFeatureType featureType = ((FeatureDataAdapter) adapter).getType();
+      Set<String> fields = new LinkedHashSet<String>();
+      if (featureType.getGeometryDescriptor() != null)
+      {
+        fields.add(featureType.getGeometryDescriptor().getLocalName());
+      }
+      for (String attribute : requiredAttributes)
+      {
+        // GeoWave fails on unknown fields, and the consumer gets no value for those either way
+        if (featureType.getDescriptor(attribute) != null)
+        {
+          fields.add(attribute);
+        }
+      }
+      if (filter != null)
+      {
+        fields.addAll(Arrays.asList(DataUtilities.attributeNames(filter, featureType)));
+      }
+      log.debug("Requesting GeoWave fields " + fields);
+      queryOptions.setFieldIds(new ArrayList<String>(fields), adapter);
+    }
+    return queryOptions;
+  }
+
   private TemporalConstraints getTemporalConstraints(Date startTime, Date endTime)
   {
     TemporalRange tr = new TemporalRange();
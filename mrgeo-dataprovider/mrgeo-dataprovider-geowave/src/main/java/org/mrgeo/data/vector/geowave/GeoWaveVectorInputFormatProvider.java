@@ -1,6 +1,7 @@
 package org.mrgeo.data.vector.geowave;
 
 import mil.nga.giat.geowave.core.store.operations.remote.options.DataStorePluginOptions;
+import mil.nga.giat.geowave.core.store.query.DistributableQuery;
 import mil.nga.giat.geowave.mapreduce.input.GeoWaveInputFormat;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.InputFormat;
@@ -44,6 +45,18 @@ public class GeoWaveVectorInputFormatProvider extends VectorInputFormatProvider
       GeoWaveInputFormat.setStoreConfigOptions(conf, dspOptions.getFactoryOptionsAsMap());
       connectionInfo.writeToConfig(conf);
 
+      // Push the bounds and the attributes the consumer needs down to GeoWave, so
+      // it only scans the index ranges covering the bounds and only returns those
+      // attributes, rather than us reading everything and throwing most of it away.
+      VectorInputFormatContext context = getContext();
+      GeoWaveInputFormat.setQueryOptions(conf,
+          dataProvider.getQueryOptions(providerProperties, context.getRequiredAttributes()));
+      DistributableQuery query = dataProvider.getQuery(context.getBounds());
+      if (query != null)
+      {
+        GeoWaveInputFormat.setQuery(conf, query);
+      }
+
       // Configure CQL filtering if specified in the data provider
       String cql = dataProvider.getCqlFilter();
       if (cql != null && !cql.isEmpty())
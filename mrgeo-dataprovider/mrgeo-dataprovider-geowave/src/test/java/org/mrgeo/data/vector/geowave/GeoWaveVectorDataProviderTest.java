@@ -1,8 +1,13 @@
 package org.mrgeo.data.vector.geowave;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.Polygon;
+import mil.nga.giat.geowave.core.geotime.store.query.SpatialQuery;
+import mil.nga.giat.geowave.core.geotime.store.query.SpatialTemporalQuery;
+import mil.nga.giat.geowave.core.geotime.store.query.TemporalQuery;
+import mil.nga.giat.geowave.core.store.query.DistributableQuery;
 import org.apache.accumulo.core.client.AccumuloException;
 import org.apache.accumulo.core.client.AccumuloSecurityException;
 import org.junit.Assert;
@@ -11,6 +16,7 @@ import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.mrgeo.data.ProviderProperties;
 import org.mrgeo.junit.UnitTest;
+import org.mrgeo.utils.tms.Bounds;
 
 import java.io.IOException;
 import java.text.SimpleDateFormat;
@@ -413,4 +419,41 @@ public class GeoWaveVectorDataProviderTest
     Assert.assertNotNull(cqlFilter);
     Assert.assertEquals(expectedCql, cqlFilter);
   }
+
+  @Test
+  @Category(UnitTest.class)
+  public void testQueryWithBounds() throws IOException
+  {
+    String strSettings = "spatial=\"POLYGON((10 20, 10 30, 20 30, 20 20, 10 20))\"";
+    Map<String, String> settings = new TreeMap<String, String>();
+    GeoWaveVectorDataProvider.parseDataSourceSettings(strSettings, settings);
+    GeoWaveVectorDataProvider provider = new GeoWaveVectorDataProvider(null, "geowave", "input", (ProviderProperties)null);
+    provider.assignSettings("input", settings);
+
+    // The query is the intersection of the data source's spatial setting and the bounds
+    DistributableQuery query = provider.getQuery(new Bounds(15.0, 0.0, 40.0, 25.0));
+    Assert.assertTrue(query instanceof SpatialQuery);
+    Envelope env = ((SpatialQuery)query).getQueryGeometry().getEnvelopeInternal();
+    Assert.assertEquals(15.0, env.getMinX(), EPSILON);
+    Assert.assertEquals(20.0, env.getMinY(), EPSILON);
+    Assert.assertEquals(20.0, env.getMaxX(), EPSILON);
+    Assert.assertEquals(25.0, env.getMaxY(), EPSILON);
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void testQueryWithBoundsAndTime() throws IOException
+  {
+    String strSettings = "startTime=2015-01-01;endTime=2015-02-01";
+    Map<String, String> settings = new TreeMap<String, String>();
+    GeoWaveVectorDataProvider.parseDataSourceSettings(strSettings, settings);
+    GeoWaveVectorDataProvider provider = new GeoWaveVectorDataProvider(null, "geowave", "input", (ProviderProperties)null);
+    provider.assignSettings("input", settings);
+
+    DistributableQuery query = provider.getQuery(new Bounds(-10.0, -5.0, 10.0, 5.0));
+    Assert.assertTrue(query instanceof SpatialTemporalQuery);
+
+    // Without bounds, there is no spatial constraint
+    Assert.assertTrue(provider.getQuery(null) instanceof TemporalQuery);
+  }
 }
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.mapalgebra.benchmarks
+
+import java.io.{File, IOException}
+import java.nio.file.Files
+import java.util
+import java.util.Random
+
+import org.apache.commons.cli.{CommandLine, GnuParser, HelpFormatter, Options, ParseException, Option => CliOption}
+import org.apache.hadoop.conf.Configuration
+import org.apache.spark.{Logging, SparkContext}
+import org.codehaus.jackson.map.ObjectMapper
+import org.codehaus.jackson.util.DefaultPrettyPrinter
+import org.mrgeo.core.{MrGeoConstants, MrGeoProperties}
+import org.mrgeo.data.ProviderProperties
+import org.mrgeo.data.raster.RasterWritable
+import org.mrgeo.data.tile.TileIdWritable
+import org.mrgeo.hdfs.utils.HadoopFileUtils
+import org.mrgeo.job.{MrGeoJob, MrGeoJobServer}
+import org.mrgeo.mapalgebra.MapAlgebra
+import org.mrgeo.utils.logging.LoggingUtils
+import org.mrgeo.utils.tms.TMSUtils
+import org.mrgeo.utils.{HadoopUtils, SparkUtils}
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+  * End to end map algebra benchmarks, run in spark local[N] mode, entirely on the local file system.
+  *
+  * Synthetic inputs are generated first (see SyntheticPyramids), then each benchmark script is run
+  * through MapAlgebra.mapalgebra(), the same way a job is submitted, warmup + iterations times.
+  * Each run reports its wall time, shuffle bytes and peak memory (see RunMetrics).  The jobs run in
+  * a shared context (see MrGeoJobServer), created here with the requested number of cores, so the
+  * executors stay warm between runs, and everything a run persisted is dropped when it's done.
+  *
+  * Build it with -Pcopy-dependencies and run it with the jars in target and target/lib on the
+  * classpath, and a fixed heap (-Xmx), since local mode runs the executors in this JVM, e.g.
+  * java -Xmx8g -cp ... org.mrgeo.mapalgebra.benchmarks.MapAlgebraBenchmark --cores 4 --tiles 16 --report results.json
+  */
+object MapAlgebraBenchmark extends Logging {
+  private final val SEED = 20160501L
+
+  // the benchmark scripts.  $dem, $categorical and $sparse are the inputs, $scratch a path a script
+  // can write to, ${zoom} the inputs' zoom level, $point a WKT point and $polygons WKT polygons in them.
+  private final val BENCHMARKS = Array(
+    "math" ->
+        ("a = [$dem];\nb = [$sparse];\n" +
+            "c = (a * 0.3048 + b) / (a - b + 1.0);\n" +
+            "con(c > 0.5, c * c, abs(c) - a)"),
+    "slope" -> "slope([$dem], \"deg\")",
+    "aspect" -> "aspect([$dem], \"deg\")",
+    "focalstat" -> "focalStat(\"mean\", [$dem], \"7p\", \"true\")",
+    "costdistance" ->
+        ("src = InlineCsv(\"GEOMETRY\", \"'$point'\");\n" +
+            "friction = [$categorical] * 0.0002 + 0.0005;\n" +
+            "CostDistance(src, friction)"),
+    "rasterize" ->
+        ("v = InlineCsv(\"GEOMETRY\", \"$polygons\");\n" +
+            "RasterizeVector(v, \"SUM\", \"${zoom}z\", [$dem])"),
+    "buildpyramid" -> "buildpyramid(save([$dem] + 0, \"$scratch/pyramid\"))",
+    "export" -> "export([$dem], \"$scratch/export\", \"true\")"
+  )
+
+  def main(args:Array[String]):Unit = {
+    val options = createOptions()
+
+    val line = try {
+      new GnuParser().parse(options, args)
+    }
+    catch {
+      case e:ParseException =>
+        System.err.println(e.getMessage)
+        usage(options)
+        System.exit(-1)
+        null
+    }
+
+    if (line.hasOption("h")) {
+      usage(options)
+      System.exit(0)
+    }
+
+    if (line.hasOption("v")) {
+      LoggingUtils.setDefaultLogLevel(LoggingUtils.INFO)
+    }
+    else {
+      LoggingUtils.setDefaultLogLevel(LoggingUtils.WARN)
+    }
+
+    System.exit(run(line))
+  }
+
+  private def createOptions():Options = {
+    val options = new Options()
+
+    options.addOption(new CliOption("c", "cores", true, "Cores, the N in local[N] (default: all of them)"))
+    options.addOption(new CliOption("t", "tiles", true, "Tiles on a side of the inputs (default: 8)"))
+    options.addOption(new CliOption("z", "zoom", true, "Zoom level of the inputs (default: 12)"))
+    options.addOption(new CliOption("w", "warmup", true, "Warmup runs of each benchmark (default: 1)"))
+    options.addOption(new CliOption("i", "iterations", true, "Measured runs of each benchmark (default: 3)"))
+    options.addOption(new CliOption("b", "benchmarks", true,
+      "Comma separated benchmarks to run (default: all of " + BENCHMARKS.map(_._1).mkString(", ") + ")"))
+    options.addOption(new CliOption("d", "dir", true, "Working directory (default: a temporary directory)"))
+    options.addOption(new CliOption("k", "keep", false, "Keep the generated inputs and outputs"))
+    options.addOption(new CliOption("r", "report", true, "Write the results, as JSON, to this file"))
+    options.addOption(new CliOption("v", "verbose", false, "Verbose logging"))
+    options.addOption(new CliOption("h", "help", false, "This help"))
+
+    options
+  }
+
+  private def usage(options:Options) = {
+    new HelpFormatter().printHelp("MapAlgebraBenchmark <options>", options)
+  }
+
+  private def run(line:CommandLine):Int = {
+    val cores = intOption(line, "c", Runtime.getRuntime.availableProcessors())
+    val tiles = intOption(line, "t", 8)
+    val zoom = intOption(line, "z", 12)
+    val warmup = intOption(line, "w", 1)
+    val iterations = math.max(1, intOption(line, "i", 3))
+
+    val benchmarks = if (line.hasOption("b")) {
+      val names = line.getOptionValue("b").split(",").map(_.trim.toLowerCase)
+      val unknown = names.filter(name => !BENCHMARKS.exists(_._1 == name))
+      if (unknown.nonEmpty) {
+        System.err.println("Unknown benchmarks: " + unknown.mkString(", "))
+        return -1
+      }
+      BENCHMARKS.filter(b => names.contains(b._1))
+    }
+    else {
+      BENCHMARKS
+    }
+
+    val dir = if (line.hasOption("d")) {
+      new File(line.getOptionValue("d")).getAbsoluteFile
+    }
+    else {
+      Files.createTempDirectory("mrgeo-benchmarks").toFile
+    }
+
+    val tilesize = MrGeoProperties.getInstance().getProperty(MrGeoConstants.MRGEO_MRS_TILESIZE,
+      MrGeoConstants.MRGEO_MRS_TILESIZE_DEFAULT).toInt
+
+    val conf = HadoopUtils.createConfiguration()
+    HadoopUtils.setupLocalRunner(conf)
+
+    // the jobs pick up the context created here
+    MrGeoProperties.getInstance().setProperty(MrGeoConstants.MRGEO_SHARED_CONTEXT, "true")
+
+    val sparkConf = SparkUtils.getConfiguration
+        .setMaster("local[" + cores + "]")
+        .setAppName("MrGeo map algebra benchmarks")
+    MrGeoJob.registerClasses(Array[Class[_]](classOf[TileIdWritable], classOf[RasterWritable]), sparkConf)
+
+    val context = SparkContext.getOrCreate(sparkConf)
+
+    val report = new util.LinkedHashMap[String, Any]()
+    val settings = new util.LinkedHashMap[String, Any]()
+    settings.put("master", context.master)
+    settings.put("tiles", tiles)
+    settings.put("tilesize", tilesize)
+    settings.put("zoom", zoom)
+    settings.put("warmup", warmup)
+    settings.put("iterations", iterations)
+    settings.put("seed", SEED)
+    settings.put("maxHeapBytes", Runtime.getRuntime.maxMemory())
+    settings.put("java", System.getProperty("java.version"))
+    settings.put("spark", context.version)
+    report.put("settings", settings)
+
+    try {
+      println("Generating " + tiles + "x" + tiles + " tile inputs at zoom " + zoom + " in " + dir)
+
+      val inputs = new util.LinkedHashMap[String, Any]()
+      SyntheticPyramids.ALL.foreach(image => {
+        inputs.put(image, SyntheticPyramids.generate(context, image, input(dir, image), zoom, tiles, tilesize, SEED))
+      })
+      report.put("generateMs", inputs)
+
+      val metrics = new RunMetrics(context)
+      val results = new util.ArrayList[util.Map[String, Any]]()
+
+      println()
+      println("%-14s %10s %10s %10s %14s %14s %12s %12s".format("benchmark", "min ms", "median ms", "max ms",
+        "shuffle read", "shuffle write", "peak heap", "peak exec"))
+
+      benchmarks.foreach(benchmark => {
+        val (name, script) = benchmark
+        val expression = expand(script, dir, name, zoom, tiles, tilesize)
+
+        val result = new util.LinkedHashMap[String, Any]()
+        result.put("benchmark", name)
+        result.put("expression", expression)
+
+        try {
+          val runs = ArrayBuffer.empty[RunMetrics.Result]
+          for (i <- 0 until warmup + iterations) {
+            val output = new File(new File(dir, "output"), name).getPath
+
+            metrics.start()
+            MapAlgebra.mapalgebra(expression, output, conf, new ProviderProperties())
+            val run = metrics.stop()
+
+            if (i >= warmup) {
+              runs += run
+            }
+
+            clean(conf, output)
+            clean(conf, scratch(dir, name))
+          }
+
+          val times = runs.map(_.wallTime).sorted
+          val last = runs.last
+
+          println("%-14s %10d %10d %10d %14s %14s %12s %12s".format(name, times.head, times(times.length / 2),
+            times.last, human(last.shuffleReadBytes), human(last.shuffleWriteBytes), human(runs.map(_.peakHeap).max),
+            human(runs.map(_.peakExecutionMemory).max)))
+
+          val list = new util.ArrayList[util.Map[String, Any]]()
+          runs.foreach(r => list.add(r.toMap))
+          result.put("runs", list)
+        }
+        catch {
+          case e:Exception =>
+            logError("Benchmark " + name + " failed", e)
+            println("%-14s failed: %s".format(name, e.getMessage))
+            result.put("error", String.valueOf(e.getMessage))
+        }
+
+        results.add(result)
+      })
+      report.put("benchmarks", results)
+
+      if (line.hasOption("r")) {
+        val file = new File(line.getOptionValue("r"))
+        new ObjectMapper().prettyPrintingWriter(new DefaultPrettyPrinter()).writeValue(file, report)
+        println()
+        println("Results written to " + file.getAbsolutePath)
+      }
+
+      0
+    }
+    finally {
+      MrGeoJobServer.stop()
+
+      if (!line.hasOption("k")) {
+        clean(conf, dir.getPath)
+      }
+    }
+  }
+
+  private def expand(script:String, dir:File, name:String, zoom:Int, tiles:Int, tilesize:Int):String = {
+    val bounds = SyntheticPyramids.bounds(zoom, tiles, tilesize)
+
+    // polygons over the images, a few pixels to a few tiles across
+    val rand = new Random(SEED)
+    val res = TMSUtils.resolution(zoom, tilesize)
+    val polygons = (0 until 50).map(i => {
+      val x = bounds.w + rand.nextDouble() * bounds.width()
+      val y = bounds.s + rand.nextDouble() * bounds.height()
+      val size = res * (4 + rand.nextInt(tilesize * 2))
+
+      "'POLYGON((" + x + " " + y + ", " + (x + size) + " " + y + ", " + (x + size / 2) + " " + (y + size) + ", " +
+          x + " " + y + "))'"
+    }).mkString(";")
+
+    script.replace("$dem", input(dir, SyntheticPyramids.DEM))
+        .replace("$categorical", input(dir, SyntheticPyramids.CATEGORICAL))
+        .replace("$sparse", input(dir, SyntheticPyramids.SPARSE))
+        .replace("$scratch", scratch(dir, name))
+        .replace("${zoom}", zoom.toString)
+        .replace("$point", "POINT(" + (bounds.w + bounds.width() / 2) + " " + (bounds.s + bounds.height() / 2) + ")")
+        .replace("$polygons", polygons)
+  }
+
+  private def input(dir:File, image:String) = new File(new File(dir, "input"), image).getPath
+
+  private def scratch(dir:File, name:String) = new File(new File(dir, "scratch"), name).getPath
+
+  private def clean(conf:Configuration, path:String):Unit = {
+    try {
+      HadoopFileUtils.delete(conf, path)
+    }
+    catch {
+      case e:IOException => logWarning("Unable to delete " + path, e)
+    }
+  }
+
+  private def intOption(line:CommandLine, opt:String, default:Int):Int = {
+    if (line.hasOption(opt)) line.getOptionValue(opt).toInt else default
+  }
+
+  private def human(bytes:Long):String = {
+    SparkUtils.kbtohuman(bytes / 1024, "g")
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.mapalgebra.benchmarks
+
+import java.lang.management.ManagementFactory
+import java.util
+
+import org.apache.spark.SparkContext
+import org.apache.spark.scheduler.{SparkListener, SparkListenerJobEnd, SparkListenerJobStart, SparkListenerTaskEnd}
+
+object RunMetrics {
+  // how often the heap is sampled (ms)
+  private final val SAMPLE_INTERVAL = 10L
+
+  // how long stop() waits for the listener bus to deliver the last events
+  private final val DRAIN_TIMEOUT = 10000L
+
+  class Result(val wallTime:Long, val jobs:Int, val tasks:Int, val runTime:Long, val gcTime:Long,
+      val shuffleReadBytes:Long, val shuffleWriteBytes:Long, val memorySpilled:Long, val diskSpilled:Long,
+      val peakExecutionMemory:Long, val baseHeap:Long, val peakHeap:Long) {
+
+    def toMap:util.Map[String, Any] = {
+      val map = new util.LinkedHashMap[String, Any]()
+      map.put("wallTimeMs", wallTime)
+      map.put("jobs", jobs)
+      map.put("tasks", tasks)
+      map.put("executorRunTimeMs", runTime)
+      map.put("gcTimeMs", gcTime)
+      map.put("shuffleReadBytes", shuffleReadBytes)
+      map.put("shuffleWriteBytes", shuffleWriteBytes)
+      map.put("memoryBytesSpilled", memorySpilled)
+      map.put("diskBytesSpilled", diskSpilled)
+      map.put("peakExecutionMemoryBytes", peakExecutionMemory)
+      map.put("baseHeapBytes", baseHeap)
+      map.put("peakHeapBytes", peakHeap)
+      map
+    }
+  }
+}
+
+/**
+  * Measures a benchmark run: the wall time, the task metrics of every Spark job run between
+  * start() and stop(), and the peak heap used.  In local mode the executors run in this JVM, so
+  * the heap, sampled every few ms, covers them too.  It includes garbage that hasn't been
+  * collected yet, so it is an upper bound.  The heap left after a GC at start() is reported too
+  * (baseHeap), as what was used before the run.
+  */
+class RunMetrics(context:SparkContext) extends SparkListener {
+  import RunMetrics._
+
+  private var started = 0
+  private var ended = 0
+  private var tasks = 0
+  private var runTime = 0L
+  private var gcTime = 0L
+  private var shuffleRead = 0L
+  private var shuffleWrite = 0L
+  private var memorySpilled = 0L
+  private var diskSpilled = 0L
+  private var peakExecution = 0L
+
+  @volatile private var sampling = false
+  @volatile private var peakHeap = 0L
+  private var baseHeap = 0L
+  private var sampler:Thread = null
+  private var startTime = 0L
+
+  context.addSparkListener(this)
+
+  def start():Unit = {
+    synchronized {
+      started = 0
+      ended = 0
+      tasks = 0
+      runTime = 0
+      gcTime = 0
+      shuffleRead = 0
+      shuffleWrite = 0
+      memorySpilled = 0
+      diskSpilled = 0
+      peakExecution = 0
+    }
+
+    val memory = ManagementFactory.getMemoryMXBean
+    System.gc()
+    baseHeap = memory.getHeapMemoryUsage.getUsed
+    peakHeap = baseHeap
+
+    sampling = true
+    sampler = new Thread(new Runnable {
+      override def run():Unit = {
+        while (sampling) {
+          peakHeap = math.max(peakHeap, memory.getHeapMemoryUsage.getUsed)
+          try {
+            Thread.sleep(SAMPLE_INTERVAL)
+          }
+          catch {
+            case _:InterruptedException =>
+          }
+        }
+      }
+    }, "benchmark-heap-sampler")
+    sampler.setDaemon(true)
+    sampler.start()
+
+    startTime = System.currentTimeMillis()
+  }
+
+  def stop():Result = {
+    val wallTime = System.currentTimeMillis() - startTime
+
+    sampling = false
+    sampler.interrupt()
+    sampler.join()
+
+    synchronized {
+      // the task end events come before the job end
+      val timeout = System.currentTimeMillis() + DRAIN_TIMEOUT
+      while (ended < started && System.currentTimeMillis() < timeout) {
+        wait(200)
+      }
+
+      new Result(wallTime, started, tasks, runTime, gcTime, shuffleRead, shuffleWrite, memorySpilled, diskSpilled,
+        peakExecution, baseHeap, peakHeap)
+    }
+  }
+
+  override def onJobStart(jobStart:SparkListenerJobStart):Unit = synchronized {
+    started += 1
+  }
+
+  override def onJobEnd(jobEnd:SparkListenerJobEnd):Unit = synchronized {
+    ended += 1
+    notifyAll()
+  }
+
+  override def onTaskEnd(taskEnd:SparkListenerTaskEnd):Unit = synchronized {
+    val m = taskEnd.taskMetrics
+    if (m != null) {
+      tasks += 1
+      runTime += m.executorRunTime
+      gcTime += m.jvmGCTime
+      memorySpilled += m.memoryBytesSpilled
+      diskSpilled += m.diskBytesSpilled
+      peakExecution = math.max(peakExecution, m.peakExecutionMemory)
+      m.shuffleReadMetrics.foreach(sr => shuffleRead += sr.totalBytesRead)
+      m.shuffleWriteMetrics.foreach(sw => shuffleWrite += sw.shuffleBytesWritten)
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.mapalgebra.benchmarks
+
+import java.awt.image.{DataBuffer, WritableRaster}
+import java.util.Random
+
+import org.apache.spark.{Logging, SparkContext}
+import org.mrgeo.data.raster.{RasterUtils, RasterWritable}
+import org.mrgeo.data.rdd.RasterRDD
+import org.mrgeo.data.tile.TileIdWritable
+import org.mrgeo.data.{DataProviderFactory, ProviderProperties}
+import org.mrgeo.utils.SparkUtils
+import org.mrgeo.utils.tms.{Bounds, TMSUtils}
+
+/**
+  * Generates the benchmark inputs: square images, tiles x tiles tiles at a single zoom level, made
+  * from the same seed every time.
+  *
+  * <ul>
+  * <li>dem - float elevations, smooth hills plus noise, with 1% nodata pixels</li>
+  * <li>categorical - byte classes (elevation bands) of the same terrain, nodata is 255</li>
+  * <li>sparse - float, only about 1 in 8 tiles exist, and only a disk in the middle of those has data</li>
+  * </ul>
+  *
+  * Only the given zoom level is written, building the rest of the pyramid is one of the benchmarks.
+  */
+object SyntheticPyramids extends Logging {
+  final val DEM = "dem"
+  final val CATEGORICAL = "categorical"
+  final val SPARSE = "sparse"
+
+  final val ALL = Array(DEM, CATEGORICAL, SPARSE)
+
+  final val NODATA = -9999.0
+  final val BYTE_NODATA = 255.0
+
+  // the north-west corner of the images (somewhere in Utah)
+  private final val NORTH = 40.0
+  private final val WEST = -112.0
+
+  /**
+    * The bounds of the images, which are the same for all of them
+    */
+  def bounds(zoom:Int, tiles:Int, tilesize:Int):Bounds = {
+    val ul = TMSUtils.latLonToTile(NORTH, WEST, zoom, tilesize)
+
+    TMSUtils.tileBounds(ul.tx, ul.ty, zoom, tilesize)
+        .union(TMSUtils.tileBounds(ul.tx + tiles - 1, ul.ty - tiles + 1, zoom, tilesize))
+  }
+
+  /**
+    * Writes an image to path, returning the time it took (ms)
+    */
+  def generate(context:SparkContext, image:String, path:String, zoom:Int, tiles:Int, tilesize:Int,
+      seed:Long):Long = {
+    val start = System.currentTimeMillis()
+
+    val ul = TMSUtils.latLonToTile(NORTH, WEST, zoom, tilesize)
+    val (tx, ty) = (ul.tx, ul.ty)
+
+    val all = for (y <- 0 until tiles; x <- 0 until tiles) yield (x, y)
+    val tileset = if (image == SPARSE) all.filter(t => random(seed, t._1, t._2).nextInt(8) == 0) else all
+
+    val (datatype, nodata) = if (image == CATEGORICAL) (DataBuffer.TYPE_BYTE, BYTE_NODATA) else (DataBuffer.TYPE_FLOAT, NODATA)
+
+    val rdd = context.parallelize(tileset, math.max(1, math.min(tileset.length, context.defaultParallelism * 2)))
+        .map(t => {
+          val raster = tile(image, t._1, t._2, tilesize, seed)
+          (new TileIdWritable(TMSUtils.tileid(tx + t._1, ty - t._2, zoom)), RasterWritable.toWritable(raster))
+        })
+
+    val provider = DataProviderFactory.getMrsImageDataProvider(path, DataProviderFactory.AccessMode.OVERWRITE,
+      new ProviderProperties())
+
+    SparkUtils.saveMrsPyramid(RasterRDD(rdd), provider, zoom, tilesize, Array[Number](nodata),
+      context.hadoopConfiguration, datatype, bounds(zoom, tiles, tilesize), 1)
+
+    val elapsed = System.currentTimeMillis() - start
+    logInfo("Generated " + image + " (" + tileset.length + " tiles) in " + elapsed + "ms")
+
+    elapsed
+  }
+
+  // x, y are the tile's offset from the upper left tile, with y going south
+  private def tile(image:String, x:Int, y:Int, tilesize:Int, seed:Long):WritableRaster = {
+    val rand = random(seed, x, y)
+
+    val raster = if (image == CATEGORICAL) {
+      RasterUtils.createEmptyRaster(tilesize, tilesize, 1, DataBuffer.TYPE_BYTE, BYTE_NODATA)
+    }
+    else {
+      RasterUtils.createEmptyRaster(tilesize, tilesize, 1, DataBuffer.TYPE_FLOAT, NODATA)
+    }
+
+    val radius = tilesize / 3
+    val cx = tilesize / 2 + rand.nextInt(tilesize / 4) - tilesize / 8
+    val cy = tilesize / 2 + rand.nextInt(tilesize / 4) - tilesize / 8
+
+    var py = 0
+    while (py < tilesize) {
+      var px = 0
+      while (px < tilesize) {
+        val gx = x.toDouble * tilesize + px
+        val gy = y.toDouble * tilesize + py
+
+        val elevation = 1500.0 + 800.0 * math.sin(gx / 900.0) * math.cos(gy / 1300.0) +
+            150.0 * math.sin((gx + gy) / 97.0) + rand.nextGaussian() * 5.0
+
+        image match {
+        case DEM =>
+          if (rand.nextDouble() >= 0.01) {
+            raster.setSample(px, py, 0, elevation)
+          }
+        case CATEGORICAL =>
+          if (rand.nextDouble() >= 0.01) {
+            raster.setSample(px, py, 0, math.max(0, math.min(254, (elevation / 250.0).toInt)))
+          }
+        case _ =>
+          val dx = px - cx
+          val dy = py - cy
+          if (dx * dx + dy * dy <= radius * radius) {
+            raster.setSample(px, py, 0, elevation)
+          }
+        }
+
+        px += 1
+      }
+      py += 1
+    }
+
+    raster
+  }
+
+  private def random(seed:Long, x:Int, y:Int) = new Random(seed * 31 + x * 65537L + y)
+}
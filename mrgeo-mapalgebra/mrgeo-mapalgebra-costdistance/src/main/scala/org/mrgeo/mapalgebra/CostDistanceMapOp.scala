@@ -24,17 +24,18 @@ import java.util
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings
 import org.apache.commons.lang3.builder.HashCodeBuilder
 import org.apache.spark._
-import org.apache.spark.rdd.RDD
+import org.apache.spark.rdd.{PairRDDFunctions, RDD}
 import org.apache.spark.storage.StorageLevel
 import org.mrgeo.data.raster.{RasterUtils, RasterWritable}
-import org.mrgeo.data.rdd.{RasterRDD, VectorRDD}
+import org.mrgeo.data.rdd.{PartitionPlanner, RasterRDD, SpatialVectorRDD, VectorRDD}
 import org.mrgeo.data.tile.TileIdWritable
 import org.mrgeo.data.vector.FeatureIdWritable
 import org.mrgeo.geometry.{Geometry, GeometryFactory, Point}
+import org.mrgeo.hdfs.partitioners.TileRangePartitioner
 import org.mrgeo.job.JobArguments
 import org.mrgeo.mapalgebra.parser.{ParserException, ParserNode}
 import org.mrgeo.mapalgebra.raster.RasterMapOp
-import org.mrgeo.mapalgebra.vector.VectorMapOp
+import org.mrgeo.mapalgebra.vector.{VectorDataMapOp, VectorMapOp}
 import org.mrgeo.utils.tms._
 import org.mrgeo.utils.{LatLng, SparkUtils, SparkVectorUtils}
 
@@ -105,8 +106,6 @@ class CostDistanceMapOp extends RasterMapOp with Externalizable with Logging {
   var sourcePoints: Option[Array[Double]] = None
   var frictionZoom:Option[Int] = None
 
-  var numExecutors:Int = -1
-
   var maxCost:Float = -1
 
   private[mapalgebra] def this(friction: RasterMapOp, maxCost: Float, zoom: Int,
@@ -164,11 +163,7 @@ class CostDistanceMapOp extends RasterMapOp with Externalizable with Logging {
 
   override def rdd(): Option[RasterRDD] = rasterRDD
 
-  override def setup(job: JobArguments, conf: SparkConf): Boolean = {
-    numExecutors = conf.getInt("spark.executor.instances", -1)
-    logInfo("num executors = " + numExecutors)
-    true
-  }
+  override def setup(job: JobArguments, conf: SparkConf): Boolean = true
 
   override def teardown(job: JobArguments, conf: SparkConf): Boolean = true
 
@@ -176,7 +171,13 @@ class CostDistanceMapOp extends RasterMapOp with Externalizable with Logging {
     val t0 = System.nanoTime()
 
     val inputFriction:RasterMapOp = friction getOrElse(throw new IOException("Input MapOp not valid!"))
+    val frictionMeta = inputFriction.metadata() getOrElse(throw new IOException("Can't load metadata! Ouch! " + inputFriction.getClass.getName))
+
     val sourcePointsRDD = srcVector match {
+      // Only the location of the source points within the friction surface matters, so let the
+      // provider skip the attributes and the points elsewhere
+      case Some(mapOp:VectorDataMapOp) =>
+        mapOp.rdd(frictionMeta.getBounds, Set.empty[String]).getOrElse(throw new IOException("Missing source points"))
       case Some(mapOp) => mapOp.rdd().getOrElse(throw new IOException("Missing source points"))
       case None => {
         sourcePoints match {
@@ -193,7 +194,6 @@ class CostDistanceMapOp extends RasterMapOp with Externalizable with Logging {
         }
       }
     }
-    val frictionMeta = inputFriction.metadata() getOrElse(throw new IOException("Can't load metadata! Ouch! " + inputFriction.getClass.getName))
 
     val zoom = frictionZoom match {
     case Some(z) =>
@@ -253,57 +253,29 @@ class CostDistanceMapOp extends RasterMapOp with Externalizable with Logging {
     val height: Short = tilesize.toShort
     val res = TMSUtils.resolution(zoom, tilesize)
 
-    // Create a hash map lookup where the key is the tile id and the value is
-    // the set of source (starting) pixels in that tile.
-    val startPts = mutable.Map.empty[Long, mutable.Set[Pixel]]
-
-    sourcePointsRDD.map(startGeom => {
+    // The partitions stay the same for all the iterations, so plan them for the cost rasters (the
+    // friction plus a float cost band) up front.  The friction is split into tile id ranges, and the
+    // source points are spatially partitioned the same way, so each tile can look up its own
+    // starting pixels without collecting the points.
+    val partitions = PartitionPlanner.partitions(tileBounds.width() * tileBounds.height(),
+      PartitionPlanner.tileBytes(tilesize, frictionMeta.getBands + 1, DataBuffer.TYPE_FLOAT), context)
+    val partitioner = TileRangePartitioner.fromBounds(
+      TMSUtils.boundsToTile(frictionMeta.getBounds, zoom, tilesize), zoom, partitions)
+    val repartitioned = new PairRDDFunctions(frictionRDD).partitionBy(partitioner)
+
+    val startPts = SpatialVectorRDD(VectorRDD(sourcePointsRDD.map(startGeom => {
       if (startGeom == null || startGeom._2 == null || !startGeom._2.isInstanceOf[Point]) {
         throw new IOException("Invalid starting point, expected a point geometry: " + startGeom)
       }
-
-      val startPt = startGeom._2.asInstanceOf[Point]
-      val tile: Tile = TMSUtils.latLonToTile(startPt.getY.toFloat, startPt.getX.toFloat, zoom,
-        tilesize)
-      val startTileId = TMSUtils.tileid(tile.tx, tile.ty, zoom)
-
-      val startPixel = TMSUtils.latLonToTilePixelUL(startPt.getY.toFloat, startPt.getX.toFloat, tile.tx, tile.ty,
-        zoom, tilesize)
-      (startTileId, startPixel)
-    }).collect().foreach(pixel => {
-      if (!startPts.contains(pixel._1)) {
-        startPts.put(pixel._1, mutable.Set.empty[Pixel])
-      }
-      startPts.get(pixel._1).get += pixel._2
-    })
-
-
-    // After some experimentation with different values for repartitioning, the
-    // best performance seems to come from using the number of executors for this
-    // job.
-    val repartitioned = if (numExecutors > 1) {
-      logInfo("Repartitioning to " + numExecutors + " partitions")
-      val partitions = frictionRDD.partitions.length
-      if (partitions < numExecutors) {
-        frictionRDD.repartition(numExecutors)
-      }
-      else if (partitions > numExecutors) {
-        frictionRDD.coalesce(numExecutors)
-      }
-      else {
-        frictionRDD
-      }
-    }
-    else {
-      //      logInfo("No need to repartition")
-      frictionRDD
-    }
+      startGeom
+    })), partitioner, zoom, tilesize)
 
     val pixelSizeMeters = (res * LatLng.METERS_PER_DEGREE).toFloat
 
 
     var costs = makeRasters(repartitioned)
     var changes = buildInitialPoints(costs, startPts, context, pixelSizeMeters)
+    startPts.indexes.unpersist()
 
     // Force the RDD to materialize
     costs.count()
@@ -835,35 +807,56 @@ class CostDistanceMapOp extends RasterMapOp with Externalizable with Logging {
   }
 
   def buildInitialPoints(frictionRDD: RDD[(TileIdWritable, RasterWritable)],
-      startingPts: mutable.Map[Long, mutable.Set[Pixel]], context:SparkContext, pixelsize:Float) = {
+      startingPts: SpatialVectorRDD, context:SparkContext, pixelsize:Float) = {
 
     val initialChangesAccum = context.accumulator(new NeighborChangedPoints)(NeighborChangesAccumulator)
-
-    frictionRDD.foreach(tile => {
-      val tileid = tile._1.get()
-      if (startingPts.contains(tileid)) {
-        val raster = RasterWritable.toRaster(tile._2)
-        val pointsInTile = startingPts.get(tileid).get
-
-        val costPoints = new ListBuffer[CostPoint]()
-        for (startPixel <- pointsInTile) {
-          val pixelcost = if (raster.getNumBands > 2) {
-            0.0f
-          }
-          else {
-            // add a negative 1/2 friction, so the start point cost calculatation will be zero
-            -raster.getSampleFloat(startPixel.px.toInt, startPixel.py.toInt, 0) * pixelsize * 0.5f
+    val zoom = startingPts.zoom
+    val tilesize = startingPts.tilesize
+
+    // the friction is partitioned with the points' tilePartitioner, so the matching partition of
+    // points holds every start point in the tiles
+    frictionRDD.zipPartitions(startingPts.indexes)((tiles, indexes) => {
+      val parts = indexes.toArray
+
+      tiles.foreach(tile => {
+        val tileid = tile._1.get()
+        val t = TMSUtils.tileid(tileid, zoom)
+
+        // points on a tile edge are found by both tiles, only keep them in the one they belong to
+        val pointsInTile = mutable.Set.empty[Pixel]
+        parts.foreach(_.candidates(TMSUtils.tileBounds(t.tx, t.ty, zoom, tilesize)).foreach(entry => {
+          val pt = entry._2.asInstanceOf[Point]
+          val ptTile = TMSUtils.latLonToTile(pt.getY, pt.getX, zoom, tilesize)
+          if (ptTile.tx == t.tx && ptTile.ty == t.ty) {
+            pointsInTile += TMSUtils.latLonToTilePixelUL(pt.getY, pt.getX, t.tx, t.ty, zoom, tilesize)
           }
+        }))
+
+        if (pointsInTile.nonEmpty) {
+          val raster = RasterWritable.toRaster(tile._2)
+
+          val costPoints = new ListBuffer[CostPoint]()
+          for (startPixel <- pointsInTile) {
+            val pixelcost = if (raster.getNumBands > 2) {
+              0.0f
+            }
+            else {
+              // add a negative 1/2 friction, so the start point cost calculatation will be zero
+              -raster.getSampleFloat(startPixel.px.toInt, startPixel.py.toInt, 0) * pixelsize * 0.5f
+            }
 
-          // starting pixel has no initial cost and no friction to get to that point
-          logInfo("Start tile " + tileid + " and point " + startPixel.px + ", " + startPixel.py)
-          costPoints += new CostPoint(startPixel.px.toShort, startPixel.py.toShort, 0.0f, pixelcost)
+            // starting pixel has no initial cost and no friction to get to that point
+            logInfo("Start tile " + tileid + " and point " + startPixel.px + ", " + startPixel.py)
+            costPoints += new CostPoint(startPixel.px.toShort, startPixel.py.toShort, 0.0f, pixelcost)
+          }
+          val ncp = new NeighborChangedPoints
+          ncp.addPoints(tileid, costPoints.toList)
+          initialChangesAccum.add(ncp)
         }
-        val ncp = new NeighborChangedPoints
-        ncp.addPoints(tileid, costPoints.toList)
-        initialChangesAccum.add(ncp)
-      }
-    })
+      })
+
+      Iterator.empty
+    }).count()
 
     initialChangesAccum.value
   }
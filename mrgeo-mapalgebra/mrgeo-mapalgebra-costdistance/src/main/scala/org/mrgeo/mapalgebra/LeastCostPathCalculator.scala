@@ -24,7 +24,7 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings
 import org.apache.spark.{Logging, SparkContext}
 import org.apache.spark.storage.StorageLevel
 import org.mrgeo.data.raster.RasterWritable
-import org.mrgeo.data.rdd.{RasterRDD, VectorRDD}
+import org.mrgeo.data.rdd.{RasterRDD, SpatialVectorRDD, VectorRDD}
 import org.mrgeo.data.vector.FeatureIdWritable
 import org.mrgeo.geometry.{Geometry, GeometryFactory, Point, WritableLineString}
 import org.mrgeo.image.MrsPyramidMetadata
@@ -52,16 +52,45 @@ object LeastCostPathCalculator extends Logging {
       rdd.persist(StorageLevel.MEMORY_AND_DISK_SER)
     }
 
-    val lcps = destination.collect.map(feature => {
+    val z = meta.getMaxZoomLevel
+    val tilesize = meta.getTilesize
+    val bounds = meta.getBounds
+
+    // Look the destinations on the cost surface up by the tile they are in, and walk the paths in tile
+    // order, so consecutive paths start near each other and reuse the cost tiles already cached.  A
+    // point on a tile edge is found by both tiles, so only keep it in the one it belongs to.
+    val spatial = SpatialVectorRDD(destination, z, tilesize, destination.partitions.length)
+    val onSurface = spatial.tiles(bounds).flatMap(tile => {
+      tile._2.filter(feature => {
+        feature._2 match {
+        case pt:Point =>
+          val t = TMSUtils.latLonToTile(pt.getY, pt.getX, z, tilesize)
+          TMSUtils.tileid(t.tx, t.ty, z) == tile._1
+        case _ => true
+        }
+      }).map(feature => (tile._1, feature))
+    }).collect().sortBy(_._1).map(_._2)
+
+    // destinations off the cost surface don't have a path
+    val offSurface = destination.filter(feature => {
+      feature._2.getBounds == null || !bounds.intersects(feature._2.getBounds)
+    }).collect()
+
+    spatial.indexes.unpersist()
+
+    var cache = mutable.HashMap.empty[Long, Raster]
+
+    val lcps = (onSurface ++ offSurface).map(feature => {
       val lcp = GeometryFactory.createLineString()
 
       feature._2 match {
       case pt:Point =>
-        val calculator = new LeastCostPathCalculator (pt, rdd, meta)
+        val calculator = new LeastCostPathCalculator (pt, rdd, meta, cache)
 
         while (calculator.hasnext) {
           lcp.addPoint (calculator.point)
         }
+        cache = calculator.cache
 
         val df: DecimalFormat = new DecimalFormat ("###.###")
 
@@ -98,7 +127,8 @@ object LeastCostPathCalculator extends Logging {
 
 @SuppressFBWarnings(value = Array("NM_FIELD_NAMING_CONVENTION", "FE_FLOATING_POINT_EQUALITY", "RV_RETURN_VALUE_IGNORED_NO_SIDE_EFFECT"),
   justification = "1) false positive - case class NeighborData correctly named, 2 & 3) Scala generated code")
-private class LeastCostPathCalculator(start:Point, rdd:RasterRDD, meta:MrsPyramidMetadata) extends Logging {
+private class LeastCostPathCalculator(start:Point, rdd:RasterRDD, meta:MrsPyramidMetadata,
+    var cache:mutable.HashMap[Long, Raster] = mutable.HashMap.empty[Long, Raster]) extends Logging {
   val zoom = meta.getMaxZoomLevel
   val tilesize = meta.getTilesize
 
@@ -119,9 +149,6 @@ private class LeastCostPathCalculator(start:Point, rdd:RasterRDD, meta:MrsPyrami
     new NeighborData (1, 1, pixelsizediag)   // DOWN_RIGHT)
   )
 
-  var cache = mutable.HashMap.empty[Long, Raster]
-
-
   val maxPx = tilesize - 1
 
   var tile = TMSUtils.latLonToTile(start.getY, start.getX, zoom, tilesize)
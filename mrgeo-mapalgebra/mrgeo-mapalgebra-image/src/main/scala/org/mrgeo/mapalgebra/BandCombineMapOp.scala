@@ -22,13 +22,13 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings
 import org.apache.spark.rdd.CoGroupedRDD
 import org.apache.spark.{HashPartitioner, SparkConf, SparkContext}
 import org.mrgeo.data.raster.{RasterUtils, RasterWritable}
-import org.mrgeo.data.rdd.RasterRDD
+import org.mrgeo.data.rdd.{PartitionPlanner, RasterRDD}
 import org.mrgeo.data.tile.TileIdWritable
 import org.mrgeo.job.JobArguments
 import org.mrgeo.mapalgebra.parser.{ParserException, ParserNode}
 import org.mrgeo.mapalgebra.raster.RasterMapOp
 import org.mrgeo.utils.SparkUtils
-import org.mrgeo.utils.tms.Bounds
+import org.mrgeo.utils.tms.{Bounds, TMSUtils}
 
 import scala.collection.mutable
 
@@ -151,14 +151,11 @@ class BandCombineMapOp extends RasterMapOp with Externalizable {
     val nodata = nodatabuilder.result()
 
     // cogroup needs a partitioner, so we'll give one here...
-    var maxpartitions = 0
-    val partitions = pyramids.foreach(p => {
-      if (p.partitions.length > maxpartitions) {
-        maxpartitions = p.partitions.length
-      }
-    })
+    val tileBounds = TMSUtils.boundsToTile(bounds, zoom, tilesize)
+    val partitions = PartitionPlanner.partitions(tileBounds.width() * tileBounds.height(),
+      PartitionPlanner.tileBytes(tilesize, totalbands, tiletype), context)
 
-    val groups = new CoGroupedRDD(pyramids, new HashPartitioner(maxpartitions))
+    val groups = new CoGroupedRDD(pyramids, new HashPartitioner(partitions))
 
     rasterRDD = Some(RasterRDD(groups.map(group => {
 
@@ -25,7 +25,7 @@ import org.mrgeo.data.rdd.RasterRDD
 import org.mrgeo.data.tile.TileIdWritable
 import org.mrgeo.job.JobArguments
 import org.mrgeo.mapalgebra.parser.{ParserException, ParserNode}
-import org.mrgeo.mapalgebra.raster.RasterMapOp
+import org.mrgeo.mapalgebra.raster.{MrsPyramidMapOp, RasterMapOp}
 import org.mrgeo.utils.SparkUtils
 
 object BandExtractMapOp extends MapOpRegistrar {
@@ -116,15 +116,21 @@ class BandExtractMapOp extends RasterMapOp with Externalizable {
             "one is " + meta.getTileType + ", others are " + tiletype)
         }
         val nodata = meta.getDefaultValue(band)
-        val inputRDD = pyramid.rdd().getOrElse(throw new IOException("Can't load RDD! Ouch!"))
+        // a pyramid is asked for just the band, data providers that can't do that return all the bands
+        val inputRDD = (MrsPyramidMapOp(pyramid) match {
+          case Some(mrspyramid) => mrspyramid.rdd(Array(band))
+          case None => pyramid.rdd()
+        }).getOrElse(throw new IOException("Can't load RDD! Ouch!"))
+
         rasterRDD = Some(RasterRDD(inputRDD.map(U => {
           val dst = RasterUtils.createEmptyRaster(tilesize, tilesize, 1, tiletype, nodata)
           val sourceRaster = RasterWritable.toRaster(U._2)
+          val srcband = if (band < sourceRaster.getNumBands) band else 0
           var y: Int = 0
           while (y < sourceRaster.getHeight) {
             var x: Int = 0
             while (x < sourceRaster.getWidth) {
-              val v = sourceRaster.getSampleDouble(x, y, band)
+              val v = sourceRaster.getSampleDouble(x, y, srcband)
               dst.setSample(x, y, 0, v)
               x += 1
             }
@@ -46,7 +46,7 @@ object CropMapOp extends MapOpRegistrar {
 }
 
 
-class CropMapOp extends RasterMapOp with Externalizable {
+class CropMapOp extends RasterMapOp with InputBounds with Externalizable {
   private var rasterRDD: Option[RasterRDD] = None
 
   private var inputMapOp: Option[RasterMapOp] = None
@@ -133,6 +133,25 @@ class CropMapOp extends RasterMapOp with Externalizable {
     }
   }
 
+  // only the crop area of the raster is needed; the bounds raster, if any, is only known once
+  // it's executed, and it must be read whole since its bounds are the crop area
+  override def inputBounds(input: Int, bounds: Option[Bounds]): Option[Bounds] = {
+    if (input == 0) {
+      if (cropBounds == null) {
+        bounds
+      }
+      else {
+        bounds match {
+        case Some(b) => Option(b.intersection(cropBounds)).orElse(Some(cropBounds))
+        case None => Some(cropBounds)
+        }
+      }
+    }
+    else {
+      None
+    }
+  }
+
   override def context(cont: SparkContext) = {
     super.context(cont)
     this.inputMapOp match {
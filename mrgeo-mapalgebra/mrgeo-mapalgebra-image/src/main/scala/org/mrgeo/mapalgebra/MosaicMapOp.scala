@@ -23,7 +23,7 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings
 import org.apache.spark.rdd.CoGroupedRDD
 import org.apache.spark.{HashPartitioner, SparkConf, SparkContext}
 import org.mrgeo.data.raster.{RasterUtils, RasterWritable}
-import org.mrgeo.data.rdd.RasterRDD
+import org.mrgeo.data.rdd.{PartitionPlanner, RasterRDD}
 import org.mrgeo.data.tile.TileIdWritable
 import org.mrgeo.job.JobArguments
 import org.mrgeo.mapalgebra.parser.{ParserException, ParserNode}
@@ -153,13 +153,9 @@ class MosaicMapOp extends RasterMapOp with Externalizable {
     logDebug("TileBounds: " + tileBounds.toString)
 
     // cogroup needs a partitioner, so we'll give one here...
-    var maxpartitions = 0
-    val partitions = pyramids.foreach(p => {
-      if (p.partitions.length > maxpartitions) {
-        maxpartitions = p.partitions.length
-      }
-    })
-    val groups = new CoGroupedRDD(pyramids, new HashPartitioner(maxpartitions))
+    val partitions = PartitionPlanner.partitions(tileBounds.width() * tileBounds.height(),
+      PartitionPlanner.tileBytes(tilesize, numbands, tiletype), context)
+    val groups = new CoGroupedRDD(pyramids, new HashPartitioner(partitions))
 
     rasterRDD = Some(RasterRDD(groups.map(U => {
 
@@ -0,0 +1,441 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.mapalgebra
+
+import java.awt.image.{DataBuffer, Raster, WritableRaster}
+import java.io._
+
+import com.esotericsoftware.kryo.io.{Input, Output}
+import com.esotericsoftware.kryo.{Kryo, KryoSerializable}
+import org.mrgeo.data.raster.RasterUtils
+import org.mrgeo.mapalgebra.raster.RasterMapOp
+
+object StatisticsAccumulator {
+  // histogram bins (12 bytes each) per pixel for median and mode, so a 512x512 tile needs at most
+  // about 100m however many inputs there are
+  val MaxBins = 32
+
+  def apply(method:String, width:Int, height:Int, maxBins:Int = MaxBins):StatisticsAccumulator = {
+    new StatisticsAccumulator(method, width, height, maxBins)
+  }
+}
+
+/**
+  * Per-tile running statistics for StatisticsMapOp.  Tiles are added one at a time and partial
+  * accumulators are merged, so the memory used for count, min, max, sum, mean and stddev
+  * (Welford/Chan) is constant in the number of input rasters.
+  * <p>
+  * median and mode use a fixed size histogram per pixel (see PixelHistograms), so they are constant
+  * in the number of inputs too, in memory and in the bytes shuffled.  While a pixel has no more
+  * distinct values than there are bins, e.g. byte or categorical data, they are exact; beyond that,
+  * the closest values share a bin and the result is approximate.
+  * <p>
+  * The arrays are lazily allocated, so an empty accumulator (the aggregateByKey zero value) is cheap
+  * to serialize.
+  */
+@SerialVersionUID(1L)
+class StatisticsAccumulator private(private var method:String, private var width:Int, private var height:Int,
+    private var maxBins:Int) extends Serializable with KryoSerializable {
+
+  // count of valid (non-nodata) samples per pixel
+  private var counts:Array[Int] = null
+
+  // min, max, sum or running mean, depending on the method
+  private var values:Array[Double] = null
+
+  // sum of the squared differences from the mean (stddev)
+  private var m2:Array[Double] = null
+
+  // per-pixel histograms (median, mode)
+  private var distinct:PixelHistograms = null
+
+  private def usesValueCounts = method == StatisticsMapOp.Median || method == StatisticsMapOp.Mode
+
+  private def allocate() = {
+    val pixels = width * height
+    counts = Array.ofDim[Int](pixels)
+
+    if (usesValueCounts) {
+      distinct = new PixelHistograms(pixels, maxBins)
+    }
+    else {
+      values = Array.ofDim[Double](pixels)
+      if (method == StatisticsMapOp.StdDev) {
+        m2 = Array.ofDim[Double](pixels)
+      }
+    }
+  }
+
+  def add(raster:Raster, nodata:Double):StatisticsAccumulator = {
+    if (counts == null) {
+      allocate()
+    }
+
+    var y:Int = 0
+    while (y < height) {
+      var x:Int = 0
+      while (x < width) {
+        val px = raster.getSampleDouble(x, y, 0)
+
+        if (RasterMapOp.isNotNodata(px, nodata)) {
+          val ndx = y * width + x
+          val cnt = counts(ndx) + 1
+          counts(ndx) = cnt
+
+          method match {
+          case StatisticsMapOp.Count =>
+          case StatisticsMapOp.Min =>
+            values(ndx) = if (cnt == 1) px else Math.min(values(ndx), px)
+          case StatisticsMapOp.Max =>
+            values(ndx) = if (cnt == 1) px else Math.max(values(ndx), px)
+          case StatisticsMapOp.Sum =>
+            values(ndx) += px
+          case StatisticsMapOp.Mean =>
+            values(ndx) += (px - values(ndx)) / cnt
+          case StatisticsMapOp.StdDev =>
+            val delta = px - values(ndx)
+            values(ndx) += delta / cnt
+            m2(ndx) += delta * (px - values(ndx))
+          case _ =>
+            distinct.add(ndx, px, 1)
+          }
+        }
+        x += 1
+      }
+      y += 1
+    }
+
+    this
+  }
+
+  def merge(other:StatisticsAccumulator):StatisticsAccumulator = {
+    if (other.counts == null) {
+      return this
+    }
+    if (counts == null) {
+      return other
+    }
+
+    var ndx:Int = 0
+    while (ndx < counts.length) {
+      val na = counts(ndx)
+      val nb = other.counts(ndx)
+
+      if (nb > 0) {
+        val n = na + nb
+
+        method match {
+        case StatisticsMapOp.Min =>
+          values(ndx) = if (na == 0) other.values(ndx) else Math.min(values(ndx), other.values(ndx))
+        case StatisticsMapOp.Max =>
+          values(ndx) = if (na == 0) other.values(ndx) else Math.max(values(ndx), other.values(ndx))
+        case StatisticsMapOp.Sum =>
+          values(ndx) += other.values(ndx)
+        case StatisticsMapOp.Mean =>
+          values(ndx) += (other.values(ndx) - values(ndx)) * nb / n
+        case StatisticsMapOp.StdDev =>
+          val delta = other.values(ndx) - values(ndx)
+          values(ndx) += delta * nb / n
+          m2(ndx) += other.m2(ndx) + delta * delta * na * nb / n
+        case _ =>
+        }
+
+        counts(ndx) = n
+      }
+      ndx += 1
+    }
+
+    if (distinct != null) {
+      distinct.merge(other.distinct)
+    }
+
+    this
+  }
+
+  /**
+    * The statistic for each pixel
+    */
+  def toRaster:WritableRaster = {
+    val result = RasterUtils.createEmptyRaster(width, height, 1, DataBuffer.TYPE_FLOAT, Float.NaN)
+
+    if (distinct != null) {
+      distinct.foreach((ndx, vals, cnts, size) => {
+        val value = if (method == StatisticsMapOp.Median) {
+          val cnt = counts(ndx)
+          // for an even count, the median is the average of the 2 middle values
+          if (cnt % 2 == 1) {
+            valueAtRank(vals, cnts, size, cnt / 2)
+          }
+          else {
+            (valueAtRank(vals, cnts, size, cnt / 2 - 1) + valueAtRank(vals, cnts, size, cnt / 2)) / 2.0
+          }
+        }
+        else {
+          modeValue(vals, cnts, size)
+        }
+        result.setSample(ndx % width, ndx / width, 0, value)
+      })
+    }
+    else if (counts != null) {
+      var y:Int = 0
+      while (y < height) {
+        var x:Int = 0
+        while (x < width) {
+          val ndx = y * width + x
+          val cnt = counts(ndx)
+
+          if (cnt > 0) {
+            val value = method match {
+            case StatisticsMapOp.Count => cnt.toDouble
+            case StatisticsMapOp.StdDev => Math.sqrt(m2(ndx) / cnt)
+            case _ => values(ndx)
+            }
+            result.setSample(x, y, 0, value)
+          }
+          x += 1
+        }
+        y += 1
+      }
+    }
+
+    result
+  }
+
+  // the value (bin) with the 0-based rank within the sorted pixel values
+  private def valueAtRank(vals:Array[Double], cnts:Array[Int], size:Int, rank:Int):Double = {
+    var seen = 0
+    var i:Int = 0
+    while (i < size) {
+      seen += cnts(i)
+      if (seen > rank) {
+        return vals(i)
+      }
+      i += 1
+    }
+    vals(size - 1)
+  }
+
+  // the most common value (bin), ties go to the smallest value
+  private def modeValue(vals:Array[Double], cnts:Array[Int], size:Int):Double = {
+    var mode = 0
+    var i:Int = 1
+    while (i < size) {
+      if (cnts(i) > cnts(mode)) {
+        mode = i
+      }
+      i += 1
+    }
+    vals(mode)
+  }
+
+  private def writeTo(out:DataOutput):Unit = {
+    out.writeUTF(method)
+    out.writeInt(width)
+    out.writeInt(height)
+    out.writeInt(maxBins)
+
+    out.writeBoolean(counts != null)
+    if (counts != null) {
+      counts.foreach(out.writeInt)
+      if (values != null) {
+        values.foreach(out.writeDouble)
+      }
+      if (m2 != null) {
+        m2.foreach(out.writeDouble)
+      }
+      if (distinct != null) {
+        distinct.write(out)
+      }
+    }
+  }
+
+  private def readFrom(in:DataInput):Unit = {
+    method = in.readUTF()
+    width = in.readInt()
+    height = in.readInt()
+    maxBins = in.readInt()
+
+    counts = null
+    values = null
+    m2 = null
+    distinct = null
+
+    if (in.readBoolean()) {
+      allocate()
+
+      var i:Int = 0
+      while (i < counts.length) {
+        counts(i) = in.readInt()
+        i += 1
+      }
+      if (values != null) {
+        i = 0
+        while (i < values.length) {
+          values(i) = in.readDouble()
+          i += 1
+        }
+      }
+      if (m2 != null) {
+        i = 0
+        while (i < m2.length) {
+          m2(i) = in.readDouble()
+          i += 1
+        }
+      }
+      if (distinct != null) {
+        distinct.read(in)
+      }
+    }
+  }
+
+  @throws(classOf[IOException])
+  private def writeObject(out:ObjectOutputStream):Unit = writeTo(out)
+
+  @throws(classOf[IOException])
+  private def readObject(in:ObjectInputStream):Unit = readFrom(in)
+
+  // the Kryo streams don't buffer, so they can be wrapped for each accumulator
+  override def write(kryo:Kryo, output:Output):Unit = writeTo(new DataOutputStream(output))
+
+  override def read(kryo:Kryo, input:Input):Unit = readFrom(new DataInputStream(input))
+}
+
+/**
+  * A histogram for every pixel of a tile: sorted bins of a value and how many times it was seen.
+  * Each pixel has at most maxBins bins, its arrays only grow as big as its number of bins.  Every
+  * distinct value gets its own bin until there are more than maxBins of them, then the two closest
+  * bins are merged into one, at their weighted mean (Ben-Haim and Tom-Tov's streaming histogram).
+  * Histograms merge the same way, by adding the other's bins.
+  */
+private[mapalgebra] class PixelHistograms(pixels:Int, maxBins:Int) {
+  private val InitialSize = 4
+
+  private val values = new Array[Array[Double]](pixels)
+  private val counts = new Array[Array[Int]](pixels)
+  private val sizes = new Array[Int](pixels)
+
+  def add(ndx:Int, value:Double, count:Int):Unit = {
+    val size = sizes(ndx)
+    val pos = if (size > 0) java.util.Arrays.binarySearch(values(ndx), 0, size, value) else -1
+
+    if (pos >= 0) {
+      counts(ndx)(pos) += count
+    }
+    else {
+      val insert = -(pos + 1)
+
+      // one more than maxBins, for the new value before it's merged
+      if (size == 0) {
+        if (values(ndx) == null) {
+          values(ndx) = new Array[Double](math.min(InitialSize, maxBins + 1))
+          counts(ndx) = new Array[Int](math.min(InitialSize, maxBins + 1))
+        }
+      }
+      else if (size == values(ndx).length) {
+        values(ndx) = java.util.Arrays.copyOf(values(ndx), math.min(size * 2, maxBins + 1))
+        counts(ndx) = java.util.Arrays.copyOf(counts(ndx), math.min(size * 2, maxBins + 1))
+      }
+
+      val vals = values(ndx)
+      val cnts = counts(ndx)
+      System.arraycopy(vals, insert, vals, insert + 1, size - insert)
+      System.arraycopy(cnts, insert, cnts, insert + 1, size - insert)
+      vals(insert) = value
+      cnts(insert) = count
+      sizes(ndx) = size + 1
+
+      if (size + 1 > maxBins) {
+        mergeClosest(ndx)
+      }
+    }
+  }
+
+  def merge(other:PixelHistograms):Unit = {
+    other.foreach((ndx, vals, cnts, size) => {
+      var i:Int = 0
+      while (i < size) {
+        add(ndx, vals(i), cnts(i))
+        i += 1
+      }
+    })
+  }
+
+  /**
+    * Calls f with every pixel that has values, in pixel order, with its sorted bin values and their
+    * counts (only the first size of them are used).
+    */
+  def foreach(f:(Int, Array[Double], Array[Int], Int) => Unit):Unit = {
+    var ndx:Int = 0
+    while (ndx < pixels) {
+      if (sizes(ndx) > 0) {
+        f(ndx, values(ndx), counts(ndx), sizes(ndx))
+      }
+      ndx += 1
+    }
+  }
+
+  def write(out:DataOutput):Unit = {
+    foreach((ndx, vals, cnts, size) => {
+      out.writeInt(ndx)
+      out.writeInt(size)
+      var i:Int = 0
+      while (i < size) {
+        out.writeDouble(vals(i))
+        out.writeInt(cnts(i))
+        i += 1
+      }
+    })
+    out.writeInt(-1)
+  }
+
+  def read(in:DataInput):Unit = {
+    var ndx = in.readInt()
+    while (ndx >= 0) {
+      val size = in.readInt()
+      var i:Int = 0
+      while (i < size) {
+        add(ndx, in.readDouble(), in.readInt())
+        i += 1
+      }
+      ndx = in.readInt()
+    }
+  }
+
+  // merges the two adjacent bins with the closest values, the first pair on a tie
+  private def mergeClosest(ndx:Int):Unit = {
+    val vals = values(ndx)
+    val cnts = counts(ndx)
+    val size = sizes(ndx)
+
+    var closest = 0
+    var i:Int = 1
+    while (i < size - 1) {
+      if (vals(i + 1) - vals(i) < vals(closest + 1) - vals(closest)) {
+        closest = i
+      }
+      i += 1
+    }
+
+    val count = cnts(closest) + cnts(closest + 1)
+    vals(closest) = (vals(closest) * cnts(closest) + vals(closest + 1) * cnts(closest + 1)) / count
+    cnts(closest) = count
+
+    System.arraycopy(vals, closest + 2, vals, closest + 1, size - closest - 2)
+    System.arraycopy(cnts, closest + 2, cnts, closest + 1, size - closest - 2)
+    sizes(ndx) = size - 1
+  }
+}
@@ -16,13 +16,12 @@
 
 package org.mrgeo.mapalgebra
 
-import java.awt.image.{DataBuffer, Raster, WritableRaster}
 import java.io.{Externalizable, IOException, ObjectInput, ObjectOutput}
 
-import org.apache.spark.rdd.CoGroupedRDD
+import org.apache.spark.rdd.PairRDDFunctions
 import org.apache.spark.{HashPartitioner, SparkConf, SparkContext}
 import org.mrgeo.data.DataProviderFactory.AccessMode
-import org.mrgeo.data.raster.{RasterUtils, RasterWritable}
+import org.mrgeo.data.raster.RasterWritable
 import org.mrgeo.data.rdd.RasterRDD
 import org.mrgeo.data.{DataProviderFactory, ProviderProperties}
 import org.mrgeo.job.JobArguments
@@ -30,17 +29,15 @@ import org.mrgeo.mapalgebra.parser.{ParserException, ParserNode}
 import org.mrgeo.mapalgebra.raster.{MrsPyramidMapOp, RasterMapOp}
 import org.mrgeo.utils.SparkUtils
 
-import scala.util.Sorting
-
 object StatisticsMapOp extends MapOpRegistrar {
-  private val Count = "count"
-  private val Max = "max"
-  private val Mean = "mean"
-  private val Median = "median"
-  private val Min = "min"
-  private val Mode = "mode"
-  private val StdDev = "stddev"
-  private val Sum = "sum"
+  private[mapalgebra] val Count = "count"
+  private[mapalgebra] val Max = "max"
+  private[mapalgebra] val Mean = "mean"
+  private[mapalgebra] val Median = "median"
+  private[mapalgebra] val Min = "min"
+  private[mapalgebra] val Mode = "mode"
+  private[mapalgebra] val StdDev = "stddev"
+  private[mapalgebra] val Sum = "sum"
 
   private val methods = Array[String](Min, Max, Mean, Median, Mode, StdDev, Sum, Count)
 
@@ -207,340 +204,34 @@ class StatisticsMapOp extends RasterMapOp with Externalizable {
     }
 
     val nodatas = nodatabuilder.result()
+    val mapops = mapopbuilder.result()
 
-    val pyramids = mapopbuilder.result().map(_.rdd(zoom) getOrElse (throw new IOException("Can't load RDD! Ouch! " + getClass.getName)))
+    val pyramids = mapops.map(_.rdd(zoom) getOrElse (throw new IOException("Can't load RDD! Ouch! " + getClass.getName)))
 
-    // cogroup needs a partitioner, so we'll give one here...
+    // aggregateByKey needs a partitioner, so we'll give one here...
     var maxpartitions = 0
-    val partitions = pyramids.foreach(p => {
+    pyramids.foreach(p => {
       if (p.partitions.length > maxpartitions) {
         maxpartitions = p.partitions.length
       }
     })
 
-    val groups = new CoGroupedRDD(pyramids, new HashPartitioner(maxpartitions))
-
-    rasterRDD = Some(RasterRDD(groups.map(tile => {
-
-      val epsilon = 1e-8
-
-      def count(raster: Raster, result: WritableRaster, nodata: Double) = {
-        var y: Int = 0
-        while (y < raster.getHeight) {
-          var x: Int = 0
-          while (x < raster.getWidth) {
-            val px = raster.getSampleDouble(x, y, 0)
-
-            if (RasterMapOp.isNotNodata(px, nodata)) {
-              val cnt = result.getSampleDouble(x, y, 0)
-              if (RasterMapOp.isNodata(cnt, Float.NaN)) {
-                result.setSample(x, y, 0, 1)
-              }
-              else {
-                result.setSample(x, y, 0, cnt + 1)
-              }
-            }
-            x += 1
-          }
-          y += 1
-        }
-      }
-
-      def min(raster: Raster, result: WritableRaster, nodata: Double) = {
-        var y: Int = 0
-        while (y < raster.getHeight) {
-          var x: Int = 0
-          while (x < raster.getWidth) {
-            val px = raster.getSampleDouble(x, y, 0)
-
-            if (RasterMapOp.isNotNodata(px, nodata)) {
-              val src = result.getSampleDouble(x, y, 0)
-              if (RasterMapOp.isNodata(src, Float.NaN)) {
-                result.setSample(x, y, 0, px)
-              }
-              else {
-                result.setSample(x, y, 0, Math.min(src, px))
-              }
-            }
-            x += 1
-          }
-          y += 1
-        }
-      }
-
-      def max(raster: Raster, result: WritableRaster, nodata: Double) = {
-        var y: Int = 0
-        while (y < raster.getHeight) {
-          var x: Int = 0
-          while (x < raster.getWidth) {
-            val px = raster.getSampleDouble(x, y, 0)
-
-            if (RasterMapOp.isNotNodata(px, nodata)) {
-              val src = result.getSampleDouble(x, y, 0)
-              if (RasterMapOp.isNodata(src, Float.NaN)) {
-                result.setSample(x, y, 0, px)
-              }
-              else {
-                result.setSample(x, y, 0, Math.max(src, px))
-              }
-            }
-            x += 1
-          }
-          y += 1
-        }
-      }
-
-      def mean(raster: Raster, result: WritableRaster, nodata: Double) = {
-        var y: Int = 0
-        while (y < raster.getHeight) {
-          var x: Int = 0
-          while (x < raster.getWidth) {
-            val px = raster.getSampleDouble(x, y, 0)
-
-            if (RasterMapOp.isNotNodata(px, nodata)) {
-              val src = result.getSampleDouble(x, y, 0)
-              val cnt = result.getSampleDouble(x, y, 1)
-              if (RasterMapOp.isNodata(src, Float.NaN)) {
-                result.setSample(x, y, 0, px)
-                result.setSample(x, y, 1, 1)
-              }
-              else {
-                result.setSample(x, y, 0, src + px)
-                result.setSample(x, y, 1, cnt + 1)
-              }
-            }
-            x += 1
-          }
-          y += 1
-        }
-      }
-
-      def sum(raster: Raster, result: WritableRaster, nodata: Double) = {
-        var y: Int = 0
-        while (y < raster.getHeight) {
-          var x: Int = 0
-          while (x < raster.getWidth) {
-            val px = raster.getSampleDouble(x, y, 0)
-
-            if (RasterMapOp.isNotNodata(px, nodata)) {
-              val src = result.getSampleDouble(x, y, 0)
-              if (RasterMapOp.isNodata(src, Float.NaN)) {
-                result.setSample(x, y, 0, px)
-              }
-              else {
-                result.setSample(x, y, 0, src + px)
-              }
-            }
-            x += 1
-          }
-          y += 1
-        }
-      }
-
-      def mode(tiles: Array[Iterable[_]], result: WritableRaster, nodatas: Array[Double]) = {
-        val rasterbuilder = Array.newBuilder[Raster]
-        tiles.foreach(wr => {
-          if (wr != null && wr.nonEmpty) {
-            rasterbuilder += RasterWritable.toRaster(wr.asInstanceOf[Seq[RasterWritable]].head)
-          }
-          else {
-            rasterbuilder += null
-          }
-        })
-
-        val rasters = rasterbuilder.result()
-
-        val valuebuilder = Array.newBuilder[Double]
-        valuebuilder.sizeHint(rasters.length)
-        var y: Int = 0
-        while (y < result.getHeight) {
-          var x: Int = 0
-          while (x < result.getWidth) {
-            valuebuilder.clear
-
-            var ndx: Int = 0
-            while (ndx < rasters.length) {
-              if (rasters(ndx) != null) {
-                val px = rasters(ndx).getSampleDouble(x, y, 0)
-                if (RasterMapOp.isNotNodata(px, nodatas(ndx))) {
-                  valuebuilder += px
-                }
-              }
-              ndx += 1
-            }
-
-            val values = valuebuilder.result
-            if (values.length > 0) {
-              Sorting.quickSort(values)
-
-              var mode = values(1)
-              var modecount = 1
-
-              var curval = mode
-              var curcount = modecount
-
-              var i: Int = 1
-              while (i < values.length) {
-                if (values(i) > (curval - epsilon) && values(i) < (curval + epsilon)) {
-                  curcount += 1
-                }
-                else {
-                  if (curcount > modecount) {
-                    mode = curval
-                    modecount = curcount
-                  }
-                  curval = values(i)
-                  curcount = 1
-                }
-                i += 1
-              }
-              if (curcount > modecount) {
-                mode = curval
-              }
+    // tag each tile with the index of its input so we can find the correct nodata value
+    val tagged = context.union(pyramids.zipWithIndex.map(pyramid => {
+      val ndx = pyramid._2
+      pyramid._1.map(tile => (tile._1, (ndx, tile._2)))
+    }))
 
-              result.setSample(x, y, 0, mode)
-            }
-            x += 1
-          }
-          y += 1
-        }
-      }
+    val zero = StatisticsAccumulator(method, tilesize, tilesize)
 
-      def median(tiles: Array[Iterable[_]], result: WritableRaster, nodatas: Array[Double]) = {
-        val rasterbuilder = Array.newBuilder[Raster]
-        tiles.foreach(wr => {
-          if (wr != null && wr.nonEmpty) {
-            rasterbuilder += RasterWritable.toRaster(wr.asInstanceOf[Seq[RasterWritable]].head)
-          }
-          else {
-            rasterbuilder += null
-          }
-        })
-
-        val rasters = rasterbuilder.result()
-
-        val valuebuilder = Array.newBuilder[Double]
-        valuebuilder.sizeHint(rasters.length)
-        var y: Int = 0
-        while (y < result.getHeight) {
-          var x: Int = 0
-          while (x < result.getWidth) {
-            valuebuilder.clear
-
-            var ndx: Int = 0
-            while (ndx < rasters.length) {
-              if (rasters(ndx) != null) {
-                val px = rasters(ndx).getSampleDouble(x, y, 0)
-                if (RasterMapOp.isNotNodata(px, nodatas(ndx))) {
-                  valuebuilder += px
-                }
-              }
-              ndx += 1
-            }
-
-            val values = valuebuilder.result
-            if (values.length > 0) {
-              result.setSample(x, y, 0, values.length / 2)
-            }
-            x += 1
-          }
-          y += 1
-        }
-      }
-
-      def stddev(tiles: Array[Iterable[_]], result: WritableRaster, nodatas: Array[Double]) = {
-        val rasterbuilder = Array.newBuilder[Raster]
-        tiles.foreach(wr => {
-          if (wr != null && wr.nonEmpty) {
-            rasterbuilder += RasterWritable.toRaster(wr.asInstanceOf[Seq[RasterWritable]].head)
-          }
-          else {
-            rasterbuilder += null
-          }
-        })
-
-        val rasters = rasterbuilder.result()
-
-        var y: Int = 0
-        while (y < result.getHeight) {
-          var x: Int = 0
-          while (x < result.getWidth) {
-
-            var sum1:Double = 0
-            var sum2:Double = 0
-
-            var cnt = 0
-            var ndx: Int = 0
-            while (ndx < rasters.length) {
-              if (rasters(ndx) != null) {
-                val px = rasters(ndx).getSampleDouble(x, y, 0)
-                if (RasterMapOp.isNotNodata(px, nodatas(ndx))) {
-                  sum1 += px
-                  sum2 += Math.pow(px, 2)
-                  cnt += 1
-                }
-              }
-              ndx += 1
-            }
-            val stddev = Math.sqrt(cnt * sum2 - Math.pow(sum1, 2)) / cnt
-            result.setSample(x, y, 0, stddev)
-            x += 1
-          }
-          y += 1
-        }
-      }
-
-      val bands = method match {
-      case StatisticsMapOp.Mean => 2
-      case _ => 1
-      }
-
-      val result = RasterUtils.createEmptyRaster(tilesize, tilesize, bands, DataBuffer.TYPE_FLOAT, Float.NaN)
-
-      var ndx: Int = 0
-      method match {
-      case StatisticsMapOp.Mode => mode(tile._2, result, nodatas)
-      case StatisticsMapOp.Median => median(tile._2, result, nodatas)
-      case StatisticsMapOp.StdDev => stddev(tile._2, result, nodatas)
-      case _ =>
-        tile._2.foreach(wr => {
-
-          val modebuilder = Array.newBuilder[Double]
-          if (wr != null && wr.nonEmpty) {
-            val raster = RasterWritable.toRaster(wr.asInstanceOf[Seq[RasterWritable]].head)
-
-            method match {
-            case StatisticsMapOp.Count => count(raster, result, nodatas(ndx))
-            case StatisticsMapOp.Max => max(raster, result, nodatas(ndx))
-            case StatisticsMapOp.Mean => mean(raster, result, nodatas(ndx))
-            case StatisticsMapOp.Min => min(raster, result, nodatas(ndx))
-            case StatisticsMapOp.Sum => sum(raster, result, nodatas(ndx))
-
-            }
-          }
-          ndx += 1
-        })
-      }
-
-      (tile._1, method match {
-      case StatisticsMapOp.Mean =>
-        val mean = RasterUtils.createEmptyRaster(tilesize, tilesize, 1, DataBuffer.TYPE_FLOAT, Float.NaN)
-        var y: Int = 0
-        while (y < result.getHeight) {
-          var x: Int = 0
-          while (x < result.getWidth) {
-            val total = result.getSampleDouble(x, y, 0)
-            if (RasterMapOp.isNotNodata(total, Float.NaN)) {
-              mean.setSample(x, y, 0, total / result.getSampleDouble(x, y, 1))
-            }
-            x += 1
-          }
-          y += 1
-        }
-        RasterWritable.toWritable(mean)
-      case _ => RasterWritable.toWritable(result)
-      })
+    // stream the tiles through per-tile accumulators rather than cogrouping all the inputs, this keeps
+    // the memory needed constant in the number of inputs
+    val accumulated = new PairRDDFunctions(tagged).aggregateByKey(zero, new HashPartitioner(maxpartitions))(
+      (accum, tile) => accum.add(RasterWritable.toRaster(tile._2), nodatas(tile._1)),
+      (a1, a2) => a1.merge(a2))
 
+    rasterRDD = Some(RasterRDD(accumulated.map(tile => {
+      (tile._1, RasterWritable.toWritable(tile._2.toRaster))
     })))
 
     metadata(SparkUtils.calculateMetadata(rasterRDD.get, zoom, Float.NaN,
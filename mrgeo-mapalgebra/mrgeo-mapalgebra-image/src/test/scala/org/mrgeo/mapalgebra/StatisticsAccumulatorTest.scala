@@ -0,0 +1,195 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package org.mrgeo.mapalgebra
+
+import java.awt.image.{DataBuffer, Raster}
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, ObjectInputStream, ObjectOutputStream}
+
+import com.esotericsoftware.kryo.Kryo
+import com.esotericsoftware.kryo.io.{Input, Output}
+import junit.framework.Assert
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import org.mrgeo.data.raster.RasterUtils
+import org.mrgeo.junit.UnitTest
+import org.objenesis.strategy.StdInstantiatorStrategy
+import org.scalatest.junit.AssertionsForJUnit
+
+class StatisticsAccumulatorTest extends AssertionsForJUnit
+{
+  val size = 4
+  val epsilon = 1e-6
+
+  private def constant(value:Double):Raster = {
+    RasterUtils.createEmptyRaster(size, size, 1, DataBuffer.TYPE_FLOAT, value)
+  }
+
+  // accumulate the values in 2 halves and merge them, the same way aggregateByKey would
+  private def run(method:String, values:Array[Double],
+      maxBins:Int = StatisticsAccumulator.MaxBins):Raster = {
+    val half = values.length / 2
+
+    val a1 = StatisticsAccumulator(method, size, size, maxBins)
+    values.take(half).foreach(v => a1.add(constant(v), -9999))
+
+    val a2 = StatisticsAccumulator(method, size, size, maxBins)
+    values.drop(half).foreach(v => a2.add(constant(v), -9999))
+
+    a1.merge(a2).toRaster
+  }
+
+  private def javaCopy(accum:StatisticsAccumulator):StatisticsAccumulator = {
+    val bytes = new ByteArrayOutputStream()
+    val out = new ObjectOutputStream(bytes)
+    out.writeObject(accum)
+    out.close()
+
+    new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray)).readObject().asInstanceOf[StatisticsAccumulator]
+  }
+
+  private def kryoCopy(accum:StatisticsAccumulator):StatisticsAccumulator = {
+    val kryo = new Kryo()
+    kryo.setInstantiatorStrategy(new StdInstantiatorStrategy)
+
+    val output = new Output(1024, -1)
+    kryo.writeObject(output, accum)
+
+    kryo.readObject(new Input(output.toBytes), classOf[StatisticsAccumulator])
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def count():Unit =
+  {
+    val r = run(StatisticsMapOp.Count, Array(1.0, -9999.0, 2.0, 100.0))
+    Assert.assertEquals(3.0, r.getSampleDouble(0, 0, 0), epsilon)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def minMaxSum():Unit =
+  {
+    val values = Array(5.0, 1.0, 2.0, 100.0)
+    Assert.assertEquals(1.0, run(StatisticsMapOp.Min, values).getSampleDouble(1, 1, 0), epsilon)
+    Assert.assertEquals(100.0, run(StatisticsMapOp.Max, values).getSampleDouble(1, 1, 0), epsilon)
+    Assert.assertEquals(108.0, run(StatisticsMapOp.Sum, values).getSampleDouble(1, 1, 0), epsilon)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def meanStdDev():Unit =
+  {
+    val values = Array(2.0, 4.0, 4.0, 4.0, 5.0, 5.0, 7.0, 9.0)
+    Assert.assertEquals(5.0, run(StatisticsMapOp.Mean, values).getSampleDouble(2, 3, 0), epsilon)
+    Assert.assertEquals(2.0, run(StatisticsMapOp.StdDev, values).getSampleDouble(2, 3, 0), epsilon)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def medianMode():Unit =
+  {
+    val values = Array(10.0, 20.0, 20.0, 100.0, 70.0)
+    Assert.assertEquals(20.0, run(StatisticsMapOp.Median, values).getSampleDouble(0, 0, 0), epsilon)
+    Assert.assertEquals(20.0, run(StatisticsMapOp.Mode, values).getSampleDouble(0, 0, 0), epsilon)
+
+    // the values in the data, not an approximation
+    Assert.assertEquals(2.0, run(StatisticsMapOp.Median, Array(1.0, 2.0, 100.0)).getSampleDouble(0, 0, 0), epsilon)
+    Assert.assertEquals(2.0, run(StatisticsMapOp.Mode, Array(1.0, 2.0, 2.0, 100.0)).getSampleDouble(0, 0, 0),
+      epsilon)
+    Assert.assertEquals(1.25, run(StatisticsMapOp.Mode, Array(1.5, 1.25, 0.1, 1.25)).getSampleDouble(0, 0, 0),
+      epsilon)
+
+    val ints = Array(3.0, 1.0, 3.0, 2.0)
+    Assert.assertEquals(2.5, run(StatisticsMapOp.Median, ints).getSampleDouble(0, 0, 0), epsilon)
+    Assert.assertEquals(3.0, run(StatisticsMapOp.Mode, ints).getSampleDouble(0, 0, 0), epsilon)
+
+    // ties go to the smallest value
+    Assert.assertEquals(1.0, run(StatisticsMapOp.Mode, Array(3.0, 1.0, 3.0, 1.0)).getSampleDouble(0, 0, 0), epsilon)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def medianWideRange():Unit =
+  {
+    // 0..1000, many more distinct values than bins, so the median is approximate
+    val values = (0 to 1000).map(_.toDouble).toArray
+    Assert.assertEquals(500.0, run(StatisticsMapOp.Median, values).getSampleDouble(3, 3, 0), 1000.0 / 32)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def categoricalExact():Unit =
+  {
+    // many inputs, but only 13 classes, which fit in 20 bins
+    val values = (0 to 400).map(v => (v % 13).toDouble).toArray ++ Array(5.0, 5.0)
+    val sorted = values.sorted
+
+    val median = run(StatisticsMapOp.Median, values, maxBins = 20)
+    val mode = run(StatisticsMapOp.Mode, values, maxBins = 20)
+
+    Assert.assertEquals(sorted(sorted.length / 2), median.getSampleDouble(1, 2, 0), epsilon)
+    Assert.assertEquals(5.0, mode.getSampleDouble(1, 2, 0), epsilon)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def constantSize():Unit =
+  {
+    def serializedSize(inputs:Int):Int = {
+      val accum = StatisticsAccumulator(StatisticsMapOp.Median, size, size, 20)
+      (0 until inputs).foreach(v => accum.add(constant(v * 0.1), -9999))
+
+      val kryo = new Kryo()
+      val output = new Output(1024, -1)
+      kryo.writeObject(output, accum)
+      output.total().toInt
+    }
+
+    // once every bin is used, more (distinct) inputs don't make it bigger
+    Assert.assertEquals(serializedSize(20), serializedSize(365))
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def serialize():Unit =
+  {
+    val values = (0 to 40).map(v => (v % 13).toDouble).toArray ++ Array(5.0, 5.0)
+
+    val median = StatisticsAccumulator(StatisticsMapOp.Median, size, size, 20)
+    values.foreach(v => median.add(constant(v), -9999))
+
+    Assert.assertEquals(5.0, javaCopy(median).toRaster.getSampleDouble(0, 0, 0), epsilon)
+    Assert.assertEquals(5.0, kryoCopy(median).toRaster.getSampleDouble(0, 0, 0), epsilon)
+
+    val stddev = StatisticsAccumulator(StatisticsMapOp.StdDev, size, size)
+    Array(2.0, 4.0, 4.0, 4.0, 5.0, 5.0, 7.0, 9.0).foreach(v => stddev.add(constant(v), -9999))
+    Assert.assertEquals(2.0, javaCopy(stddev).toRaster.getSampleDouble(1, 0, 0), epsilon)
+    Assert.assertEquals(2.0, kryoCopy(stddev).toRaster.getSampleDouble(1, 0, 0), epsilon)
+
+    // the (empty) zero value
+    Assert.assertTrue(kryoCopy(StatisticsAccumulator(StatisticsMapOp.Mode, size, size)).toRaster
+        .getSampleDouble(0, 0, 0).isNaN)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def noData():Unit =
+  {
+    val r = run(StatisticsMapOp.Mean, Array(-9999.0, -9999.0))
+    Assert.assertTrue(r.getSampleDouble(0, 0, 0).isNaN)
+  }
+}
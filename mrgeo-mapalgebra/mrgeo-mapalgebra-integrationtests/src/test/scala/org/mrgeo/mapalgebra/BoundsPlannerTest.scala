@@ -0,0 +1,189 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+
+package org.mrgeo.mapalgebra
+
+import junit.framework.Assert
+import org.apache.spark.{SparkConf, SparkContext}
+import org.junit.experimental.categories.Category
+import org.junit.{Before, Test}
+import org.mrgeo.data.image.MrsImageDataProvider
+import org.mrgeo.data.rdd.RasterRDD
+import org.mrgeo.job.JobArguments
+import org.mrgeo.junit.UnitTest
+import org.mrgeo.mapalgebra.binarymath.BinaryMinusMapOp
+import org.mrgeo.mapalgebra.parser.{ParserConstantNode, ParserFunctionNode, ParserNode, ParserVariableNode}
+import org.mrgeo.mapalgebra.raster.{MrsPyramidMapOp, RasterMapOp}
+import org.mrgeo.utils.tms.Bounds
+import org.scalatest.junit.AssertionsForJUnit
+
+import scala.collection.mutable
+
+class BoundsPlannerTest extends AssertionsForJUnit
+{
+  // a map op the planner knows nothing about
+  class UnknownMapOp extends RasterMapOp
+  {
+    override def rdd():Option[RasterRDD] = None
+    override def setup(job:JobArguments, conf:SparkConf):Boolean = true
+    override def execute(context:SparkContext):Boolean = true
+    override def teardown(job:JobArguments, conf:SparkConf):Boolean = true
+  }
+
+  private val cropBounds = new Bounds(10, 10, 20, 20)
+  private val variables = mutable.Map.empty[String, ParserNode]
+
+  private var a:MrsPyramidMapOp = null
+  private var b:MrsPyramidMapOp = null
+
+  @Before
+  def setup():Unit =
+  {
+    variables.clear()
+    a = MrsPyramidMapOp(null:MrsImageDataProvider)
+    b = MrsPyramidMapOp(null:MrsImageDataProvider)
+  }
+
+  private def function(name:String, mapop:MapOp, children:ParserNode*):ParserFunctionNode =
+  {
+    val fn = new ParserFunctionNode
+    fn.setName(name)
+    fn.setMapOp(mapop)
+    children.foreach(fn.addChild)
+    fn
+  }
+
+  private def pyramid(mapop:MrsPyramidMapOp):ParserFunctionNode = function("pyramid", mapop)
+
+  private def constant(value:Double):ParserConstantNode =
+  {
+    val cn = new ParserConstantNode
+    cn.setValue(java.lang.Double.valueOf(value))
+    cn.setName(value.toString)
+    cn
+  }
+
+  private def raster(node:ParserFunctionNode):RasterMapOp = node.getMapOp.asInstanceOf[RasterMapOp]
+
+  private def crop(input:ParserFunctionNode, bounds:Bounds = cropBounds):ParserFunctionNode =
+  {
+    function("crop", CropMapOp.create(raster(input), bounds.w, bounds.s, bounds.e, bounds.n), input,
+      constant(bounds.w), constant(bounds.s), constant(bounds.e), constant(bounds.n))
+  }
+
+  private def plan(nodes:ParserNode*):Unit =
+  {
+    val saved = nodes.last match {
+    case fn:ParserFunctionNode => Option(fn.getMapOp)
+    case _ => None
+    }
+    new BoundsPlanner(variables.get).plan(nodes.toArray, saved)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def cropLimitsInput():Unit =
+  {
+    plan(crop(pyramid(a)))
+
+    Assert.assertEquals(Some(cropBounds), a.getBounds)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def cropThroughBinaryMath():Unit =
+  {
+    // crop([a] - [b])
+    val pa = pyramid(a)
+    val pb = pyramid(b)
+    plan(crop(function("-", BinaryMinusMapOp.create(raster(pa), raster(pb)), pa, pb)))
+
+    Assert.assertEquals(Some(cropBounds), a.getBounds)
+    Assert.assertEquals(Some(cropBounds), b.getBounds)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def cropThroughCon():Unit =
+  {
+    // crop(con([a], [b], 1))
+    val pa = pyramid(a)
+    val pb = pyramid(b)
+    plan(crop(function("con", ConMapOp.create(raster(pa), raster(pb), 1.0), pa, pb, constant(1))))
+
+    Assert.assertEquals(Some(cropBounds), a.getBounds)
+    Assert.assertEquals(Some(cropBounds), b.getBounds)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def unionOfReaders():Unit =
+  {
+    // x = crop([a], ...); y = crop([a], ...); x - y
+    val other = new Bounds(30, 30, 40, 40)
+    val x = crop(pyramid(a))
+    val y = crop(pyramid(a), other)
+    variables.put("x", x)
+    variables.put("y", y)
+
+    val vx = new ParserVariableNode
+    vx.setName("x")
+    val vy = new ParserVariableNode
+    vy.setName("y")
+
+    plan(function("=", null, vx, x), function("=", null, vy, y),
+      function("-", BinaryMinusMapOp.create(raster(x), raster(y)), vx, vy))
+
+    Assert.assertEquals(Some(cropBounds.union(other)), a.getBounds)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def costDistanceReadsEverything():Unit =
+  {
+    // crop(costdistance([a]))
+    val pa = pyramid(a)
+    plan(crop(function("costdistance", CostDistanceMapOp.create(raster(pa), 1000, 10, Array(15.0, 15.0)), pa)))
+
+    Assert.assertEquals(None, a.getBounds)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def exportReadsEverything():Unit =
+  {
+    // export(crop([a])), and [a] read again, uncropped, by export
+    val pa = pyramid(a)
+    val cropped = crop(pa)
+    plan(function("export", ExportMapOp.create(raster(cropped), "out"), cropped))
+    Assert.assertEquals(Some(cropBounds), a.getBounds)
+
+    val pb = pyramid(b)
+    plan(function("export", ExportMapOp.create(raster(pb), "out"), pb), crop(pyramid(b)))
+    Assert.assertEquals(None, b.getBounds)
+  }
+
+  @Test
+  @Category(Array[Class[_]] { classOf[UnitTest] })
+  def unknownReadsEverything():Unit =
+  {
+    // crop(unknown([a]))
+    plan(crop(function("unknown", new UnknownMapOp, pyramid(a))))
+
+    Assert.assertEquals(None, a.getBounds)
+  }
+}
@@ -28,8 +28,8 @@ import org.mrgeo.geometry.GeometryFactory
 import org.mrgeo.job.JobArguments
 import org.mrgeo.mapalgebra.parser.{ParserException, ParserNode}
 import org.mrgeo.mapalgebra.raster.RasterMapOp
-import org.mrgeo.mapalgebra.vector.VectorMapOp
-import org.mrgeo.mapalgebra.vector.paint.VectorPainter
+import org.mrgeo.mapalgebra.vector.{VectorDataMapOp, VectorMapOp}
+import org.mrgeo.mapalgebra.vector.paint.{TileRasterizer, VectorPainter}
 import org.mrgeo.utils.tms.{Bounds, TMSUtils}
 import org.mrgeo.utils.{LatLng, StringUtils, SparkUtils}
 
@@ -50,8 +50,8 @@ abstract class AbstractRasterizeVectorMapOp extends RasterMapOp with Externaliza
   }
 
   override def registerClasses(): Array[Class[_]] = {
-    // get all the Geometry classes from the GeometryFactory
-    GeometryFactory.getClasses
+    // get all the Geometry classes from the GeometryFactory, and the partial tiles that get shuffled
+    GeometryFactory.getClasses ++ Array[Class[_]](classOf[TileRasterizer])
   }
 
 
@@ -95,12 +95,16 @@ abstract class AbstractRasterizeVectorMapOp extends RasterMapOp with Externaliza
   }
 
   override def execute(context: SparkContext): Boolean = {
-    val vectorRDD: VectorRDD = vectorMapOp.getOrElse(throw new IOException("Missing vector input")).
-      rdd().getOrElse(throw new IOException("Missing vector RDD"))
     if (rasterForBoundsMapOp.isDefined) {
       bounds = Some(rasterForBoundsMapOp.get.metadata().getOrElse(
         throw new IOException("Unable to get metadata for the bounds raster")).getBounds)
     }
+    // only the geometry and the value column are used, and only within the bounds, so when reading
+    // the vectors directly, let the provider skip everything else
+    val vectorRDD: VectorRDD = (vectorMapOp.getOrElse(throw new IOException("Missing vector input")) match {
+    case vdmo: VectorDataMapOp => vdmo.rdd(bounds.orNull, column.toSet)
+    case vmo => vmo.rdd()
+    }).getOrElse(throw new IOException("Missing vector RDD"))
     val result = rasterize(vectorRDD)
     rasterRDD = Some(RasterRDD(result))
     val noData = Double.NaN
@@ -110,13 +114,12 @@ abstract class AbstractRasterizeVectorMapOp extends RasterMapOp with Externaliza
   }
 
   /**
-    * The input RDD contains one tuple for each tile that intersects at least one
-    * feature. The first element of the tuple is the tile id, and the second element
-    * is an Iterable containing all of the features that intersects that tile id. This
-    * method is responsible for "painting" the set of features onto a raster of that
-    * tile and returning the tile id and raster as a tuple. The returned RDD is the
-    * collection of all the tiles containing features along with the "painted" rasters
-    * for each of those tiles.
+    * This method is responsible for "painting" the features onto rasters of the tiles
+    * they intersect, and returning the tile id and raster as a tuple. The returned RDD
+    * is the collection of all the tiles containing features along with the "painted"
+    * rasters for each of those tiles. Implementations should avoid collecting all the
+    * features for a tile in memory (e.g. groupByKey); either look the features up
+    * per tile (see SpatialVectorRDD.tiles) or paint partial tiles and merge them.
     *
     */
   def rasterize(vectorRDD: VectorRDD): RDD[(TileIdWritable, RasterWritable)]
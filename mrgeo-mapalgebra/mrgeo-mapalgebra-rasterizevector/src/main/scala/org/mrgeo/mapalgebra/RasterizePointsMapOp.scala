@@ -16,19 +16,18 @@
 
 package org.mrgeo.mapalgebra
 
-import java.awt.image.{DataBuffer, WritableRaster}
 import java.io.Externalizable
 
 import org.apache.spark.rdd.{PairRDDFunctions, RDD}
-import org.mrgeo.data.raster.{RasterUtils, RasterWritable}
+import org.mrgeo.data.raster.RasterWritable
 import org.mrgeo.data.rdd.VectorRDD
 import org.mrgeo.data.tile.TileIdWritable
 import org.mrgeo.geometry.Point
 import org.mrgeo.mapalgebra.parser.ParserNode
 import org.mrgeo.mapalgebra.raster.RasterMapOp
 import org.mrgeo.mapalgebra.vector.VectorMapOp
-import org.mrgeo.mapalgebra.vector.paint.VectorPainter
-import org.mrgeo.utils.tms.{Pixel, TMSUtils}
+import org.mrgeo.mapalgebra.vector.paint.{TileRasterizer, VectorPainter}
+import org.mrgeo.utils.tms.TMSUtils
 
 
 object RasterizePointsMapOp extends MapOpRegistrar {
@@ -53,8 +52,8 @@ object RasterizePointsMapOp extends MapOpRegistrar {
   *  - each point intersects exactly one tile, so we can use a "map" operation on
   *    the vector RDD rather than flatMap
   *  - we can easily compute which pixel in a tile corresponds to any lat/lon coordinate
-  *    on the planet, so there is no need to use the overhead of the VectorPainter - we
-  *    can just set the pixel value directly in the output raster
+  *    on the planet, so there is no need to scan convert geometries - we can just
+  *    paint the pixel directly, and combine the partial tiles map-side
   */
 class RasterizePointsMapOp extends AbstractRasterizeVectorMapOp with Externalizable
 {
@@ -79,51 +78,46 @@ class RasterizePointsMapOp extends AbstractRasterizeVectorMapOp with Externaliza
 
   override def rasterize(vectorRDD: VectorRDD): RDD[(TileIdWritable, RasterWritable)] =
   {
-    val tiledVectors = vectorsToTiledRDD(vectorRDD)
-    val localRdd = new PairRDDFunctions(tiledVectors)
-    val groupedGeometries = localRdd.groupByKey()
-    rasterize(groupedGeometries)
+    rasterize(vectorsToTiledRDD(vectorRDD))
   }
 
-  def rasterize(groupedGeometries: RDD[(TileIdWritable,
-    Iterable[(Double, Double, Double, Boolean)])]): RDD[(TileIdWritable, RasterWritable)] =
+  /**
+    * Each point only touches a single pixel, so the points are painted with a pure map-side
+    * combine into partial tiles, and only the partial tiles are shuffled and merged.
+    */
+  def rasterize(tiledPoints: RDD[(TileIdWritable, (Int, Int, Double))]): RDD[(TileIdWritable, RasterWritable)] =
   {
-    val result = groupedGeometries.map(U => {
-      val tileId = U._1
-      val raster = RasterUtils.createEmptyRaster(tilesize, tilesize, 1, DataBuffer.TYPE_DOUBLE, Double.NaN)
-      val countRaster = if (aggregationType == VectorPainter.AggregationType.AVERAGE) {
-        RasterUtils.createEmptyRaster(tilesize, tilesize, 1, DataBuffer.TYPE_DOUBLE, 0.0)
-      }
-      else {
-        null
-      }
-      for (geomEntry <- U._2) {
-        val tile = TMSUtils.tileid(tileId.get(), zoom)
-        val pixel = TMSUtils.latLonToTilePixelUL(geomEntry._1, geomEntry._2,
-          tile.tx, tile.ty, zoom, tilesize)
-        updateRaster(raster, countRaster, pixel, geomEntry._1, geomEntry._2, geomEntry._3, geomEntry._4)
-      }
-      if (aggregationType == VectorPainter.AggregationType.AVERAGE) {
-        var x: Int = 0
-        while (x < raster.getWidth) {
-          var y: Int = 0
-          while (y < raster.getHeight) {
-            val v = raster.getSampleDouble(x, y, 0)
-            if (!v.isNaN) {
-              val c = countRaster.getSampleDouble(x, y, 0)
-              raster.setSample(x, y, 0, v / c)
-            }
-            y += 1
-          }
-          x += 1
-        }
-      }
-      (tileId, RasterWritable.toWritable(raster))
-    })
-    result
+    val tilesize = this.tilesize
+    val aggregationType = this.aggregationType
+
+    val partials = new PairRDDFunctions(tiledPoints).combineByKey(
+      (pt: (Int, Int, Double)) => {
+        val rasterizer = new TileRasterizer(tilesize, tilesize, aggregationType, TileRasterizer.Coverage.CENTER)
+        rasterizer.paintPixel(pt._1, pt._2, pt._3)
+        rasterizer
+      },
+      (rasterizer: TileRasterizer, pt: (Int, Int, Double)) => {
+        rasterizer.paintPixel(pt._1, pt._2, pt._3)
+        rasterizer
+      },
+      (r1: TileRasterizer, r2: TileRasterizer) => {
+        r1.merge(r2)
+        r1
+      })
+
+    partials.map(U => (U._1, RasterWritable.toWritable(U._2.toRaster)))
   }
 
-  def vectorsToTiledRDD(vectorRDD: VectorRDD): RDD[(TileIdWritable, (Double, Double, Double, Boolean))] = {
+  /**
+    * Map each point to its tile and the pixel within that tile, along with the value to paint.
+    * Points whose value can't be aggregated (NaN) are dropped here, before the shuffle.
+    */
+  def vectorsToTiledRDD(vectorRDD: VectorRDD): RDD[(TileIdWritable, (Int, Int, Double))] = {
+    val zoom = this.zoom
+    val tilesize = this.tilesize
+    val aggregationType = this.aggregationType
+    val column = this.column
+
     val filtered = if (bounds.nonEmpty) {
       val filterBounds = bounds.get
       vectorRDD.filter(U => {
@@ -139,91 +133,32 @@ class RasterizePointsMapOp extends AbstractRasterizeVectorMapOp with Externaliza
       vectorRDD
     }
 
-    filtered.map(U => {
+    filtered.flatMap(U => {
       U._2 match {
       case pt: Point =>
-        val tile = TMSUtils.latLonToTile(pt.getY, pt.getX, zoom, tilesize)
-        (new TileIdWritable(TMSUtils.tileid(tile.tx, tile.ty, zoom)),
-            (pt.getY, pt.getX,
-                if (column.isEmpty) {
-                  0.0
-                }
-                else {
-                  pt.getAttribute(column.get).toDouble
-                },
-                column.isDefined))
-      case _ =>
-        throw new IllegalArgumentException(
-          "Cannot use RasterizePoints map algebra for non-point geometry: " +
-              U._2.getClass.getName)
-      }
-    })
-  }
-
-  private def updateRaster(raster: WritableRaster, countRaster: WritableRaster,
-                           pixel: Pixel, latitude: Double,
-                          longitude: Double, columnValue: Double,
-                          validColumnValue: Boolean): Unit = {
-    aggregationType match {
-      case VectorPainter.AggregationType.AVERAGE =>
-        if (!columnValue.isNaN) {
-          val c = countRaster.getSampleDouble(pixel.px.toInt, pixel.py.toInt, 0) + 1
-          countRaster.setSample(pixel.px.toInt, pixel.py.toInt, 0, c)
-          var v = raster.getSampleDouble(pixel.px.toInt, pixel.py.toInt, 0)
-          if (v.isNaN) {
-            v = 0.0
-          }
-          v = v + columnValue
-          raster.setSample(pixel.px.toInt, pixel.py.toInt, 0, v)
-        }
-
-      case VectorPainter.AggregationType.MASK =>
-        raster.setSample(pixel.px.toInt, pixel.py.toInt, 0, 0.0)
-
-      case VectorPainter.AggregationType.MAX =>
-        if (!columnValue.isNaN) {
-          var v = raster.getSampleDouble(pixel.px.toInt, pixel.py.toInt, 0)
-          if (v.isNaN) {
-            v = columnValue
-          }
-          else {
-            v = Math.max(v, columnValue)
-          }
-          raster.setSample(pixel.px.toInt, pixel.py.toInt, 0, v)
-        }
-
-      case VectorPainter.AggregationType.MIN =>
-        if (!columnValue.isNaN) {
-          var v = raster.getSampleDouble(pixel.px.toInt, pixel.py.toInt, 0)
-          if (v.isNaN) {
-            v = columnValue
-          }
-          else {
-            v = Math.min(v, columnValue)
-          }
-          raster.setSample(pixel.px.toInt, pixel.py.toInt, 0, v)
-        }
-
-      case VectorPainter.AggregationType.SUM =>
         // For SUM, if the user provided a numeric field, sum the values
         // of of that field across all features. Otherwise, just sum the
         // number of points that map to the pixel.
-        val colVal = if (validColumnValue) {
-          columnValue
-        } else {
-          1.0
+        val value = column match {
+        case Some(c) => pt.getAttribute(c).toDouble
+        case None => 1.0
+        }
+
+        if (value.isNaN && aggregationType != VectorPainter.AggregationType.MASK) {
+          None
         }
-        if (!colVal.isNaN) {
-          var v = raster.getSampleDouble(pixel.px.toInt, pixel.py.toInt, 0)
-          if (v.isNaN) {
-            v = colVal
-          }
-          else {
-            v = v + colVal
-          }
-          raster.setSample(pixel.px.toInt, pixel.py.toInt, 0, v)
+        else {
+          val tile = TMSUtils.latLonToTile(pt.getY, pt.getX, zoom, tilesize)
+          val pixel = TMSUtils.latLonToTilePixelUL(pt.getY, pt.getX, tile.tx, tile.ty, zoom, tilesize)
+
+          Some((new TileIdWritable(TMSUtils.tileid(tile.tx, tile.ty, zoom)),
+              (pixel.px.toInt, pixel.py.toInt, value)))
         }
       case _ =>
-    }
+        throw new IllegalArgumentException(
+          "Cannot use RasterizePoints map algebra for non-point geometry: " +
+              U._2.getClass.getName)
+      }
+    })
   }
 }
@@ -16,23 +16,17 @@
 
 package org.mrgeo.mapalgebra
 
-import java.io.{ByteArrayOutputStream, DataOutputStream, Externalizable}
+import java.io.Externalizable
 
-import com.vividsolutions.jts.geom.Envelope
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings
-import org.apache.spark.AccumulatorParam
-import org.apache.spark.rdd.{PairRDDFunctions, RDD}
+import org.apache.spark.rdd.RDD
 import org.mrgeo.data.raster.RasterWritable
-import org.mrgeo.data.rdd.VectorRDD
+import org.mrgeo.data.rdd.{SpatialVectorRDD, VectorRDD}
 import org.mrgeo.data.tile.TileIdWritable
-import org.mrgeo.geometry.{Geometry, GeometryFactory}
 import org.mrgeo.mapalgebra.parser.ParserNode
 import org.mrgeo.mapalgebra.raster.RasterMapOp
 import org.mrgeo.mapalgebra.vector.VectorMapOp
-import org.mrgeo.mapalgebra.vector.paint.VectorPainter
-import org.mrgeo.utils.tms.{Bounds, TMSUtils, TileBounds}
-
-import scala.collection.mutable.ListBuffer
+import org.mrgeo.mapalgebra.vector.paint.{TileRasterizer, VectorPainter}
+import org.mrgeo.utils.tms.TMSUtils
 
 object RasterizeVectorMapOp extends MapOpRegistrar {
   override def register: Array[String] = {
@@ -72,131 +66,48 @@ class RasterizeVectorMapOp extends AbstractRasterizeVectorMapOp with Externaliza
     initialize(node, variables)
   }
 
-  override def registerClasses(): Array[Class[_]] = {
-    GeometryFactory.getClasses
-  }
-
   override def rasterize(vectorRDD: VectorRDD): RDD[(TileIdWritable, RasterWritable)] =
   {
-    val tiledVectors = vectorsToTiledRDD(vectorRDD)
-    val localRdd = new PairRDDFunctions(tiledVectors)
-    val groupedGeometries = localRdd.groupByKey()
-    rasterize(groupedGeometries)
-  }
+    val spatial = vectorRDD match {
+    case svr: SpatialVectorRDD if svr.zoom == zoom && svr.tilesize == tilesize => svr
+    case _ => SpatialVectorRDD(vectorRDD, zoom, tilesize, vectorRDD.partitions.length)
+    }
 
-  def rasterize(groupedGeometries: RDD[(TileIdWritable, Iterable[Geometry])]): RDD[(TileIdWritable, RasterWritable)] = {
-    val result = groupedGeometries.map(U => {
-      val tileId = U._1
-      val rvp = new VectorPainter(zoom,
-        aggregationType,
-        column match {
-        case Some(c) => c
-        case None => null
-        },
-        tilesize)
-      rvp.beforePaintingTile(tileId.get)
-      for (geom <- U._2) {
-        rvp.paintGeometry(geom)
-      }
-      val raster = rvp.afterPaintingTile()
-      (tileId, raster)
-    })
-    result
+    rasterize(spatial)
   }
 
   /**
-    * This method iterates through each of the features in the vectorRDD input and
-    * returns a new RDD of TileIdWritable and Geometry tuples. The idea is that for
-    * each feature, it identifies which tiles that feature intersects and then adds
-    * a tuple to the resulting RDD for each of this tiles paired with that feature.
-    * For example, if a feature intersects 5 tiles, then it adds 5 records for that
-    * feature to the returned RDD.
+    * Paint each tile from the features the partition's R-tree finds for it.  The features are spatially
+    * partitioned, so every tile is painted by a single partition, one tile at a time, and only the
+    * features are shuffled, never the (partial) tiles.
     */
-  def vectorsToTiledRDD(vectorRDD: VectorRDD): RDD[(TileIdWritable, Geometry)] = {
-    val sizeAccumulator = vectorRDD.context.accumulator(0)(MaxSizeAccumulator)
-    val tiledVectors = vectorRDD.flatMap(U => {
-      val geom = U._2
-      var result = new ListBuffer[(TileIdWritable, Geometry)]
-      // For each geometry, compute the tile(s) that it intersects and output the
-      // the geometry to each of those tiles.
-      val envelope: Envelope = calculateEnvelope(geom)
-      val baos = new ByteArrayOutputStream(1024)
-      val dos = new DataOutputStream(baos)
-      try {
-        geom.write(dos)
-        sizeAccumulator.add(baos.size())
-      }
-      finally {
-        dos.close()
-      }
-      val b: Bounds = new Bounds(envelope.getMinX, envelope.getMinY, envelope.getMaxX, envelope.getMaxY)
-
-      bounds match {
-      case Some(filterBounds) =>
-        if (filterBounds.intersects(b)) {
-          val tiles: List[TileIdWritable] = getOverlappingTiles(zoom, tilesize, b)
-          for (tileId <- tiles) {
-            result += ((tileId, geom))
-          }
-        }
-      case None =>
-        val tiles: List[TileIdWritable] = getOverlappingTiles(zoom, tilesize, b)
-        for (tileId <- tiles) {
-          result += ((tileId, geom))
-        }
-      }
-      result
-    })
-    // An individual partition cannot serialize to more than Int.MaxValue bytes
-    // because Spark cannot to load the partition into memory, and it results in
-    // java.lang.IllegalArgumentException: Size exceeds Integer.MAX_VALUE
-    // To prevent that, we re-partition based on the maximum serialized size of
-    // the input geometries. This is not ideal because there will likely be a lot
-    // of partially filled partitions
-
-    // Need to materialize the RDD in order for the accumulator to compute the
-    // max geometry size.
-    val count = tiledVectors.count()
-    val maxSize = sizeAccumulator.value
-    log.info("Max geometry serialized size is " + maxSize)
-    // The divide by 2 is not scientific. It simply doubles the number of partitions
-    // which, during testing, significatnly improved performance.
-    val geomsPerPartition = Integer.MAX_VALUE / maxSize / 2
-    log.info("Can fit " + geomsPerPartition + " geometries in a partition")
-    val partitions = (count / geomsPerPartition).toInt + 1
-    log.info("Using " + partitions + " partitions for RasterizeVector")
-    tiledVectors.repartition(partitions)
-  }
+  def rasterize(spatial: SpatialVectorRDD): RDD[(TileIdWritable, RasterWritable)] = {
+    val zoom = this.zoom
+    val tilesize = this.tilesize
+    val aggregationType = this.aggregationType
+    val column = this.column
 
-  def calculateEnvelope(f: Geometry): Envelope = {
-    f.toJTS.getEnvelopeInternal
-  }
+    spatial.tiles(bounds.orNull).map(tile => {
+      val rasterizer = new TileRasterizer(tilesize, tilesize, aggregationType, TileRasterizer.Coverage.CENTER)
 
-  def getOverlappingTiles(zoom: Int, tileSize: Int, bounds: Bounds): List[TileIdWritable] = {
-    var tiles = new ListBuffer[TileIdWritable]
-    val tb: TileBounds = TMSUtils.boundsToTile(bounds, zoom, tileSize)
-    var tx: Long = tb.w
-    while (tx <= tb.e) {
-      var ty: Long = tb.s
-      while (ty <= tb.n) {
-        val tile: TileIdWritable = new TileIdWritable(TMSUtils.tileid(tx, ty, zoom))
-        tiles += tile
-        ty += 1
-      }
-      tx += 1
-    }
-    tiles.toList
-  }
+      val t = TMSUtils.tileid(tile._1, zoom)
+      rasterizer.setBounds(TMSUtils.tileBounds(t.tx, t.ty, zoom, tilesize))
 
-  @SuppressFBWarnings(value = Array("NM_FIELD_NAMING_CONVENTION"), justification = "Scala generated code")
-  object MaxSizeAccumulator extends AccumulatorParam[Int]
-  {
-    override def addInPlace(r1: Int, r2: Int): Int = {
-      Math.max(r1, r2)
-    }
+      tile._2.foreach(feature => {
+        val geom = feature._2
+        column match {
+        case Some(c) if aggregationType != VectorPainter.AggregationType.MASK =>
+          // features without the column are ignored
+          val sv = geom.getAttribute(c)
+          if (sv != null) {
+            rasterizer.paint(geom, sv.toDouble)
+          }
+        case _ =>
+          rasterizer.paint(geom, 1.0)
+        }
+      })
 
-    override def zero(initialValue: Int): Int = {
-      initialValue
-    }
+      (new TileIdWritable(tile._1), RasterWritable.toWritable(rasterizer.toRaster))
+    })
   }
 }
@@ -22,7 +22,7 @@ import java.io.{Externalizable, IOException, ObjectInput, ObjectOutput}
 import org.apache.spark.rdd.CoGroupedRDD
 import org.apache.spark.{HashPartitioner, SparkConf, SparkContext}
 import org.mrgeo.data.raster.{RasterUtils, RasterWritable}
-import org.mrgeo.data.rdd.RasterRDD
+import org.mrgeo.data.rdd.{PartitionPlanner, RasterRDD}
 import org.mrgeo.data.tile.TileIdWritable
 import org.mrgeo.job.JobArguments
 import org.mrgeo.mapalgebra.parser._
@@ -56,7 +56,7 @@ object ConMapOp extends MapOpRegistrar {
     new ConMapOp(node, variables)
 }
 
-class ConMapOp extends RasterMapOp with Externalizable {
+class ConMapOp extends RasterMapOp with InputBounds with Externalizable {
 
   private var rasterRDD:Option[RasterRDD] = None
 
@@ -215,20 +215,17 @@ class ConMapOp extends RasterMapOp with Externalizable {
 
     // gather all the RDDs and cogroup them
     val rddBuilder = mutable.ArrayBuilder.make[RasterRDD]
-    var maxpartitions = 0
     inputs.foreach(mapop => {
       rddBuilder += (mapop.rdd() match {
-      case Some(r) =>
-        if (r.partitions.length > maxpartitions) {
-          maxpartitions = r.partitions.length
-        }
-        r
+      case Some(r) => r
       case _ => throw new IOException("Can't load RDD! Ouch! " + mapop.getClass.getName)
       })
     })
 
     // cogroup needs a partitioner, so we'll give one here...
-    val groups = new CoGroupedRDD(rddBuilder.result(), new HashPartitioner(maxpartitions))
+    val partitions = PartitionPlanner.partitions(PartitionPlanner.tiles(meta, meta.getMaxZoomLevel),
+      PartitionPlanner.tileBytes(meta.getTilesize, meta.getBands, datatype), context)
+    val groups = new CoGroupedRDD(rddBuilder.result(), new HashPartitioner(partitions))
 
     // copy these here to avoid serializing the whole mapop
     nodatas = Array.fill[Double](isRdd.length)(Double.NaN)
@@ -40,7 +40,7 @@ object LogMapOp extends MapOpRegistrar {
     new LogMapOp(node, variables)
 }
 
-class LogMapOp extends RasterMapOp with Externalizable {
+class LogMapOp extends RasterMapOp with InputBounds with Externalizable {
 
   private var inputMapOp:Option[RasterMapOp] = None
   private var base:Option[Double] = None
@@ -22,17 +22,17 @@ import java.io.{Externalizable, IOException, ObjectInput, ObjectOutput}
 import org.apache.spark.rdd.PairRDDFunctions
 import org.apache.spark.{SparkConf, SparkContext}
 import org.mrgeo.data.raster.{RasterUtils, RasterWritable}
-import org.mrgeo.data.rdd.RasterRDD
+import org.mrgeo.data.rdd.{PartitionPlanner, RasterRDD}
 import org.mrgeo.data.tile.TileIdWritable
 import org.mrgeo.job.JobArguments
-import org.mrgeo.mapalgebra.MapOp
+import org.mrgeo.mapalgebra.{InputBounds, MapOp}
 import org.mrgeo.mapalgebra.parser._
 import org.mrgeo.mapalgebra.raster.RasterMapOp
 import org.mrgeo.utils.MrGeoImplicits._
 import org.mrgeo.utils.SparkUtils
 import org.mrgeo.utils.tms.Bounds
 
-abstract class RawBinaryMathMapOp extends RasterMapOp with Externalizable {
+abstract class RawBinaryMathMapOp extends RasterMapOp with InputBounds with Externalizable {
   var constA: Option[Double] = None
   var constB: Option[Double] = None
 
@@ -254,8 +254,14 @@ abstract class RawBinaryMathMapOp extends RasterMapOp with Externalizable {
     val convertr1 = r1.getSampleModel.getDataType != datatype
     //val convertr2 = r2.getSampleModel.getDataType != datatype || !(nodata1 sameElements nodata2)
 
-    // group the RDDs
-    val group = new PairRDDFunctions(rdd1).cogroup(rdd2)
+    // group the RDDs, only the tiles in both rasters make output tiles
+    val group = (raster1.metadata(), raster2.metadata()) match {
+    case (Some(meta1), Some(meta2)) =>
+      val tiles = PartitionPlanner.tiles(meta1, meta1.getMaxZoomLevel, meta2.getBounds)
+      new PairRDDFunctions(rdd1).cogroup(rdd2, PartitionPlanner.partitions(tiles,
+        PartitionPlanner.tileBytes(r1.getWidth, r1.getHeight, r1.getNumBands, datatype), context()))
+    case _ => new PairRDDFunctions(rdd1).cogroup(rdd2)
+    }
 
     val answer = RasterRDD(group.flatMap(tile => {
       val iter1 = tile._2._1
@@ -23,12 +23,13 @@ import org.apache.spark.{SparkConf, SparkContext}
 import org.mrgeo.data.raster.{RasterUtils, RasterWritable}
 import org.mrgeo.data.rdd.RasterRDD
 import org.mrgeo.job.JobArguments
+import org.mrgeo.mapalgebra.InputBounds
 import org.mrgeo.mapalgebra.parser._
 import org.mrgeo.mapalgebra.raster.RasterMapOp
 import org.mrgeo.utils.MrGeoImplicits._
 import org.mrgeo.utils.SparkUtils
 
-abstract class RawUnaryMathMapOp extends RasterMapOp with Externalizable {
+abstract class RawUnaryMathMapOp extends RasterMapOp with InputBounds with Externalizable {
   var input:Option[RasterMapOp] = None
   var rasterRDD:Option[RasterRDD] = None
 
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+
+package org.mrgeo.resources.metrics;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.mrgeo.services.metrics.ServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+
+/**
+ * Reports the request latencies, phase timings, concurrency and cache hit ratios of the map
+ * services (see {@link ServiceMetrics}) as JSON.  A DELETE starts the counts over, e.g. before
+ * a load test.
+ */
+@Path("/metrics")
+public class MetricsResource
+{
+private static final Logger log = LoggerFactory.getLogger(MetricsResource.class);
+
+@GET
+@Produces("application/json")
+public Response getMetrics()
+{
+  try
+  {
+    String json = new ObjectMapper().writeValueAsString(ServiceMetrics.getInstance().snapshot());
+    return Response.ok().entity(json).type("application/json").build();
+  }
+  catch (IOException e)
+  {
+    log.error("Unable to write the service metrics", e);
+    return Response.serverError().entity(e.getMessage()).build();
+  }
+}
+
+@DELETE
+public Response resetMetrics()
+{
+  ServiceMetrics.getInstance().reset();
+  return Response.noContent().build();
+}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+
+package org.mrgeo.services.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with fixed, roughly logarithmic, millisecond buckets.  The
+ * buckets are coarse, so the percentiles are estimates (the upper bound of the bucket the
+ * percentile falls in), but recording is cheap enough to do on every request.
+ */
+public class LatencyHistogram
+{
+// upper bounds (inclusive) of the buckets, in ms.  Anything longer goes in the last bucket.
+static final long[] BUCKETS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000};
+
+private final AtomicLongArray counts = new AtomicLongArray(BUCKETS.length + 1);
+private final AtomicLong count = new AtomicLong();
+private final AtomicLong totalNanos = new AtomicLong();
+private final AtomicLong maxNanos = new AtomicLong();
+
+public void record(long nanos)
+{
+  if (nanos < 0)
+  {
+    nanos = 0;
+  }
+
+  counts.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMillis(nanos)));
+  count.incrementAndGet();
+  totalNanos.addAndGet(nanos);
+
+  long max = maxNanos.get();
+  while (nanos > max && !maxNanos.compareAndSet(max, nanos))
+  {
+    max = maxNanos.get();
+  }
+}
+
+public long getCount()
+{
+  return count.get();
+}
+
+public double getMeanMillis()
+{
+  long c = count.get();
+  return c == 0 ? 0.0 : totalNanos.get() / 1e6 / c;
+}
+
+public double getMaxMillis()
+{
+  return maxNanos.get() / 1e6;
+}
+
+/**
+ * Estimates a percentile as the upper bound of the bucket it falls in.  For the open ended
+ * last bucket the maximum seen is returned instead.
+ *
+ * @param percentile 0 - 100
+ * @return the estimated latency in ms, 0 if nothing was recorded
+ */
+public double getPercentileMillis(double percentile)
+{
+  long[] snapshot = new long[counts.length()];
+  long total = 0;
+  for (int i = 0; i < snapshot.length; i++)
+  {
+    snapshot[i] = counts.get(i);
+    total += snapshot[i];
+  }
+
+  if (total == 0)
+  {
+    return 0.0;
+  }
+
+  long rank = (long) Math.ceil(total * Math.min(Math.max(percentile, 0.0), 100.0) / 100.0);
+  long seen = 0;
+  for (int i = 0; i < BUCKETS.length; i++)
+  {
+    seen += snapshot[i];
+    if (seen >= rank && seen > 0)
+    {
+      return Math.min(BUCKETS[i], getMaxMillis());
+    }
+  }
+
+  return getMaxMillis();
+}
+
+/**
+ * @return the summary statistics and the non-empty buckets, keyed by their upper bound
+ */
+public Map<String, Object> toMap()
+{
+  Map<String, Object> map = new LinkedHashMap<>();
+  map.put("count", getCount());
+  map.put("mean", getMeanMillis());
+  map.put("p50", getPercentileMillis(50));
+  map.put("p90", getPercentileMillis(90));
+  map.put("p99", getPercentileMillis(99));
+  map.put("max", getMaxMillis());
+
+  Map<String, Long> buckets = new LinkedHashMap<>();
+  for (int i = 0; i < counts.length(); i++)
+  {
+    long c = counts.get(i);
+    if (c > 0)
+    {
+      buckets.put(i < BUCKETS.length ? "<=" + BUCKETS[i] : ">" + BUCKETS[BUCKETS.length - 1], c);
+    }
+  }
+  map.put("buckets", buckets);
+
+  return map;
+}
+
+private static int bucket(long millis)
+{
+  for (int i = 0; i < BUCKETS.length; i++)
+  {
+    if (millis <= BUCKETS[i])
+    {
+      return i;
+    }
+  }
+  return BUCKETS.length;
+}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+
+package org.mrgeo.services.metrics;
+
+/**
+ * Times one request, and the phases within it, on the thread serving the request.  Started with
+ * {@link ServiceMetrics#start(String)}.
+ *
+ * The phases are recorded with the static {@link #mark()} and {@link #record}, which apply to
+ * whatever request the calling thread is serving, so the renderers and writers shared by all the
+ * services don't need a timer passed in.  Outside a timed request they do nothing.  A phase
+ * entered more than once in a request (e.g. several metadata lookups) is recorded as the total.
+ */
+public class RequestTimer
+{
+private static final ThreadLocal<RequestTimer> current = new ThreadLocal<>();
+
+private final ServiceMetrics metrics;
+private final ServiceMetrics.Endpoint endpoint;
+private final RequestTimer previous;
+private final long start;
+
+private final long[] phases = new long[ServiceMetrics.Phase.values().length];
+private final boolean[] seen = new boolean[phases.length];
+
+private boolean stopped = false;
+
+private RequestTimer(ServiceMetrics metrics, ServiceMetrics.Endpoint endpoint, RequestTimer previous)
+{
+  this.metrics = metrics;
+  this.endpoint = endpoint;
+  this.previous = previous;
+  this.start = System.nanoTime();
+}
+
+static RequestTimer start(ServiceMetrics metrics, ServiceMetrics.Endpoint endpoint)
+{
+  RequestTimer timer = new RequestTimer(metrics, endpoint, current.get());
+  endpoint.started();
+  current.set(timer);
+
+  return timer;
+}
+
+/**
+ * @return the start of a phase, to pass to {@link #record}
+ */
+public static long mark()
+{
+  return System.nanoTime();
+}
+
+/**
+ * Adds the time since the mark to the phase of the request being served by this thread.
+ */
+public static void record(ServiceMetrics.Phase phase, long mark)
+{
+  RequestTimer timer = current.get();
+  if (timer != null)
+  {
+    timer.phases[phase.ordinal()] += System.nanoTime() - mark;
+    timer.seen[phase.ordinal()] = true;
+  }
+}
+
+/**
+ * Records the request.  Stopping a timer more than once has no effect.
+ */
+public void stop()
+{
+  if (!stopped)
+  {
+    stopped = true;
+    metrics.finished(endpoint, System.nanoTime() - start, phases, seen);
+
+    if (previous == null)
+    {
+      current.remove();
+    }
+    else
+    {
+      current.set(previous);
+    }
+  }
+}
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+
+package org.mrgeo.services.metrics;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+import org.mrgeo.data.DataProviderFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request metrics for the map services (TMS, WMS, WCS), kept in memory for the life of the
+ * web application and reported by the /metrics resource.
+ *
+ * For every endpoint (e.g. "tms/tile", "wms/getmap") there is a latency histogram for the whole
+ * request, one per phase of the request the endpoint went through, and the number of requests
+ * in flight.  Caches are reported by their hit ratio, either from a registered guava cache (built
+ * with recordStats()) or from hits and misses counted by the caller.  The image data provider
+ * cache, which every tile and map request goes through, is always reported.
+ *
+ * Requests are timed with a {@link RequestTimer}:
+ * <pre>
+ *   RequestTimer timer = ServiceMetrics.getInstance().start("tms/tile");
+ *   try
+ *   {
+ *     ...
+ *     long mark = RequestTimer.mark();
+ *     raster = applier.applyColorScale(...);
+ *     RequestTimer.record(ServiceMetrics.Phase.COLOR_SCALE, mark);
+ *     ...
+ *   }
+ *   finally
+ *   {
+ *     timer.stop();
+ *   }
+ * </pre>
+ */
+public class ServiceMetrics
+{
+public enum Phase
+{
+  METADATA, TILE_READ, MERGE, REPROJECT, COLOR_SCALE, ENCODE;
+
+  public String label()
+  {
+    return name().toLowerCase();
+  }
+}
+
+private static final ServiceMetrics instance = new ServiceMetrics();
+
+private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+private final ConcurrentMap<String, Cache<?, ?>> caches = new ConcurrentHashMap<>();
+private final ConcurrentMap<String, AtomicLong[]> countedCaches = new ConcurrentHashMap<>();
+
+private final AtomicInteger active = new AtomicInteger();
+private final AtomicInteger peak = new AtomicInteger();
+private final long started = System.currentTimeMillis();
+
+public static ServiceMetrics getInstance()
+{
+  return instance;
+}
+
+/**
+ * Starts timing a request on the calling thread.  The returned timer must be stopped, in a
+ * finally block, by the same thread.
+ */
+public RequestTimer start(String endpoint)
+{
+  Endpoint e = endpoints.get(endpoint);
+  if (e == null)
+  {
+    Endpoint created = new Endpoint();
+    e = endpoints.putIfAbsent(endpoint, created);
+    if (e == null)
+    {
+      e = created;
+    }
+  }
+
+  updatePeak(peak, active.incrementAndGet());
+  return RequestTimer.start(this, e);
+}
+
+/**
+ * Reports a guava cache's stats.  The cache needs to be built with recordStats(), otherwise
+ * the counts will all be 0.  Registering another cache with the same name replaces it.
+ */
+public void registerCache(String name, Cache<?, ?> cache)
+{
+  caches.put(name, cache);
+}
+
+public void cacheHit(String name)
+{
+  counters(name)[0].incrementAndGet();
+}
+
+public void cacheMiss(String name)
+{
+  counters(name)[1].incrementAndGet();
+}
+
+public int getActiveRequests()
+{
+  return active.get();
+}
+
+/**
+ * @return a point in time copy of all the metrics, as nested maps ready to be written as JSON
+ */
+public Map<String, Object> snapshot()
+{
+  Map<String, Object> map = new LinkedHashMap<>();
+
+  map.put("uptime", (System.currentTimeMillis() - started) / 1000);
+
+  Map<String, Object> concurrency = new LinkedHashMap<>();
+  concurrency.put("active", active.get());
+  concurrency.put("peak", peak.get());
+  map.put("requests", concurrency);
+
+  Map<String, Object> eps = new TreeMap<>();
+  for (Map.Entry<String, Endpoint> entry : endpoints.entrySet())
+  {
+    eps.put(entry.getKey(), entry.getValue().toMap());
+  }
+  map.put("endpoints", eps);
+
+  Map<String, Object> cs = new TreeMap<>();
+  CacheStats providers = DataProviderFactory.getMrsImageProviderCacheStats();
+  cs.put("image/providers", cacheMap(providers.hitCount(), providers.missCount()));
+  for (Map.Entry<String, Cache<?, ?>> entry : caches.entrySet())
+  {
+    CacheStats stats = entry.getValue().stats();
+    cs.put(entry.getKey(), cacheMap(stats.hitCount(), stats.missCount()));
+  }
+  for (Map.Entry<String, AtomicLong[]> entry : countedCaches.entrySet())
+  {
+    cs.put(entry.getKey(), cacheMap(entry.getValue()[0].get(), entry.getValue()[1].get()));
+  }
+  map.put("caches", cs);
+
+  return map;
+}
+
+/**
+ * Forgets everything recorded so far (registered caches stay registered).
+ */
+public void reset()
+{
+  endpoints.clear();
+  countedCaches.clear();
+  peak.set(active.get());
+}
+
+void finished(Endpoint endpoint, long nanos, long[] phases, boolean[] seen)
+{
+  active.decrementAndGet();
+  endpoint.finished(nanos, phases, seen);
+}
+
+private AtomicLong[] counters(String name)
+{
+  AtomicLong[] counters = countedCaches.get(name);
+  if (counters == null)
+  {
+    AtomicLong[] created = new AtomicLong[]{new AtomicLong(), new AtomicLong()};
+    counters = countedCaches.putIfAbsent(name, created);
+    if (counters == null)
+    {
+      counters = created;
+    }
+  }
+  return counters;
+}
+
+private static Map<String, Object> cacheMap(long hits, long misses)
+{
+  Map<String, Object> map = new LinkedHashMap<>();
+  map.put("hits", hits);
+  map.put("misses", misses);
+  map.put("hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+  return map;
+}
+
+private static void updatePeak(AtomicInteger peak, int value)
+{
+  int current = peak.get();
+  while (value > current && !peak.compareAndSet(current, value))
+  {
+    current = peak.get();
+  }
+}
+
+static class Endpoint
+{
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+  private final AtomicInteger active = new AtomicInteger();
+  private final AtomicInteger peak = new AtomicInteger();
+
+  Endpoint()
+  {
+    for (int i = 0; i < phases.length; i++)
+    {
+      phases[i] = new LatencyHistogram();
+    }
+  }
+
+  void started()
+  {
+    updatePeak(peak, active.incrementAndGet());
+  }
+
+  void finished(long nanos, long[] times, boolean[] seen)
+  {
+    active.decrementAndGet();
+    latency.record(nanos);
+    for (int i = 0; i < phases.length; i++)
+    {
+      if (seen[i])
+      {
+        phases[i].record(times[i]);
+      }
+    }
+  }
+
+  Map<String, Object> toMap()
+  {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("active", active.get());
+    map.put("peak", peak.get());
+    map.put("latency", latency.toMap());
+
+    Map<String, Object> ph = new LinkedHashMap<>();
+    for (Phase phase : Phase.values())
+    {
+      LatencyHistogram h = phases[phase.ordinal()];
+      if (h.getCount() > 0)
+      {
+        ph.put(phase.label(), h.toMap());
+      }
+    }
+    map.put("phases", ph);
+
+    return map;
+  }
+}
+}
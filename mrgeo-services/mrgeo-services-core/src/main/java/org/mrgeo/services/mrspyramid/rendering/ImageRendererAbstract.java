@@ -36,6 +36,8 @@ import org.mrgeo.image.MrsImageException;
 import org.mrgeo.image.MrsPyramid;
 import org.mrgeo.image.MrsPyramidMetadata;
 import org.mrgeo.resources.KmlGenerator;
+import org.mrgeo.services.metrics.RequestTimer;
+import org.mrgeo.services.metrics.ServiceMetrics;
 import org.mrgeo.utils.GDALUtils;
 import org.mrgeo.utils.tms.Bounds;
 import org.mrgeo.utils.tms.Pixel;
@@ -200,10 +202,12 @@ public double[] getDefaultValues()
 {
   try
   {
+    long mark = RequestTimer.mark();
     MrsImageDataProvider dp = getDataProvider();
     if (dp != null)
     {
       MrsPyramidMetadata metadata = dp.getMetadataReader().read();
+      RequestTimer.record(ServiceMetrics.Phase.METADATA, mark);
       return metadata.getDefaultValues();
     }
   }
@@ -247,10 +251,12 @@ public double[] getExtrema()
 {
   try
   {
+    long mark = RequestTimer.mark();
     MrsImageDataProvider dp = getDataProvider();
     if (dp != null)
     {
       MrsPyramidMetadata metadata = dp.getMetadataReader().read();
+      RequestTimer.record(ServiceMetrics.Phase.METADATA, mark);
       if (zoomLevel == -1)
       {
         return metadata.getExtrema(0);
@@ -306,10 +312,12 @@ public Raster renderImage(final String pyramidName, final Bounds bounds, final i
     log.debug("requested height: {}", height);
   }
 
+  long mark = RequestTimer.mark();
   MrsImageDataProvider dp = DataProviderFactory.getMrsImageDataProvider(pyramidName,
       AccessMode.READ, providerProperties);
   MrsPyramidMetadataReader r = dp.getMetadataReader();
   final MrsPyramidMetadata pyramidMetadata = r.read();
+  RequestTimer.record(ServiceMetrics.Phase.METADATA, mark);
   isTransparent = false;
 
   // get the correct zoom level based on the requested bounds
@@ -368,7 +376,9 @@ public Raster renderImage(final String pyramidName, final Bounds bounds, final i
     {
 
       // merge together all tiles that fall within the requested bounds
+      long mergeMark = RequestTimer.mark();
       final Raster merged = image.getRaster(bounds);
+      RequestTimer.record(ServiceMetrics.Phase.MERGE, mergeMark);
       if (merged != null)
       {
         log.debug("merged image width: {}", merged.getWidth());
@@ -396,6 +406,7 @@ public Raster renderImage(final String pyramidName, final Bounds bounds, final i
 
         Raster cropped = merged.createChild(offsetX, offsetY, croppedW, croppedH, 0, 0, null);
 
+        long reprojectMark = RequestTimer.mark();
         Dataset src = GDALUtils.toDataset(cropped, pyramidMetadata.getDefaultValue(0), null);
         Dataset dst = GDALUtils.createEmptyMemoryRaster(src, width, height);
 
@@ -456,7 +467,10 @@ public Raster renderImage(final String pyramidName, final Bounds bounds, final i
         gdal.ReprojectImage(src, dst, GDALUtils.EPSG4326(), dstcrs, resample);
         log.debug("Image scaled.");
 
-        return GDALUtils.toRaster(dst);
+        Raster reprojected = GDALUtils.toRaster(dst);
+        RequestTimer.record(ServiceMetrics.Phase.REPROJECT, reprojectMark);
+
+        return reprojected;
       }
 
       log.error("Error processing request for image: {}", pyramidName);
@@ -516,9 +530,14 @@ public Raster renderImage(final String pyramidName, final int tileColumn, final
 
   try
   {
+    long mark = RequestTimer.mark();
     MrsPyramid pyramid = MrsPyramid.open(pyramidName, providerProperties);
     MrsImage image = getImageForScale(pyramid, scale);
+    RequestTimer.record(ServiceMetrics.Phase.METADATA, mark);
+
+    mark = RequestTimer.mark();
     final Raster raster = image.getTile(tileColumn, tileRow);
+    RequestTimer.record(ServiceMetrics.Phase.TILE_READ, mark);
     log.debug("Retrieving tile {}, {}", tileColumn, tileRow);
 
     image.close();
@@ -544,7 +563,9 @@ public Raster renderImage(final String pyramidName, final int tileColumn, final
   {
     pyramid = MrsPyramid.open(pyramidName, providerProperties);
     MrsImage image = getImageForScale(pyramid, scale);
+    long mark = RequestTimer.mark();
     final Raster raster = image.getTile(tileColumn, tileRow);
+    RequestTimer.record(ServiceMetrics.Phase.TILE_READ, mark);
     log.debug("Retrieving tile {}, {}", tileColumn, tileRow);
 
     metadata = pyramid.getMetadata();
@@ -555,7 +576,9 @@ public Raster renderImage(final String pyramidName, final int tileColumn, final
     MrsPyramid maskPyramid = MrsPyramid.open(maskName, providerProperties);
     MrsImage maskImage = getImageForScale(maskPyramid, scale);
 
+    mark = RequestTimer.mark();
     final Raster maskRaster = maskImage.getTile(tileColumn, tileRow);
+    RequestTimer.record(ServiceMetrics.Phase.TILE_READ, mark);
     log.debug("Retrieving mask tile {}, {}", tileColumn, tileRow);
 
     final MrsPyramidMetadata maskMetadata = maskPyramid.getMetadata();
@@ -633,14 +656,19 @@ public Raster renderImage(final String pyramidName, final int tileColumn, final
 
   try
   {
+    long mark = RequestTimer.mark();
     MrsPyramid pyramid = MrsPyramid.open(pyramidName, providerProperties);
 
     MrsImage image = pyramid.getImage(zoom);
+    RequestTimer.record(ServiceMetrics.Phase.METADATA, mark);
     if (image == null)
     {
       throw new MrsImageException("Zoom level not found: " + pyramidName + " level: " + zoom);
     }
+
+    mark = RequestTimer.mark();
     final Raster raster = image.getTile(tileColumn, tileRow);
+    RequestTimer.record(ServiceMetrics.Phase.TILE_READ, mark);
     log.debug("Retrieving tile {}, {}", tileColumn, tileRow);
 
     image.close();
@@ -670,7 +698,9 @@ public Raster renderImage(final String pyramidName, final int tileColumn, final
     {
       throw new MrsImageException("Zoom level not found: " + pyramidName + " level: " + zoom);
     }
+    long mark = RequestTimer.mark();
     final Raster raster = image.getTile(tileColumn, tileRow);
+    RequestTimer.record(ServiceMetrics.Phase.TILE_READ, mark);
     log.debug("Retrieving tile {}, {}", tileColumn, tileRow);
 
     metadata = pyramid.getMetadata();
@@ -680,7 +710,9 @@ public Raster renderImage(final String pyramidName, final int tileColumn, final
     MrsPyramid maskPyramid = MrsPyramid.open(maskName, providerProperties);
     MrsImage maskImage = maskPyramid.getImage(zoom);
 
+    mark = RequestTimer.mark();
     final Raster maskRaster = maskImage.getTile(tileColumn, tileRow);
+    RequestTimer.record(ServiceMetrics.Phase.TILE_READ, mark);
     log.debug("Retrieving mask tile {}, {}", tileColumn, tileRow);
 
     final MrsPyramidMetadata maskMetadata = maskPyramid.getMetadata();
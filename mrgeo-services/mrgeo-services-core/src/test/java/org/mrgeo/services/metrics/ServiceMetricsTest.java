@@ -0,0 +1,116 @@
+/*
+ * Copyright 2009-2016 DigitalGlobe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+
+package org.mrgeo.services.metrics;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mrgeo.junit.UnitTest;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@SuppressWarnings({"static-method", "unchecked"})
+public class ServiceMetricsTest
+{
+  private ServiceMetrics metrics;
+
+  @Before
+  public void setUp()
+  {
+    metrics = ServiceMetrics.getInstance();
+    metrics.reset();
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void histogramPercentiles()
+  {
+    LatencyHistogram h = new LatencyHistogram();
+    Assert.assertEquals(0.0, h.getPercentileMillis(50), 0.0);
+
+    for (int i = 0; i < 90; i++)
+    {
+      h.record(TimeUnit.MILLISECONDS.toNanos(3));
+    }
+    for (int i = 0; i < 10; i++)
+    {
+      h.record(TimeUnit.MILLISECONDS.toNanos(150));
+    }
+
+    Assert.assertEquals(100, h.getCount());
+    Assert.assertEquals(5.0, h.getPercentileMillis(50), 0.0);
+    Assert.assertEquals(5.0, h.getPercentileMillis(90), 0.0);
+    Assert.assertEquals(150.0, h.getPercentileMillis(99), 0.0);
+    Assert.assertEquals(150.0, h.getMaxMillis(), 0.0);
+    Assert.assertEquals((90 * 3 + 10 * 150) / 100.0, h.getMeanMillis(), 1e-9);
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void phases()
+  {
+    RequestTimer timer = metrics.start("test/request");
+    Assert.assertEquals(1, metrics.getActiveRequests());
+
+    RequestTimer.record(ServiceMetrics.Phase.METADATA, RequestTimer.mark());
+    RequestTimer.record(ServiceMetrics.Phase.METADATA, RequestTimer.mark());
+    RequestTimer.record(ServiceMetrics.Phase.ENCODE, RequestTimer.mark());
+    timer.stop();
+    timer.stop();
+
+    Assert.assertEquals(0, metrics.getActiveRequests());
+
+    Map<String, Object> endpoint = (Map<String, Object>)
+        ((Map<String, Object>) metrics.snapshot().get("endpoints")).get("test/request");
+    Assert.assertEquals(1L, ((Map<String, Object>) endpoint.get("latency")).get("count"));
+    Assert.assertEquals(1, endpoint.get("peak"));
+
+    // a phase is recorded once per request, no matter how many times it was entered
+    Map<String, Object> phases = (Map<String, Object>) endpoint.get("phases");
+    Assert.assertEquals(2, phases.size());
+    Assert.assertEquals(1L, ((Map<String, Object>) phases.get("metadata")).get("count"));
+    Assert.assertEquals(1L, ((Map<String, Object>) phases.get("encode")).get("count"));
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void phaseOutsideRequest()
+  {
+    // nothing to record it to, and nothing breaks
+    RequestTimer.record(ServiceMetrics.Phase.MERGE, RequestTimer.mark());
+    Assert.assertTrue(((Map<String, Object>) metrics.snapshot().get("endpoints")).isEmpty());
+  }
+
+  @Test
+  @Category(UnitTest.class)
+  public void countedCache()
+  {
+    metrics.cacheHit("test/cache");
+    metrics.cacheHit("test/cache");
+    metrics.cacheHit("test/cache");
+    metrics.cacheMiss("test/cache");
+
+    Map<String, Object> cache = (Map<String, Object>)
+        ((Map<String, Object>) metrics.snapshot().get("caches")).get("test/cache");
+    Assert.assertEquals(3L, cache.get("hits"));
+    Assert.assertEquals(1L, cache.get("misses"));
+    Assert.assertEquals(0.75, (Double) cache.get("hitRatio"), 1e-9);
+  }
+}
@@ -33,6 +33,8 @@ import org.mrgeo.image.MrsImageException;
 import org.mrgeo.image.MrsPyramidMetadata;
 import org.mrgeo.services.Configuration;
 import org.mrgeo.services.SecurityUtils;
+import org.mrgeo.services.metrics.RequestTimer;
+import org.mrgeo.services.metrics.ServiceMetrics;
 import org.mrgeo.services.mrspyramid.rendering.ImageHandlerFactory;
 import org.mrgeo.services.mrspyramid.rendering.ImageRenderer;
 import org.mrgeo.services.mrspyramid.rendering.ImageResponseWriter;
@@ -394,7 +396,21 @@ public Response getTile(@PathParam("version") final String version,
     @DefaultValue("1") @QueryParam("maskMax") final Double maskMax,
     @QueryParam("mask") final String mask)
 {
+  RequestTimer timer = ServiceMetrics.getInstance().start("tms/tile");
+  try
+  {
+    return renderTile(pyramid, z, x, y, format, colorScaleName, colorScale, min, max, maskMax, mask);
+  }
+  finally
+  {
+    timer.stop();
+  }
+}
 
+private Response renderTile(String pyramid, final Integer z, final Integer x, final Integer y,
+    final String format, final String colorScaleName, final String colorScale,
+    final Double min, final Double max, final Double maskMax, final String mask)
+{
   final ImageRenderer renderer;
   Raster raster;
 
@@ -443,9 +459,12 @@ public Response getTile(@PathParam("version") final String version,
         extrema[1] = max;
       }
 
+      final double[] defaults = renderer.getDefaultValues();
+
+      long mark = RequestTimer.mark();
       raster = ((ColorScaleApplier) ImageHandlerFactory.getHandler(format,
-          ColorScaleApplier.class)).applyColorScale(raster, cs, extrema, renderer
-          .getDefaultValues());
+          ColorScaleApplier.class)).applyColorScale(raster, cs, extrema, defaults);
+      RequestTimer.record(ServiceMetrics.Phase.COLOR_SCALE, mark);
     }
 
     // Apply mask if requested
@@ -480,8 +499,14 @@ public Response getTile(@PathParam("version") final String version,
 //        }
 //      }
 
-    return ((ImageResponseWriter) ImageHandlerFactory.getHandler(format,
-        ImageResponseWriter.class)).write(raster, renderer.getDefaultValues()).build();
+    final double[] defaults = renderer.getDefaultValues();
+
+    long mark = RequestTimer.mark();
+    final Response response = ((ImageResponseWriter) ImageHandlerFactory.getHandler(format,
+        ImageResponseWriter.class)).write(raster, defaults).build();
+    RequestTimer.record(ServiceMetrics.Phase.ENCODE, mark);
+
+    return response;
 
   }
   catch (final IllegalArgumentException e)
@@ -503,7 +528,9 @@ public Response getTile(@PathParam("version") final String version,
     // return Response.status(Status.NOT_FOUND).entity("Tile not found").build();
     try
     {
+      long mark = RequestTimer.mark();
       final MrsPyramidMetadata metadata = service.getMetadata(pyramid);
+      RequestTimer.record(ServiceMetrics.Phase.METADATA, mark);
 
       return createEmptyTile(((ImageResponseWriter) ImageHandlerFactory.getHandler(format,
           ImageResponseWriter.class)), metadata.getTilesize(), metadata.getTilesize());
@@ -548,12 +575,15 @@ public Response getTile(@PathParam("version") final String version,
 public Response getTileMap(@PathParam("version") final String version,
     @PathParam("raster") String raster, @Context final HttpServletRequest hsr)
 {
+  RequestTimer timer = ServiceMetrics.getInstance().start("tms/tilemap");
   try
   {
     final String url = hsr.getRequestURL().toString();
     // Check cache for metadata, if not found read from pyramid
     // and store in cache
+    long mark = RequestTimer.mark();
     final MrsPyramidMetadata mpm = service.getMetadata(raster);
+    RequestTimer.record(ServiceMetrics.Phase.METADATA, mark);
     final Document doc = mrsPyramidMetadataToTileMapXml(raster, url, mpm);
     final DOMSource source = new DOMSource(doc);
 
@@ -569,6 +599,10 @@ public Response getTileMap(@PathParam("version") final String version,
   {
     return Response.status(Status.INTERNAL_SERVER_ERROR).entity(GENERAL_ERROR).build();
   }
+  finally
+  {
+    timer.stop();
+  }
 }
 
 @SuppressFBWarnings(value = "JAXRS_ENDPOINT", justification = "verified")
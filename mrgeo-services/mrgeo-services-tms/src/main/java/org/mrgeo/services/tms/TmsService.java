@@ -24,6 +24,7 @@ import org.mrgeo.data.ProviderProperties;
 import org.mrgeo.image.MrsPyramid;
 import org.mrgeo.image.MrsPyramidMetadata;
 import org.mrgeo.services.SecurityUtils;
+import org.mrgeo.services.metrics.ServiceMetrics;
 
 import java.io.IOException;
 import java.util.Arrays;
@@ -43,6 +44,7 @@ public class TmsService {
         metadataCache = CacheBuilder.newBuilder()
                 .maximumSize(1000)
                 .expireAfterAccess(10, TimeUnit.MINUTES)
+                .recordStats()
                 .build(
                         new CacheLoader<String, MrsPyramidMetadata>() {
                             @Override
@@ -50,6 +52,7 @@ public class TmsService {
                                 return getPyramid(raster).getMetadata();
                             }
                         });
+        ServiceMetrics.getInstance().registerCache("tms/metadata", metadataCache);
     }
 
     @SuppressWarnings("static-method")
@@ -23,6 +23,8 @@ import org.mrgeo.data.ProviderProperties;
 import org.mrgeo.data.image.MrsImageDataProvider;
 import org.mrgeo.services.SecurityUtils;
 import org.mrgeo.services.Version;
+import org.mrgeo.services.metrics.RequestTimer;
+import org.mrgeo.services.metrics.ServiceMetrics;
 import org.mrgeo.services.mrspyramid.rendering.ImageHandlerFactory;
 import org.mrgeo.services.mrspyramid.rendering.ImageRenderer;
 import org.mrgeo.services.mrspyramid.rendering.ImageResponseWriter;
@@ -52,8 +54,10 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Path("/wcs")
 public class WcsGenerator
@@ -63,6 +67,10 @@ private static final Logger log = LoggerFactory.getLogger(WcsGenerator.class);
 public static final String WCS_VERSION = "1.1.0";
 private static final String WCS_SERVICE = "wcs";
 
+// requests timed by name, anything else is timed together (as "invalid")
+private static final Set<String> REQUESTS = new HashSet<>(Arrays.asList(
+    "getcapabilities", "describecoverage", "getcoverage"));
+
 private Version version = new Version(WCS_VERSION);
 
 private static Map<Version, Document> capabilities = new HashMap<>();
@@ -135,6 +143,9 @@ private Response handleRequest(UriInfo uriInfo)
   String request = getQueryParam(allParams, "request", "GetCapabilities");
   ProviderProperties providerProperties = SecurityUtils.getProviderProperties();
 
+  String endpoint = request.toLowerCase();
+  RequestTimer timer = ServiceMetrics.getInstance().start(
+      WCS_SERVICE + "/" + (REQUESTS.contains(endpoint) ? endpoint : "invalid"));
   try
   {
     String serviceName = getQueryParam(allParams, "service");
@@ -164,6 +175,8 @@ private Response handleRequest(UriInfo uriInfo)
   }
   finally
   {
+    timer.stop();
+
     //if (log.isDebugEnabled())
     {
       log.info("WCS request time: {}ms", (System.currentTimeMillis() - start));
@@ -271,11 +284,13 @@ private Response getCapabilities(UriInfo uriInfo, MultivaluedMap<String, String>
     if (capabilities.containsKey(version))
     {
       log.warn("*** cached!");
+      ServiceMetrics.getInstance().cacheHit("wcs/capabilities");
       doc = capabilities.get(version);
     }
     else
     {
       log.warn("*** NOT cached!");
+      ServiceMetrics.getInstance().cacheMiss("wcs/capabilities");
 
       doc = generateCapabilities(version, uriInfo, providerProperties);
       capabilities.put(version, doc);
@@ -436,9 +451,11 @@ private Response getCoverage(MultivaluedMap<String, String> allParams,
     Raster result = renderer.renderImage(layer, bounds, width, height, providerProperties, crs);
 
     log.info("Generating response");
+    long mark = RequestTimer.mark();
     Response.ResponseBuilder builder = ((ImageResponseWriter) ImageHandlerFactory
         .getHandler(format, ImageResponseWriter.class))
         .write(result, layer, bounds);
+    RequestTimer.record(ServiceMetrics.Phase.ENCODE, mark);
 
     log.info("Building and returning response");
     return builder.build();
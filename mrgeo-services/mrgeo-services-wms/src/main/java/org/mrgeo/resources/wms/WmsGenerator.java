@@ -28,6 +28,8 @@ import org.mrgeo.image.MrsImage;
 import org.mrgeo.image.MrsPyramid;
 import org.mrgeo.services.SecurityUtils;
 import org.mrgeo.services.Version;
+import org.mrgeo.services.metrics.RequestTimer;
+import org.mrgeo.services.metrics.ServiceMetrics;
 import org.mrgeo.services.mrspyramid.rendering.ImageHandlerFactory;
 import org.mrgeo.services.mrspyramid.rendering.ImageRenderer;
 import org.mrgeo.services.mrspyramid.rendering.ImageResponseWriter;
@@ -86,6 +88,10 @@ public class WmsGenerator
   public static final String WMS_VERSION = "1.3.0";
   private static final String WMS_SERVICE = "wms";
 
+  // requests timed by name, anything else is timed together (as "invalid")
+  private static final Set<String> REQUESTS = new HashSet<>(Arrays.asList(
+      "getmap", "getmosaic", "gettile", "getcapabilities", "describetiles"));
+
   public WmsGenerator()
   {
   }
@@ -234,10 +240,14 @@ public class WmsGenerator
   private Response handleRequest(@Context UriInfo uriInfo)
   {
     long start = System.currentTimeMillis();
+    MultivaluedMap<String, String> allParams = uriInfo.getQueryParameters();
+    String request = getQueryParam(allParams, "request", "GetCapabilities");
+
+    String endpoint = request.toLowerCase();
+    RequestTimer timer = ServiceMetrics.getInstance().start(
+        WMS_SERVICE + "/" + (REQUESTS.contains(endpoint) ? endpoint : "invalid"));
     try
     {
-      MultivaluedMap<String, String> allParams = uriInfo.getQueryParameters();
-      String request = getQueryParam(allParams, "request", "GetCapabilities");
       ProviderProperties providerProperties = SecurityUtils.getProviderProperties();
 
       String serviceName = getQueryParam(allParams, "service");
@@ -274,6 +284,8 @@ public class WmsGenerator
     }
     finally
     {
+      timer.stop();
+
       if (log.isDebugEnabled())
       {
         log.debug("WMS request time: {}ms", (System.currentTimeMillis() - start));
@@ -409,9 +421,11 @@ public class WmsGenerator
           renderer,
           result);
 
+      long mark = RequestTimer.mark();
       Response.ResponseBuilder builder = ((ImageResponseWriter) ImageHandlerFactory
               .getHandler(format, ImageResponseWriter.class))
               .write(result, layerNames[0], bounds);
+      RequestTimer.record(ServiceMetrics.Phase.ENCODE, mark);
       return setupCaching(builder, allParams).build();
     }
     catch (Exception e)
@@ -554,9 +568,11 @@ public class WmsGenerator
                            renderer,
                            result);
 
+      long mark = RequestTimer.mark();
       Response.ResponseBuilder builder = ((ImageResponseWriter) ImageHandlerFactory
               .getHandler(format, ImageResponseWriter.class))
               .write(result, layerNames[0], bounds);
+      RequestTimer.record(ServiceMetrics.Phase.ENCODE, mark);
       return setupCaching(builder, allParams).build();
     }
     catch (Exception e)
@@ -710,10 +726,15 @@ public class WmsGenerator
 
       result = colorRaster(layer, style, format, renderer, result);
 
+      long mark = RequestTimer.mark();
+      MrsPyramid pyramid = MrsPyramid.open(layer, providerProperties);
+      RequestTimer.record(ServiceMetrics.Phase.METADATA, mark);
+
+      mark = RequestTimer.mark();
       Response.ResponseBuilder builder =  ((ImageResponseWriter) ImageHandlerFactory
               .getHandler(format, ImageResponseWriter.class))
-              .write(result, tileCol, tileRow, scale,
-                     MrsPyramid.open(layer, providerProperties));
+              .write(result, tileCol, tileRow, scale, pyramid);
+      RequestTimer.record(ServiceMetrics.Phase.ENCODE, mark);
       return setupCaching(builder, allParams).build();
     }
     catch (Exception e)
@@ -743,8 +764,13 @@ public class WmsGenerator
       {
         cs = ColorScale.createDefaultGrayScale();
       }
+      double[] extrema = renderer.getExtrema();
+      double[] defaults = renderer.getDefaultValues();
+
+      long mark = RequestTimer.mark();
       result = ((ColorScaleApplier) ImageHandlerFactory.getHandler(imageFormat,
-          ColorScaleApplier.class)).applyColorScale(result, cs,renderer.getExtrema(), renderer.getDefaultValues());
+          ColorScaleApplier.class)).applyColorScale(result, cs, extrema, defaults);
+      RequestTimer.record(ServiceMetrics.Phase.COLOR_SCALE, mark);
       log.debug("Color scale applied to image {}", layer);
     }
 